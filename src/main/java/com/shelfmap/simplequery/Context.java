@@ -19,17 +19,31 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.simpledb.AmazonSimpleDB;
+import com.amazonaws.services.simpledb.AmazonSimpleDBAsync;
 import com.shelfmap.simplequery.attribute.SelectAttribute;
 import com.shelfmap.simplequery.domain.Domain;
 import com.shelfmap.simplequery.domain.DomainFactory;
+import com.shelfmap.simplequery.expression.QueryCursorCodec;
+import com.shelfmap.simplequery.expression.QueryResults;
 import com.shelfmap.simplequery.expression.SelectQuery;
+import com.shelfmap.simplequery.expression.SkipTokenCache;
 import com.shelfmap.simplequery.factory.DomainAttributeFactory;
 import com.shelfmap.simplequery.factory.DomainDescriptorFactory;
 import com.shelfmap.simplequery.factory.ItemConverterFactory;
 import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
+ * The entry point of simplequery, which holds the clients of AWS and all factories.
+ * <p>
+ * New methods are added to this interface when new features need them
+ * (getSimpleDBAsync, getTransferManager, the executors, getSkipTokenCache, getQueryCursorCodec,
+ * resume, close and prepare, for example), so a class which implements this interface directly
+ * must be changed at each release. Extend {@link DefaultContext} instead, which implements all methods
+ * and whose protected createXxx methods can be overridden to customize the context.
  *
  * @author Tsutomu YANO
  */
@@ -46,15 +60,105 @@ public interface Context extends Iterable<CachedObject> {
     void setAutoCreateRemoteDomain(boolean auto);
 
     AmazonSimpleDB getSimpleDB();
+
+    /**
+     * @return the client of SimpleDB which sends requests asynchronously.
+     * @throws IllegalStateException if this context does not have an asynchronous client.
+     */
+    AmazonSimpleDBAsync getSimpleDBAsync();
     AmazonS3 getS3();
+
+    /**
+     * @return the TransferManager which is shared by all uploads of blobs in this context.
+     * @throws IllegalStateException if this context is closed.
+     */
+    TransferManager getTransferManager();
+
+    /**
+     * @return the executor for tasks which block on I/O, like requests to SimpleDB or S3.
+     * @throws IllegalStateException if this context is closed.
+     */
+    ExecutorService getIOExecutor();
+
+    /**
+     * @return the executor for tasks which wait for tasks on {@link #getIOExecutor()},
+     *         like asynchronous queries which are split into several requests.
+     * @throws IllegalStateException if this context is closed.
+     */
+    ExecutorService getQueryExecutor();
+
+    /**
+     * @return the executor for tasks which use CPU, like conversions of items.
+     * @throws IllegalStateException if this context is closed.
+     */
+    ExecutorService getConversionExecutor();
+
+    /**
+     * @return the executor for delayed or periodic tasks.
+     * @throws IllegalStateException if this context is closed.
+     */
+    ScheduledExecutorService getScheduledExecutor();
+
+    /**
+     * @return the cache of the NextTokens for the offsets of expressions, which is shared in this context.
+     */
+    SkipTokenCache getSkipTokenCache();
+
+    /**
+     * @return the codec which signs the cursors of the results in this context.
+     */
+    QueryCursorCodec getQueryCursorCodec();
+
+    /**
+     * fetch the results from the position of a cursor.
+     *
+     * @param cursor a cursor returned by {@link QueryResults#cursor()}.
+     * @param resultClass the class of the results of the cursor.
+     * @return the results from the position of the cursor.
+     * @throws IllegalArgumentException if the cursor is broken, is not signed by the codec of this context,
+     *                                  or is not a cursor of the result class.
+     */
+    <T> QueryResults<T> resume(String cursor, Class<T> resultClass);
+
+    /**
+     * shut down the executors, the TransferManager and the clients which this context owns.
+     * The tasks which are already running on the executors are not interrupted,
+     * but the uploads which are in progress are aborted.
+     * Calling this method twice has no effect.
+     */
+    void close();
+
     SelectQuery select(SelectAttribute... attribute);
 
+    /**
+     * @param domainObjects domain objects which will be put at the next {@link #save()}.
+     * @throws IllegalArgumentException if one of the objects is a view, which is read only.
+     */
     void putObjects(Object... domainObjects);
     LinkedHashSet<Object> getPutObjects();
 
     void deleteItem(Domain<?> domain, String itemName) throws AmazonServiceException, AmazonClientException;
+
+    /**
+     * @param domainObjects domain objects which will be deleted at the next {@link #save()}.
+     * @throws IllegalArgumentException if one of the objects is a view, which is read only.
+     */
     void deleteObjects(Object... domainObjects);
     LinkedHashSet<Object> getDeleteObjects();
 
     void save() throws AmazonServiceException, AmazonClientException;
+
+    /**
+     * build and cache the DomainDescriptors, AttributeAccessors and the ItemConverters which the
+     * ItemConverterFactory caches (the converters generated by SimpleQueryProcessor, for the default factory)
+     * of all the passed domain classes concurrently. If {@link #isAutoCreateRemoteDomain()} is true,
+     * the remote domains which do not exist yet are also created.
+     * <p>
+     * Calling this method at the boot time of an application moves all these costs
+     * from the first requests to the boot time.
+     *
+     * @param domainClasses classes annotated with {@link com.shelfmap.simplequery.annotation.SimpleDbDomain}.
+     * @throws IllegalArgumentException if one of the classes is not a domain class.
+     */
+    void prepare(Class<?>... domainClasses) throws AmazonServiceException, AmazonClientException;
 }
@@ -17,27 +17,49 @@ package com.shelfmap.simplequery;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceClient;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.simpledb.AmazonSimpleDB;
-import com.amazonaws.services.simpledb.AmazonSimpleDBClient;
+import com.amazonaws.services.simpledb.AmazonSimpleDBAsync;
+import com.amazonaws.services.simpledb.AmazonSimpleDBAsyncClient;
 import com.amazonaws.services.simpledb.model.*;
 import com.shelfmap.simplequery.attribute.SelectAttribute;
 import com.shelfmap.simplequery.domain.*;
+import com.shelfmap.simplequery.domain.impl.CompiledAttributeAccessor;
 import com.shelfmap.simplequery.domain.impl.DefaultDomainFactory;
 import com.shelfmap.simplequery.expression.ItemConverter;
+import com.shelfmap.simplequery.expression.QueryCursorCodec;
+import com.shelfmap.simplequery.expression.QueryResults;
 import com.shelfmap.simplequery.expression.SelectQuery;
+import com.shelfmap.simplequery.expression.SkipTokenCache;
+import com.shelfmap.simplequery.expression.impl.QueryResumer;
 import com.shelfmap.simplequery.expression.impl.Select;
+import com.shelfmap.simplequery.expression.impl.ViewItemConverter;
 import com.shelfmap.simplequery.factory.DomainAttributeFactory;
 import com.shelfmap.simplequery.factory.DomainDescriptorFactory;
 import com.shelfmap.simplequery.factory.ItemConverterFactory;
 import com.shelfmap.simplequery.factory.impl.DefaultDomainAttributeFactory;
 import com.shelfmap.simplequery.factory.impl.DefaultDomainDescriptorFactory;
 import com.shelfmap.simplequery.factory.impl.DefaultItemConverterFactory;
+import com.shelfmap.simplequery.util.DaemonThreadFactory;
+import com.shelfmap.simplequery.util.ExecutorSimpleDBAsync;
 import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -60,10 +82,17 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class DefaultContext implements Context, Serializable {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * the default maximum number of the threads of {@link #getIOExecutor()} and {@link #getQueryExecutor()}.
+     * this is the same with the default maximum number of connections of {@link ClientConfiguration}.
+     */
+    public static final int DEFAULT_MAX_IO_THREADS = 50;
+
     //TODO hey! AWSCredentials must be serializable! or must be transient!
     private final AWSCredentials credentials;
 
     private AmazonSimpleDB simpleDB;
+    private AmazonSimpleDBAsync simpleDBAsync;
     private final Lock simpleDBLock = new ReentrantLock();
 
     private AmazonS3 s3;
@@ -78,6 +107,31 @@ public class DefaultContext implements Context, Serializable {
     private RemoteDomainBuilder remoteDomainBuilder;
     private final Lock remoteDomainBuilderLock = new ReentrantLock();
 
+    //the factory holds the cache of generated ItemConverters, so it must be shared in this context.
+    private transient ItemConverterFactory itemConverterFactory;
+    private final Lock itemConverterFactoryLock = new ReentrantLock();
+
+    //the factory holds the cache of DomainDescriptors, so it must be shared in this context.
+    private transient DomainDescriptorFactory domainDescriptorFactory;
+    private final Lock domainDescriptorFactoryLock = new ReentrantLock();
+
+    //the NextTokens for the offsets of the expressions which are executed in this context.
+    private transient SkipTokenCache skipTokenCache;
+    private final Lock skipTokenCacheLock = new ReentrantLock();
+
+    //the key of the codec must not be changed while the cursors are used.
+    private transient QueryCursorCodec queryCursorCodec;
+    private final Lock queryCursorCodecLock = new ReentrantLock();
+
+    //the executors and the TransferManager are created at first use, and shut down by close().
+    private transient ExecutorService ioExecutor;
+    private transient ExecutorService queryExecutor;
+    private transient ExecutorService conversionExecutor;
+    private transient ScheduledExecutorService scheduledExecutor;
+    private transient TransferManager transferManager;
+    private transient boolean closed;
+    private final Lock executorsLock = new ReentrantLock();
+
     AtomicBoolean autoCreateRemoteDomain = new AtomicBoolean(false);
 
     public DefaultContext(AWSCredentials credentials) {
@@ -86,9 +140,74 @@ public class DefaultContext implements Context, Serializable {
 
     @Override
     public ItemConverterFactory getItemConverterFactory() {
+        itemConverterFactoryLock.lock();
+        try {
+            if(itemConverterFactory == null) {
+                itemConverterFactory = createItemConverterFactory();
+            }
+            return itemConverterFactory;
+        } finally {
+            itemConverterFactoryLock.unlock();
+        }
+    }
+
+    protected ItemConverterFactory createItemConverterFactory() {
         return new DefaultItemConverterFactory(this);
     }
 
+    @Override
+    public SkipTokenCache getSkipTokenCache() {
+        skipTokenCacheLock.lock();
+        try {
+            if(skipTokenCache == null) {
+                skipTokenCache = createSkipTokenCache();
+            }
+            return skipTokenCache;
+        } finally {
+            skipTokenCacheLock.unlock();
+        }
+    }
+
+    protected SkipTokenCache createSkipTokenCache() {
+        return new SkipTokenCache();
+    }
+
+    @Override
+    public QueryCursorCodec getQueryCursorCodec() {
+        queryCursorCodecLock.lock();
+        try {
+            if(queryCursorCodec == null) {
+                queryCursorCodec = createQueryCursorCodec();
+            }
+            return queryCursorCodec;
+        } finally {
+            queryCursorCodecLock.unlock();
+        }
+    }
+
+    /**
+     * The key of the codec is derived from the secret key of the credentials, so that the processes
+     * which have the same credentials can resume the cursors of each other.
+     * Without credentials, the key is generated randomly, and the cursors can be resumed only in this context.
+     * Override this method for sharing cursors with another key.
+     */
+    protected QueryCursorCodec createQueryCursorCodec() {
+        AWSCredentials c = getCredentials();
+        if(c != null && c.getAWSSecretKey() != null) {
+            return new QueryCursorCodec(QueryCursorCodec.deriveKey(c.getAWSSecretKey()));
+        }
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return new QueryCursorCodec(key);
+    }
+
+    @Override
+    public <T> QueryResults<T> resume(String cursor, Class<T> resultClass) {
+        isNotNull("cursor", cursor);
+        isNotNull("resultClass", resultClass);
+        return QueryResumer.resume(this, getQueryCursorCodec().decode(cursor), resultClass);
+    }
+
     @Override
     public <T> DomainInstanceFactory<T> getDomainInstanceFactory(Domain<T> domain) {
         return new DefaultInstanceFactory<T>(this, domain);
@@ -96,6 +215,18 @@ public class DefaultContext implements Context, Serializable {
 
     @Override
     public DomainDescriptorFactory getDomainDescriptorFactory() {
+        domainDescriptorFactoryLock.lock();
+        try {
+            if(domainDescriptorFactory == null) {
+                domainDescriptorFactory = createDomainDescriptorFactory();
+            }
+            return domainDescriptorFactory;
+        } finally {
+            domainDescriptorFactoryLock.unlock();
+        }
+    }
+
+    protected DomainDescriptorFactory createDomainDescriptorFactory() {
         return new DefaultDomainDescriptorFactory(this);
     }
 
@@ -128,6 +259,30 @@ public class DefaultContext implements Context, Serializable {
         }
     }
 
+    /**
+     * The client created by {@link #createSimpleDb(com.amazonaws.auth.AWSCredentials)} is an asynchronous client,
+     * so this method returns the same client with {@link #getSimpleDB()}.
+     * If createSimpleDb is overridden and returns a synchronous client, the returned client runs
+     * the requests of the synchronous client on {@link #getIOExecutor()}.
+     */
+    @Override
+    public AmazonSimpleDBAsync getSimpleDBAsync() {
+        AmazonSimpleDB client = getSimpleDB();
+        if(client instanceof AmazonSimpleDBAsync) {
+            return (AmazonSimpleDBAsync) client;
+        }
+
+        simpleDBLock.lock();
+        try {
+            if(this.simpleDBAsync == null) {
+                this.simpleDBAsync = ExecutorSimpleDBAsync.wrap(client, getIOExecutor());
+            }
+            return this.simpleDBAsync;
+        } finally {
+            simpleDBLock.unlock();
+        }
+    }
+
     @Override
     public RemoteDomainBuilder getRemoteDomainBuilder() {
         remoteDomainBuilderLock.lock();
@@ -173,17 +328,222 @@ public class DefaultContext implements Context, Serializable {
         }
     }
 
+    /**
+     * create an asynchronous client, which is also used for synchronous requests.
+     * The client sends asynchronous requests on the I/O executor of this context
+     * unless {@link #configureSimpleDbExecutor()} returns another executor.
+     */
     protected AmazonSimpleDB createSimpleDb(AWSCredentials securityCredential) {
         ClientConfiguration clientConfig = configureSimpleDb();
-        return clientConfig == null
-                ? new AmazonSimpleDBClient(securityCredential)
-                : new AmazonSimpleDBClient(securityCredential, clientConfig);
+        ExecutorService executor = configureSimpleDbExecutor();
+        return new AmazonSimpleDBAsyncClient(securityCredential,
+                                             clientConfig == null ? new ClientConfiguration() : clientConfig,
+                                             executor == null ? getIOExecutor() : executor);
     }
 
     protected ClientConfiguration configureSimpleDb() {
         return null;
     }
 
+    /**
+     * @return the executor on which the asynchronous client sends requests,
+     *         or null for the I/O executor of this context.
+     */
+    protected ExecutorService configureSimpleDbExecutor() {
+        return null;
+    }
+
+    @Override
+    public TransferManager getTransferManager() {
+        executorsLock.lock();
+        try {
+            checkNotClosed();
+            if(transferManager == null) {
+                transferManager = createTransferManager(getS3());
+            }
+            return transferManager;
+        } finally {
+            executorsLock.unlock();
+        }
+    }
+
+    protected TransferManager createTransferManager(AmazonS3 s3) {
+        return new TransferManager(s3);
+    }
+
+    @Override
+    public ExecutorService getIOExecutor() {
+        executorsLock.lock();
+        try {
+            checkNotClosed();
+            if(ioExecutor == null) {
+                ioExecutor = createIOExecutor();
+            }
+            return ioExecutor;
+        } finally {
+            executorsLock.unlock();
+        }
+    }
+
+    /**
+     * create the executor for blocking I/O.
+     * the default executor runs at most {@link #configureMaxIOThreads()} tasks at once and queues the others.
+     * an idle thread is terminated after 60 seconds.
+     * <p>
+     * because the tasks are queued, a task on this executor must not wait for another task on this executor.
+     * such a task must run on {@link #getQueryExecutor()}.
+     */
+    protected ExecutorService createIOExecutor() {
+        return newBoundedExecutor(configureMaxIOThreads(), "simplequery-io-");
+    }
+
+    /**
+     * override this method to change the maximum number of the threads of {@link #getIOExecutor()} and {@link #getQueryExecutor()}.
+     * a client which has its own connection pool, like {@link AmazonSimpleDBAsyncClient}, shares the I/O executor,
+     * so the number should not be larger than the maximum number of connections of the clients.
+     *
+     * @return the maximum number of the threads for blocking I/O. {@link #DEFAULT_MAX_IO_THREADS} by default.
+     */
+    protected int configureMaxIOThreads() {
+        return DEFAULT_MAX_IO_THREADS;
+    }
+
+    @Override
+    public ExecutorService getQueryExecutor() {
+        executorsLock.lock();
+        try {
+            checkNotClosed();
+            if(queryExecutor == null) {
+                queryExecutor = createQueryExecutor();
+            }
+            return queryExecutor;
+        } finally {
+            executorsLock.unlock();
+        }
+    }
+
+    /**
+     * create the executor for the tasks which wait for tasks on {@link #getIOExecutor()}.
+     * the tasks on this executor wait only for the tasks on the I/O executor, which never wait for other tasks,
+     * so both executors can be bounded without a deadlock.
+     */
+    protected ExecutorService createQueryExecutor() {
+        return newBoundedExecutor(configureMaxIOThreads(), "simplequery-query-");
+    }
+
+    private static ExecutorService newBoundedExecutor(int maxThreads, String threadNamePrefix) {
+        if(maxThreads <= 0) throw new IllegalStateException("configureMaxIOThreads() must return a positive number, but was " + maxThreads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(),
+                                                             new DaemonThreadFactory(threadNamePrefix));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public ExecutorService getConversionExecutor() {
+        executorsLock.lock();
+        try {
+            checkNotClosed();
+            if(conversionExecutor == null) {
+                conversionExecutor = createConversionExecutor();
+            }
+            return conversionExecutor;
+        } finally {
+            executorsLock.unlock();
+        }
+    }
+
+    /**
+     * create the executor for CPU work. the default executor has as many threads as the processors.
+     */
+    protected ExecutorService createConversionExecutor() {
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                            new DaemonThreadFactory("simplequery-conversion-"));
+    }
+
+    @Override
+    public ScheduledExecutorService getScheduledExecutor() {
+        executorsLock.lock();
+        try {
+            checkNotClosed();
+            if(scheduledExecutor == null) {
+                scheduledExecutor = createScheduledExecutor();
+            }
+            return scheduledExecutor;
+        } finally {
+            executorsLock.unlock();
+        }
+    }
+
+    protected ScheduledExecutorService createScheduledExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("simplequery-scheduler-"));
+    }
+
+    /**
+     * must be called with executorsLock.
+     */
+    private void checkNotClosed() {
+        if(closed) throw new IllegalStateException("this context has been closed.");
+    }
+
+    /**
+     * shutting down the TransferManager also shuts down the client of S3.
+     */
+    @Override
+    public void close() {
+        TransferManager transfer;
+        AmazonS3 s3Client;
+        List<ExecutorService> executors = new ArrayList<ExecutorService>(4);
+        executorsLock.lock();
+        try {
+            if(closed) return;
+            closed = true;
+            transfer = transferManager;
+            if(queryExecutor != null) executors.add(queryExecutor);
+            if(ioExecutor != null) executors.add(ioExecutor);
+            if(conversionExecutor != null) executors.add(conversionExecutor);
+            if(scheduledExecutor != null) executors.add(scheduledExecutor);
+            transferManager = null;
+            queryExecutor = null;
+            ioExecutor = null;
+            conversionExecutor = null;
+            scheduledExecutor = null;
+        } finally {
+            executorsLock.unlock();
+        }
+
+        AmazonSimpleDB client;
+        simpleDBLock.lock();
+        try {
+            client = simpleDB;
+            simpleDB = null;
+            simpleDBAsync = null;
+        } finally {
+            simpleDBLock.unlock();
+        }
+
+        s3Lock.lock();
+        try {
+            s3Client = s3;
+            s3 = null;
+        } finally {
+            s3Lock.unlock();
+        }
+
+        //TransferManager#shutdownNow() shuts down its AmazonS3 too.
+        if(transfer != null) {
+            transfer.shutdownNow();
+        } else if(s3Client instanceof AmazonWebServiceClient) {
+            ((AmazonWebServiceClient) s3Client).shutdown();
+        }
+        //AmazonSimpleDB of the SDK does not declare shutdown(), only the clients of the SDK have it.
+        if(client instanceof AmazonWebServiceClient) ((AmazonWebServiceClient) client).shutdown();
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+    }
+
     protected AmazonS3 createS3(AWSCredentials securityCredential) {
         ClientConfiguration clientConfig = configureS3();
         return clientConfig == null
@@ -199,6 +559,7 @@ public class DefaultContext implements Context, Serializable {
     private Collection<CachedObject> asCachedUpdateObjects(Object... domainObjects) {
         List<CachedObject> cachedList = new ArrayList<CachedObject>();
         for (Object object : domainObjects) {
+            checkNotView(object);
             cachedList.add(new UpdateObject(object));
         }
         return cachedList;
@@ -207,11 +568,20 @@ public class DefaultContext implements Context, Serializable {
     private Collection<CachedObject> asCachedDeleteObjects(Object... domainObjects) {
         List<CachedObject> cachedList = new ArrayList<CachedObject>();
         for (Object object : domainObjects) {
+            checkNotView(object);
             cachedList.add(new DeleteObject(object));
         }
         return cachedList;
     }
 
+    private void checkNotView(Object object) {
+        if(ViewItemConverter.isView(object)) {
+            //an interface view is a dynamic proxy, so the name of the view-class is the name of its interface.
+            Class<?> viewClass = Proxy.isProxyClass(object.getClass()) ? object.getClass().getInterfaces()[0] : object.getClass();
+            throw new IllegalArgumentException("a view is read only, so it can not be put or deleted. Put or delete the domain object instead. view: " + viewClass.getName());
+        }
+    }
+
     @Override
     public void putObjects(Object... domainObjects) {
         cachedObjectWriteLock.lock();
@@ -268,6 +638,8 @@ public class DefaultContext implements Context, Serializable {
     public void deleteItem(Domain<?> domain, String itemName) throws AmazonServiceException, AmazonClientException {
         DeleteAttributesRequest request = new DeleteAttributesRequest(domain.getDomainName(), itemName);
         getSimpleDB().deleteAttributes(request);
+        //the positions of the cached NextTokens may be moved by the deletion.
+        getSkipTokenCache().clear();
     }
 
     @Override
@@ -293,7 +665,7 @@ public class DefaultContext implements Context, Serializable {
                     if(domain == null) {
                         throw new IllegalStateException("the domain object '" + o + "' is not a domain object. Could not find @SimpleDbDOmain annotation.");
                     }
-                    if(domainBuilder.isBuilt(domain)) {
+                    if(!domainBuilder.isBuilt(domain)) {
                         domainBuilder.add(domain);
                     }
                 }
@@ -347,11 +719,80 @@ public class DefaultContext implements Context, Serializable {
 
             //all objects are processed successfully, then clear all objects from caches.
             cachedObjects.clear();
+            getSkipTokenCache().clear();
         } finally {
             cachedObjectWriteLock.unlock();
         }
     }
 
+    @Override
+    public void prepare(Class<?>... domainClasses) throws AmazonServiceException, AmazonClientException {
+        isNotNull("domainClasses", domainClasses);
+        List<Domain<?>> domains = new ArrayList<Domain<?>>();
+        for (Class<?> domainClass : domainClasses) {
+            Domain<?> domain = getDomainFactory().findDomain(domainClass);
+            if(domain == null) {
+                throw new IllegalArgumentException("the class '" + domainClass + "' is not a domain class. Could not find @SimpleDbDomain annotation.");
+            }
+            domains.add(domain);
+        }
+        if(domains.isEmpty()) return;
+
+        //the local preparations use CPU only, so they run on the conversion executor.
+        ExecutorService executor = getConversionExecutor();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final Domain<?> domain : domains) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    prepareDomain(domain);
+                }
+            }));
+        }
+
+        //the remote domains are built on this thread while the local preparations are running.
+        if(isAutoCreateRemoteDomain()) {
+            RemoteDomainBuilder domainBuilder = getRemoteDomainBuilder();
+            for (Domain<?> domain : domains) {
+                if(!domainBuilder.isBuilt(domain)) {
+                    domainBuilder.add(domain);
+                }
+            }
+            domainBuilder.build();
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if(cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException("Could not prepare a domain.", cause);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while preparing domains.", ex);
+            }
+        }
+    }
+
+    /**
+     * build and cache all objects which are needed to convert items of the domain:
+     * the DomainDescriptor, the compiled AttributeAccessors and the ItemConverters
+     * generated by SimpleQueryProcessor (see {@link DefaultItemConverterFactory}).
+     */
+    protected void prepareDomain(Domain<?> domain) {
+        DomainDescriptor descriptor = getDomainDescriptorFactory().create(domain);
+        for (DomainAttribute<?,?> attribute : descriptor) {
+            AttributeAccessor<?> accessor = attribute.getAttributeAccessor();
+            if(accessor instanceof CompiledAttributeAccessor) {
+                ((CompiledAttributeAccessor<?>) accessor).prepare(domain.getDomainClass());
+            }
+        }
+        getItemConverterFactory().create(domain);
+        getItemConverterFactory().createLazy(domain);
+    }
+
     private void doPutObjects(Map<Domain<?>, List<ReplaceableItem>> putItems) throws AmazonClientException {
         AmazonSimpleDB sdb = getSimpleDB();
         for (Map.Entry<Domain<?>, List<ReplaceableItem>> entry : putItems.entrySet()) {
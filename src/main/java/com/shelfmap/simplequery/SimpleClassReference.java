@@ -15,7 +15,22 @@
  */
 package com.shelfmap.simplequery;
 
+import com.shelfmap.simplequery.util.Objects;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 /**
+ * A serializable reference to a class.
+ * <p>
+ * The referenced class is loaded by the context classloader of the current thread.
+ * Because {@link Class#forName(java.lang.String, boolean, java.lang.ClassLoader)} is
+ * expensive and synchronized on the classloader, the classes resolved by each classloader
+ * are cached in this reference. The cache holds the classloaders and the classes
+ * only through weak references, so that a classloader of a redeployed application can be
+ * collected. The cache is transient and will be rebuilt after deserialization.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
  *
  * @author Tsutomu YANO
  */
@@ -23,24 +38,46 @@ public class SimpleClassReference implements ClassReference {
     private static final long serialVersionUID = 1L;
 
     private final String className;
+    private transient Map<ClassLoader, WeakReference<Class<?>>> resolved;
 
     public SimpleClassReference(Class<?> clazz) {
         this.className = (clazz == null ? null : clazz.getName());
+        if(clazz != null) {
+            //the passed class is surely the class resolved by its own classloader.
+            resolvedClasses().put(clazz.getClassLoader(), new WeakReference<Class<?>>(clazz));
+        }
     }
 
     @Override
     public Class<?> get() {
         if(className == null) return null;
-        
+
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        synchronized(this) {
+            WeakReference<Class<?>> ref = resolvedClasses().get(loader);
+            Class<?> clazz = (ref == null ? null : ref.get());
+            if(clazz != null) return clazz;
+        }
+
         Class<?> clazz;
         try {
-            clazz = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
+            clazz = Objects.forName(className, true, loader);
         } catch (ClassNotFoundException ex) {
             throw new IllegalStateException("No such class in current context classloader.", ex);
         }
+        synchronized(this) {
+            resolvedClasses().put(loader, new WeakReference<Class<?>>(clazz));
+        }
         return clazz;
     }
 
+    private synchronized Map<ClassLoader, WeakReference<Class<?>>> resolvedClasses() {
+        if(resolved == null) {
+            resolved = new WeakHashMap<ClassLoader, WeakReference<Class<?>>>();
+        }
+        return resolved;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
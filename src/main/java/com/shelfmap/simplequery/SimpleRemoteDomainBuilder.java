@@ -17,20 +17,33 @@ package com.shelfmap.simplequery;
 
 import com.amazonaws.services.simpledb.AmazonSimpleDB;
 import com.amazonaws.services.simpledb.model.CreateDomainRequest;
+import com.amazonaws.services.simpledb.model.ListDomainsRequest;
+import com.amazonaws.services.simpledb.model.ListDomainsResult;
 import com.shelfmap.simplequery.domain.Domain;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * A RemoteDomainBuilder which creates only the domains which do not exist on SimpleDB yet.
+ * <p>
+ * The names of the existing remote domains are fetched by a single ListDomains request
+ * when {@link #build()} is called at first, and the missing domains are created in parallel.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
  *
  * @author Tsutomu YANO
  */
 public class SimpleRemoteDomainBuilder implements RemoteDomainBuilder, Serializable {
     private static final long serialVersionUID = 1L;
-    
+
     private Context context;
     private final List<Domain<?>> domains = new ArrayList<Domain<?>>();
     private final Set<String> builtSet = new HashSet<String>();
+    private boolean remoteDomainsListed = false;
+    private final Lock lock = new ReentrantLock();
 
     public SimpleRemoteDomainBuilder(Context context) {
         this.context = context;
@@ -38,20 +51,95 @@ public class SimpleRemoteDomainBuilder implements RemoteDomainBuilder, Serializa
 
     @Override
     public void build() {
-        AmazonSimpleDB simpleDB = getContext().getSimpleDB();
-        Iterator<Domain<?>> iterator = this.domains.iterator();
-        while(iterator.hasNext()) {
-            Domain<?> domain = iterator.next();
-            String domainName = domain.getDomainName();
+        lock.lock();
+        try {
+            if(this.domains.isEmpty()) return;
+
+            AmazonSimpleDB simpleDB = getContext().getSimpleDB();
+            if(!remoteDomainsListed) {
+                this.builtSet.addAll(listRemoteDomainNames(simpleDB));
+                remoteDomainsListed = true;
+            }
+
+            Set<String> missingNames = new LinkedHashSet<String>();
+            for (Domain<?> domain : this.domains) {
+                String domainName = domain.getDomainName();
+                if(!this.builtSet.contains(domainName)) {
+                    missingNames.add(domainName);
+                }
+            }
+            createDomains(simpleDB, missingNames);
+            this.domains.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected List<String> listRemoteDomainNames(AmazonSimpleDB simpleDB) {
+        List<String> domainNames = new ArrayList<String>();
+        String nextToken = null;
+        do {
+            ListDomainsResult result = simpleDB.listDomains(new ListDomainsRequest().withNextToken(nextToken));
+            domainNames.addAll(result.getDomainNames());
+            nextToken = result.getNextToken();
+        } while(nextToken != null);
+        return domainNames;
+    }
+
+    /**
+     * create the domains in parallel on the I/O executor of the context, which bounds the number of the parallel requests.
+     * The names of the successfully created domains are registered as built even if some of the other domains could not be created.
+     * <p>
+     * this method waits for the tasks on the I/O executor, so it must not be called on the I/O executor.
+     */
+    private void createDomains(final AmazonSimpleDB simpleDB, Set<String> domainNames) {
+        if(domainNames.isEmpty()) return;
+        if(domainNames.size() == 1) {
+            String domainName = domainNames.iterator().next();
             simpleDB.createDomain(new CreateDomainRequest(domainName));
             this.builtSet.add(domainName);
-            iterator.remove();
+            return;
         }
+
+        ExecutorService executor = getContext().getIOExecutor();
+        Map<String, Future<?>> futures = new LinkedHashMap<String, Future<?>>();
+        for (final String domainName : domainNames) {
+            futures.put(domainName, executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    simpleDB.createDomain(new CreateDomainRequest(domainName));
+                }
+            }));
+        }
+
+        RuntimeException failure = null;
+        for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().get();
+                this.builtSet.add(entry.getKey());
+            } catch (ExecutionException ex) {
+                if(failure == null) {
+                    Throwable cause = ex.getCause();
+                    failure = cause instanceof RuntimeException
+                            ? (RuntimeException) cause
+                            : new IllegalStateException("Could not create the remote domain: " + entry.getKey(), cause);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while creating remote domains.", ex);
+            }
+        }
+        if(failure != null) throw failure;
     }
 
     @Override
     public void add(Domain<?>... domains) {
-        this.domains.addAll(Arrays.asList(domains));
+        lock.lock();
+        try {
+            this.domains.addAll(Arrays.asList(domains));
+        } finally {
+            lock.unlock();
+        }
     }
 
     public Context getContext() {
@@ -59,15 +147,30 @@ public class SimpleRemoteDomainBuilder implements RemoteDomainBuilder, Serializa
     }
 
     protected void clear() {
-        this.domains.clear();
+        lock.lock();
+        try {
+            this.domains.clear();
+        } finally {
+            lock.unlock();
+        }
     }
 
     protected List<Domain<?>> getDomains() {
-        return new ArrayList<Domain<?>>(this.domains);
+        lock.lock();
+        try {
+            return new ArrayList<Domain<?>>(this.domains);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public boolean isBuilt(Domain<?> domain) {
-        return this.builtSet.contains(domain.getDomainName());
+        lock.lock();
+        try {
+            return this.builtSet.contains(domain.getDomainName());
+        } finally {
+            lock.unlock();
+        }
     }
 }
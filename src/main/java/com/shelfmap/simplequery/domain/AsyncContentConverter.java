@@ -0,0 +1,37 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain;
+
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * A BlobContentConverter which writes the content into the returned stream on a thread of an executor.
+ * <p>
+ * {@link com.shelfmap.simplequery.domain.impl.DefaultBlobReference} passes the I/O executor of the context,
+ * so that the writing threads are shared by all uploads.
+ *
+ * @author Tsutomu YANO
+ */
+public interface AsyncContentConverter<T> extends BlobContentConverter<T> {
+    /**
+     * @param object the object to convert.
+     * @param executor the executor on which the converted content is written into the returned stream.
+     * @return the stream from which the converted content can be read.
+     * @throws BlobOutputException if the conversion could not be started.
+     */
+    InputStream objectToStream(T object, Executor executor) throws BlobOutputException;
+}
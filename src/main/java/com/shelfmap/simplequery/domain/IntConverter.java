@@ -0,0 +1,43 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain;
+
+/**
+ * A converter between a primitive int value and a string of an attribute value of Amazon SimpleDB.
+ * <p>
+ * Unlike {@link AttributeConverter}, this converter never boxes the value, and it writes
+ * the converted string into a passed buffer, so that a caller can reuse the buffer.
+ *
+ * @author Tsutomu YANO
+ */
+public interface IntConverter {
+    /**
+     * append the string representation of the value to the buffer.
+     *
+     * @param value a target value for converting
+     * @param buffer a buffer which the converted string is appended to.
+     */
+    void encode(int value, StringBuilder buffer);
+
+    /**
+     * restore a int value from a string of an attribute value of Amazon SimpleDB.
+     *
+     * @param value a string for restoring a value.
+     * @return a restored value
+     * @throws NumberFormatException if the string is not a number.
+     */
+    int decode(CharSequence value);
+}
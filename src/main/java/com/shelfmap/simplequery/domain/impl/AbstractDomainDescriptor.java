@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain.impl;
+
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.domain.*;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.io.Serializable;
+import java.util.Iterator;
+
+/**
+ * A base class of DomainDescriptors which hold their attributes in an {@link AttributeStore}.
+ * Subclasses must fill the store in their constructors.
+ *
+ * @author Tsutomu YANO
+ */
+public abstract class AbstractDomainDescriptor implements DomainDescriptor, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final AttributeStore attributeStore = new DefaultAttributeStore();
+    private final Domain<?> domain;
+    private final Context context;
+    private String itemNameProperty;
+
+    protected AbstractDomainDescriptor(Context context, Domain<?> domain) {
+        isNotNull("domain", domain);
+        isNotNull("context", context);
+        this.domain = domain;
+        this.context = context;
+    }
+
+    protected AttributeStore getAttributeStore() {
+        return attributeStore;
+    }
+
+    protected void setItemNameProperty(String itemNameProperty) {
+        this.itemNameProperty = itemNameProperty;
+    }
+
+    @Override
+    public boolean isAttributeDefined(String attributeName) {
+        return attributeStore.isAttributeDefined(attributeName);
+    }
+
+    @Override
+    public <VT,CT> DomainAttribute<VT,CT> getAttribute(String attributeName, Class<VT> valueType, Class<CT> containerType) {
+        return attributeStore.getAttribute(attributeName, valueType, containerType);
+    }
+
+    @Override
+    public DomainAttribute<?,?> getAttribute(String attributeName) {
+        return attributeStore.getAttribute(attributeName);
+    }
+
+    @Override
+    public Domain<?> getDomain() {
+        return domain;
+    }
+
+    @Override
+    public Iterator<DomainAttribute<?,?>> iterator() {
+        return attributeStore.values().iterator();
+    }
+
+    @Override
+    public Class<?> getValueType(String attributeName) {
+        return attributeStore.getValueType(attributeName);
+    }
+
+    @Override
+    public Class<?> getContainerType(String attributeName) {
+        return attributeStore.getContainerType(attributeName);
+    }
+
+    @Override
+    public Context getContext() {
+        return context;
+    }
+
+    @Override
+    public DomainAttribute<?, ?> getItemNameAttribute() {
+        return attributeStore.getAttribute(this.itemNameProperty);
+    }
+
+    @Override
+    public String getItemNameFrom(Object object) {
+        return asItemName(getItemNameAttribute(), object);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <VT,CT> String asItemName(DomainAttribute<VT,CT> attribute, Object object) {
+        CT attributeValue = attribute.getAttributeAccessor().read(object);
+        AttributeConverter<VT> converter = attribute.getAttributeConverter();
+
+        //ValueType(VT) and ContainerType(CT) must be a same type;
+        return converter.convertValue((VT)attributeValue);
+    }
+}
@@ -19,8 +19,10 @@ import com.shelfmap.simplequery.Context;
 import com.shelfmap.simplequery.attribute.ConditionAttribute;
 import com.shelfmap.simplequery.domain.*;
 import com.shelfmap.simplequery.expression.*;
+import com.shelfmap.simplequery.expression.impl.InstanceQueryResult;
 import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.referTo;
 import java.io.Serializable;
+import java.util.List;
 
 /**
  *
@@ -34,6 +36,9 @@ public abstract class AbstractReverseDomainReference<M,T> implements DomainRefer
     private final Domain<? extends T> targetDomain;
     private final ConditionAttribute targetAttribute;
 
+    //the targets which have been loaded by EagerReferenceFetcher.
+    private transient volatile Preloaded<T> preloaded;
+
     public AbstractReverseDomainReference(Context context, M masterObject, Domain<? extends T> targetDomain, ConditionAttribute targetAttribute) {
         this.context = context;
         this.masterObject = masterObject;
@@ -50,9 +55,40 @@ public abstract class AbstractReverseDomainReference<M,T> implements DomainRefer
 
     @Override
     public QueryResults<T> getResults(boolean consistent) throws SimpleQueryException {
+        List<T> targets = getPreloaded(consistent);
+        if(targets != null) return new InstanceQueryResult<T>(getContext(), targets);
         return createExpression().getResults(consistent);
     }
 
+    /**
+     * remember the targets which have been loaded by {@link EagerReferenceFetcher},
+     * so that this reference returns them without a query while the item name of the master object is not changed.
+     * Targets which have been read inconsistently are not used for a consistent read.
+     *
+     * @param masterItemName the item name of the master object when the targets are loaded.
+     * @param targets the targets in the order of {@link #createExpression()}.
+     * @param consistent true if the targets have been read consistently.
+     */
+    void preload(String masterItemName, List<T> targets, boolean consistent) {
+        this.preloaded = new Preloaded<T>(masterItemName, targets, consistent);
+    }
+
+    /**
+     * @return the preloaded targets, or null if no target has been preloaded for the current master item name.
+     */
+    protected List<T> getPreloaded(boolean consistent) {
+        Preloaded<T> loaded = this.preloaded;
+        if(loaded == null || (consistent && !loaded.consistent)) return null;
+        return loaded.masterItemName.equals(getMasterItemName()) ? loaded.targets : null;
+    }
+
+    /**
+     * forget the preloaded targets. must be called when the targets of this reference are changed.
+     */
+    protected void clearPreloaded() {
+        this.preloaded = null;
+    }
+
     protected Expression<T> createExpression() {
         return getContext().select().from(getTargetDomain().getDomainClass()).where(getTargetAttribute(), referTo(getMasterItemName())).orderBy(getTargetAttribute(), SortOrder.Asc);
     }
@@ -78,6 +114,21 @@ public abstract class AbstractReverseDomainReference<M,T> implements DomainRefer
         return descriptor.getAttribute(attribute.getAttributeName(), String.class, String.class);
     }
 
+    /**
+     * THIS CLASS IS IMMUTABLE
+     */
+    private static final class Preloaded<T> {
+        final String masterItemName;
+        final List<T> targets;
+        final boolean consistent;
+
+        Preloaded(String masterItemName, List<T> targets, boolean consistent) {
+            this.masterItemName = masterItemName;
+            this.targets = targets;
+            this.consistent = consistent;
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
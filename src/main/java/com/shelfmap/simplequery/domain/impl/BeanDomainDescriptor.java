@@ -19,38 +19,27 @@ import com.shelfmap.simplequery.Context;
 import com.shelfmap.simplequery.annotation.*;
 import com.shelfmap.simplequery.domain.*;
 import com.shelfmap.simplequery.factory.DomainAttributeFactory;
-import static com.shelfmap.simplequery.util.Assertion.isNotNull;
 import com.shelfmap.simplequery.util.Objects;
 import java.beans.BeanInfo;
 import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
-import java.io.Serializable;
 import java.util.Collection;
-import java.util.Iterator;
 
 /**
  *
  * @author Tsutomu YANO
  */
-public class BeanDomainDescriptor implements DomainDescriptor, Serializable {
+public class BeanDomainDescriptor extends AbstractDomainDescriptor {
     private static final long serialVersionUID = 1L;
-    private final AttributeStore attributeStore = new DefaultAttributeStore();
-    private final Domain<?> domain;
     private final String parentPropertyPath;
-    private final Context context;
-    private String itemNameProperty;
 
     public BeanDomainDescriptor(Context context, Domain<?> domain) {
         this(context, domain, null);
     }
 
     public BeanDomainDescriptor(Context context, Domain<?> domain, String parentPropertyPath) {
-        isNotNull("domain", domain);
-        isNotNull("context", context);
-
-        this.domain = domain;
-        this.context = context;
+        super(context, domain);
         this.parentPropertyPath = parentPropertyPath == null ? "" : parentPropertyPath;
         try {
             Class<?> domainClass = domain.getDomainClass();
@@ -104,8 +93,8 @@ public class BeanDomainDescriptor implements DomainDescriptor, Serializable {
 
     private <VT,CT> void handleItemName(Class<?> domainClass, Class<?> originalPropertyType, Class<VT> valueType, Class<CT> containerType, String propertyName) throws IntrospectionException {
         DomainAttribute<VT,CT> itemNameAttribute = createAttribute(domainClass, propertyName, originalPropertyType, valueType, containerType);
-        attributeStore.putAttribute(itemNameAttribute.getAttributeName(), valueType, containerType, itemNameAttribute);
-        this.itemNameProperty = propertyName;
+        getAttributeStore().putAttribute(itemNameAttribute.getAttributeName(), valueType, containerType, itemNameAttribute);
+        setItemNameProperty(propertyName);
     }
 
     private <VT,CT> void handleAttributeWithType(Class<?> domainClass, Class<?> originalPropertyType, Class<VT> valueType, Class<CT> containerType, String propertyName) throws IntrospectionException {
@@ -113,7 +102,7 @@ public class BeanDomainDescriptor implements DomainDescriptor, Serializable {
             buildFlatAttribute(originalPropertyType, propertyName);
         } else {
             DomainAttribute<VT,CT> attribute = createAttribute(domainClass, propertyName, originalPropertyType, valueType, containerType);
-            attributeStore.putAttribute(attribute.getAttributeName(), valueType, containerType, attribute);
+            getAttributeStore().putAttribute(attribute.getAttributeName(), valueType, containerType, attribute);
         }
     }
 
@@ -169,7 +158,7 @@ public class BeanDomainDescriptor implements DomainDescriptor, Serializable {
     }
 
     protected <C> AttributeAccessor<C> newAttributeAccessor(Class<C> type, String propertyPath) {
-        return new PropertyAttributeAccessor<C>(context, propertyPath);
+        return new CompiledAttributeAccessor<C>(getContext(), propertyPath);
     }
 
     @SuppressWarnings("unchecked")
@@ -210,76 +199,16 @@ public class BeanDomainDescriptor implements DomainDescriptor, Serializable {
         copy(this, attributes);
     }
 
-    @SuppressWarnings("AccessingNonPublicFieldOfAnotherObject")
     private void copy(BeanDomainDescriptor dest, BeanDomainDescriptor source) {
-        for (AttributeKey key : source.attributeStore.keySet()) {
-            if(dest.attributeStore.isAttributeDefined(key.getAttributeName())) {
+        for (AttributeKey key : source.getAttributeStore().keySet()) {
+            if(dest.getAttributeStore().isAttributeDefined(key.getAttributeName())) {
                 throw new IllegalArgumentException("The name of the attribute '" + key.getAttributeName() + "' of " + source.getDomain().getDomainClass().getName() + " is duplicated with the parent domainClass '" + dest.getDomain().getDomainClass().getName() + "'.");
             }
             copyAttribute(dest, source, key.getValueType(), key.getContainerType(), key.getAttributeName());
         }
     }
 
-    @SuppressWarnings("AccessingNonPublicFieldOfAnotherObject")
     private <VT,CT> void copyAttribute(BeanDomainDescriptor dest, BeanDomainDescriptor source, Class<VT> valueType, Class<CT> containerType, String attributeName) {
-        dest.attributeStore.putAttribute(attributeName, valueType, containerType, source.getAttribute(attributeName, valueType, containerType));
-    }
-
-    @Override
-    public boolean isAttributeDefined(String attributeName) {
-        return attributeStore.isAttributeDefined(attributeName);
-    }
-
-    @Override
-    public <VT,CT> DomainAttribute<VT,CT> getAttribute(String attributeName, Class<VT> valueType, Class<CT> containerType) {
-        return attributeStore.getAttribute(attributeName, valueType, containerType);
-    }
-
-    @Override
-    public DomainAttribute<?,?> getAttribute(String attributeName) {
-        return attributeStore.getAttribute(attributeName);
-    }
-
-    @Override
-    public Domain<?> getDomain() {
-        return domain;
-    }
-
-    @Override
-    public Iterator<DomainAttribute<?,?>> iterator() {
-        return attributeStore.values().iterator();
-    }
-
-    @Override
-    public Class<?> getValueType(String attributeName) {
-        return attributeStore.getValueType(attributeName);
-    }
-
-    @Override
-    public Class<?> getContainerType(String attributeName) {
-        return attributeStore.getContainerType(attributeName);
-    }
-
-    @Override
-    public Context getContext() {
-        return context;
-    }
-
-    @Override
-    public DomainAttribute<?, ?> getItemNameAttribute() {
-        return attributeStore.getAttribute(this.itemNameProperty);
-    }
-
-    public String getItemNameFrom(Object object) {
-        return asItemName(getItemNameAttribute(), object);
-    }
-
-    @SuppressWarnings("unchecked")
-    private <VT,CT> String asItemName(DomainAttribute<VT,CT> attribute, Object object) {
-        CT attributeValue = attribute.getAttributeAccessor().read(object);
-        AttributeConverter<VT> converter = attribute.getAttributeConverter();
-
-        //ValueType(VT) and ContainerType(CT) must be a same type;
-        return converter.convertValue((VT)attributeValue);
+        dest.getAttributeStore().putAttribute(attributeName, valueType, containerType, source.getAttribute(attributeName, valueType, containerType));
     }
 }
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain.impl;
+
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.DomainInstanceFactory;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import com.shelfmap.simplequery.domain.AttributeAccessor;
+import com.shelfmap.simplequery.domain.Domain;
+import com.shelfmap.simplequery.domain.DomainFactory;
+import static com.shelfmap.simplequery.util.Assertion.isNotEmpty;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import com.shelfmap.simplequery.util.Objects;
+import com.shelfmap.simplequery.util.Strings;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * An implementation of AttributeAccessor which resolves a property-path only once.
+ * <p>
+ * {@link PropertyAttributeAccessor} splits the property-path and introspects
+ * the class of every object on the path on each call. This implementation splits
+ * the path at construction time, and remembers the resolved getter, setter and
+ * constructor of each segment of the path for the class of the last accessed object.
+ * Because a class of an object on a path is almost always same, the resolution
+ * occurs only once per segment in practice.
+ * <p>
+ * The resolved methods are not serializable, so they are transient and
+ * will be resolved again after deserialization.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @param <T> the type of the value of the last property on the path.
+ * @author Tsutomu YANO
+ */
+public class CompiledAttributeAccessor<T> implements AttributeAccessor<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Class<?>[] NO_PARAMETER_TYPES = new Class<?>[0];
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final String propertyPath;
+    private final String[] paths;
+    private final Context context;
+
+    //ResolvedProperty is an immutable object which have only final fields,
+    //so it is safe to share it through this array without any synchronization.
+    //If two threads resolve a same segment at a same time, one of them will be simply overwritten.
+    private transient ResolvedProperty[] resolved;
+
+    public CompiledAttributeAccessor(Context context, String propertyPath) {
+        isNotEmpty("propertyPath", propertyPath);
+        isNotNull("context", context);
+        this.propertyPath = propertyPath;
+        this.paths = propertyPath.split("\\.");
+        this.context = context;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T read(Object instance) {
+        isNotNull("instance", instance);
+        Object target = instance;
+        String path = "";
+        try {
+            for (int i = 0; i < paths.length; i++) {
+                path = paths[i];
+                ResolvedProperty property = resolve(i, target.getClass());
+                if(property == null) return null;
+                target = property.read(target);
+                if(target == null) return null;
+            }
+            return (T) target;
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Could not access to a property of a class for a security reason. propertyName: " + path + ", class: " + target.getClass().getCanonicalName() + ", full property-path: " + propertyPath, ex);
+        } catch (InvocationTargetException ex) {
+            throw new IllegalStateException("An exception has been thrown by accessing a property on the class. propertyName: " + path + ", class: " + target.getClass().getCanonicalName() + ", full property-path: " + propertyPath, ex);
+        }
+    }
+
+    @Override
+    public void write(Object instance, T value) {
+        isNotNull("instance", instance);
+        int last = paths.length - 1;
+        Object target = instance;
+        String path = "";
+        try {
+            for (int i = 0; i < last; i++) {
+                path = paths[i];
+                ResolvedProperty property = resolveExisting(i, target);
+                Object current = target;
+                target = property.read(current);
+
+                //if a property's value is null, we must create a new instance for the property automatically
+                //and put it into the property.
+                if(target == null) {
+                    target = newPropertyValue(property);
+                    property.write(current, target);
+                }
+            }
+            path = paths[last];
+            ResolvedProperty property = resolveExisting(last, target);
+            property.write(target, value);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Could not access to a property of a class for a security reason. propertyName: " + path + ", class: " + target.getClass().getCanonicalName() + ", full property-path: " + propertyPath, ex);
+        } catch (InvocationTargetException ex) {
+            throw new IllegalStateException("An exception has been thrown by accessing a property on the class. propertyName: " + path + ", class: " + target.getClass().getCanonicalName() + ", full property-path: " + propertyPath, ex);
+        }
+    }
+
+    /**
+     * resolve all segments of the property-path by the declared types of the properties
+     * from the root class, so that the first read or write do not need to resolve them.
+     * The resolution stops at the first segment which could not be resolved.
+     *
+     * @param rootClass the class which this accessor will read from or write to.
+     */
+    public void prepare(Class<?> rootClass) {
+        isNotNull("rootClass", rootClass);
+        Class<?> ownerClass = rootClass;
+        for (int i = 0; i < paths.length; i++) {
+            ResolvedProperty property = resolve(i, ownerClass);
+            if(property == null) return;
+            ownerClass = property.propertyType;
+        }
+    }
+
+    private ResolvedProperty resolveExisting(int index, Object target) {
+        ResolvedProperty property = resolve(index, target.getClass());
+        if(property == null) {
+            throw new IllegalArgumentException("the property '" + paths[index] + "' is not found in class = " + target.getClass().getCanonicalName() + ". The full property-path: " + propertyPath, new PropertyNotFoundException());
+        }
+        return property;
+    }
+
+    private ResolvedProperty resolve(int index, Class<?> ownerClass) {
+        ResolvedProperty[] cache = this.resolved;
+        if(cache == null) {
+            cache = new ResolvedProperty[paths.length];
+            this.resolved = cache;
+        }
+
+        ResolvedProperty property = cache[index];
+        if(property == null || property.ownerClass != ownerClass) {
+            property = ResolvedProperty.resolve(ownerClass, paths[index]);
+            if(property == null) return null;
+            cache[index] = property;
+        }
+        return property;
+    }
+
+    private Object newPropertyValue(ResolvedProperty property) throws InvocationTargetException, IllegalAccessException {
+        if(property.domainType) {
+            return newDomainInstance(property.propertyType);
+        }
+
+        Constructor<?> constructor = property.defaultConstructor;
+        if(constructor == null) {
+            throw new IllegalStateException("a property through the passed property-path was null, but the class of the property do not have a default constructor. So we could not create a new instance for the null property. class: " + property.propertyType.getCanonicalName() + ", full property-path: " + propertyPath);
+        }
+        try {
+            return constructor.newInstance(NO_ARGUMENTS);
+        } catch (InstantiationException ex) {
+            throw new IllegalStateException("Could not instanciate an instance for the class: " + property.propertyType.getCanonicalName(), ex);
+        }
+    }
+
+    private <X> X newDomainInstance(Class<X> propertyType) {
+        DomainFactory factory = getContext().getDomainFactory();
+        Domain<X> domain = factory.createDomain(propertyType);
+        DomainInstanceFactory<X> instanceFactory = getContext().getDomainInstanceFactory(domain);
+        return instanceFactory.create();
+    }
+
+    public String getPropertyPath() {
+        return propertyPath;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    /**
+     * the getter, setter and constructor of a property of a class.
+     */
+    static final class ResolvedProperty {
+        final Class<?> ownerClass;
+        final Method readMethod;
+        final Method writeMethod;
+        final Class<?> propertyType;
+        final boolean domainType;
+        final Constructor<?> defaultConstructor;
+
+        private ResolvedProperty(Class<?> ownerClass, Method readMethod, Method writeMethod) {
+            this.ownerClass = ownerClass;
+            this.readMethod = readMethod;
+            this.writeMethod = writeMethod;
+            this.propertyType = readMethod != null ? readMethod.getReturnType() : writeMethod.getParameterTypes()[0];
+            this.domainType = Objects.findAnnotation(propertyType, SimpleDbDomain.class) != null;
+            this.defaultConstructor = findDefaultConstructor(propertyType);
+        }
+
+        Object read(Object target) throws IllegalAccessException, InvocationTargetException {
+            if(readMethod == null) throw new IllegalStateException("the property '" + propertyName() + "' of the class '" + ownerClass.getCanonicalName() + "' does not have a getter method.");
+            return readMethod.invoke(target, NO_ARGUMENTS);
+        }
+
+        void write(Object target, Object value) throws IllegalAccessException, InvocationTargetException {
+            if(writeMethod == null) throw new IllegalStateException("the property '" + propertyName() + "' of the class '" + ownerClass.getCanonicalName() + "' does not have a setter method.");
+            writeMethod.invoke(target, value);
+        }
+
+        private String propertyName() {
+            return (readMethod != null ? readMethod : writeMethod).getName().replaceFirst("^(get|is|set)", "");
+        }
+
+        /**
+         * find the getter and the setter of the property by their names at first,
+         * because it is far cheaper than introspecting the whole class.
+         * If they could not be found by their names, use Introspector for compatibility
+         * with {@link PropertyAttributeAccessor}.
+         */
+        static ResolvedProperty resolve(Class<?> ownerClass, String propertyName) {
+            String capitalized = Strings.capitalize(propertyName);
+            Method readMethod = findMethod(ownerClass, "get" + capitalized);
+            if(readMethod == null) {
+                Method isMethod = findMethod(ownerClass, "is" + capitalized);
+                if(isMethod != null && isMethod.getReturnType() == boolean.class) {
+                    readMethod = isMethod;
+                }
+            }
+
+            if(readMethod != null && readMethod.getReturnType() != void.class) {
+                Method writeMethod = findMethod(ownerClass, "set" + capitalized, readMethod.getReturnType());
+                return new ResolvedProperty(ownerClass, accessible(readMethod), accessible(writeMethod));
+            }
+
+            return introspect(ownerClass, propertyName);
+        }
+
+        private static ResolvedProperty introspect(Class<?> ownerClass, String propertyName) {
+            try {
+                PropertyDescriptor[] descriptors = Introspector.getBeanInfo(ownerClass).getPropertyDescriptors();
+                for (PropertyDescriptor descriptor : descriptors) {
+                    if(descriptor.getName().equals(propertyName)) {
+                        Method readMethod = descriptor.getReadMethod();
+                        Method writeMethod = descriptor.getWriteMethod();
+                        if(readMethod == null && writeMethod == null) return null;
+                        return new ResolvedProperty(ownerClass, accessible(readMethod), accessible(writeMethod));
+                    }
+                }
+                return null;
+            } catch (IntrospectionException ex) {
+                throw new IllegalStateException("Could not introspect a bean. the class of the target bean is: " + ownerClass.getCanonicalName(), ex);
+            }
+        }
+
+        private static Method findMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+            try {
+                return clazz.getMethod(name, parameterTypes);
+            } catch (NoSuchMethodException ex) {
+                return null;
+            }
+        }
+
+        private static Constructor<?> findDefaultConstructor(Class<?> clazz) {
+            try {
+                return clazz.getConstructor(NO_PARAMETER_TYPES);
+            } catch (NoSuchMethodException ex) {
+                return null;
+            } catch (SecurityException ex) {
+                return null;
+            }
+        }
+
+        /**
+         * suppress the access checking of reflection if we can,
+         * because the check costs on every invocation.
+         */
+        private static Method accessible(Method method) {
+            if(method != null) {
+                try {
+                    method.setAccessible(true);
+                } catch (SecurityException ex) {
+                    //the method is still invokable if it is public.
+                }
+            }
+            return method;
+        }
+    }
+}
@@ -15,14 +15,16 @@
  */
 package com.shelfmap.simplequery.domain.impl;
 
-import com.amazonaws.services.simpledb.util.SimpleDBUtils;
 import com.shelfmap.simplequery.domain.AttributeConverter;
 import com.shelfmap.simplequery.expression.CanNotRestoreAttributeException;
+import com.shelfmap.simplequery.util.SimpleDbDates;
 import java.io.Serializable;
 import java.text.ParseException;
 import java.util.Date;
 
 /**
+ * An AttributeConverter for Date, which uses the same format with SimpleDBUtils.
+ * This class is stateless and thread safe.
  *
  * @author Tsutomu YANO
  */
@@ -32,14 +34,14 @@ public class DateAttributeConverter implements AttributeConverter<Date>, Seriali
     @Override
     public String convertValue(Date targetValue) {
         if(targetValue == null) return null;
-        return SimpleDBUtils.encodeDate(targetValue);
+        return SimpleDbDates.encode(targetValue);
     }
 
     @Override
     public Date restoreValue(String targetValue) throws CanNotRestoreAttributeException {
         if(targetValue == null) return null;
         try {
-            return SimpleDBUtils.decodeDate(targetValue);
+            return SimpleDbDates.decode(targetValue);
         } catch (ParseException ex) {
             throw new CanNotRestoreAttributeException(ex, targetValue, Date.class);
         }
@@ -57,6 +57,36 @@ public class DefaultAttributeKey implements AttributeKey, Serializable {
         this.containerTypeRef = containerTypeRef;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final DefaultAttributeKey other = (DefaultAttributeKey) obj;
+        if ((this.attributeName == null) ? (other.attributeName != null) : !this.attributeName.equals(other.attributeName)) {
+            return false;
+        }
+        if (this.valueTypeRef != other.valueTypeRef && (this.valueTypeRef == null || !this.valueTypeRef.equals(other.valueTypeRef))) {
+            return false;
+        }
+        if (this.containerTypeRef != other.containerTypeRef && (this.containerTypeRef == null || !this.containerTypeRef.equals(other.containerTypeRef))) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 47 * hash + (this.attributeName != null ? this.attributeName.hashCode() : 0);
+        hash = 47 * hash + (this.valueTypeRef != null ? this.valueTypeRef.hashCode() : 0);
+        hash = 47 * hash + (this.containerTypeRef != null ? this.containerTypeRef.hashCode() : 0);
+        return hash;
+    }
+
     @Override
     public String toString() {
         return "DefaultAttributeKey{" + "attributeName=" + attributeName + ", valueTypeRef=" + valueTypeRef + ", containerTypeRef=" + containerTypeRef + '}';
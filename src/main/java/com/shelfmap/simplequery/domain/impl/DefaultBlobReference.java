@@ -129,7 +129,10 @@ public class DefaultBlobReference<T> implements BlobReference<T>, Serializable {
 
     @Override
     public Upload setContentAsync(T object, ObjectMetadata metadata) throws BlobOutputException {
-        InputStream source = getContentConverter().objectToStream(object);
+        BlobContentConverter<T> contentConverter = getContentConverter();
+        InputStream source = (contentConverter instanceof AsyncContentConverter)
+                ? ((AsyncContentConverter<T>) contentConverter).objectToStream(object, getContext().getIOExecutor())
+                : contentConverter.objectToStream(object);
         return uploadFrom(source, metadata);
     }
 
@@ -155,8 +158,7 @@ public class DefaultBlobReference<T> implements BlobReference<T>, Serializable {
 
         try {
             PutObjectRequest request = new PutObjectRequest(bucket, key, uploadSource, metadata);
-            AmazonS3 s3 = getContext().getS3();
-            TransferManager transfer = new TransferManager(s3);
+            TransferManager transfer = getContext().getTransferManager();
             this.lastUpload = transfer.upload(request);
             return this.lastUpload;
         } catch (AmazonServiceException ex) {
@@ -22,6 +22,7 @@ import com.shelfmap.simplequery.domain.DomainAttribute;
 import com.shelfmap.simplequery.domain.ReverseToManyDomainReference;
 import com.shelfmap.simplequery.expression.MultipleResultsExistException;
 import com.shelfmap.simplequery.expression.SimpleQueryException;
+import java.util.List;
 
 /**
  *
@@ -36,6 +37,7 @@ public class DefaultReverseToManyDomainReference<M,T> extends AbstractReverseDom
     @Override
     public void add(T... objects) {
         if(objects == null || objects.length == 0) return;
+        clearPreloaded();
 
         DomainAttribute<String,String> targetAttribute = getTargetDomainAttribute(getTargetDomain(), getTargetAttribute());
         for (T target : objects) {
@@ -48,6 +50,11 @@ public class DefaultReverseToManyDomainReference<M,T> extends AbstractReverseDom
 
     @Override
     public T get(boolean consistent) throws SimpleQueryException, MultipleResultsExistException {
+        List<T> targets = getPreloaded(consistent);
+        if(targets != null) {
+            if(targets.size() > 1) throw new MultipleResultsExistException("multiple results exist for the reference to the master item: " + getMasterItemName());
+            return targets.isEmpty() ? null : targets.get(0);
+        }
         return createExpression().getSingleResult(consistent);
     }
 }
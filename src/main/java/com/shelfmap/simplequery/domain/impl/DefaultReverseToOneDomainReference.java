@@ -63,6 +63,7 @@ public class DefaultReverseToOneDomainReference<M,T> extends AbstractReverseDoma
             }
 
             targetAttribute.getAttributeAccessor().write(object, getMasterItemName());
+            clearPreloaded();
 
             //add the target object into context. it will be saved when context#save() is called.
             getContext().putObjects(object);
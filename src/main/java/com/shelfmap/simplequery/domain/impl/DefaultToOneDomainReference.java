@@ -36,6 +36,9 @@ public class DefaultToOneDomainReference<T> implements ToOneDomainReference<T>,
     private final Domain<T> targetDomain;
     private String targetItemName = null;
 
+    //the target which has been loaded by ToOneReferenceLoader.
+    private transient volatile Preloaded<T> preloaded;
+
     public DefaultToOneDomainReference(Context context, Domain<T> targetDomain) {
         this.context = context;
         this.targetDomain = targetDomain;
@@ -48,7 +51,27 @@ public class DefaultToOneDomainReference<T> implements ToOneDomainReference<T>,
 
     @Override
     public T get(boolean consistent) throws SimpleQueryException, MultipleResultsExistException {
-        return getTargetItemName() == null ? null : createExpression().getSingleResult(consistent);
+        String itemName = getTargetItemName();
+        if(itemName == null) return null;
+
+        Preloaded<T> loaded = this.preloaded;
+        if(loaded != null && loaded.itemName.equals(itemName) && (loaded.consistent || !consistent)) {
+            return loaded.target;
+        }
+        return createExpression().getSingleResult(consistent);
+    }
+
+    /**
+     * remember the target which has been loaded by {@link ToOneReferenceLoader},
+     * so that {@link #get(boolean)} returns it without a query while this reference refers to the item.
+     * A target which has been read inconsistently is not used for a consistent get().
+     *
+     * @param itemName the item name of the target.
+     * @param target the target, or null if the target is not found.
+     * @param consistent true if the target has been read consistently.
+     */
+    void preload(String itemName, T target, boolean consistent) {
+        this.preloaded = new Preloaded<T>(itemName, target, consistent);
     }
 
     @Override
@@ -85,6 +108,21 @@ public class DefaultToOneDomainReference<T> implements ToOneDomainReference<T>,
         return descriptor.getItemNameAttribute();
     }
 
+    /**
+     * THIS CLASS IS IMMUTABLE
+     */
+    private static final class Preloaded<T> {
+        final String itemName;
+        final T target;
+        final boolean consistent;
+
+        Preloaded(String itemName, T target, boolean consistent) {
+            this.itemName = itemName;
+            this.target = target;
+            this.consistent = consistent;
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
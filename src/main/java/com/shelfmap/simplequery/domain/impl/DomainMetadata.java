@@ -0,0 +1,460 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain.impl;
+
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The metadata of a domain class, which is written by SimpleQueryProcessor at compile time.
+ * <p>
+ * The metadata of a domain class is stored as a properties file in
+ * {@link #INDEX_DIRECTORY} and named as the binary name of the domain class + {@link #INDEX_SUFFIX}.
+ * It contains all information which {@link BeanDomainDescriptor} collects by introspection,
+ * so {@link IndexedDomainDescriptor} can build the same descriptor without any introspection.
+ * <p>
+ * The metadata also contains the fingerprint of the classes it was built from.
+ * The fingerprint is a hash of the signatures of the methods which the introspection looks up
+ * and of the annotations of simplequery on them. If a class is changed after the metadata
+ * was written (a stale index in a partially rebuilt classpath, for example),
+ * {@link #find(java.lang.Class)} ignores the metadata so that the domain is introspected as usual.
+ * <p>
+ * THIS CLASS IS IMMUTABLE
+ *
+ * @author Tsutomu YANO
+ */
+public final class DomainMetadata {
+    public static final String INDEX_DIRECTORY = "META-INF/simplequery/";
+    public static final String INDEX_SUFFIX = ".properties";
+    public static final String FORMAT_VERSION = "2";
+    public static final String ANNOTATION_PACKAGE = "com.shelfmap.simplequery.annotation";
+
+    public static final String KEY_VERSION = "version";
+    public static final String KEY_FINGERPRINT = "fingerprint";
+    public static final String KEY_FINGERPRINT_CLASSES = "fingerprintClasses";
+    public static final String KEY_ITEM_NAME_PROPERTY = "itemNameProperty";
+    public static final String KEY_ATTRIBUTE_COUNT = "attributeCount";
+    public static final String KEY_ATTRIBUTE_PREFIX = "attribute.";
+    public static final String KEY_NAME = ".name";
+    public static final String KEY_PROPERTY_PATH = ".propertyPath";
+    public static final String KEY_DOMAIN_CLASS = ".domainClass";
+    public static final String KEY_PROPERTY_TYPE = ".propertyType";
+    public static final String KEY_VALUE_TYPE = ".valueType";
+    public static final String KEY_CONTAINER_TYPE = ".containerType";
+    public static final String KEY_CONVERTER = ".converter";
+    public static final String KEY_CONVERTER_CLASS = ".converterClass";
+    public static final String KEY_PADDING = ".padding";
+    public static final String KEY_OFFSET = ".offset";
+    public static final String KEY_MAX_DIGIT_LEFT = ".maxDigitLeft";
+    public static final String KEY_MAX_DIGIT_RIGHT = ".maxDigitRight";
+
+    /**
+     * the way to create an AttributeConverter of an attribute.
+     * These are same with the branches in BeanDomainDescriptor.
+     */
+    public static enum ConverterKind {
+        /** no annotation. the default converter for the value type. */
+        NONE,
+        /** an @Attribute annotation without a converter class. the default converter for the value type. */
+        ATTRIBUTE,
+        /** an @Attribute annotation with a converter class. */
+        CUSTOM,
+        /** an @IntAttribute annotation. */
+        INT,
+        /** a @LongAttribute annotation. */
+        LONG,
+        /** a @FloatAttribute annotation. */
+        FLOAT
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DomainMetadata.class);
+
+    private final String itemNameProperty;
+    private final List<AttributeMetadata> attributes;
+    private final List<String> fingerprintClasses;
+    private final String fingerprint;
+
+    /**
+     * @param itemNameProperty the name of the property annotated with @ItemName, or null.
+     * @param attributes the attributes of the domain.
+     * @param fingerprintClasses the binary names of the root domain class and all flat domain classes.
+     * @param fingerprint the fingerprint of the classes in fingerprintClasses. see {@link #fingerprintOf(java.util.Collection)}.
+     */
+    public DomainMetadata(String itemNameProperty, List<AttributeMetadata> attributes, List<String> fingerprintClasses, String fingerprint) {
+        isNotNull("attributes", attributes);
+        isNotNull("fingerprintClasses", fingerprintClasses);
+        isNotNull("fingerprint", fingerprint);
+        this.itemNameProperty = itemNameProperty;
+        this.attributes = Collections.unmodifiableList(new ArrayList<AttributeMetadata>(attributes));
+        this.fingerprintClasses = Collections.unmodifiableList(new ArrayList<String>(fingerprintClasses));
+        this.fingerprint = fingerprint;
+    }
+
+    public static String indexPathOf(String binaryClassName) {
+        return INDEX_DIRECTORY + binaryClassName + INDEX_SUFFIX;
+    }
+
+    /**
+     * load the metadata of a domain class from the classloader of the domain class.
+     *
+     * @param domainClass a domain class.
+     * @return the metadata of the class, or null if the class does not have its metadata
+     *         or the metadata is not built from the current class.
+     */
+    public static DomainMetadata find(Class<?> domainClass) {
+        isNotNull("domainClass", domainClass);
+        ClassLoader loader = domainClass.getClassLoader();
+        if(loader == null) return null;
+
+        InputStream stream = loader.getResourceAsStream(indexPathOf(domainClass.getName()));
+        if(stream == null) return null;
+        DomainMetadata metadata;
+        try {
+            try {
+                Properties properties = new Properties();
+                properties.load(stream);
+                metadata = fromProperties(properties);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read the metadata index of the class: " + domainClass.getName(), ex);
+        }
+
+        if(metadata != null && !metadata.isBuiltFrom(domainClass)) {
+            LOGGER.warn("The metadata index of the class '" + domainClass.getName() + "' is stale. The class will be introspected.");
+            return null;
+        }
+        return metadata;
+    }
+
+    /**
+     * @return true if the fingerprint of this metadata is same with the fingerprint of the current classes.
+     */
+    public boolean isBuiltFrom(Class<?> domainClass) {
+        isNotNull("domainClass", domainClass);
+        if(fingerprintClasses.isEmpty() || !fingerprintClasses.get(0).equals(domainClass.getName())) return false;
+
+        List<String> signatures = new ArrayList<String>();
+        for (String className : fingerprintClasses) {
+            Class<?> clazz;
+            try {
+                clazz = className.equals(domainClass.getName())
+                        ? domainClass
+                        : Class.forName(className, false, domainClass.getClassLoader());
+            } catch (ClassNotFoundException ex) {
+                return false;
+            }
+            signatures.addAll(signaturesOf(clazz));
+        }
+        return fingerprint.equals(fingerprintOf(signatures));
+    }
+
+    /**
+     * list the signatures of the methods of a class which the introspection looks up.
+     * These are the public instance methods of the class and its superclasses except Object,
+     * or all instance methods declared by an interface.
+     * A signature contains the name, the parameter types, the return type and
+     * the annotations of simplequery with their values.
+     * <p>
+     * SimpleQueryProcessor makes the same signatures from the source of the class.
+     *
+     * @param clazz a domain class.
+     * @return signatures of the methods of the class.
+     */
+    public static List<String> signaturesOf(Class<?> clazz) {
+        List<String> signatures = new ArrayList<String>();
+        Class<?> current = clazz;
+        while(current != null && current != Object.class) {
+            for (Method method : current.getDeclaredMethods()) {
+                int modifiers = method.getModifiers();
+                if(method.isSynthetic() || Modifier.isStatic(modifiers)) continue;
+                if(!clazz.isInterface() && !Modifier.isPublic(modifiers)) continue;
+                signatures.add(signatureOf(current, method));
+            }
+            if(current.isInterface()) break;
+            current = current.getSuperclass();
+        }
+        return signatures;
+    }
+
+    private static String signatureOf(Class<?> declaringClass, Method method) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(declaringClass.getName()).append('#').append(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if(i > 0) sb.append(',');
+            sb.append(parameterTypes[i].getName());
+        }
+        sb.append(')').append(method.getReturnType().getName());
+
+        SortedMap<String, Annotation> annotations = new TreeMap<String, Annotation>();
+        for (Annotation annotation : method.getDeclaredAnnotations()) {
+            Class<? extends Annotation> annotationType = annotation.annotationType();
+            if(annotationType.getName().startsWith(ANNOTATION_PACKAGE + ".")) {
+                annotations.put(annotationType.getName(), annotation);
+            }
+        }
+        for (Map.Entry<String, Annotation> entry : annotations.entrySet()) {
+            SortedMap<String, String> values = new TreeMap<String, String>();
+            for (Method member : entry.getValue().annotationType().getDeclaredMethods()) {
+                Object value;
+                try {
+                    value = member.invoke(entry.getValue());
+                } catch (IllegalAccessException ex) {
+                    throw new IllegalStateException("Could not read the value of an annotation: " + entry.getKey(), ex);
+                } catch (InvocationTargetException ex) {
+                    throw new IllegalStateException("Could not read the value of an annotation: " + entry.getKey(), ex);
+                }
+                values.put(member.getName(), value instanceof Class<?> ? ((Class<?>) value).getName() : String.valueOf(value));
+            }
+            sb.append(annotationSignatureOf(entry.getKey(), values));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param annotationTypeName the binary name of an annotation type.
+     * @param values the values of all members of the annotation, including default values, sorted by the names of the members.
+     * @return the signature of the annotation.
+     */
+    public static String annotationSignatureOf(String annotationTypeName, SortedMap<String, String> values) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('@').append(annotationTypeName).append(values);
+        return sb.toString();
+    }
+
+    /**
+     * @param signatures the signatures of the methods of classes, in any order.
+     * @return the fingerprint of the signatures, which does not depend on the order of them.
+     */
+    public static String fingerprintOf(Collection<String> signatures) {
+        List<String> sorted = new ArrayList<String>(signatures);
+        Collections.sort(sorted);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String signature : sorted) {
+                digest.update(signature.getBytes("UTF-8"));
+                digest.update((byte) '\n');
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not supported on this platform.", ex);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException("UTF-8 is not supported on this platform.", ex);
+        }
+    }
+
+    /**
+     * @return the metadata, or null if the format of the properties is not supported.
+     */
+    public static DomainMetadata fromProperties(Properties properties) {
+        if(!FORMAT_VERSION.equals(properties.getProperty(KEY_VERSION))) return null;
+
+        int count = Integer.parseInt(required(properties, KEY_ATTRIBUTE_COUNT));
+        List<AttributeMetadata> attributes = new ArrayList<AttributeMetadata>(count);
+        for (int i = 0; i < count; i++) {
+            String prefix = KEY_ATTRIBUTE_PREFIX + i;
+            ConverterKind kind = ConverterKind.valueOf(required(properties, prefix + KEY_CONVERTER));
+            attributes.add(new AttributeMetadata(
+                    required(properties, prefix + KEY_NAME),
+                    required(properties, prefix + KEY_PROPERTY_PATH),
+                    properties.getProperty(prefix + KEY_DOMAIN_CLASS),
+                    required(properties, prefix + KEY_PROPERTY_TYPE),
+                    required(properties, prefix + KEY_VALUE_TYPE),
+                    required(properties, prefix + KEY_CONTAINER_TYPE),
+                    kind,
+                    properties.getProperty(prefix + KEY_CONVERTER_CLASS),
+                    Integer.parseInt(properties.getProperty(prefix + KEY_PADDING, "0")),
+                    Long.parseLong(properties.getProperty(prefix + KEY_OFFSET, "0")),
+                    Integer.parseInt(properties.getProperty(prefix + KEY_MAX_DIGIT_LEFT, "0")),
+                    Integer.parseInt(properties.getProperty(prefix + KEY_MAX_DIGIT_RIGHT, "0"))));
+        }
+        List<String> fingerprintClasses = Arrays.asList(required(properties, KEY_FINGERPRINT_CLASSES).split(","));
+        return new DomainMetadata(properties.getProperty(KEY_ITEM_NAME_PROPERTY), attributes, fingerprintClasses, required(properties, KEY_FINGERPRINT));
+    }
+
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_VERSION, FORMAT_VERSION);
+        properties.setProperty(KEY_FINGERPRINT, fingerprint);
+        properties.setProperty(KEY_FINGERPRINT_CLASSES, join(fingerprintClasses));
+        if(itemNameProperty != null) properties.setProperty(KEY_ITEM_NAME_PROPERTY, itemNameProperty);
+        properties.setProperty(KEY_ATTRIBUTE_COUNT, String.valueOf(attributes.size()));
+        for (int i = 0; i < attributes.size(); i++) {
+            String prefix = KEY_ATTRIBUTE_PREFIX + i;
+            AttributeMetadata attribute = attributes.get(i);
+            properties.setProperty(prefix + KEY_NAME, attribute.getAttributeName());
+            properties.setProperty(prefix + KEY_PROPERTY_PATH, attribute.getPropertyPath());
+            if(attribute.getDomainClassName() != null) properties.setProperty(prefix + KEY_DOMAIN_CLASS, attribute.getDomainClassName());
+            properties.setProperty(prefix + KEY_PROPERTY_TYPE, attribute.getPropertyTypeName());
+            properties.setProperty(prefix + KEY_VALUE_TYPE, attribute.getValueTypeName());
+            properties.setProperty(prefix + KEY_CONTAINER_TYPE, attribute.getContainerTypeName());
+            properties.setProperty(prefix + KEY_CONVERTER, attribute.getConverterKind().name());
+            if(attribute.getConverterClassName() != null) properties.setProperty(prefix + KEY_CONVERTER_CLASS, attribute.getConverterClassName());
+            switch(attribute.getConverterKind()) {
+                case INT:
+                case LONG:
+                    properties.setProperty(prefix + KEY_PADDING, String.valueOf(attribute.getPadding()));
+                    properties.setProperty(prefix + KEY_OFFSET, String.valueOf(attribute.getOffset()));
+                    break;
+                case FLOAT:
+                    properties.setProperty(prefix + KEY_MAX_DIGIT_LEFT, String.valueOf(attribute.getMaxDigitLeft()));
+                    properties.setProperty(prefix + KEY_MAX_DIGIT_RIGHT, String.valueOf(attribute.getMaxDigitRight()));
+                    properties.setProperty(prefix + KEY_OFFSET, String.valueOf(attribute.getOffset()));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return properties;
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if(sb.length() > 0) sb.append(',');
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    private static String required(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if(value == null) throw new IllegalStateException("the metadata index is broken. the key '" + key + "' is not found.");
+        return value;
+    }
+
+    public String getItemNameProperty() {
+        return itemNameProperty;
+    }
+
+    public List<AttributeMetadata> getAttributes() {
+        return attributes;
+    }
+
+    public List<String> getFingerprintClasses() {
+        return fingerprintClasses;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * the metadata of an attribute.
+     * All types are held as names which are loadable by {@link com.shelfmap.simplequery.util.Objects#forName(java.lang.String, boolean, java.lang.ClassLoader)}.
+     */
+    public static final class AttributeMetadata {
+        private final String attributeName;
+        private final String propertyPath;
+        private final String domainClassName;
+        private final String propertyTypeName;
+        private final String valueTypeName;
+        private final String containerTypeName;
+        private final ConverterKind converterKind;
+        private final String converterClassName;
+        private final int padding;
+        private final long offset;
+        private final int maxDigitLeft;
+        private final int maxDigitRight;
+
+        public AttributeMetadata(String attributeName, String propertyPath, String domainClassName, String propertyTypeName, String valueTypeName, String containerTypeName, ConverterKind converterKind, String converterClassName, int padding, long offset, int maxDigitLeft, int maxDigitRight) {
+            this.attributeName = attributeName;
+            this.propertyPath = propertyPath;
+            this.domainClassName = domainClassName;
+            this.propertyTypeName = propertyTypeName;
+            this.valueTypeName = valueTypeName;
+            this.containerTypeName = containerTypeName;
+            this.converterKind = converterKind;
+            this.converterClassName = converterClassName;
+            this.padding = padding;
+            this.offset = offset;
+            this.maxDigitLeft = maxDigitLeft;
+            this.maxDigitRight = maxDigitRight;
+        }
+
+        public String getAttributeName() {
+            return attributeName;
+        }
+
+        /**
+         * @return the full property-path from the root domain class.
+         */
+        public String getPropertyPath() {
+            return propertyPath;
+        }
+
+        /**
+         * @return the name of the domain class which declares this attribute,
+         *         or null if the attribute is declared by the root domain class (not by a FlatAttribute).
+         */
+        public String getDomainClassName() {
+            return domainClassName;
+        }
+
+        public String getPropertyTypeName() {
+            return propertyTypeName;
+        }
+
+        public String getValueTypeName() {
+            return valueTypeName;
+        }
+
+        public String getContainerTypeName() {
+            return containerTypeName;
+        }
+
+        public ConverterKind getConverterKind() {
+            return converterKind;
+        }
+
+        public String getConverterClassName() {
+            return converterClassName;
+        }
+
+        public int getPadding() {
+            return padding;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getMaxDigitLeft() {
+            return maxDigitLeft;
+        }
+
+        public int getMaxDigitRight() {
+            return maxDigitRight;
+        }
+    }
+}
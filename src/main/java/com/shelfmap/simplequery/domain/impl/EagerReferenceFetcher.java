@@ -0,0 +1,204 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain.impl;
+
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.domain.Domain;
+import com.shelfmap.simplequery.domain.DomainAttribute;
+import com.shelfmap.simplequery.domain.ToOneDomainReference;
+import com.shelfmap.simplequery.expression.FetchOptions;
+import com.shelfmap.simplequery.expression.QueryResults;
+import com.shelfmap.simplequery.expression.SimpleQueryException;
+import com.shelfmap.simplequery.expression.SortOrder;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.referTo;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the targets of the reference properties of many domain objects at once.
+ * <p>
+ * For each property, the targets of the references of all objects are loaded by
+ * {@code in (...)} queries of at most {@link ToOneReferenceLoader#MAX_CHUNK_SIZE} values
+ * which are sent concurrently, and are handed to each reference.
+ * A {@link ToOneDomainReference} property is loaded by {@link ToOneReferenceLoader}.
+ * A reverse reference property is loaded by querying the target domain for all master item names,
+ * and the targets are grouped by the master item names they refer to.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @param <T> the type of the domain objects which have the reference properties.
+ * @author Tsutomu YANO
+ */
+public class EagerReferenceFetcher<T> {
+    private final Context context;
+    private final List<CompiledAttributeAccessor<Object>> properties;
+
+    /**
+     * @param context the context.
+     * @param propertyNames the names of the reference properties.
+     */
+    public EagerReferenceFetcher(Context context, List<String> propertyNames) {
+        isNotNull("context", context);
+        isNotNull("propertyNames", propertyNames);
+        this.context = context;
+        this.properties = new ArrayList<CompiledAttributeAccessor<Object>>(propertyNames.size());
+        for (String propertyName : propertyNames) {
+            properties.add(new CompiledAttributeAccessor<Object>(context, propertyName));
+        }
+    }
+
+    /**
+     * load the targets of the reference properties of the objects.
+     *
+     * @param objects the domain objects.
+     * @param consistent true if the targets should be read consistently.
+     * @throws SimpleQueryException if any query failed.
+     * @throws IllegalArgumentException if a property is not a reference which is created by this library.
+     */
+    public void fetch(List<? extends T> objects, boolean consistent) throws SimpleQueryException {
+        isNotNull("objects", objects);
+        if(objects.isEmpty()) return;
+
+        for (CompiledAttributeAccessor<Object> property : properties) {
+            List<Object> references = new ArrayList<Object>(objects.size());
+            for (T object : objects) {
+                Object reference = property.read(object);
+                if(reference != null) references.add(reference);
+            }
+            if(references.isEmpty()) continue;
+
+            Object first = references.get(0);
+            if(first instanceof ToOneDomainReference) {
+                fetchToOne(EagerReferenceFetcher.<ToOneDomainReference<?>>castAll(references, ToOneDomainReference.class, property), consistent);
+            } else if(first instanceof AbstractReverseDomainReference) {
+                fetchReverse(EagerReferenceFetcher.<AbstractReverseDomainReference<?,?>>castAll(references, AbstractReverseDomainReference.class, property), consistent);
+            } else {
+                throw new IllegalArgumentException("the property '" + property.getPropertyPath() + "' is not a reference which can be fetched eagerly. class: " + first.getClass().getCanonicalName());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <X> void fetchToOne(List<ToOneDomainReference<?>> wildcardReferences, boolean consistent) throws SimpleQueryException {
+        //all references of a property refer to the same domain.
+        List<ToOneDomainReference<X>> references = (List<ToOneDomainReference<X>>) (List<?>) wildcardReferences;
+        ToOneReferenceLoader<X> loader = new ToOneReferenceLoader<X>(context, references.get(0).getTargetDomain());
+        loader.addAll(references);
+        loader.load(consistent);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <M,X> void fetchReverse(List<AbstractReverseDomainReference<?,?>> wildcardReferences, boolean consistent) throws SimpleQueryException {
+        //all references of a property refer to the same domain from the same master domain.
+        List<AbstractReverseDomainReference<M,X>> references = (List<AbstractReverseDomainReference<M,X>>) (List<?>) wildcardReferences;
+        AbstractReverseDomainReference<M,X> first = references.get(0);
+        Domain<X> targetDomain = first.getTargetDomain();
+
+        Map<String, List<AbstractReverseDomainReference<M,X>>> masters = new LinkedHashMap<String, List<AbstractReverseDomainReference<M,X>>>();
+        for (AbstractReverseDomainReference<M,X> reference : references) {
+            String masterItemName = reference.getMasterItemName();
+            if(masterItemName == null) continue;
+            List<AbstractReverseDomainReference<M,X>> list = masters.get(masterItemName);
+            if(list == null) {
+                list = new ArrayList<AbstractReverseDomainReference<M,X>>(1);
+                masters.put(masterItemName, list);
+            }
+            list.add(reference);
+        }
+        if(masters.isEmpty()) return;
+
+        //send the queries of all chunks at first, and then read the results of them.
+        List<String> masterItemNames = new ArrayList<String>(masters.keySet());
+        int chunkSize = ToOneReferenceLoader.MAX_CHUNK_SIZE;
+        List<Future<QueryResults<X>>> futures = new ArrayList<Future<QueryResults<X>>>();
+        try {
+            for (int from = 0; from < masterItemNames.size(); from += chunkSize) {
+                List<String> chunk = masterItemNames.subList(from, Math.min(from + chunkSize, masterItemNames.size()));
+                futures.add(context.select()
+                                   .from(targetDomain.getDomainClass())
+                                   .where(first.getTargetAttribute(), referTo(chunk.toArray(new String[chunk.size()])))
+                                   .orderBy(first.getTargetAttribute(), SortOrder.Asc)
+                                   .getResultsAsync(consistent, FetchOptions.DEFAULT));
+            }
+
+            DomainAttribute<String,String> referring = first.getTargetDomainAttribute(targetDomain, first.getTargetAttribute());
+            Map<String, List<X>> targets = new HashMap<String, List<X>>(masterItemNames.size() * 2);
+            for (Future<QueryResults<X>> future : futures) {
+                for (X target : resultOf(future, targetDomain)) {
+                    String masterItemName = referring.getAttributeAccessor().read(target);
+                    List<X> list = targets.get(masterItemName);
+                    if(list == null) {
+                        list = new ArrayList<X>();
+                        targets.put(masterItemName, list);
+                    }
+                    list.add(target);
+                }
+            }
+
+            for (Map.Entry<String, List<AbstractReverseDomainReference<M,X>>> entry : masters.entrySet()) {
+                List<X> list = targets.get(entry.getKey());
+                if(list == null) list = new ArrayList<X>(0);
+                for (AbstractReverseDomainReference<M,X> reference : entry.getValue()) {
+                    reference.preload(entry.getKey(), list, consistent);
+                }
+            }
+        } finally {
+            //cancel the rest of the queries if one of them failed.
+            for (Future<QueryResults<X>> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private <X> QueryResults<X> resultOf(Future<QueryResults<X>> future, Domain<X> targetDomain) throws SimpleQueryException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while loading the targets of references to the domain: " + targetDomain, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof SimpleQueryException) throw (SimpleQueryException) cause;
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new SimpleQueryException("could not load the targets of references to the domain: " + targetDomain, cause);
+        }
+    }
+
+    /**
+     * @param referenceClass the class of R. R is the class with wildcards for its type parameters.
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> List<R> castAll(List<Object> references, Class<?> referenceClass, CompiledAttributeAccessor<Object> property) {
+        List<R> result = new ArrayList<R>(references.size());
+        for (Object reference : references) {
+            if(!referenceClass.isInstance(reference)) {
+                throw new IllegalArgumentException("the property '" + property.getPropertyPath() + "' must be a " + referenceClass.getSimpleName() + " in all objects, but was: " + reference.getClass().getCanonicalName());
+            }
+            result.add((R) reference);
+        }
+        return result;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+}
@@ -18,14 +18,19 @@ package com.shelfmap.simplequery.domain.impl;
 import static com.shelfmap.simplequery.util.Assertion.isNotNull;
 import static com.amazonaws.services.simpledb.util.SimpleDBUtils.*;
 import com.shelfmap.simplequery.domain.AttributeConverter;
+import com.shelfmap.simplequery.domain.FloatConverter;
 import com.shelfmap.simplequery.expression.CanNotRestoreAttributeException;
 import java.io.Serializable;
 
 /**
+ * An AttributeConverter for float values.
+ * This class also implements {@link FloatConverter} for converting without boxing.
+ * The string representation of a float is still built by SimpleDBUtils,
+ * because its rounding rules must be kept exactly.
  *
  * @author Tsutomu YANO
  */
-public class FloatAttributeConverter implements AttributeConverter<Float>, Serializable {
+public class FloatAttributeConverter implements AttributeConverter<Float>, FloatConverter, Serializable {
     private static final long serialVersionUID = 1L;
 
     private final int maxDigitLeft;
@@ -41,20 +46,33 @@ public class FloatAttributeConverter implements AttributeConverter<Float>, Seria
     @Override
     public String convertValue(Float targetValue) {
         isNotNull("targetValue", targetValue);
-        String result = "";
+        return encodeToString(targetValue.floatValue());
+    }
+
+    @Override
+    public Float restoreValue(String targetValue)  throws CanNotRestoreAttributeException {
+        isNotNull("targetValue", targetValue);
+        return decode(targetValue);
+    }
+
+    @Override
+    public void encode(float value, StringBuilder buffer) {
+        buffer.append(encodeToString(value));
+    }
+
+    private String encodeToString(float value) {
         if (offset > 0) {
-            result = encodeRealNumberRange(targetValue.floatValue(), maxDigitLeft, maxDigitRight, offset);
+            return encodeRealNumberRange(value, maxDigitLeft, maxDigitRight, offset);
         } else if (maxDigitLeft > 0) {
-            result = encodeZeroPadding(targetValue.floatValue(), maxDigitLeft);
+            return encodeZeroPadding(value, maxDigitLeft);
         } else {
-            result = targetValue.toString();
+            return Float.toString(value);
         }
-        return result;
     }
 
     @Override
-    public Float restoreValue(String targetValue)  throws CanNotRestoreAttributeException {
-        isNotNull("targetValue", targetValue);
+    public float decode(CharSequence value) {
+        String targetValue = value.toString();
         return (offset > 0)
             ? decodeRealNumberRangeFloat(targetValue, maxDigitRight, offset)
             : decodeZeroPaddingFloat(targetValue);
@@ -26,13 +26,13 @@ import java.io.Serializable;
  */
 public class ForwardReferenceAttributeAccessor implements AttributeAccessor<String>, Serializable {
     private static final long serialVersionUID = 1L;
-    private PropertyAttributeAccessor<ForwardReference> propertyAccessor;
+    private CompiledAttributeAccessor<ForwardReference> propertyAccessor;
     private String propertyPath;
 
     public ForwardReferenceAttributeAccessor(Context context, String propertyPath) {
         super();
         this.propertyPath = propertyPath;
-        this.propertyAccessor = new PropertyAttributeAccessor<ForwardReference>(context, propertyPath);
+        this.propertyAccessor = new CompiledAttributeAccessor<ForwardReference>(context, propertyPath);
     }
 
     @Override
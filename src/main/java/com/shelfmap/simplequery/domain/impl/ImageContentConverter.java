@@ -16,14 +16,14 @@
 package com.shelfmap.simplequery.domain.impl;
 
 import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.shelfmap.simplequery.domain.BlobContentConverter;
+import com.shelfmap.simplequery.domain.AsyncContentConverter;
 import com.shelfmap.simplequery.domain.BlobOutputException;
 import com.shelfmap.simplequery.domain.BlobRestoreException;
 import com.shelfmap.simplequery.util.IO;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import javax.imageio.ImageIO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +32,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author Tsutomu YANO
  */
-public class ImageContentConverter implements BlobContentConverter<BufferedImage>, Serializable {
+public class ImageContentConverter implements AsyncContentConverter<BufferedImage>, Serializable {
     private static final long serialVersionUID = 1L;
     private static final Logger LOGGER = LoggerFactory.getLogger(ImageContentConverter.class);
     private static final int BUFFER_SIZE = 1024 * 500; //1K * 500 = 500K
@@ -60,20 +60,38 @@ public class ImageContentConverter implements BlobContentConverter<BufferedImage
         }
     }
 
+    /**
+     * without an executor, the image is encoded in memory.
+     * {@link com.shelfmap.simplequery.domain.impl.DefaultBlobReference} calls
+     * {@link #objectToStream(java.awt.image.BufferedImage, java.util.concurrent.Executor)} with the I/O executor of the context instead.
+     */
     @Override
-    public InputStream objectToStream(final BufferedImage object) throws BlobOutputException {
+    public InputStream objectToStream(BufferedImage object) throws BlobOutputException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(object, formatOf(), output);
+        } catch (IOException ex) {
+            throw new BlobOutputException("Could not write the image.", ex);
+        }
+        return new ByteArrayInputStream(output.toByteArray());
+    }
+
+    @Override
+    public InputStream objectToStream(BufferedImage object, Executor executor) throws BlobOutputException {
         Object bufferSizeValue = conversionInfo.get(BUFFER_SIZE_KEY);
         int bufferSize = (bufferSizeValue instanceof Integer) ? ((Integer)bufferSizeValue).intValue() : BUFFER_SIZE;
 
-        Object formatValue = conversionInfo.get(IMAGE_FORMAT_KEY);
-        String format = (formatValue instanceof String) ? (String)formatValue : "jpeg";
-
         PipedInputStream stream = new PipedInputStream(bufferSize);
-        Executors.newSingleThreadExecutor().execute(new ImageWriter(stream, object, format));
+        executor.execute(new ImageWriter(stream, object, formatOf()));
 
         return stream;
     }
 
+    private String formatOf() {
+        Object formatValue = conversionInfo.get(IMAGE_FORMAT_KEY);
+        return (formatValue instanceof String) ? (String)formatValue : "jpeg";
+    }
+
     private static class ImageWriter implements Runnable {
         private PipedInputStream stream;
         private BufferedImage image;
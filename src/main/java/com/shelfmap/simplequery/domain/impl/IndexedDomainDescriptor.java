@@ -0,0 +1,115 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain.impl;
+
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.domain.*;
+import com.shelfmap.simplequery.domain.impl.DomainMetadata.AttributeMetadata;
+import com.shelfmap.simplequery.factory.DomainAttributeFactory;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import com.shelfmap.simplequery.util.Objects;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A DomainDescriptor which is built from the {@link DomainMetadata} written at compile time.
+ * <p>
+ * This descriptor holds the same attributes with {@link BeanDomainDescriptor}
+ * for the same domain class, but it does not introspect the domain class.
+ *
+ * @author Tsutomu YANO
+ */
+public class IndexedDomainDescriptor extends AbstractDomainDescriptor {
+    private static final long serialVersionUID = 1L;
+
+    public IndexedDomainDescriptor(Context context, Domain<?> domain, DomainMetadata metadata) {
+        super(context, domain);
+        isNotNull("metadata", metadata);
+
+        ClassLoader loader = domain.getDomainClass().getClassLoader();
+        DomainAttributeFactory factory = context.getDomainAttributeFactory();
+        Map<String, Domain<?>> flatDomains = new HashMap<String, Domain<?>>();
+        for (AttributeMetadata attribute : metadata.getAttributes()) {
+            Domain<?> attributeDomain = domain;
+            String domainClassName = attribute.getDomainClassName();
+            if(domainClassName != null) {
+                attributeDomain = flatDomains.get(domainClassName);
+                if(attributeDomain == null) {
+                    attributeDomain = context.getDomainFactory().createDomain(load(domainClassName, loader));
+                    flatDomains.put(domainClassName, attributeDomain);
+                }
+            }
+
+            addAttribute(factory, attributeDomain, attribute,
+                         load(attribute.getPropertyTypeName(), loader),
+                         load(attribute.getValueTypeName(), loader),
+                         load(attribute.getContainerTypeName(), loader),
+                         loader);
+        }
+        setItemNameProperty(metadata.getItemNameProperty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <VT,CT> void addAttribute(DomainAttributeFactory factory, Domain<?> attributeDomain, AttributeMetadata attribute, Class<?> propertyType, Class<VT> valueType, Class<CT> containerType, ClassLoader loader) {
+        String attributeName = attribute.getAttributeName();
+        AttributeAccessor<CT> accessor = factory.createAttributeAccessor(propertyType, containerType, attribute.getPropertyPath());
+
+        DomainAttribute<VT,CT> result;
+        switch(attribute.getConverterKind()) {
+            case FLOAT:
+                result = factory.createAttribute(attributeDomain, attributeName, valueType, containerType,
+                        (AttributeConverter<VT>) factory.createFloatAttributeConverter(attribute.getMaxDigitLeft(), attribute.getMaxDigitRight(), (int) attribute.getOffset()), accessor);
+                break;
+            case INT:
+                result = factory.createAttribute(attributeDomain, attributeName, valueType, containerType,
+                        (AttributeConverter<VT>) factory.createIntAttributeConverter(attribute.getPadding(), (int) attribute.getOffset()), accessor);
+                break;
+            case LONG:
+                result = factory.createAttribute(attributeDomain, attributeName, valueType, containerType,
+                        (AttributeConverter<VT>) factory.createLongAttributeConverter(attribute.getPadding(), attribute.getOffset()), accessor);
+                break;
+            case ATTRIBUTE:
+                result = factory.createAttribute(attributeDomain, attributeName, valueType, containerType, factory.createAttributeConverter(valueType), accessor);
+                break;
+            case CUSTOM:
+                result = factory.createAttribute(attributeDomain, attributeName, valueType, containerType, (AttributeConverter<VT>) newConverter(attribute.getConverterClassName(), loader), accessor);
+                break;
+            default:
+                result = new DefaultDomainAttribute<VT,CT>(attributeDomain, attributeName, valueType, containerType, factory.createAttributeConverter(valueType), accessor);
+                break;
+        }
+        getAttributeStore().putAttribute(attributeName, valueType, containerType, result);
+    }
+
+    private AttributeConverter<?> newConverter(String className, ClassLoader loader) {
+        try {
+            return (AttributeConverter<?>) load(className, loader).newInstance();
+        } catch (InstantiationException ex) {
+            throw new IllegalArgumentException("Can not instanciate a converter. possible cause is that the converter class specified in @Attribute do not have a default constructor.", ex);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Can not instanciate a converter, because we could not be able to access the default constructor of the converter class specified in a @Attribute annotation.", ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <X> Class<X> load(String className, ClassLoader loader) {
+        try {
+            return (Class<X>) Objects.forName(className, false, loader);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException("the metadata index is broken. the class '" + className + "' is not found.", ex);
+        }
+    }
+}
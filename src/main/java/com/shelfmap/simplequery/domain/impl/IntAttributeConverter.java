@@ -15,17 +15,21 @@
  */
 package com.shelfmap.simplequery.domain.impl;
 
-import static com.amazonaws.services.simpledb.util.SimpleDBUtils.*;
+import static com.shelfmap.simplequery.domain.impl.PrimitiveConverters.*;
 import static com.shelfmap.simplequery.util.Assertion.isNotNull;
 import com.shelfmap.simplequery.domain.AttributeConverter;
+import com.shelfmap.simplequery.domain.IntConverter;
 import com.shelfmap.simplequery.expression.CanNotRestoreAttributeException;
 import java.io.Serializable;
 
 /**
+ * An AttributeConverter for int values.
+ * The encoding is same with encodeRealNumberRange and encodeZeroPadding of SimpleDBUtils,
+ * and this class also implements {@link IntConverter} for converting without boxing.
  *
  * @author Tsutomu YANO
  */
-public class IntAttributeConverter implements AttributeConverter<Integer>, Serializable {
+public class IntAttributeConverter implements AttributeConverter<Integer>, IntConverter, Serializable {
     private static final long serialVersionUID = 1L;
     private final int maxNumberOfDigits;
     private final int offset;
@@ -38,22 +42,34 @@ public class IntAttributeConverter implements AttributeConverter<Integer>, Seria
     @Override
     public String convertValue(Integer targetValue) {
         isNotNull("targetValue", targetValue);
-        String result = "";
+        StringBuilder buffer = new StringBuilder(Math.max(maxNumberOfDigits, 11));
+        encode(targetValue.intValue(), buffer);
+        return buffer.toString();
+    }
+
+    @Override
+    public Integer restoreValue(String targetValue)  throws CanNotRestoreAttributeException {
+        isNotNull("targetValue", targetValue);
+        return decode(targetValue);
+    }
+
+    @Override
+    public void encode(int value, StringBuilder buffer) {
         if (offset > 0) {
-            result = encodeRealNumberRange(targetValue, maxNumberOfDigits, offset);
+            //the addition overflows in int as SimpleDBUtils does.
+            long offsetNumber = value + offset;
+            appendZeroPadded(offsetNumber, maxNumberOfDigits, buffer);
         } else if (maxNumberOfDigits > 0) {
-            result = encodeZeroPadding(targetValue, maxNumberOfDigits);
+            appendZeroPadded(value, maxNumberOfDigits, buffer);
         } else {
-            result = targetValue.toString();
+            buffer.append(value);
         }
-        return result;
     }
 
     @Override
-    public Integer restoreValue(String targetValue)  throws CanNotRestoreAttributeException {
-        isNotNull("targetValue", targetValue);
+    public int decode(CharSequence value) {
         return (offset > 0)
-            ? decodeRealNumberRangeInt(targetValue, offset)
-            : decodeZeroPaddingInt(targetValue);
+            ? (int) (parseLong(value) - offset)
+            : parseInt(value);
     }
 }
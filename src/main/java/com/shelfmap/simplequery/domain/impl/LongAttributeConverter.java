@@ -16,16 +16,20 @@
 package com.shelfmap.simplequery.domain.impl;
 
 import static com.shelfmap.simplequery.util.Assertion.isNotNull;
-import static com.amazonaws.services.simpledb.util.SimpleDBUtils.*;
+import static com.shelfmap.simplequery.domain.impl.PrimitiveConverters.*;
 import com.shelfmap.simplequery.domain.AttributeConverter;
+import com.shelfmap.simplequery.domain.LongConverter;
 import com.shelfmap.simplequery.expression.CanNotRestoreAttributeException;
 import java.io.Serializable;
 
 /**
+ * An AttributeConverter for long values.
+ * The encoding is same with encodeRealNumberRange and encodeZeroPadding of SimpleDBUtils,
+ * and this class also implements {@link LongConverter} for converting without boxing.
  *
  * @author Tsutomu YANO
  */
-public class LongAttributeConverter implements AttributeConverter<Long>, Serializable {
+public class LongAttributeConverter implements AttributeConverter<Long>, LongConverter, Serializable {
     private static final long serialVersionUID = 1L;
     private final int maxNumberOfDigits;
     private final long offset;
@@ -38,22 +42,32 @@ public class LongAttributeConverter implements AttributeConverter<Long>, Seriali
     @Override
     public String convertValue(Long targetValue) {
         isNotNull("targetValue", targetValue);
-        String result = "";
+        StringBuilder buffer = new StringBuilder(Math.max(maxNumberOfDigits, 20));
+        encode(targetValue.longValue(), buffer);
+        return buffer.toString();
+    }
+
+    @Override
+    public Long restoreValue(String targetValue) throws CanNotRestoreAttributeException {
+        isNotNull("targetValue", targetValue);
+        return decode(targetValue);
+    }
+
+    @Override
+    public void encode(long value, StringBuilder buffer) {
         if (offset > 0) {
-            result = encodeRealNumberRange(targetValue, maxNumberOfDigits, offset);
+            appendZeroPadded(value + offset, maxNumberOfDigits, buffer);
         } else if (maxNumberOfDigits > 0) {
-            result = encodeZeroPadding(targetValue, maxNumberOfDigits);
+            appendZeroPadded(value, maxNumberOfDigits, buffer);
         } else {
-            result = targetValue.toString();
+            buffer.append(value);
         }
-        return result;
     }
 
     @Override
-    public Long restoreValue(String targetValue) throws CanNotRestoreAttributeException {
-        isNotNull("targetValue", targetValue);
+    public long decode(CharSequence value) {
         return (offset > 0)
-                ? decodeRealNumberRangeLong(targetValue, offset)
-                : decodeZeroPaddingLong(targetValue);
+                ? parseLong(value) - offset
+                : parseLong(value);
     }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain.impl;
+
+import com.shelfmap.simplequery.domain.AttributeConverter;
+import com.shelfmap.simplequery.domain.FloatConverter;
+import com.shelfmap.simplequery.domain.IntConverter;
+import com.shelfmap.simplequery.domain.LongConverter;
+import com.shelfmap.simplequery.expression.CanNotRestoreAttributeException;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+
+/**
+ * Utility methods for {@link IntConverter}, {@link LongConverter} and {@link FloatConverter}.
+ * <p>
+ * The encoding methods produce exactly the same strings with SimpleDBUtils of AWS SDK,
+ * but they write the strings directly into a buffer without any intermediate String.
+ *
+ * @author Tsutomu YANO
+ */
+public final class PrimitiveConverters {
+    private PrimitiveConverters() {
+    }
+
+    /**
+     * append the value to the buffer with leading zeros, so that the length of the appended
+     * string becomes the passed width. The minus sign is counted as a digit.
+     */
+    public static void appendZeroPadded(long value, int width, StringBuilder buffer) {
+        for (int i = lengthOf(value); i < width; i++) {
+            buffer.append('0');
+        }
+        buffer.append(value);
+    }
+
+    /**
+     * @return the length of the decimal string representation of the value.
+     */
+    static int lengthOf(long value) {
+        if(value == Long.MIN_VALUE) return 20;
+        int length = 1;
+        if(value < 0) {
+            length++;
+            value = -value;
+        }
+        while(value >= 10) {
+            value /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * parse a decimal number in the same way with {@link Long#parseLong(java.lang.String)},
+     * but from a CharSequence.
+     */
+    public static long parseLong(CharSequence value) {
+        isNotNull("value", value);
+        if(value instanceof String) return Long.parseLong((String) value);
+
+        int length = value.length();
+        if(length == 0) throw numberFormatException(value);
+
+        boolean negative = false;
+        int index = 0;
+        long limit = -Long.MAX_VALUE;
+        char first = value.charAt(0);
+        if(first == '-' || first == '+') {
+            if(length == 1) throw numberFormatException(value);
+            if(first == '-') {
+                negative = true;
+                limit = Long.MIN_VALUE;
+            }
+            index++;
+        }
+
+        //accumulate the value as a negative number, because the range of negative numbers is wider.
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        while(index < length) {
+            int digit = Character.digit(value.charAt(index++), 10);
+            if(digit < 0 || result < multiplyLimit) throw numberFormatException(value);
+            result *= 10;
+            if(result < limit + digit) throw numberFormatException(value);
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * parse a decimal number in the same way with {@link Integer#parseInt(java.lang.String)},
+     * but from a CharSequence.
+     */
+    public static int parseInt(CharSequence value) {
+        isNotNull("value", value);
+        if(value instanceof String) return Integer.parseInt((String) value);
+
+        long result = parseLong(value);
+        if(result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) throw numberFormatException(value);
+        return (int) result;
+    }
+
+    private static NumberFormatException numberFormatException(CharSequence value) {
+        return new NumberFormatException("For input string: \"" + value + "\"");
+    }
+
+    /**
+     * @return the converter itself if it is an IntConverter, or an IntConverter which delegates to the converter.
+     */
+    public static IntConverter asIntConverter(final AttributeConverter<Integer> converter) {
+        isNotNull("converter", converter);
+        if(converter instanceof IntConverter) return (IntConverter) converter;
+        return new IntConverter() {
+            @Override
+            public void encode(int value, StringBuilder buffer) {
+                buffer.append(converter.convertValue(value));
+            }
+
+            @Override
+            public int decode(CharSequence value) {
+                return restore(converter, value);
+            }
+        };
+    }
+
+    /**
+     * @return the converter itself if it is a LongConverter, or a LongConverter which delegates to the converter.
+     */
+    public static LongConverter asLongConverter(final AttributeConverter<Long> converter) {
+        isNotNull("converter", converter);
+        if(converter instanceof LongConverter) return (LongConverter) converter;
+        return new LongConverter() {
+            @Override
+            public void encode(long value, StringBuilder buffer) {
+                buffer.append(converter.convertValue(value));
+            }
+
+            @Override
+            public long decode(CharSequence value) {
+                return restore(converter, value);
+            }
+        };
+    }
+
+    /**
+     * @return the converter itself if it is a FloatConverter, or a FloatConverter which delegates to the converter.
+     */
+    public static FloatConverter asFloatConverter(final AttributeConverter<Float> converter) {
+        isNotNull("converter", converter);
+        if(converter instanceof FloatConverter) return (FloatConverter) converter;
+        return new FloatConverter() {
+            @Override
+            public void encode(float value, StringBuilder buffer) {
+                buffer.append(converter.convertValue(value));
+            }
+
+            @Override
+            public float decode(CharSequence value) {
+                return restore(converter, value);
+            }
+        };
+    }
+
+    private static <T> T restore(AttributeConverter<T> converter, CharSequence value) {
+        try {
+            T result = converter.restoreValue(value.toString());
+            if(result == null) throw numberFormatException(value);
+            return result;
+        } catch (CanNotRestoreAttributeException ex) {
+            NumberFormatException exception = numberFormatException(value);
+            exception.initCause(ex);
+            throw exception;
+        }
+    }
+}
@@ -16,10 +16,12 @@
 package com.shelfmap.simplequery.domain.impl;
 
 import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.shelfmap.simplequery.domain.BlobContentConverter;
+import com.shelfmap.simplequery.domain.AsyncContentConverter;
 import com.shelfmap.simplequery.domain.BlobOutputException;
 import com.shelfmap.simplequery.domain.BlobRestoreException;
 import com.shelfmap.simplequery.util.IO;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -28,7 +30,7 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.Serializable;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,7 +38,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author Tsutomu YANO
  */
-public class StringContentConverter implements BlobContentConverter<String>, Serializable {
+public class StringContentConverter implements AsyncContentConverter<String>, Serializable {
     private static final long serialVersionUID = 1L;
     private static final Logger LOGGER = LoggerFactory.getLogger(StringContentConverter.class);
     private static final int BUFFER_SIZE = 1024 * 1000; //1K * 1000 = 1M
@@ -63,12 +65,30 @@ public class StringContentConverter implements BlobContentConverter<String>, Ser
         return result;
     }
 
+    /**
+     * without an executor, the string is encoded in memory.
+     * {@link com.shelfmap.simplequery.domain.impl.DefaultBlobReference} calls
+     * {@link #objectToStream(java.lang.String, java.util.concurrent.Executor)} with the I/O executor of the context instead.
+     */
     @Override
     public InputStream objectToStream(String object) throws BlobOutputException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DataOutputStream dataOutput = new DataOutputStream(output);
+        try {
+            dataOutput.writeUTF(object);
+            dataOutput.flush();
+        } catch (IOException ex) {
+            throw new BlobOutputException("Could not write the string.", ex);
+        }
+        return new ByteArrayInputStream(output.toByteArray());
+    }
+
+    @Override
+    public InputStream objectToStream(String object, Executor executor) throws BlobOutputException {
         Object bufferSizeValue = conversionInfo.get(BUFFER_SIZE_KEY);
         int bufferSize = (bufferSizeValue instanceof Integer) ? ((Integer)bufferSizeValue).intValue() : BUFFER_SIZE;
         PipedInputStream stream = new PipedInputStream(bufferSize);
-        Executors.newSingleThreadExecutor().execute(new StringWriter(stream, object));
+        executor.execute(new StringWriter(stream, object));
 
         return stream;
     }
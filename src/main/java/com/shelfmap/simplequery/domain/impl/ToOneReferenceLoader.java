@@ -0,0 +1,188 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain.impl;
+
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.domain.Domain;
+import com.shelfmap.simplequery.domain.DomainDescriptor;
+import com.shelfmap.simplequery.domain.ToOneDomainReference;
+import com.shelfmap.simplequery.expression.FetchOptions;
+import com.shelfmap.simplequery.expression.QueryResults;
+import com.shelfmap.simplequery.expression.SimpleQueryException;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.in;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the targets of many {@link ToOneDomainReference}s by a few queries.
+ * <p>
+ * Calling {@link ToOneDomainReference#get(boolean)} of each reference sends a query for each reference.
+ * This loader collects the target item names of references by {@link #add(ToOneDomainReference)},
+ * and {@link #load(boolean)} loads all of them by {@code itemName() in (...)} queries.
+ * An IN clause of SimpleDB accepts at most 20 values, so the item names are split
+ * into chunks and the queries of all chunks are sent concurrently.
+ * <p>
+ * The loaded targets are handed to each {@link DefaultToOneDomainReference}, so that its get() returns
+ * the loaded target without sending a query. A reference of other classes is not changed,
+ * but its target is contained in the map which {@link #load(boolean)} returns.
+ * <p>
+ * <b>this class is NOT THREAD SAFE</b>
+ *
+ * @param <T> the type of the targets of the references.
+ * @author Tsutomu YANO
+ */
+public class ToOneReferenceLoader<T> {
+    /**
+     * the maximum number of values in an IN clause of SimpleDB.
+     */
+    public static final int MAX_CHUNK_SIZE = 20;
+
+    private final Context context;
+    private final Domain<T> targetDomain;
+    private final int chunkSize;
+    private final Map<String, List<ToOneDomainReference<T>>> pending = new LinkedHashMap<String, List<ToOneDomainReference<T>>>();
+
+    public ToOneReferenceLoader(Context context, Domain<T> targetDomain) {
+        this(context, targetDomain, MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * @param context the context.
+     * @param targetDomain the domain of the targets of the references.
+     * @param chunkSize the number of item names which are queried by one query. must be between 1 and {@link #MAX_CHUNK_SIZE}.
+     */
+    public ToOneReferenceLoader(Context context, Domain<T> targetDomain, int chunkSize) {
+        isNotNull("context", context);
+        isNotNull("targetDomain", targetDomain);
+        if(chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) throw new IllegalArgumentException("chunkSize must be between 1 and " + MAX_CHUNK_SIZE + ": " + chunkSize);
+        this.context = context;
+        this.targetDomain = targetDomain;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * add a reference whose target should be loaded. a reference which does not refer to any item is ignored.
+     *
+     * @param reference the reference.
+     * @throws IllegalArgumentException if the target domain of the reference is not the target domain of this loader.
+     */
+    public void add(ToOneDomainReference<T> reference) {
+        isNotNull("reference", reference);
+        if(!targetDomain.equals(reference.getTargetDomain())) {
+            throw new IllegalArgumentException("the target domain of the reference must be " + targetDomain + ", but was " + reference.getTargetDomain());
+        }
+        String itemName = reference.getTargetItemName();
+        if(itemName == null) return;
+
+        List<ToOneDomainReference<T>> references = pending.get(itemName);
+        if(references == null) {
+            references = new ArrayList<ToOneDomainReference<T>>(1);
+            pending.put(itemName, references);
+        }
+        references.add(reference);
+    }
+
+    public void addAll(Iterable<? extends ToOneDomainReference<T>> references) {
+        isNotNull("references", references);
+        for (ToOneDomainReference<T> reference : references) {
+            add(reference);
+        }
+    }
+
+    /**
+     * @return the number of the distinct item names which will be loaded by the next {@link #load(boolean)}.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * load the targets of all added references, and hand them to the references.
+     * the added references are cleared, so this loader can be used again.
+     *
+     * @param consistent true if the targets should be read consistently.
+     * @return the loaded targets keyed by their item names. an item name which is not found in SimpleDB is not contained.
+     * @throws SimpleQueryException if any query failed.
+     */
+    public Map<String,T> load(boolean consistent) throws SimpleQueryException {
+        List<String> itemNames = new ArrayList<String>(pending.keySet());
+        Map<String, List<ToOneDomainReference<T>>> references = new HashMap<String, List<ToOneDomainReference<T>>>(pending);
+        pending.clear();
+
+        //send the queries of all chunks at first, and then read the results of them.
+        List<Future<QueryResults<T>>> futures = new ArrayList<Future<QueryResults<T>>>();
+        try {
+            for (int from = 0; from < itemNames.size(); from += chunkSize) {
+                List<String> chunk = itemNames.subList(from, Math.min(from + chunkSize, itemNames.size()));
+                futures.add(context.select()
+                                   .from(targetDomain.getDomainClass())
+                                   .whereItemName(in(chunk.toArray(new String[chunk.size()])))
+                                   .getResultsAsync(consistent, FetchOptions.DEFAULT));
+            }
+
+            DomainDescriptor descriptor = context.getDomainDescriptorFactory().create(targetDomain);
+            Map<String,T> loaded = new HashMap<String,T>(itemNames.size() * 2);
+            for (Future<QueryResults<T>> future : futures) {
+                for (T target : resultOf(future)) {
+                    loaded.put(descriptor.getItemNameFrom(target), target);
+                }
+            }
+
+            for (Map.Entry<String, List<ToOneDomainReference<T>>> entry : references.entrySet()) {
+                T target = loaded.get(entry.getKey());
+                for (ToOneDomainReference<T> reference : entry.getValue()) {
+                    if(reference instanceof DefaultToOneDomainReference) {
+                        ((DefaultToOneDomainReference<T>) reference).preload(entry.getKey(), target, consistent);
+                    }
+                }
+            }
+            return loaded;
+        } finally {
+            //cancel the rest of the queries if one of them failed.
+            for (Future<QueryResults<T>> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private QueryResults<T> resultOf(Future<QueryResults<T>> future) throws SimpleQueryException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while loading the targets of references to the domain: " + targetDomain, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof SimpleQueryException) throw (SimpleQueryException) cause;
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new SimpleQueryException("could not load the targets of references to the domain: " + targetDomain, cause);
+        }
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    public Domain<T> getTargetDomain() {
+        return targetDomain;
+    }
+}
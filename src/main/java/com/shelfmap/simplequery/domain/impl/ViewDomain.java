@@ -0,0 +1,79 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain.impl;
+
+import com.shelfmap.simplequery.ClassReference;
+import com.shelfmap.simplequery.SimpleClassReference;
+import com.shelfmap.simplequery.domain.Domain;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+
+/**
+ * A domain for a view class of a projection query.
+ * The domain name is same with the domain name of the projected domain,
+ * but the domain class is the view class, which do not need to have a @SimpleDbDomain annotation.
+ *
+ * @param <V> the type of the view-class.
+ * @author Tsutomu YANO
+ */
+public class ViewDomain<V> implements Domain<V> {
+    private static final long serialVersionUID = 1L;
+
+    private final ClassReference viewClassRef;
+    private final String domainName;
+
+    public ViewDomain(Domain<?> sourceDomain, Class<V> viewClass) {
+        isNotNull("sourceDomain", sourceDomain);
+        isNotNull("viewClass", viewClass);
+        this.domainName = sourceDomain.getDomainName();
+        this.viewClassRef = new SimpleClassReference(viewClass);
+    }
+
+    @Override
+    public String getDomainName() {
+        return this.domainName;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Class<V> getDomainClass() {
+        return (Class<V>) viewClassRef.get();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final ViewDomain<?> other = (ViewDomain<?>) obj;
+        return this.viewClassRef.equals(other.viewClassRef) && this.domainName.equals(other.domainName);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 59 * hash + this.viewClassRef.hashCode();
+        hash = 59 * hash + this.domainName.hashCode();
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ViewDomain{" + "viewClassRef=" + viewClassRef + ", domainName=" + domainName + '}';
+    }
+}
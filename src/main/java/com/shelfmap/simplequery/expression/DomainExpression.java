@@ -33,6 +33,13 @@ public interface DomainExpression<T> extends Expression<T>{
     WhereExpression<T> where(ConditionAttribute attribute, Matcher<?> matcher);
     OrderByExpression<T> orderBy(ConditionAttribute attribute, SortOrder sortOrder);
     LimitExpression<T> limit(int limitCount);
+    /**
+     * @param pageIndex the index of the page from 0.
+     * @param pageSize the number of the items in a page.
+     * @return an expression whose results are the items of the page.
+     * @see LimitExpression#offset(int)
+     */
+    LimitExpression<T> page(int pageIndex, int pageSize);
     DomainExpression<T> rebuildWith(SelectQuery select);
 
     @Override
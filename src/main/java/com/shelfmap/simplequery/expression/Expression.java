@@ -18,6 +18,8 @@ package com.shelfmap.simplequery.expression;
 
 import com.shelfmap.simplequery.Context;
 import com.shelfmap.simplequery.attribute.SelectAttribute;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 /**
  * The base interface which all expressions depend on.
@@ -48,8 +50,106 @@ public interface Expression<T> extends Describable {
      *         The result of getCause() is the original exception object that explain about the reason of error occured.
      */
     QueryResults<T> getResults(boolean consistent) throws SimpleQueryException;
+
+    /**
+     * You can get the result of this expression with options of fetching.
+     *
+     * @param options options of fetching the results.
+     * @return An QueryResults object which contains all records returned by this expression.
+     * @throws SimpleQueryException something bad occurs.
+     * @throws IllegalArgumentException if the options are segmented while this expression has an offset.
+     * @see FetchOptions
+     */
+    QueryResults<T> getResults(boolean consistent, FetchOptions options) throws SimpleQueryException;
+
+    /**
+     * send the request of {@link #getSingleResult(boolean)} asynchronously by the asynchronous client of the context.
+     * The remote domain is created and the request is prepared on the query executor of the context,
+     * so this method never blocks the caller.
+     * The result is converted on the thread which calls get() of the returned Future at first.
+     *
+     * @return a Future of the result. The cause of an ExecutionException is a SimpleQueryException,
+     *         a MultipleResultsExistException or an exception thrown by SimpleDB.
+     */
+    Future<T> getSingleResultAsync(boolean consistent);
+
+    /**
+     * send the request of the first page of {@link #getResults(boolean, FetchOptions)} asynchronously
+     * by the asynchronous client of the context.
+     * The remote domain is created and the request is prepared on the query executor of the context,
+     * so this method never blocks the caller.
+     * The next pages are requested by the QueryResults in the same way as getResults.
+     * A segmented fetch does not request any page until the QueryResults is iterated.
+     *
+     * @param options options of fetching the results.
+     * @return a Future of the results.
+     */
+    Future<QueryResults<T>> getResultsAsync(boolean consistent, FetchOptions options);
+
+    /**
+     * create a publisher of the results of this expression.
+     * Each subscription fetches the pages only while its subscriber has demand,
+     * and stops fetching when it is cancelled.
+     * Only the lazy hydration of the options is applied.
+     *
+     * @param options options of fetching the results.
+     * @param executor the executor on which the pages are fetched and the items are converted.
+     * @return a publisher of the results.
+     * @throws IllegalArgumentException if this expression has an offset.
+     */
+    ResultPublisher<T> publish(boolean consistent, FetchOptions options, Executor executor);
     
+    /**
+     * count the results of this expression.
+     * SimpleDB may return a partial count with a NextToken if counting takes long time,
+     * so this method follows the NextTokens and sums the partial counts.
+     *
+     * @return the number of the results. if this expression has a limit, the number is not greater than the limit.
+     * @throws SimpleQueryException something bad occurs.
+     */
     int count() throws SimpleQueryException;
+
+    /**
+     * count the results of each segment of this expression concurrently on the executor,
+     * and sum them.
+     *
+     * @param segments the ranges of item names for splitting this expression.
+     * @param executor the executor on which each segment is counted.
+     * @return the number of the results. if this expression has a limit, the number is not greater than the limit.
+     * @throws SimpleQueryException something bad occurs while counting a segment.
+     * @throws IllegalArgumentException if this expression has an offset.
+     */
+    int count(ItemNameSegments segments, Executor executor) throws SimpleQueryException;
+
+    /**
+     * send the request of {@link #count()} asynchronously by the asynchronous client of the context.
+     * The remote domain is created and the request is prepared on the query executor of the context,
+     * so this method never blocks the caller.
+     * If SimpleDB returns a partial count, the rest is counted on the thread which calls get() of the returned Future at first.
+     *
+     * @return a Future of the number of the results.
+     */
+    Future<Integer> countAsync();
+
     Expression<T> rebuildWith(SelectAttribute... attributes);
+
+    /**
+     * compile this expression into a template whose {@link Parameter}s are bound later.
+     * An expression without any parameter can also be prepared, for describing it only once.
+     *
+     * @return a prepared expression.
+     */
+    PreparedExpression<T> prepare();
+
+    /**
+     * create a projection of this expression, which selects only the attributes
+     * of the view-class and converts the results to instances of the view-class
+     * without creating any instance of the domain class.
+     *
+     * @param viewClass an interface or a class with a default constructor, whose properties are attributes of the domain.
+     * @return an expression which returns instances of the view-class.
+     * @throws IllegalArgumentException if a property of the view-class is not an attribute of the domain.
+     */
+    <V> Expression<V> as(Class<V> viewClass);
     Context getContext();
 }
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Options of fetching the results of an expression.
+ * <p>
+ * The default options fetch results in the same way as {@link Expression#getResults(boolean)}.
+ * Each {@code with} method returns a new instance, so an instance can be shared.
+ * <p>
+ * THIS CLASS IS IMMUTABLE
+ *
+ * @author Tsutomu YANO
+ */
+public final class FetchOptions {
+    /**
+     * the maximum number of items which SimpleDB returns for a request.
+     */
+    public static final int MAX_FETCH_SIZE = 2500;
+
+    public static final FetchOptions DEFAULT = new FetchOptions(false, 0, null, null, null, 0, null, Collections.<String>emptyList(), 0, 0);
+
+    private final boolean lazyHydration;
+    private final int prefetchDepth;
+    private final Executor prefetchExecutor;
+    private final ItemNameSegments segments;
+    private final Executor segmentExecutor;
+    private final int conversionParallelism;
+    private final Executor conversionExecutor;
+    private final List<String> eagerFetchProperties;
+    private final int fetchSize;
+    private final int maxFetchSize;
+
+    private FetchOptions(boolean lazyHydration, int prefetchDepth, Executor prefetchExecutor, ItemNameSegments segments, Executor segmentExecutor, int conversionParallelism, Executor conversionExecutor, List<String> eagerFetchProperties, int fetchSize, int maxFetchSize) {
+        this.lazyHydration = lazyHydration;
+        this.prefetchDepth = prefetchDepth;
+        this.prefetchExecutor = prefetchExecutor;
+        this.segments = segments;
+        this.segmentExecutor = segmentExecutor;
+        this.conversionParallelism = conversionParallelism;
+        this.conversionExecutor = conversionExecutor;
+        this.eagerFetchProperties = eagerFetchProperties;
+        this.fetchSize = fetchSize;
+        this.maxFetchSize = maxFetchSize;
+    }
+
+    /**
+     * If lazy hydration is enabled, each result keeps the item returned from SimpleDB
+     * and each property of the result is restored from the item when its getter is called at first.
+     * So the attributes which are never read are never converted.
+     * <p>
+     * Lazy hydration is available only for domain classes for which SimpleQueryProcessor
+     * generated a lazy ItemConverter. Results of other domain classes are converted eagerly.
+     * A domain class must read and write its properties through its getters and setters
+     * for lazy hydration, because the fields of a result are filled by the getters.
+     *
+     * @param lazyHydration true if the results should be hydrated lazily.
+     * @return new options.
+     */
+    public FetchOptions withLazyHydration(boolean lazyHydration) {
+        return new FetchOptions(lazyHydration, prefetchDepth, prefetchExecutor, segments, segmentExecutor, conversionParallelism, conversionExecutor, eagerFetchProperties, fetchSize, maxFetchSize);
+    }
+
+    /**
+     * If prefetch is enabled, the next pages of the results are requested on the executor
+     * as soon as a page arrives, so the conversion of a page and the network round trip
+     * for the next page overlap.
+     * At most {@code depth} pages which are not consumed yet are kept in memory.
+     *
+     * @param depth the number of pages which are fetched ahead of the consumer. 0 disables prefetch.
+     * @param executor the executor on which the next pages are requested. must not be null if depth is positive.
+     * @return new options.
+     * @throws IllegalArgumentException if depth is negative, or executor is null while depth is positive.
+     */
+    public FetchOptions withPrefetch(int depth, Executor executor) {
+        if(depth < 0) throw new IllegalArgumentException("depth must not be negative: " + depth);
+        if(depth > 0 && executor == null) throw new IllegalArgumentException("executor must not be null if prefetch is enabled.");
+        return new FetchOptions(lazyHydration, depth, depth > 0 ? executor : null, segments, segmentExecutor, conversionParallelism, conversionExecutor, eagerFetchProperties, fetchSize, maxFetchSize);
+    }
+
+    /**
+     * If segments are set, the key space of the expression is split into the ranges of itemName,
+     * and the pages of all ranges are fetched concurrently on the executor.
+     * Each range is a query which combines the condition of the expression and
+     * {@code itemName() >= lower and itemName() < upper}.
+     * <p>
+     * The results of the ranges are merged in the order of arrival.
+     * If the expression has an 'order by', the results are merged in the sort order of the expression instead,
+     * so the sort attribute must be selected by the expression.
+     * <p>
+     * The number of concurrent requests is bounded by the executor.
+     * If prefetch is also enabled, each range keeps at most {@link #getPrefetchDepth()} pages ahead of the consumer,
+     * otherwise one page.
+     *
+     * @param segments the ranges of itemName. null disables the segmented fetch.
+     * @param executor the executor on which the pages of the ranges are requested. must not be null if segments is not null.
+     * @return new options.
+     * @throws IllegalArgumentException if executor is null while segments is not null.
+     */
+    public FetchOptions withSegments(ItemNameSegments segments, Executor executor) {
+        if(segments != null && executor == null) throw new IllegalArgumentException("executor must not be null if segments are set.");
+        return new FetchOptions(lazyHydration, prefetchDepth, prefetchExecutor, segments, segments != null ? executor : null, conversionParallelism, conversionExecutor, eagerFetchProperties, fetchSize, maxFetchSize);
+    }
+
+    /**
+     * If parallel conversion is enabled, the items of each page are converted into domain objects
+     * on the executor as a whole page, instead of one by one on the thread which iterates the results.
+     * The pages which have already arrived are converted concurrently, at most {@code parallelism} pages at a time,
+     * and the results are still returned in the order of the pages.
+     * <p>
+     * Pages arrive ahead of the consumer only if prefetch is also enabled,
+     * so without prefetch only one page is converted at a time.
+     * This option is not applied to a segmented fetch.
+     *
+     * @param parallelism the maximum number of pages which are converted at a time. 0 disables parallel conversion.
+     * @param executor the executor on which pages are converted. must not be null if parallelism is positive.
+     * @return new options.
+     * @throws IllegalArgumentException if parallelism is negative, or executor is null while parallelism is positive.
+     */
+    public FetchOptions withParallelConversion(int parallelism, Executor executor) {
+        if(parallelism < 0) throw new IllegalArgumentException("parallelism must not be negative: " + parallelism);
+        if(parallelism > 0 && executor == null) throw new IllegalArgumentException("executor must not be null if parallel conversion is enabled.");
+        return new FetchOptions(lazyHydration, prefetchDepth, prefetchExecutor, segments, segmentExecutor, parallelism, parallelism > 0 ? executor : null, eagerFetchProperties, fetchSize, maxFetchSize);
+    }
+
+    /**
+     * If properties are set for eager fetch, the targets of the references in the properties are loaded
+     * for a whole page of results, as soon as the page is converted.
+     * The targets of each property are loaded by {@code in (...)} queries of at most 20 values,
+     * so a page needs a few queries for each property instead of a query for each result.
+     * <p>
+     * A property must be a {@link com.shelfmap.simplequery.domain.ToOneDomainReference},
+     * a {@link com.shelfmap.simplequery.domain.ReverseToOneDomainReference} or
+     * a {@link com.shelfmap.simplequery.domain.ReverseToManyDomainReference} which is created by this library.
+     * The targets are read inconsistently, so a consistent get() of a reference still sends its own query.
+     * <p>
+     * A page is converted as a whole if eager fetch is enabled, even if parallel conversion is disabled.
+     * This option is not applied to a segmented fetch.
+     *
+     * @param propertyNames the names of the reference properties of the results. no name disables eager fetch.
+     * @return new options.
+     */
+    public FetchOptions withEagerFetch(String... propertyNames) {
+        isNotNull("propertyNames", propertyNames);
+        List<String> names = Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(propertyNames)));
+        return new FetchOptions(lazyHydration, prefetchDepth, prefetchExecutor, segments, segmentExecutor, conversionParallelism, conversionExecutor, names, fetchSize, maxFetchSize);
+    }
+
+    /**
+     * Sets the number of items which are requested by each request to SimpleDB.
+     * <p>
+     * Without a fetch size, each page is requested with the limit of the expression,
+     * or SimpleDB returns 100 items for a page if the expression has no limit.
+     * If a fetch size is set, the limit of the expression is the maximum number of the whole results instead,
+     * and the results end at the limit.
+     * <p>
+     * This option is not applied to a segmented fetch, nor to an expression with an offset.
+     *
+     * @param fetchSize the number of items of each request, at most {@link #MAX_FETCH_SIZE}. 0 disables the fetch size.
+     * @return new options.
+     * @throws IllegalArgumentException if fetchSize is negative or greater than {@link #MAX_FETCH_SIZE}.
+     */
+    public FetchOptions withFetchSize(int fetchSize) {
+        if(fetchSize < 0 || fetchSize > MAX_FETCH_SIZE) throw new IllegalArgumentException("fetchSize must be between 0 and " + MAX_FETCH_SIZE + ": " + fetchSize);
+        return new FetchOptions(lazyHydration, prefetchDepth, prefetchExecutor, segments, segmentExecutor, conversionParallelism, conversionExecutor, eagerFetchProperties, fetchSize, fetchSize);
+    }
+
+    /**
+     * Same as {@link #withFetchSize(int)}, but the number of items of each request is adjusted after each page,
+     * from {@code initialSize} up to {@code maximumSize}.
+     * <p>
+     * The size grows while the estimated size of a response, the latency of a request and the rate of the consumer
+     * show that a larger page reduces the round trips without reaching the limits of SimpleDB.
+     * The size shrinks if SimpleDB returns a truncated page, or a request takes too long.
+     *
+     * @param initialSize the number of items of the first request.
+     * @param maximumSize the maximum number of items of a request, at most {@link #MAX_FETCH_SIZE}.
+     * @return new options.
+     * @throws IllegalArgumentException if initialSize is not positive, or maximumSize is less than initialSize or greater than {@link #MAX_FETCH_SIZE}.
+     */
+    public FetchOptions withAdaptiveFetchSize(int initialSize, int maximumSize) {
+        if(initialSize <= 0) throw new IllegalArgumentException("initialSize must be positive: " + initialSize);
+        if(maximumSize < initialSize || maximumSize > MAX_FETCH_SIZE) throw new IllegalArgumentException("maximumSize must be between initialSize and " + MAX_FETCH_SIZE + ": " + maximumSize);
+        return new FetchOptions(lazyHydration, prefetchDepth, prefetchExecutor, segments, segmentExecutor, conversionParallelism, conversionExecutor, eagerFetchProperties, initialSize, maximumSize);
+    }
+
+    public boolean isLazyHydration() {
+        return lazyHydration;
+    }
+
+    public boolean isPrefetchEnabled() {
+        return prefetchDepth > 0;
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * @return the executor for prefetch, or null if prefetch is disabled.
+     */
+    public Executor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    public boolean isSegmented() {
+        return segments != null;
+    }
+
+    /**
+     * @return the ranges of itemName, or null if the segmented fetch is disabled.
+     */
+    public ItemNameSegments getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return the executor for the segmented fetch, or null if the segmented fetch is disabled.
+     */
+    public Executor getSegmentExecutor() {
+        return segmentExecutor;
+    }
+
+    public boolean isParallelConversionEnabled() {
+        return conversionParallelism > 0;
+    }
+
+    public int getConversionParallelism() {
+        return conversionParallelism;
+    }
+
+    /**
+     * @return the executor for parallel conversion, or null if parallel conversion is disabled.
+     */
+    public Executor getConversionExecutor() {
+        return conversionExecutor;
+    }
+
+    public boolean isEagerFetchEnabled() {
+        return !eagerFetchProperties.isEmpty();
+    }
+
+    /**
+     * @return the unmodifiable list of the reference properties which are fetched eagerly.
+     */
+    public List<String> getEagerFetchProperties() {
+        return eagerFetchProperties;
+    }
+
+    public boolean isFetchSizeEnabled() {
+        return fetchSize > 0;
+    }
+
+    public boolean isAdaptiveFetchSize() {
+        return maxFetchSize > fetchSize;
+    }
+
+    /**
+     * @return the number of items of each request, or of the first request if the fetch size is adaptive.
+     *         0 if the fetch size is disabled.
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @return the maximum number of items of a request. 0 if the fetch size is disabled.
+     */
+    public int getMaxFetchSize() {
+        return maxFetchSize;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof FetchOptions)) return false;
+        FetchOptions other = (FetchOptions) obj;
+        return this.lazyHydration == other.lazyHydration
+            && this.prefetchDepth == other.prefetchDepth
+            && this.prefetchExecutor == other.prefetchExecutor
+            && this.segments == other.segments
+            && this.segmentExecutor == other.segmentExecutor
+            && this.conversionParallelism == other.conversionParallelism
+            && this.conversionExecutor == other.conversionExecutor
+            && this.eagerFetchProperties.equals(other.eagerFetchProperties)
+            && this.fetchSize == other.fetchSize
+            && this.maxFetchSize == other.maxFetchSize;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = lazyHydration ? 1 : 0;
+        hash = 31 * hash + prefetchDepth;
+        hash = 31 * hash + (prefetchExecutor != null ? prefetchExecutor.hashCode() : 0);
+        hash = 31 * hash + (segments != null ? segments.hashCode() : 0);
+        hash = 31 * hash + (segmentExecutor != null ? segmentExecutor.hashCode() : 0);
+        hash = 31 * hash + conversionParallelism;
+        hash = 31 * hash + (conversionExecutor != null ? conversionExecutor.hashCode() : 0);
+        hash = 31 * hash + eagerFetchProperties.hashCode();
+        hash = 31 * hash + fetchSize;
+        hash = 31 * hash + maxFetchSize;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "FetchOptions{" + "lazyHydration=" + lazyHydration + ", prefetchDepth=" + prefetchDepth + ", prefetchExecutor=" + prefetchExecutor + ", segments=" + segments + ", segmentExecutor=" + segmentExecutor + ", conversionParallelism=" + conversionParallelism + ", conversionExecutor=" + conversionExecutor + ", eagerFetchProperties=" + eagerFetchProperties + ", fetchSize=" + fetchSize + ", maxFetchSize=" + maxFetchSize + '}';
+    }
+}
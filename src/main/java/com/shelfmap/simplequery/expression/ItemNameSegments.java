@@ -0,0 +1,145 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.shelfmap.simplequery.attribute.impl.ItemNameAttribute;
+import static com.shelfmap.simplequery.expression.Conditions.$;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.greaterEqual;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.lessThan;
+import java.util.*;
+
+/**
+ * Splits the key space of a domain into ranges of item names.
+ * <p>
+ * n boundaries make n + 1 segments: the first segment contains the item names
+ * which are less than the first boundary, and the last segment contains the item names
+ * which are greater than or equal to the last boundary.
+ * Each segment is evaluated by SimpleDB independently, so the segments of an expression
+ * can be evaluated concurrently. Item names are compared lexicographically by SimpleDB,
+ * so the boundaries should follow the distribution of the item names for even segments.
+ * <p>
+ * THIS CLASS IS IMMUTABLE
+ *
+ * @author Tsutomu YANO
+ */
+public final class ItemNameSegments implements Iterable<ItemNameSegments.Segment> {
+    private final List<Segment> segments;
+
+    private ItemNameSegments(SortedSet<String> boundaries) {
+        List<Segment> list = new ArrayList<Segment>(boundaries.size() + 1);
+        String lower = null;
+        for (String boundary : boundaries) {
+            list.add(new Segment(lower, boundary));
+            lower = boundary;
+        }
+        list.add(new Segment(lower, null));
+        this.segments = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @param boundaries the boundaries of segments. the order is not important, and duplicates are ignored.
+     * @return segments split by the boundaries.
+     */
+    public static ItemNameSegments of(String... boundaries) {
+        SortedSet<String> set = new TreeSet<String>();
+        for (String boundary : boundaries) {
+            if(boundary == null) throw new IllegalArgumentException("a boundary must not be null.");
+            set.add(boundary);
+        }
+        return new ItemNameSegments(set);
+    }
+
+    /**
+     * create segments for item names which start with one of the characters.
+     * For example, {@code ofPrefixes("0123456789abcdef")} makes 16 segments for
+     * item names in lower-case hexadecimal like UUIDs.
+     * The item names which start with the other characters are also contained in the first or the last segment.
+     *
+     * @param characters the first characters of item names.
+     * @return a segment for each character.
+     */
+    public static ItemNameSegments ofPrefixes(String characters) {
+        SortedSet<String> set = new TreeSet<String>();
+        for (int i = 0; i < characters.length(); i++) {
+            set.add(String.valueOf(characters.charAt(i)));
+        }
+        //the smallest prefix is the lower bound of the first segment, which is not needed.
+        if(!set.isEmpty()) set.remove(set.first());
+        return new ItemNameSegments(set);
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public int size() {
+        return segments.size();
+    }
+
+    @Override
+    public Iterator<Segment> iterator() {
+        return segments.iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "ItemNameSegments" + segments;
+    }
+
+    /**
+     * a range of item names. the lower bound is inclusive and the upper bound is exclusive.
+     */
+    public static final class Segment {
+        private final String lower;
+        private final String upper;
+
+        Segment(String lower, String upper) {
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        /**
+         * @return the inclusive lower bound, or null if this segment has no lower bound.
+         */
+        public String getLower() {
+            return lower;
+        }
+
+        /**
+         * @return the exclusive upper bound, or null if this segment has no upper bound.
+         */
+        public String getUpper() {
+            return upper;
+        }
+
+        /**
+         * @return the conditions which restrict item names into this segment.
+         *         each condition is a single condition which is not chained with others.
+         *         empty if this segment is not bounded.
+         */
+        public List<Condition<?>> toConditions() {
+            List<Condition<?>> conditions = new ArrayList<Condition<?>>(2);
+            if(lower != null) conditions.add($(ItemNameAttribute.INSTANCE, greaterEqual(lower)));
+            if(upper != null) conditions.add($(ItemNameAttribute.INSTANCE, lessThan(upper)));
+            return conditions;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + (lower == null ? "" : lower) + ", " + (upper == null ? "" : upper) + ")";
+        }
+    }
+}
@@ -27,6 +27,24 @@ public interface LimitExpression<T> extends Expression<T> {
     WhereExpression<T> getWhereExpression();
     OrderByExpression<T> getOrderByExpression();
     int getLimitCount();
+
+    /**
+     * @return the number of the items which are skipped before the results. 0 if no item is skipped.
+     */
+    int getOffset();
+
+    /**
+     * SimpleDB does not have an offset clause, so the items before the offset are skipped by
+     * a NextToken which is found by counting the items (see {@link SkipTokenCache}).
+     * The results of an expression which has an offset are the items from the offset up to the limit.
+     * An expression with an offset can not be fetched nor counted by segments, nor published.
+     * Those operations throw IllegalArgumentException instead of returning the items from the offset 0.
+     *
+     * @param offset the number of the items which are skipped before the results.
+     * @return a new expression which has the offset.
+     * @throws IllegalArgumentException if the offset is negative.
+     */
+    LimitExpression<T> offset(int offset);
     
     @Override
     LimitExpression<T> rebuildWith(SelectAttribute... attributes);
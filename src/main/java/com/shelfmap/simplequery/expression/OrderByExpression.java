@@ -27,6 +27,13 @@ public interface OrderByExpression<T> extends Expression<T> {
     DomainExpression<T> getDomainExpression();
     WhereExpression<T> getWhereExpression();
     LimitExpression<T> limit(int limitCount);
+    /**
+     * @param pageIndex the index of the page from 0.
+     * @param pageSize the number of the items in a page.
+     * @return an expression whose results are the items of the page.
+     * @see LimitExpression#offset(int)
+     */
+    LimitExpression<T> page(int pageIndex, int pageSize);
     ConditionAttribute getAttribute();
     SortOrder getSortOrder();
 
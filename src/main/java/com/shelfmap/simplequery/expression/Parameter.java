@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.io.Serializable;
+import java.util.regex.Pattern;
+
+/**
+ * A placeholder of a value in a condition of an expression.
+ * <p>
+ * An expression which has parameters must be prepared by {@link Expression#prepare()},
+ * and the values of the parameters must be bound by {@link PreparedExpression#bind(java.util.Map)}
+ * before it is executed.
+ * <pre>
+ * PreparedExpression&lt;User&gt; byName = context.select().from(User.class).where(attr("name"), is(param("name"))).prepare();
+ * User user = byName.bind("name", "tyano").getSingleResult(false);
+ * </pre>
+ * A parameter can be used in any matcher which converts its values by its AttributeConverter.
+ * <p>
+ * THIS CLASS IS IMMUTABLE
+ *
+ * @author Tsutomu YANO
+ */
+public final class Parameter implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String name;
+
+    /**
+     * @param name the name of the parameter. must be a Java identifier which consists of ASCII characters.
+     * @throws IllegalArgumentException if the name is not valid.
+     */
+    public Parameter(String name) {
+        isNotNull("name", name);
+        if(!NAME_PATTERN.matcher(name).matches()) throw new IllegalArgumentException("the name of a parameter must match " + NAME_PATTERN.pattern() + ": " + name);
+        this.name = name;
+    }
+
+    public static Parameter param(String name) {
+        return new Parameter(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof Parameter)) return false;
+        return name.equals(((Parameter) obj).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return ":" + name;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression which has been compiled into a template of a select expression.
+ * <p>
+ * The conditions of an expression are configured and described only once when it is prepared.
+ * Binding values to the parameters of the template only converts, escapes and splices the values,
+ * so a prepared expression should be kept and reused for a query which is executed repeatedly.
+ * <p>
+ * Implementations must be THREAD SAFE.
+ *
+ * @param <T> the type of the results.
+ * @author Tsutomu YANO
+ */
+public interface PreparedExpression<T> extends Describable {
+    /**
+     * @return the names of the parameters in the order of their first appearances.
+     */
+    List<String> getParameterNames();
+
+    /**
+     * @param values the values of all parameters, keyed by the names of the parameters.
+     * @return an expression which can be executed.
+     * @throws IllegalArgumentException if a parameter has no value, a value is null,
+     *         an unknown parameter is passed, or a value can not be converted by the AttributeConverter of the attribute.
+     */
+    Expression<T> bind(Map<String,?> values);
+
+    /**
+     * bind the value to the only parameter of the template.
+     *
+     * @see #bind(Map)
+     */
+    Expression<T> bind(String name, Object value);
+
+    /**
+     * @return the expression which has been prepared.
+     */
+    Expression<T> getExpression();
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import static com.shelfmap.simplequery.util.Assertion.isNotEmpty;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.io.Serializable;
+
+/**
+ * A position in the results of a select expression, from which the results can be fetched again.
+ * <p>
+ * A cursor has the select expression as two clauses, so that the expression can be counted
+ * from the position without the domain-class which has built the expression.
+ * A cursor is encoded into an opaque string by {@link QueryCursorCodec}.
+ * <p>
+ * THIS CLASS IS IMMUTABLE
+ *
+ * @see QueryResults#cursor()
+ * @see com.shelfmap.simplequery.Context#resume(java.lang.String, java.lang.Class)
+ * @author Tsutomu YANO
+ */
+public final class QueryCursor implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String resultClassName;
+    private final String sourceClassName;
+    private final String selectClause;
+    private final String fromClause;
+    private final String nextToken;
+    private final boolean lazyHydration;
+    private final boolean consistent;
+
+    /**
+     * @param resultClassName the name of the class of the results. a view-class for a projection.
+     * @param sourceClassName the name of the domain-class on which the expression has been created.
+     * @param selectClause the attributes of the select clause, like '*' or '`name`, `title`'.
+     * @param fromClause the rest of the select expression after the select clause, which starts with 'from'.
+     * @param nextToken the NextToken of the page which the results are fetched from.
+     * @param lazyHydration true if the results are hydrated lazily.
+     * @param consistent true if the results are read consistently.
+     */
+    public QueryCursor(String resultClassName, String sourceClassName, String selectClause, String fromClause, String nextToken, boolean lazyHydration, boolean consistent) {
+        isNotEmpty("resultClassName", resultClassName);
+        isNotEmpty("sourceClassName", sourceClassName);
+        isNotEmpty("selectClause", selectClause);
+        isNotEmpty("fromClause", fromClause);
+        isNotNull("nextToken", nextToken);
+        this.resultClassName = resultClassName;
+        this.sourceClassName = sourceClassName;
+        this.selectClause = selectClause;
+        this.fromClause = fromClause;
+        this.nextToken = nextToken;
+        this.lazyHydration = lazyHydration;
+        this.consistent = consistent;
+    }
+
+    public String getResultClassName() {
+        return resultClassName;
+    }
+
+    public String getSourceClassName() {
+        return sourceClassName;
+    }
+
+    public String getSelectClause() {
+        return selectClause;
+    }
+
+    public String getFromClause() {
+        return fromClause;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean isLazyHydration() {
+        return lazyHydration;
+    }
+
+    public boolean isConsistent() {
+        return consistent;
+    }
+
+    /**
+     * @return the select expression of the results.
+     */
+    public String getExpression() {
+        return "select " + selectClause + " " + fromClause;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj) return true;
+        if(!(obj instanceof QueryCursor)) return false;
+        QueryCursor other = (QueryCursor) obj;
+        return resultClassName.equals(other.resultClassName)
+                && sourceClassName.equals(other.sourceClassName)
+                && selectClause.equals(other.selectClause)
+                && fromClause.equals(other.fromClause)
+                && nextToken.equals(other.nextToken)
+                && lazyHydration == other.lazyHydration
+                && consistent == other.consistent;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 31 * hash + resultClassName.hashCode();
+        hash = 31 * hash + sourceClassName.hashCode();
+        hash = 31 * hash + selectClause.hashCode();
+        hash = 31 * hash + fromClause.hashCode();
+        hash = 31 * hash + nextToken.hashCode();
+        hash = 31 * hash + (lazyHydration ? 1 : 0);
+        hash = 31 * hash + (consistent ? 1 : 0);
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCursor{" + "resultClassName=" + resultClassName + ", sourceClassName=" + sourceClassName + ", expression=" + getExpression() + ", nextToken=" + nextToken + ", lazyHydration=" + lazyHydration + ", consistent=" + consistent + '}';
+    }
+}
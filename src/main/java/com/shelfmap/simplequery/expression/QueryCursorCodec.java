@@ -0,0 +1,198 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import com.shelfmap.simplequery.util.UrlSafeBase64;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encodes a {@link QueryCursor} into a compact and URL-safe string, and decodes it.
+ * <p>
+ * A cursor has a select expression, which must not be changed by the clients who hold the cursor.
+ * So the encoded cursor is signed by HMAC-SHA256 with the key of this codec,
+ * and a cursor which is not signed by the same key is rejected.
+ * The contents are deflated before they are signed, but they are not encrypted.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @author Tsutomu YANO
+ */
+public class QueryCursorCodec {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int SIGNATURE_LENGTH = 16;
+    private static final int MAX_CONTENT_LENGTH = 64 * 1024;
+
+    private final byte[] key;
+
+    /**
+     * @param key the key to sign cursors. The codecs which share cursors must have a same key.
+     */
+    public QueryCursorCodec(byte[] key) {
+        isNotNull("key", key);
+        if(key.length == 0) throw new IllegalArgumentException("key must not be empty.");
+        this.key = key.clone();
+    }
+
+    /**
+     * @param secret a secret which is shared by the processes which share cursors, like a secret access key.
+     * @return a key for cursors, which is derived from the secret.
+     */
+    public static byte[] deriveKey(String secret) {
+        isNotNull("secret", secret);
+        return sign(utf8(secret), utf8("simplequery-cursor"));
+    }
+
+    public String encode(QueryCursor cursor) {
+        isNotNull("cursor", cursor);
+        byte[] content = deflate(write(cursor));
+        byte[] signature = signatureOf(content);
+
+        byte[] bytes = new byte[1 + SIGNATURE_LENGTH + content.length];
+        bytes[0] = VERSION;
+        System.arraycopy(signature, 0, bytes, 1, SIGNATURE_LENGTH);
+        System.arraycopy(content, 0, bytes, 1 + SIGNATURE_LENGTH, content.length);
+        return UrlSafeBase64.encode(bytes);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cursor is broken, or it is not signed by the key of this codec.
+     */
+    public QueryCursor decode(String cursor) {
+        isNotNull("cursor", cursor);
+        byte[] bytes = UrlSafeBase64.decode(cursor);
+        if(bytes.length <= 1 + SIGNATURE_LENGTH) throw new IllegalArgumentException("the cursor is too short.");
+        if(bytes[0] != VERSION) throw new IllegalArgumentException("the version of the cursor is not supported: " + bytes[0]);
+
+        byte[] signature = Arrays.copyOfRange(bytes, 1, 1 + SIGNATURE_LENGTH);
+        byte[] content = Arrays.copyOfRange(bytes, 1 + SIGNATURE_LENGTH, bytes.length);
+        //MessageDigest#isEqual does not return at the first different byte.
+        if(!MessageDigest.isEqual(signature, signatureOf(content))) throw new IllegalArgumentException("the signature of the cursor is not valid.");
+        return read(inflate(content));
+    }
+
+    private byte[] signatureOf(byte[] content) {
+        byte[] signed = new byte[content.length + 1];
+        signed[0] = VERSION;
+        System.arraycopy(content, 0, signed, 1, content.length);
+        return Arrays.copyOf(sign(key, signed), SIGNATURE_LENGTH);
+    }
+
+    private static byte[] sign(byte[] key, byte[] data) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("could not sign a cursor by " + ALGORITHM, ex);
+        }
+    }
+
+    private static byte[] write(QueryCursor cursor) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeUTF(cursor.getResultClassName());
+            //a cursor of a domain-class has the same class name twice.
+            out.writeUTF(cursor.getSourceClassName().equals(cursor.getResultClassName()) ? "" : cursor.getSourceClassName());
+            out.writeUTF(cursor.getSelectClause());
+            out.writeUTF(cursor.getFromClause());
+            out.writeUTF(cursor.getNextToken());
+            out.writeBoolean(cursor.isLazyHydration());
+            out.writeBoolean(cursor.isConsistent());
+            out.flush();
+            return buffer.toByteArray();
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("the cursor is too large: " + cursor, ex);
+        }
+    }
+
+    private static QueryCursor read(byte[] content) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+            String resultClassName = in.readUTF();
+            String sourceClassName = in.readUTF();
+            String selectClause = in.readUTF();
+            String fromClause = in.readUTF();
+            String nextToken = in.readUTF();
+            boolean lazyHydration = in.readBoolean();
+            boolean consistent = in.readBoolean();
+            return new QueryCursor(resultClassName, sourceClassName.isEmpty() ? resultClassName : sourceClassName, selectClause, fromClause, nextToken, lazyHydration, consistent);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("the cursor is broken.", ex);
+        }
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
+            byte[] buffer = new byte[1024];
+            while(!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] content) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(content);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(content.length * 4);
+            byte[] buffer = new byte[1024];
+            while(!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if(length == 0 && (inflater.needsInput() || inflater.needsDictionary())) throw new IllegalArgumentException("the cursor is broken.");
+                out.write(buffer, 0, length);
+                if(out.size() > MAX_CONTENT_LENGTH) throw new IllegalArgumentException("the cursor is too large.");
+            }
+            return out.toByteArray();
+        } catch (DataFormatException ex) {
+            throw new IllegalArgumentException("the cursor is broken.", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            //never occured.
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -26,4 +26,24 @@ public interface QueryResults<T> extends Iterable<T> {
     Context getContext();
     int size();
     boolean isEmpty();
+
+    /**
+     * A cursor is a position after the first page of the results, which can be resumed by
+     * {@link Context#resume(java.lang.String, java.lang.Class)} in another request or another process
+     * which has a context with the same key of cursors.
+     * The results which are resumed from a cursor start from the next page, and have the next cursor.
+     *
+     * @return an opaque and URL-safe string of the position, or null if no more page exists after the first page.
+     * @throws UnsupportedOperationException if the results can not be resumed.
+     * @see #isResumable()
+     */
+    String cursor();
+
+    /**
+     * The results of an expression which is split into several expressions, the results which are fetched by segments,
+     * the results in memory and the results which are limited with a fetch size can not be resumed.
+     *
+     * @return true if {@link #cursor()} is supported by these results. it still returns null if no more page exists.
+     */
+    boolean isResumable();
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+/**
+ * A publisher of the results of an expression, which fetches the pages of the results
+ * only as its subscribers demand.
+ * <p>
+ * This interface has the same contract with Publisher of Reactive Streams,
+ * so it can be adapted to a reactive library easily.
+ *
+ * @param <T> the type of the results.
+ * @author Tsutomu YANO
+ */
+public interface ResultPublisher<T> {
+    /**
+     * start a new subscription. Each subscription fetches the results from the first page independently.
+     * No page is fetched until {@link ResultSubscription#request(long)} is called.
+     *
+     * @param subscriber the subscriber which receives the results.
+     */
+    void subscribe(ResultSubscriber<? super T> subscriber);
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+/**
+ * A receiver of the results published by a {@link ResultPublisher}.
+ * <p>
+ * The methods of a subscriber are never called concurrently for a subscription,
+ * but they may be called on different threads.
+ *
+ * @param <T> the type of the results.
+ * @author Tsutomu YANO
+ */
+public interface ResultSubscriber<T> {
+    /**
+     * called once at first, before any other method is called.
+     */
+    void onSubscribe(ResultSubscription subscription);
+
+    /**
+     * called for each result, at most the number of the requested results.
+     */
+    void onNext(T result);
+
+    /**
+     * called if fetching or converting the results failed. No method is called after this method.
+     */
+    void onError(Throwable error);
+
+    /**
+     * called after all results are published. No method is called after this method.
+     */
+    void onComplete();
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+/**
+ * A subscription of a {@link ResultSubscriber} to a {@link ResultPublisher}.
+ * Both methods can be called from any thread, and also from the methods of the subscriber.
+ *
+ * @author Tsutomu YANO
+ */
+public interface ResultSubscription {
+    /**
+     * request more results. Pages are fetched only while requested results are not published yet.
+     *
+     * @param n the number of the results to be added to the demand. {@link Long#MAX_VALUE} means no limit.
+     *          If n is not positive, the subscription is failed by an IllegalArgumentException.
+     */
+    void request(long n);
+
+    /**
+     * stop publishing the results. No page is fetched after the page which is being fetched now.
+     */
+    void cancel();
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.amazonaws.services.simpledb.AmazonSimpleDB;
+import com.amazonaws.services.simpledb.model.Item;
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.amazonaws.services.simpledb.model.SelectResult;
+import static com.shelfmap.simplequery.util.Assertion.isNotEmpty;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Finds the NextToken which is positioned at an offset of the results of an expression,
+ * without transferring the items before the offset.
+ * <p>
+ * SimpleDB returns a NextToken with the result of 'select count(*) ... limit n',
+ * which is positioned after the first n items of the expression.
+ * The same NextToken can be passed to 'select * ...' with the same where and order by clauses.
+ * A count can skip at most {@link #MAX_SKIP_PER_REQUEST} items, so a large offset is
+ * reached by several counts.
+ * <p>
+ * The NextTokens are cached per count expression (which is the shape of a query without
+ * its select attributes and its limit), so a later jump to the same or a further offset
+ * starts from the nearest cached NextToken.
+ * A cached NextToken does not follow the items which are put or deleted after it is cached,
+ * so {@link #clear()} should be called after the items of a domain are changed.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @author Tsutomu YANO
+ */
+public class SkipTokenCache {
+    public static final int MAX_SKIP_PER_REQUEST = 2500;
+    public static final int DEFAULT_MAX_EXPRESSIONS = 256;
+
+    private final int maxExpressions;
+    private final Lock lock = new ReentrantLock();
+
+    //the NextTokens of each count expression by their offsets, in the order of access.
+    private final Map<String, TreeMap<Integer,String>> tokens;
+
+    public SkipTokenCache() {
+        this(DEFAULT_MAX_EXPRESSIONS);
+    }
+
+    /**
+     * @param maxExpressions the maximum number of count expressions whose NextTokens are cached.
+     *                       the NextTokens of the least recently used expression are removed at first.
+     */
+    public SkipTokenCache(final int maxExpressions) {
+        if(maxExpressions <= 0) throw new IllegalArgumentException("maxExpressions must be positive: " + maxExpressions);
+        this.maxExpressions = maxExpressions;
+        this.tokens = new LinkedHashMap<String, TreeMap<Integer,String>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TreeMap<Integer,String>> eldest) {
+                return size() > maxExpressions;
+            }
+        };
+    }
+
+    /**
+     * @param simpleDB the client to count the items with.
+     * @param countExpression a 'select count(*)' expression without a limit.
+     * @param offset the number of the items to skip.
+     * @param consistent true if the items should be counted consistently.
+     * @return the NextToken positioned at the offset, or null if the offset is 0.
+     * @throws IllegalArgumentException if the offset is negative.
+     * @throws NoSuchElementException if the expression has no item at the offset.
+     */
+    public String tokenAt(AmazonSimpleDB simpleDB, String countExpression, int offset, boolean consistent) {
+        isNotNull("simpleDB", simpleDB);
+        isNotEmpty("countExpression", countExpression);
+        if(offset < 0) throw new IllegalArgumentException("offset must not be negative: " + offset);
+        if(offset == 0) return null;
+
+        int position = 0;
+        String token = null;
+        lock.lock();
+        try {
+            TreeMap<Integer,String> cached = tokens.get(countExpression);
+            Map.Entry<Integer,String> nearest = cached == null ? null : cached.floorEntry(offset);
+            if(nearest != null) {
+                position = nearest.getKey();
+                token = nearest.getValue();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        //SimpleDB may count fewer items than the limit with a NextToken when the count times out.
+        while(position < offset) {
+            int step = Math.min(offset - position, MAX_SKIP_PER_REQUEST);
+            SelectRequest request = new SelectRequest(countExpression + " limit " + step, consistent).withNextToken(token);
+            SelectResult result = simpleDB.select(request);
+            token = result.getNextToken();
+            if(token == null) throw new NoSuchElementException("the expression has less items than the offset " + offset + ": " + countExpression);
+            position += countOf(result);
+            put(countExpression, position, token);
+        }
+        return token;
+    }
+
+    private int countOf(SelectResult result) {
+        if(result.getItems().isEmpty()) return 0;
+        Item item = result.getItems().get(0);
+        if(item.getAttributes().isEmpty()) return 0;
+        return Integer.parseInt(item.getAttributes().get(0).getValue());
+    }
+
+    private void put(String countExpression, int offset, String token) {
+        lock.lock();
+        try {
+            TreeMap<Integer,String> cached = tokens.get(countExpression);
+            if(cached == null) {
+                cached = new TreeMap<Integer,String>();
+                tokens.put(countExpression, cached);
+            }
+            cached.put(offset, token);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * remove the NextTokens of the count expression.
+     */
+    public void invalidate(String countExpression) {
+        lock.lock();
+        try {
+            tokens.remove(countExpression);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * remove all NextTokens.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            tokens.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxExpressions() {
+        return maxExpressions;
+    }
+}
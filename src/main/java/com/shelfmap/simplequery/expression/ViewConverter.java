@@ -0,0 +1,33 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import java.util.List;
+
+/**
+ * An ItemConverter which converts an item of a domain to an instance of a view-class,
+ * which have only a part of the attributes of the domain.
+ * A view is read only, so {@link #makeCurrentStateOf(java.lang.Object)} is not supported.
+ *
+ * @param <V> the type of the view-class.
+ * @author Tsutomu YANO
+ */
+public interface ViewConverter<V> extends ItemConverter<V> {
+    /**
+     * @return the names of the attributes which are needed to build a view.
+     */
+    List<String> getAttributeNames();
+}
@@ -24,9 +24,17 @@ import com.shelfmap.simplequery.RemoteDomainBuilder;
 import com.shelfmap.simplequery.attribute.impl.CountAttribute;
 import com.shelfmap.simplequery.domain.Domain;
 import com.shelfmap.simplequery.expression.*;
+import com.shelfmap.simplequery.factory.ItemConverterFactory;
 import static com.shelfmap.simplequery.util.Assertion.isNotNull;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  *
@@ -50,40 +58,370 @@ public abstract class BaseExpression<T> implements Expression<T>, Serializable {
     @Override
     public T getSingleResult(boolean consistent) throws SimpleQueryException, MultipleResultsExistException {
         createRemoteDomainIfNeed(getDomain());
+        List<Expression<T>> parts = QueryPlanner.plan(this);
+        if(parts.size() > 1) {
+            return singleResultOf(new PlannedQueryResult<T>(getContext(), createItemConverter(FetchOptions.DEFAULT), this, parts, consistent, FetchOptions.DEFAULT));
+        }
+        if(offsetOf(this) > 0) return singleResultOf(describe(), selectPage(consistent));
+
         String expression = describe();
         SelectRequest selectReq = new SelectRequest(expression, consistent);
         SelectResult result = context.getSimpleDB().select(selectReq);
+        return singleResultOf(expression, result);
+    }
+
+    /**
+     * creating the remote domain, planning and skipping to the offset may block,
+     * so they are done on the query executor, which sends the request by the asynchronous client.
+     */
+    @Override
+    public Future<T> getSingleResultAsync(final boolean consistent) {
+        return new ChainedFuture<T>(runOnQueryExecutor(new Callable<Future<T>>() {
+            @Override
+            public Future<T> call() throws Exception {
+                createRemoteDomainIfNeed(getDomain());
+                if(offsetOf(BaseExpression.this) > 0 || QueryPlanner.plan(BaseExpression.this).size() > 1) {
+                    return runOnCurrentThread(new Callable<T>() {
+                        @Override
+                        public T call() throws Exception {
+                            return getSingleResult(consistent);
+                        }
+                    });
+                }
+
+                final String expression = describe();
+                SelectRequest selectReq = new SelectRequest(expression, consistent);
+                return new ConvertingFuture<SelectResult,T>(context.getSimpleDBAsync().selectAsync(selectReq)) {
+                    @Override
+                    protected T convert(SelectResult result) throws Exception {
+                        return singleResultOf(expression, result);
+                    }
+                };
+            }
+        }));
+    }
+
+    private T singleResultOf(String expression, SelectResult result) throws SimpleQueryException, MultipleResultsExistException {
         List<Item> items = result.getItems();
         if(items.size() > 1) throw new MultipleResultsExistException("more than 1 results returned by the expression: " + expression);
         if(items.isEmpty()) return null;
 
         Item first = items.get(0);
         try {
-            return getContext().getItemConverterFactory().create(getDomain()).convertToInstance(first);
+            return createItemConverter(FetchOptions.DEFAULT).convertToInstance(first);
         } catch (CanNotConvertItemException ex) {
             throw new SimpleQueryException("Can not convert an item", ex);
         }
     }
 
+    private T singleResultOf(PlannedQueryResult<T> results) throws MultipleResultsExistException {
+        SegmentedResultIterator<T> iterator = results.iterator();
+        try {
+            if(!iterator.hasNext()) return null;
+            T first = iterator.next();
+            if(iterator.hasNext()) throw new MultipleResultsExistException("more than 1 results returned by the expression: " + describe());
+            return first;
+        } finally {
+            iterator.cancel();
+        }
+    }
+
     @Override
     public QueryResults<T> getResults(boolean consistent) throws SimpleQueryException {
+        return getResults(consistent, FetchOptions.DEFAULT);
+    }
+
+    @Override
+    public QueryResults<T> getResults(boolean consistent, FetchOptions options) throws SimpleQueryException {
+        isNotNull("options", options);
         createRemoteDomainIfNeed(getDomain());
+        if(options.isSegmented()) {
+            rejectOffset("a segmented fetch");
+            return new SegmentedQueryResult<T>(getContext(), createItemConverter(options), this, consistent, options);
+        }
+        List<Expression<T>> parts = QueryPlanner.plan(this);
+        if(parts.size() > 1) {
+            return new PlannedQueryResult<T>(getContext(), createItemConverter(options), this, parts, consistent, options);
+        }
+        if(offsetOf(this) > 0) {
+            return new DefaultQueryResult<T>(getContext(), createItemConverter(options), this, selectPage(consistent), options, null, consistent);
+        }
+        FetchSizeController fetchSize = FetchSizeController.of(options);
+        if(fetchSize != null) {
+            SelectResult first = fetchSize.select(context, describe(), consistent, null, limitOf(this));
+            return new DefaultQueryResult<T>(getContext(), createItemConverter(options), this, first, options, fetchSize, consistent);
+        }
         SelectRequest selectReq = new SelectRequest(describe(), consistent);
         SelectResult result = context.getSimpleDB().select(selectReq);
-        return new DefaultQueryResult<T>(getContext(), getDomain(), this, result);
+        return new DefaultQueryResult<T>(getContext(), createItemConverter(options), this, result, options, null, consistent);
+    }
+
+    /**
+     * creating the remote domain, planning and skipping to the offset may block,
+     * so they are done on the query executor, which sends the request of the first page by the asynchronous client.
+     */
+    @Override
+    public Future<QueryResults<T>> getResultsAsync(final boolean consistent, final FetchOptions options) {
+        isNotNull("options", options);
+        return new ChainedFuture<QueryResults<T>>(runOnQueryExecutor(new Callable<Future<QueryResults<T>>>() {
+            @Override
+            public Future<QueryResults<T>> call() throws Exception {
+                createRemoteDomainIfNeed(getDomain());
+                //segmented or split results request no page until they are iterated.
+                if(options.isSegmented() || offsetOf(BaseExpression.this) > 0 || options.isFetchSizeEnabled() || QueryPlanner.plan(BaseExpression.this).size() > 1) {
+                    return runOnCurrentThread(new Callable<QueryResults<T>>() {
+                        @Override
+                        public QueryResults<T> call() throws Exception {
+                            return getResults(consistent, options);
+                        }
+                    });
+                }
+
+                SelectRequest selectReq = new SelectRequest(describe(), consistent);
+                return new ConvertingFuture<SelectResult,QueryResults<T>>(context.getSimpleDBAsync().selectAsync(selectReq)) {
+                    @Override
+                    protected QueryResults<T> convert(SelectResult result) throws Exception {
+                        return new DefaultQueryResult<T>(getContext(), createItemConverter(options), BaseExpression.this, result, options, null, consistent);
+                    }
+                };
+            }
+        }));
+    }
+
+    @Override
+    public ResultPublisher<T> publish(boolean consistent, FetchOptions options, Executor executor) {
+        isNotNull("options", options);
+        rejectOffset("a publisher");
+        createRemoteDomainIfNeed(getDomain());
+        return new PagePublisher<T>(getContext(), describe(), consistent, createItemConverter(options), executor, FetchSizeController.of(options), limitOf(this));
     }
 
     @Override
     public int count() throws SimpleQueryException {
         createRemoteDomainIfNeed(getDomain());
-        Expression<T> rebuilt = rebuildWith(CountAttribute.INSTANCE);
-        SelectRequest req = new SelectRequest(rebuilt.describe());
-        SelectResult selectResult = context.getSimpleDB().select(req);
-        List<Item> items = selectResult.getItems();
-        if(items.isEmpty()) throw new SimpleQueryException("can not count records. expression was: " + rebuilt.describe());
+        List<Expression<T>> parts = QueryPlanner.plan(this);
+        if(parts.size() > 1) {
+            //an item may be matched by several split expressions, so we count the distinct itemNames.
+            return new PlannedQueryResult<T>(getContext(), createItemConverter(FetchOptions.DEFAULT), this, parts, false, FetchOptions.DEFAULT).size();
+        }
+
+        String expression = rebuildWith(CountAttribute.INSTANCE).describe();
+        SelectRequest request = new SelectRequest(expression);
+        if(offsetOf(this) > 0) {
+            try {
+                request.setNextToken(skipToken(false));
+            } catch (NoSuchElementException ex) {
+                return 0;
+            }
+        }
+        SelectResult first = context.getSimpleDB().select(request);
+        return countFrom(expression, first);
+    }
+
+    /**
+     * creating the remote domain, planning and skipping to the offset may block,
+     * so they are done on the query executor, which sends the request of the count by the asynchronous client.
+     */
+    @Override
+    public Future<Integer> countAsync() {
+        return new ChainedFuture<Integer>(runOnQueryExecutor(new Callable<Future<Integer>>() {
+            @Override
+            public Future<Integer> call() throws Exception {
+                createRemoteDomainIfNeed(getDomain());
+                if(offsetOf(BaseExpression.this) > 0 || QueryPlanner.plan(BaseExpression.this).size() > 1) {
+                    return runOnCurrentThread(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws Exception {
+                            return count();
+                        }
+                    });
+                }
+
+                final String expression = rebuildWith(CountAttribute.INSTANCE).describe();
+                return new ConvertingFuture<SelectResult,Integer>(context.getSimpleDBAsync().selectAsync(new SelectRequest(expression))) {
+                    @Override
+                    protected Integer convert(SelectResult first) throws Exception {
+                        return countFrom(expression, first);
+                    }
+                };
+            }
+        }));
+    }
+
+    /**
+     * SimpleDB returns a partial count with a NextToken when the count times out,
+     * so this method follows the NextTokens from the first page and sums the partial counts.
+     * with a limit, each page counts at most the limit, so we stop at the limit.
+     */
+    int countFrom(String expression, SelectResult first) throws SimpleQueryException {
+        int limit = limitOf(this);
+        long total = 0;
+        String nextToken = null;
+        SelectResult selectResult = first;
+        while(true) {
+            List<Item> items = selectResult.getItems();
+            if(items.isEmpty()) {
+                if(nextToken == null) throw new SimpleQueryException("can not count records. expression was: " + expression);
+                break;
+            }
+
+            String value  = items.get(0).getAttributes().get(0).getValue();
+            total += Long.parseLong(value);
+            nextToken = selectResult.getNextToken();
+            if(nextToken == null || (limit >= 0 && total >= limit)) break;
+
+            SelectRequest req = new SelectRequest(expression).withNextToken(nextToken);
+            selectResult = context.getSimpleDB().select(req);
+        }
+
+        return capCount(total, limit);
+    }
+
+    @Override
+    public int count(ItemNameSegments segments, Executor executor) throws SimpleQueryException {
+        isNotNull("segments", segments);
+        isNotNull("executor", executor);
+        rejectOffset("a segmented count");
+        createRemoteDomainIfNeed(getDomain());
+
+        List<FutureTask<Integer>> tasks = new ArrayList<FutureTask<Integer>>(segments.size());
+        long total = 0;
+        try {
+            for (ItemNameSegments.Segment segment : segments) {
+                final Expression<T> restricted = Restrictions.and(this, segment.toConditions());
+                FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return restricted.count();
+                    }
+                });
+                tasks.add(task);
+                executor.execute(task);
+            }
+            for (FutureTask<Integer> task : tasks) {
+                total += task.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SimpleQueryException("interrupted while counting the segments of the expression: " + describe(), ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof SimpleQueryException) throw (SimpleQueryException) cause;
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if(cause instanceof Error) throw (Error) cause;
+            throw new SimpleQueryException("could not count a segment of the expression: " + describe(), cause);
+        } finally {
+            for (FutureTask<Integer> task : tasks) {
+                task.cancel(true);
+            }
+        }
+        return capCount(total, limitOf(this));
+    }
+
+    /**
+     * the items of each segment or each page of a publisher are not skipped by the offset of this expression,
+     * so the offset is rejected instead of being ignored.
+     */
+    private void rejectOffset(String operation) {
+        if(offsetOf(this) > 0) throw new IllegalArgumentException("an offset is not supported by " + operation + ": " + describe());
+    }
+
+    /**
+     * @return the NextToken positioned at the offset of this expression, or null if this expression has no offset.
+     * @throws NoSuchElementException if no item exists at the offset.
+     */
+    private String skipToken(boolean consistent) {
+        int offset = offsetOf(this);
+        if(offset == 0) return null;
+
+        //the limit is always described at the end of an expression, and a count for skipping must not have the limit.
+        String countExpression = rebuildWith(CountAttribute.INSTANCE).describe();
+        String limitClause = " limit " + limitOf(this);
+        if(!countExpression.endsWith(limitClause)) throw new IllegalStateException("the limit clause is not found in the expression: " + countExpression);
+        countExpression = countExpression.substring(0, countExpression.length() - limitClause.length());
+        return context.getSkipTokenCache().tokenAt(context.getSimpleDB(), countExpression, offset, consistent);
+    }
+
+    /**
+     * SimpleDB may return fewer items than the limit with a NextToken,
+     * so the following pages are fetched until the limit.
+     *
+     * @return the items from the offset of this expression up to the limit, without a NextToken.
+     */
+    private SelectResult selectPage(boolean consistent) {
+        String token;
+        try {
+            token = skipToken(consistent);
+        } catch (NoSuchElementException ex) {
+            return new SelectResult().withItems(new ArrayList<Item>());
+        }
+
+        int limit = limitOf(this);
+        String expression = describe();
+        List<Item> items = new ArrayList<Item>();
+        do {
+            SelectResult result = context.getSimpleDB().select(new SelectRequest(expression, consistent).withNextToken(token));
+            items.addAll(result.getItems());
+            token = result.getNextToken();
+        } while(token != null && items.size() < limit);
+        if(items.size() > limit) items = new ArrayList<Item>(items.subList(0, limit));
+        return new SelectResult().withItems(items);
+    }
+
+    /**
+     * the callable may wait for the requests on the I/O executor, so it runs on the query executor.
+     */
+    <V> Future<V> runOnQueryExecutor(Callable<V> callable) {
+        FutureTask<V> task = new FutureTask<V>(callable);
+        getContext().getQueryExecutor().execute(task);
+        return task;
+    }
+
+    /**
+     * @return a done Future of the callable, which holds the exception of the callable if it failed.
+     */
+    static <V> Future<V> runOnCurrentThread(Callable<V> callable) {
+        FutureTask<V> task = new FutureTask<V>(callable);
+        task.run();
+        return task;
+    }
+
+    static int offsetOf(Expression<?> expression) {
+        if(expression instanceof LimitExpression) return ((LimitExpression<?>) expression).getOffset();
+        if(expression instanceof BoundExpression) return offsetOf(((BoundExpression<?>) expression).getPreparedExpression().getExpression());
+        if(expression instanceof ProjectionExpression) return offsetOf(((ProjectionExpression<?,?>) expression).getExpression());
+        return 0;
+    }
+
+    static int limitOf(Expression<?> expression) {
+        if(expression instanceof LimitExpression) return ((LimitExpression<?>) expression).getLimitCount();
+        if(expression instanceof BoundExpression) return limitOf(((BoundExpression<?>) expression).getPreparedExpression().getExpression());
+        if(expression instanceof ProjectionExpression) return limitOf(((ProjectionExpression<?,?>) expression).getExpression());
+        return -1;
+    }
+
+    private static int capCount(long total, int limit) {
+        long capped = limit < 0 ? total : Math.min(total, limit);
+        return (int) Math.min(capped, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public PreparedExpression<T> prepare() {
+        return new DefaultPreparedExpression<T>(this);
+    }
+
+    @Override
+    public <V> Expression<V> as(Class<V> viewClass) {
+        return new ProjectionExpression<T,V>(getContext(), this, viewClass);
+    }
 
-        String value  = items.get(0).getAttributes().get(0).getValue();
-        return Integer.parseInt(value);
+    /**
+     * @param options options of fetching the results.
+     * @return an ItemConverter which converts the results of this expression.
+     */
+    protected ItemConverter<T> createItemConverter(FetchOptions options) {
+        ItemConverterFactory factory = getContext().getItemConverterFactory();
+        return options.isLazyHydration() ? factory.createLazy(getDomain()) : factory.create(getDomain());
     }
 
     @Override
@@ -109,8 +447,10 @@ public abstract class BaseExpression<T> implements Expression<T>, Serializable {
         Context c = getContext();
         if(c.isAutoCreateRemoteDomain()) {
             RemoteDomainBuilder domainBuilder = c.getRemoteDomainBuilder();
-            domainBuilder.add(domain);
-            domainBuilder.build();
+            if(!domainBuilder.isBuilt(domain)) {
+                domainBuilder.add(domain);
+                domainBuilder.build();
+            }
         }
     }
 }
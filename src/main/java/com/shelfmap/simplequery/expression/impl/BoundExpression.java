@@ -0,0 +1,79 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.shelfmap.simplequery.attribute.SelectAttribute;
+import com.shelfmap.simplequery.expression.Condition;
+import com.shelfmap.simplequery.expression.Expression;
+import com.shelfmap.simplequery.expression.FetchOptions;
+import com.shelfmap.simplequery.expression.ItemConverter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression whose parameters are bound to values by a {@link DefaultPreparedExpression}.
+ * The description of this expression has been built when the values are bound.
+ * <p>
+ * THIS CLASS IS IMMUTABLE
+ *
+ * @param <T> the type of the results.
+ * @author Tsutomu YANO
+ */
+public class BoundExpression<T> extends BaseExpression<T> {
+    private static final long serialVersionUID = 1L;
+
+    private final DefaultPreparedExpression<T> preparedExpression;
+    private final Map<String,Object> values;
+    private final String description;
+
+    BoundExpression(DefaultPreparedExpression<T> preparedExpression, Map<String,Object> values, String description) {
+        super(preparedExpression.getExpression().getContext(), preparedExpression.getExpression().getDomain());
+        this.preparedExpression = preparedExpression;
+        this.values = Collections.unmodifiableMap(values);
+        this.description = description;
+    }
+
+    @Override
+    public String describe() {
+        return description;
+    }
+
+    @Override
+    public Expression<T> rebuildWith(SelectAttribute... attributes) {
+        return preparedExpression.rebuildWith(attributes).bind(values);
+    }
+
+    Expression<T> restrict(List<Condition<?>> conditions) {
+        return preparedExpression.restrict(conditions).bind(values);
+    }
+
+    /**
+     * the results are converted in the same way with the prepared expression, like a projection.
+     */
+    @Override
+    protected ItemConverter<T> createItemConverter(FetchOptions options) {
+        return preparedExpression.getExpression().createItemConverter(options);
+    }
+
+    public DefaultPreparedExpression<T> getPreparedExpression() {
+        return preparedExpression;
+    }
+
+    public Map<String,Object> getValues() {
+        return values;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A Future of the result of the Future which another Future returns.
+ * <p>
+ * An asynchronous operation which must be prepared on an executor before its request is sent
+ * returns the Future of the request from the executor, so the executor is not blocked while the request is sent.
+ * This Future waits for both of them.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @param <T> the type of the result.
+ * @author Tsutomu YANO
+ */
+public class ChainedFuture<T> implements Future<T> {
+    private final Future<? extends Future<T>> source;
+
+    public ChainedFuture(Future<? extends Future<T>> source) {
+        isNotNull("source", source);
+        this.source = source;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if(source.cancel(mayInterruptIfRunning)) return true;
+        Future<T> next = nextIfDone();
+        return next != null && next.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        if(source.isCancelled()) return true;
+        Future<T> next = nextIfDone();
+        return next != null && next.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        if(!source.isDone()) return false;
+        Future<T> next = nextIfDone();
+        return next == null || next.isDone();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        return source.get().get();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Future<T> next = source.get(timeout, unit);
+        return next.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the Future which the source returned, or null if the source is not done, failed or was cancelled.
+     */
+    private Future<T> nextIfDone() {
+        if(!source.isDone() || source.isCancelled()) return null;
+        try {
+            return source.get();
+        } catch (ExecutionException ex) {
+            return null;
+        } catch (CancellationException ex) {
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A Future which converts the result of another Future.
+ * <p>
+ * The result is converted only once, on the first thread which gets the result,
+ * so no thread is blocked while the source is not done.
+ * An exception thrown by the conversion is thrown from {@link #get()} as the cause of an ExecutionException.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @param <S> the type of the result of the source.
+ * @param <T> the type of the converted result.
+ * @author Tsutomu YANO
+ */
+public abstract class ConvertingFuture<S,T> implements Future<T> {
+    private final Future<S> source;
+
+    private final Lock lock = new ReentrantLock();
+    private boolean converted;
+    private T result;
+    private ExecutionException failure;
+
+    public ConvertingFuture(Future<S> source) {
+        isNotNull("source", source);
+        this.source = source;
+    }
+
+    /**
+     * convert the result of the source.
+     *
+     * @param sourceResult the result of the source.
+     * @return the converted result.
+     * @throws Exception if the result could not be converted.
+     */
+    protected abstract T convert(S sourceResult) throws Exception;
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return source.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return source.isCancelled();
+    }
+
+    /**
+     * @return true if the source is done. the conversion may not be done yet.
+     */
+    @Override
+    public boolean isDone() {
+        return source.isDone();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        return convertOnce(source.get());
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return convertOnce(source.get(timeout, unit));
+    }
+
+    private T convertOnce(S sourceResult) throws ExecutionException {
+        lock.lock();
+        try {
+            if(!converted) {
+                try {
+                    result = convert(sourceResult);
+                } catch (Exception ex) {
+                    failure = new ExecutionException(ex);
+                }
+                converted = true;
+            }
+            if(failure != null) throw failure;
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -79,6 +79,11 @@ public class DefaultDomainExpression<T> extends BaseExpression<T> implements Dom
         return new DefaultLimitExpression<T>(getContext(), this, limitCount);
     }
 
+    @Override
+    public LimitExpression<T> page(int pageIndex, int pageSize) {
+        return limit(pageSize).offset(DefaultLimitExpression.offsetOfPage(pageIndex, pageSize));
+    }
+
     @Override
     public OrderByExpression<T> orderBy(ConditionAttribute attribute, SortOrder sortOrder) {
         return new DefaultOrderByExpression<T>(getContext(), this, attribute, sortOrder);
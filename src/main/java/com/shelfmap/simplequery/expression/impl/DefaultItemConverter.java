@@ -29,9 +29,7 @@ import static com.shelfmap.simplequery.util.Assertion.isNotNull;
 
 import com.shelfmap.simplequery.util.Objects;
 import java.lang.reflect.Array;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,7 +44,8 @@ public class DefaultItemConverter<T> implements ItemConverter<T> {
     private final Domain<T> domain;
     private final Context context;
     private final DomainInstanceFactory<T> instanceFactory;
-    private DomainDescriptor descriptor;
+    //volatile, because a converter is shared by the threads which convert pages in parallel.
+    private volatile DomainDescriptor descriptor;
 
     public DefaultItemConverter(Context context, Domain<T> domain) {
         isNotNull("domain", domain);
@@ -58,20 +57,16 @@ public class DefaultItemConverter<T> implements ItemConverter<T> {
 
     @Override
     public T convertToInstance(Item item) throws CanNotConvertItemException {
-        if(descriptor == null) {
-            descriptor = getContext().getDomainDescriptorFactory().create(getDomain());
-        }
+        DomainDescriptor descriptor = getDescriptor();
 
         T instance = instanceFactory.create();
-        for (Attribute attr : item.getAttributes()) {
-            DomainAttribute<?,?> domainAttribute = null;
+        for (Map.Entry<String, List<String>> entry : groupByName(item.getAttributes()).entrySet()) {
+            String attributeName = entry.getKey();
+            DomainAttribute<?,?> domainAttribute = descriptor.getAttribute(attributeName);
             try {
-                String attributeName = attr.getName();
-                String attributeValue = attr.getValue();
-                domainAttribute = descriptor.getAttribute(attributeName);
-                writeValueToDomain(domainAttribute, instance, attributeValue);
+                writeValuesToDomain(domainAttribute, instance, entry.getValue());
             } catch (CanNotRestoreAttributeException ex) {
-                throw new CanNotConvertItemException("could not write a attribute: " + domainAttribute.getAttributeName() + " for the item: " + item.getName(), ex, item);
+                throw new CanNotConvertItemException("could not write a attribute: " + attributeName + " for the item: " + item.getName(), ex, item);
             }
         }
 
@@ -102,6 +97,15 @@ public class DefaultItemConverter<T> implements ItemConverter<T> {
         return instance;
     }
 
+    private DomainDescriptor getDescriptor() {
+        DomainDescriptor result = descriptor;
+        if(result == null) {
+            result = getContext().getDomainDescriptorFactory().create(getDomain());
+            descriptor = result;
+        }
+        return result;
+    }
+
     private <VT,CT> void writeItemNameToDomain(DomainAttribute<VT,CT> itemNameAttribute, T instance, String itemNameValue) throws CanNotRestoreAttributeException {
         AttributeConverter<VT> converter = itemNameAttribute.getAttributeConverter();
         @SuppressWarnings("unchecked")
@@ -109,25 +113,58 @@ public class DefaultItemConverter<T> implements ItemConverter<T> {
         itemNameAttribute.getAttributeAccessor().write(instance, value);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * group the values of the attributes by their names with keeping the order of the values,
+     * so that a container of a multi-valued attribute can be built at once.
+     */
+    private static Map<String, List<String>> groupByName(List<Attribute> attributes) {
+        Map<String, List<String>> grouped = new LinkedHashMap<String, List<String>>();
+        for (Attribute attr : attributes) {
+            List<String> values = grouped.get(attr.getName());
+            if(values == null) {
+                values = new ArrayList<String>(1);
+                grouped.put(attr.getName(), values);
+            }
+            values.add(attr.getValue());
+        }
+        return grouped;
+    }
+
     private <VT,CT> void writeValueToDomain(DomainAttribute<VT,CT> domainAttribute, T instance, String attributeValue) throws CanNotRestoreAttributeException, CanNotConvertItemException {
+        List<String> values = attributeValue == null
+                ? Collections.<String>emptyList()
+                : Collections.singletonList(attributeValue);
+        writeValuesToDomain(domainAttribute, instance, values);
+    }
+
+    /**
+     * write all values of an attribute into the domain instance.
+     * The values are appended to the current values of a multi-valued property.
+     * If the values are empty, an empty container is written only when the property is null.
+     */
+    @SuppressWarnings("unchecked")
+    private <VT,CT> void writeValuesToDomain(DomainAttribute<VT,CT> domainAttribute, T instance, List<String> attributeValues) throws CanNotRestoreAttributeException, CanNotConvertItemException {
         if(domainAttribute != null) {
             Class<VT> valueType = domainAttribute.getValueType();
             Class<CT> containerType = domainAttribute.getContainerType();
 
             AttributeAccessor<CT> accessor = domainAttribute.getAttributeAccessor();
-            LOGGER.trace("valueType: " + valueType);
-            LOGGER.trace("containerType: " + containerType);
+            AttributeConverter<VT> converter = domainAttribute.getAttributeConverter();
+            LOGGER.trace("valueType: {}", valueType);
+            LOGGER.trace("containerType: {}", containerType);
 
             Class<?> objValueType = Objects.primitiveToObject(valueType);
             Class<?> objContainerType = Objects.primitiveToObject(containerType);
 
             if(objValueType.equals(objContainerType)) {
-                VT convertedValue = domainAttribute.getAttributeConverter().restoreValue(attributeValue);
-                accessor.write(instance, (CT)convertedValue);
+                //a single-valued property holds the last value.
+                for (String attributeValue : attributeValues) {
+                    VT convertedValue = converter.restoreValue(attributeValue);
+                    accessor.write(instance, (CT)convertedValue);
+                }
             } else if(containerType.isArray()) {
                 CT prev = accessor.read(instance);
-                if(attributeValue == null) {
+                if(attributeValues.isEmpty()) {
                     if(prev == null) {
                         Object newArray = Array.newInstance(valueType, 0);
                         LOGGER.trace("type of newArray: {}", newArray.getClass());
@@ -135,15 +172,16 @@ public class DefaultItemConverter<T> implements ItemConverter<T> {
                     }
                 } else {
                     int prevLength = prev == null ? 0 : Array.getLength(prev);
-                    Object newArray = Array.newInstance(valueType, prevLength+1);
+                    Object newArray = Array.newInstance(valueType, prevLength + attributeValues.size());
                     if(prev != null) {
-                        for(int i = 0; i < prevLength; i++) {
-                            Object o = Array.get(prev, i);
-                            Array.set(newArray, i, o);
-                        }
+                        //System.arraycopy can copy between arrays of a same primitive type without boxing.
+                        System.arraycopy(prev, 0, newArray, 0, prevLength);
+                    }
+                    int index = prevLength;
+                    for (String attributeValue : attributeValues) {
+                        VT convertedValue = converter.restoreValue(attributeValue);
+                        Array.set(newArray, index++, convertedValue);
                     }
-                    VT convertedValue = domainAttribute.getAttributeConverter().restoreValue(attributeValue);
-                    Array.set(newArray, prevLength, convertedValue);
                     accessor.write(instance, containerType.cast(newArray));
                 }
             } else if(Collection.class.isAssignableFrom(containerType)) {
@@ -153,11 +191,14 @@ public class DefaultItemConverter<T> implements ItemConverter<T> {
 
                     @SuppressWarnings("unchecked")
                     Collection<VT> newCol = (Collection<VT>) containerType.newInstance();
+                    if(newCol instanceof ArrayList) {
+                        ((ArrayList<VT>) newCol).ensureCapacity((prev == null ? 0 : prev.size()) + attributeValues.size());
+                    }
                     if(prev != null) {
                         newCol.addAll(prev);
                     }
-                    if(attributeValue != null) {
-                        VT convertedValue = domainAttribute.getAttributeConverter().restoreValue(attributeValue);
+                    for (String attributeValue : attributeValues) {
+                        VT convertedValue = converter.restoreValue(attributeValue);
                         newCol.add(convertedValue);
                     }
                     accessor.write(instance, (CT)newCol);
@@ -174,9 +215,7 @@ public class DefaultItemConverter<T> implements ItemConverter<T> {
 
     @Override
     public ItemState makeCurrentStateOf(Object domainObject) {
-        if(descriptor == null) {
-            descriptor = getContext().getDomainDescriptorFactory().create(getDomain());
-        }
+        DomainDescriptor descriptor = getDescriptor();
 
         ItemState lastState = new SimpleItemState(getDomain());
 
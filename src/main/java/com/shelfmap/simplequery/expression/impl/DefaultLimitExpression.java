@@ -34,11 +34,16 @@ public class DefaultLimitExpression<T> extends BaseExpression<T> implements Limi
     private static final long serialVersionUID = 1L;
 
     private final int limitCount;
+    private final int offset;
     private DomainExpression<T> domainExpression;
     private WhereExpression<T> whereExpression;
     private OrderByExpression<T> orderByExpression;
 
     protected DefaultLimitExpression(Context context, final DomainExpression<T> domainExpression, WhereExpression<T> whereExpression, OrderByExpression<T> orderByExpression, int limitCount) {
+        this(context, domainExpression, whereExpression, orderByExpression, limitCount, 0);
+    }
+
+    protected DefaultLimitExpression(Context context, final DomainExpression<T> domainExpression, WhereExpression<T> whereExpression, OrderByExpression<T> orderByExpression, int limitCount, int offset) {
         super(context,
               Assertion.isNotNullAndGet("domainExpression", domainExpression, new Assertion.Accessor<Domain<T>>() {
                 @Override
@@ -47,7 +52,9 @@ public class DefaultLimitExpression<T> extends BaseExpression<T> implements Limi
                 }
               }));
 
+        if(offset < 0) throw new IllegalArgumentException("offset must not be negative: " + offset);
         this.limitCount = limitCount;
+        this.offset = offset;
         this.domainExpression = domainExpression;
         this.whereExpression = whereExpression;
         this.orderByExpression = orderByExpression;
@@ -117,12 +124,35 @@ public class DefaultLimitExpression<T> extends BaseExpression<T> implements Limi
         return this.limitCount;
     }
 
+    @Override
+    public int getOffset() {
+        return this.offset;
+    }
+
+    @Override
+    public LimitExpression<T> offset(int offset) {
+        return new DefaultLimitExpression<T>(getContext(), domainExpression, whereExpression, orderByExpression, limitCount, offset);
+    }
+
     @Override
     public LimitExpression<T> rebuildWith(SelectAttribute... attributes) {
-        return (orderByExpression != null)
+        LimitExpression<T> rebuilt = (orderByExpression != null)
                 ? new DefaultLimitExpression<T>(getContext(), orderByExpression.rebuildWith(attributes), limitCount)
                 : (whereExpression != null)
                     ? new DefaultLimitExpression<T>(getContext(), whereExpression.rebuildWith(attributes), limitCount)
                     : new DefaultLimitExpression<T>(getContext(), domainExpression.rebuildWith(attributes), limitCount);
+        return offset == 0 ? rebuilt : rebuilt.offset(offset);
+    }
+
+    /**
+     * @return the offset of the first item of the page.
+     * @throws IllegalArgumentException if the page index is negative, the page size is not positive or the offset overflows.
+     */
+    static int offsetOfPage(int pageIndex, int pageSize) {
+        if(pageIndex < 0) throw new IllegalArgumentException("pageIndex must not be negative: " + pageIndex);
+        if(pageSize <= 0) throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        long offset = (long) pageIndex * pageSize;
+        if(offset > Integer.MAX_VALUE) throw new IllegalArgumentException("the offset of the page is too large. pageIndex: " + pageIndex + ", pageSize: " + pageSize);
+        return (int) offset;
     }
 }
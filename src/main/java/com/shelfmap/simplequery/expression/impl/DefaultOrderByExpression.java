@@ -111,6 +111,11 @@ public class DefaultOrderByExpression<T> extends BaseExpression<T> implements Or
         return new DefaultLimitExpression<T>(getContext(), this, limitCount);
     }
 
+    @Override
+    public LimitExpression<T> page(int pageIndex, int pageSize) {
+        return limit(pageSize).offset(DefaultLimitExpression.offsetOfPage(pageIndex, pageSize));
+    }
+
     @Override
     public OrderByExpression<T> rebuildWith(SelectAttribute... attributes) {
         return (getWhereExpression() != null)
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.amazonaws.services.simpledb.util.SimpleDBUtils;
+import com.shelfmap.simplequery.attribute.SelectAttribute;
+import com.shelfmap.simplequery.domain.AttributeConverter;
+import com.shelfmap.simplequery.expression.*;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * A PreparedExpression which splits the description of an expression at the placeholders of the parameters.
+ * <p>
+ * Binding values only converts each value by the AttributeConverter of its attribute,
+ * quotes it, and joins it with the fragments of the description.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @param <T> the type of the results.
+ * @author Tsutomu YANO
+ */
+public class DefaultPreparedExpression<T> implements PreparedExpression<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Pattern PLACEHOLDER = Pattern.compile("'" + ParameterConverter.MARK + "(\\d+):([A-Za-z0-9_]+)" + ParameterConverter.MARK + "'");
+
+    private final BaseExpression<T> expression;
+    private final String[] fragments;
+    private final String[] names;
+    private final AttributeConverter<?>[] converters;
+    private final List<String> parameterNames;
+    private final String template;
+
+    //the templates of the expressions rebuilt with other select attributes, like the count of this expression.
+    private final ConcurrentMap<List<SelectAttribute>, DefaultPreparedExpression<T>> rebuilt = new ConcurrentHashMap<List<SelectAttribute>, DefaultPreparedExpression<T>>();
+
+    /**
+     * @param expression the expression to prepare.
+     * @throws IllegalStateException if the description of the expression has a placeholder which can not be resolved.
+     */
+    public DefaultPreparedExpression(BaseExpression<T> expression) {
+        isNotNull("expression", expression);
+        this.expression = expression;
+
+        String description = expression.describe();
+        List<AttributeConverter<?>> whereConverters = parameterConvertersOf(expression);
+        List<String> fragmentList = new ArrayList<String>();
+        List<String> nameList = new ArrayList<String>();
+        List<AttributeConverter<?>> converterList = new ArrayList<AttributeConverter<?>>();
+        Set<String> distinctNames = new LinkedHashSet<String>();
+        StringBuilder templateBuilder = new StringBuilder();
+
+        java.util.regex.Matcher placeholder = PLACEHOLDER.matcher(description);
+        int last = 0;
+        while(placeholder.find()) {
+            int index = Integer.parseInt(placeholder.group(1));
+            String name = placeholder.group(2);
+            if(index >= whereConverters.size()) throw new IllegalStateException("the placeholder of the parameter '" + name + "' can not be resolved in the expression: " + description);
+
+            String fragment = description.substring(last, placeholder.start());
+            fragmentList.add(fragment);
+            nameList.add(name);
+            converterList.add(whereConverters.get(index));
+            distinctNames.add(name);
+            templateBuilder.append(fragment).append(':').append(name);
+            last = placeholder.end();
+        }
+        String rest = description.substring(last);
+        if(rest.indexOf(ParameterConverter.MARK) >= 0) throw new IllegalStateException("the expression has a broken placeholder. a value of a condition must not contain '\\u0000': " + description);
+        fragmentList.add(rest);
+        templateBuilder.append(rest);
+
+        this.fragments = fragmentList.toArray(new String[fragmentList.size()]);
+        this.names = nameList.toArray(new String[nameList.size()]);
+        this.converters = converterList.toArray(new AttributeConverter<?>[converterList.size()]);
+        this.parameterNames = Collections.unmodifiableList(new ArrayList<String>(distinctNames));
+        this.template = templateBuilder.toString();
+    }
+
+    /**
+     * find the where expression in the expression in the same way with {@link Restrictions}.
+     */
+    private static List<AttributeConverter<?>> parameterConvertersOf(Expression<?> expression) {
+        if(expression instanceof ProjectionExpression) return parameterConvertersOf(((ProjectionExpression<?,?>) expression).getExpression());
+        if(expression instanceof LimitExpression) return parameterConvertersOf(((LimitExpression<?>) expression).getWhereExpression());
+        if(expression instanceof OrderByExpression) return parameterConvertersOf(((OrderByExpression<?>) expression).getWhereExpression());
+        if(expression instanceof DefaultWhereExpression) return ((DefaultWhereExpression<?>) expression).getParameterConverters();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    @Override
+    public Expression<T> bind(String name, Object value) {
+        return bind(Collections.singletonMap(name, value));
+    }
+
+    @Override
+    public Expression<T> bind(Map<String,?> values) {
+        isNotNull("values", values);
+        for (String name : values.keySet()) {
+            if(!parameterNames.contains(name)) throw new IllegalArgumentException("the parameter '" + name + "' is not found in the expression: " + template);
+        }
+        for (String name : parameterNames) {
+            if(values.get(name) == null) throw new IllegalArgumentException("no value is bound to the parameter '" + name + "' of the expression: " + template);
+        }
+
+        StringBuilder sb = new StringBuilder(fragments[0]);
+        for (int i = 0; i < names.length; i++) {
+            sb.append(SimpleDBUtils.quoteValue(convert(converters[i], names[i], values.get(names[i]))));
+            sb.append(fragments[i + 1]);
+        }
+        return new BoundExpression<T>(this, new HashMap<String,Object>(values), sb.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> String convert(AttributeConverter<V> converter, String name, Object value) {
+        try {
+            return converter.convertValue((V) value);
+        } catch (ClassCastException ex) {
+            throw new IllegalArgumentException("the value of the parameter '" + name + "' can not be converted: " + value, ex);
+        }
+    }
+
+    /**
+     * @return the template of this expression, in which each parameter is written as ':name'.
+     */
+    @Override
+    public String describe() {
+        return template;
+    }
+
+    @Override
+    public BaseExpression<T> getExpression() {
+        return expression;
+    }
+
+    @SuppressWarnings("unchecked")
+    DefaultPreparedExpression<T> rebuildWith(SelectAttribute... attributes) {
+        List<SelectAttribute> key = Arrays.asList(attributes.clone());
+        DefaultPreparedExpression<T> prepared = rebuilt.get(key);
+        if(prepared == null) {
+            prepared = new DefaultPreparedExpression<T>((BaseExpression<T>) expression.rebuildWith(attributes));
+            DefaultPreparedExpression<T> other = rebuilt.putIfAbsent(key, prepared);
+            if(other != null) prepared = other;
+        }
+        return prepared;
+    }
+
+    @SuppressWarnings("unchecked")
+    DefaultPreparedExpression<T> restrict(List<Condition<?>> conditions) {
+        return new DefaultPreparedExpression<T>((BaseExpression<T>) Restrictions.and(expression, conditions));
+    }
+
+    @Override
+    public String toString() {
+        return "DefaultPreparedExpression{" + template + '}';
+    }
+}
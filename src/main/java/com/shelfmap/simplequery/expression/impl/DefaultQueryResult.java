@@ -20,8 +20,12 @@ import com.amazonaws.services.simpledb.model.SelectResult;
 import com.shelfmap.simplequery.Context;
 import com.shelfmap.simplequery.domain.Domain;
 import com.shelfmap.simplequery.expression.Expression;
+import com.shelfmap.simplequery.expression.FetchOptions;
+import com.shelfmap.simplequery.expression.ItemConverter;
+import com.shelfmap.simplequery.expression.QueryCursor;
 import com.shelfmap.simplequery.expression.QueryResults;
 import com.shelfmap.simplequery.expression.SimpleQueryException;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
 import java.util.Iterator;
 
 /**
@@ -35,33 +39,123 @@ public class DefaultQueryResult<T> implements QueryResults<T> {
     private final Expression<T> expression;
     private final SelectResult result;
     private final Domain<T> domain;
+    private final ItemConverter<T> itemConverter;
+    private final FetchOptions options;
+    private final FetchSizeController fetchSize;
+    private final boolean consistent;
+
+    //the memoized result of count. -1 means 'not counted yet'.
+    //two threads may count at a same time at first, but both get a same result.
+    private volatile int size = -1;
 
     public DefaultQueryResult(Context context, Domain<T> domain, Expression<T> expression, SelectResult result) {
         this.context = context;
         this.domain = domain;
         this.expression = expression;
         this.result = result;
+        this.itemConverter = null;
+        this.options = FetchOptions.DEFAULT;
+        this.fetchSize = null;
+        this.consistent = false;
+    }
+
+    public DefaultQueryResult(Context context, ItemConverter<T> itemConverter, Expression<T> expression, SelectResult result) {
+        this(context, itemConverter, expression, result, FetchOptions.DEFAULT);
     }
 
+    public DefaultQueryResult(Context context, ItemConverter<T> itemConverter, Expression<T> expression, SelectResult result, FetchOptions options) {
+        this(context, itemConverter, expression, result, options, null);
+    }
+
+    /**
+     * @param fetchSize the controller which requested the first page, and decides the size of the following pages.
+     *                  may be null if the fetch size is disabled.
+     */
+    public DefaultQueryResult(Context context, ItemConverter<T> itemConverter, Expression<T> expression, SelectResult result, FetchOptions options, FetchSizeController fetchSize) {
+        this(context, itemConverter, expression, result, options, fetchSize, false);
+    }
+
+    /**
+     * @param fetchSize the controller which requested the first page, and decides the size of the following pages.
+     *                  may be null if the fetch size is disabled.
+     * @param consistent true if the first page has been read consistently. the following pages are read in the same way.
+     */
+    public DefaultQueryResult(Context context, ItemConverter<T> itemConverter, Expression<T> expression, SelectResult result, FetchOptions options, FetchSizeController fetchSize, boolean consistent) {
+        isNotNull("options", options);
+        this.context = context;
+        this.domain = itemConverter.getDomain();
+        this.expression = expression;
+        this.result = result;
+        this.itemConverter = itemConverter;
+        this.options = options;
+        this.fetchSize = fetchSize;
+        this.consistent = consistent;
+    }
+
+    /**
+     * If prefetch is enabled, each iterator fetches the next pages in background independently.
+     * If the fetch size is adaptive, all iterators share the fetch size which is learned from their pages.
+     */
     @Override
     public Iterator<T> iterator() {
-        return new SelectResultIterator<T>(getContext(), domain, expression, result);
+        return itemConverter == null
+                ? new SelectResultIterator<T>(getContext(), domain, expression, result)
+                : new SelectResultIterator<T>(getContext(), itemConverter, expression, result, options, fetchSize, consistent);
     }
 
+    /**
+     * the count is requested to SimpleDB only at the first call and remembered.
+     */
     @Override
     public int size() {
-        try {
-            return expression.count();
-        } catch (SimpleQueryException ex) {
-            throw new IllegalStateException("could not count the expression.", ex);
+        int count = size;
+        if(count < 0) {
+            try {
+                count = expression.count();
+            } catch (SimpleQueryException ex) {
+                throw new IllegalStateException("could not count the expression.", ex);
+            }
+            size = count;
         }
+        return count;
     }
 
+    /**
+     * this method does not count the results if the first page tells whether results exist.
+     */
     @Override
     public boolean isEmpty() {
+        if(!result.getItems().isEmpty()) return false;
+        if(result.getNextToken() == null) return true;
         return size() == 0;
     }
 
+    /**
+     * the cursor points the page after the first page of these results.
+     *
+     * @throws UnsupportedOperationException if these results are limited by the limit of the expression with a fetch size,
+     *                                       because a cursor can not keep the number of the remaining results.
+     */
+    @Override
+    public String cursor() {
+        if(isLimitedWithFetchSize()) {
+            throw new UnsupportedOperationException("a cursor is not supported by the results which are limited with a fetch size.");
+        }
+        String nextToken = result.getNextToken();
+        if(nextToken == null) return null;
+        QueryCursor cursor = ResumedExpression.cursorOf(expression, domain, nextToken, options.isLazyHydration(), consistent);
+        return context.getQueryCursorCodec().encode(cursor);
+    }
+
+    @Override
+    public boolean isResumable() {
+        return !isLimitedWithFetchSize() && ResumedExpression.isResumable(expression);
+    }
+
+    private boolean isLimitedWithFetchSize() {
+        return fetchSize != null && BaseExpression.limitOf(expression) >= 0;
+    }
+
     @Override
     public Context getContext() {
         return this.context;
@@ -28,6 +28,9 @@ import com.shelfmap.simplequery.expression.*;
 import com.shelfmap.simplequery.expression.matcher.Matcher;
 import com.shelfmap.simplequery.util.Assertion;
 import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  *
@@ -38,6 +41,7 @@ public class DefaultWhereExpression<T> extends BaseExpression<T> implements Wher
 
     private DomainExpression<T> domainExpression;
     private Condition<?> condition;
+    private transient volatile Compiled compiled;
 
     public DefaultWhereExpression(Context context, final DomainExpression<T> domainExpression, Condition<?> condition) {
         super(context,
@@ -58,35 +62,92 @@ public class DefaultWhereExpression<T> extends BaseExpression<T> implements Wher
         return new DefaultOrderByExpression<T>(getContext(), this, attribute, sortOrder);
     }
 
+    /**
+     * the expression is described only once, because this expression is immutable.
+     */
     @Override
-    @SuppressWarnings("unchecked")
     public String describe() {
-        StringBuilder sb = new StringBuilder();
-        DomainDescriptor descriptor = getContext().getDomainDescriptorFactory().create(getDomain());
+        return compiled().description;
+    }
+
+    /**
+     * @return the AttributeConverters of the attributes, which the placeholders of {@link com.shelfmap.simplequery.expression.Parameter}s
+     *         in the description of this expression refer to by their indexes.
+     */
+    List<AttributeConverter<?>> getParameterConverters() {
+        return compiled().parameterConverters;
+    }
 
-        Condition<?> current = condition;
-        while (current.getParent() != null) {
-            configureMatcher(descriptor, current);
-            current = current.getParent();
+    private Compiled compiled() {
+        Compiled result = this.compiled;
+        if(result == null) {
+            //two threads may compile at a same time, but both get a same result.
+            result = compile();
+            this.compiled = result;
         }
+        return result;
+    }
+
+    private Compiled compile() {
+        DomainDescriptor descriptor = getContext().getDomainDescriptorFactory().create(getDomain());
+        List<AttributeConverter<?>> converters = new ArrayList<AttributeConverter<?>>();
+        Condition<?> configured = configure(descriptor, condition, converters);
 
+        StringBuilder sb = new StringBuilder();
         sb.append(domainExpression.describe());
         sb.append(" where ");
-        sb.append(condition.describe());
-        return sb.toString();
+        sb.append(configured.describe());
+        return new Compiled(sb.toString(), Collections.unmodifiableList(converters));
+    }
+
+    /**
+     * create a copy of the chain of conditions whose matchers have the AttributeConverters of the attributes,
+     * including the conditions in groups and not-conditions.
+     * The matchers of this expression are never changed, so this expression can be shared by threads.
+     */
+    private Condition<?> configure(DomainDescriptor descriptor, Condition<?> current, List<AttributeConverter<?>> converters) {
+        if (current.getParent() == null) return current;
+
+        Condition<?> parent = configure(descriptor, current.getParent(), converters);
+        Condition<?> configured;
+        if (current instanceof ConditionGroup) {
+            configured = new ConditionGroup(configure(descriptor, ((ConditionGroup) current).getCondition(), converters));
+        } else if (current instanceof NotCondition) {
+            configured = new NotCondition(configure(descriptor, ((NotCondition) current).getCondition(), converters));
+        } else {
+            configured = configureMatcher(descriptor, current, converters);
+        }
+        return configured.withParent(parent, current.getOperator());
     }
 
-    private <AT> void configureMatcher(DomainDescriptor descriptor, Condition<AT> current) {
+    private <AT> Condition<AT> configureMatcher(DomainDescriptor descriptor, Condition<AT> current, List<AttributeConverter<?>> converters) {
         String attributeName = current.getAttribute().getAttributeName();
         Matcher<AT> matcher = current.getMatcher();
-        if (matcher != null) {
-
-            //TODO DomainAttributes#getAttribute might return an DomainAttribute whose type parameter don't match with the Condition 'current'.
-            @SuppressWarnings("unchecked")
-            DomainAttribute<AT,?> attribute = (DomainAttribute<AT,?>) descriptor.getAttribute(attributeName);
-            if(attribute != null) {
-                matcher.setAttributeConverter(attribute.getAttributeConverter());
-            }
+        if (matcher == null) return current;
+
+        AttributeConverter<AT> converter = matcher.getAttributeConverter();
+
+        //TODO DomainAttributes#getAttribute might return an DomainAttribute whose type parameter don't match with the Condition 'current'.
+        @SuppressWarnings("unchecked")
+        DomainAttribute<AT,?> attribute = (DomainAttribute<AT,?>) descriptor.getAttribute(attributeName);
+        if(attribute != null) {
+            converter = attribute.getAttributeConverter();
+        }
+
+        converters.add(converter);
+        return current.withMatcher(matcher.withAttributeConverter(new ParameterConverter<AT>(converter, converters.size() - 1)));
+    }
+
+    /**
+     * THIS CLASS IS IMMUTABLE
+     */
+    private static final class Compiled {
+        final String description;
+        final List<AttributeConverter<?>> parameterConverters;
+
+        Compiled(String description, List<AttributeConverter<?>> parameterConverters) {
+            this.description = description;
+            this.parameterConverters = parameterConverters;
         }
     }
 
@@ -105,6 +166,11 @@ public class DefaultWhereExpression<T> extends BaseExpression<T> implements Wher
         return new DefaultLimitExpression<T>(getContext(), this, limitCount);
     }
 
+    @Override
+    public LimitExpression<T> page(int pageIndex, int pageSize) {
+        return limit(pageSize).offset(DefaultLimitExpression.offsetOfPage(pageIndex, pageSize));
+    }
+
     @Override
     public WhereExpression<T> and(Condition<?> other) {
         return new DefaultWhereExpression<T>(getContext(), this.domainExpression, condition.and(other));
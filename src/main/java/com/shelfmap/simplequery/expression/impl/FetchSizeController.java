@@ -0,0 +1,203 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.Item;
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.amazonaws.services.simpledb.model.SelectResult;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.expression.FetchOptions;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Decides the number of items of each request of a scan.
+ * <p>
+ * An adaptive controller doubles the size after each page, but the size is bounded by three estimates:
+ * <ul>
+ * <li>the size of a response. SimpleDB truncates a response at 1MB,
+ *     so the size is bounded to the half of it by the average size of an item.</li>
+ * <li>the latency of a request. SimpleDB times out a select after 5 seconds,
+ *     so the size is bounded to the items which were returned in a second.</li>
+ * <li>the rate of the consumer. If consuming a page takes far longer than fetching it,
+ *     the round trips are not the bottleneck and a larger page only costs memory, so the size does not grow.</li>
+ * </ul>
+ * A page which SimpleDB truncated with a NextToken shrinks the size to the number of the returned items.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @author Tsutomu YANO
+ */
+public class FetchSizeController {
+    //the size of the response of SimpleDB is at most 1MB.
+    static final long TARGET_RESPONSE_BYTES = 512L * 1024L;
+    static final long TARGET_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    static final int CONSUMER_BOUND_RATIO = 4;
+    //the xml tags of an attribute in a response.
+    private static final int ATTRIBUTE_OVERHEAD_BYTES = 64;
+    private static final Pattern LIMIT_CLAUSE = Pattern.compile("\\s+limit\\s+\\d+$");
+
+    private final int maximumSize;
+    private final boolean adaptive;
+
+    private final Lock lock = new ReentrantLock();
+    private int fetchSize;
+    private double bytesPerItem;
+    private double latencyNanos;
+    private double consumeNanosPerItem;
+
+    /**
+     * @param initialSize the number of items of the first request.
+     * @param maximumSize the maximum number of items of a request. if same with initialSize, the size never changes.
+     */
+    public FetchSizeController(int initialSize, int maximumSize) {
+        if(initialSize <= 0) throw new IllegalArgumentException("initialSize must be positive: " + initialSize);
+        if(maximumSize < initialSize || maximumSize > FetchOptions.MAX_FETCH_SIZE) throw new IllegalArgumentException("maximumSize must be between initialSize and " + FetchOptions.MAX_FETCH_SIZE + ": " + maximumSize);
+        this.fetchSize = initialSize;
+        this.maximumSize = maximumSize;
+        this.adaptive = maximumSize > initialSize;
+    }
+
+    /**
+     * @return a controller for the options, or null if the fetch size is disabled.
+     */
+    public static FetchSizeController of(FetchOptions options) {
+        isNotNull("options", options);
+        return options.isFetchSizeEnabled() ? new FetchSizeController(options.getFetchSize(), options.getMaxFetchSize()) : null;
+    }
+
+    /**
+     * replace the limit of a select expression by the number of items of a request.
+     *
+     * @param expression a described select expression.
+     * @param pageSize the number of items of a request.
+     * @return the expression which ends with the limit clause of pageSize.
+     */
+    public static String withPageLimit(String expression, int pageSize) {
+        isNotNull("expression", expression);
+        //the limit is always described at the end of an expression.
+        return LIMIT_CLAUSE.matcher(expression).replaceFirst("") + " limit " + pageSize;
+    }
+
+    /**
+     * request a page by the current fetch size, and adjust the fetch size by the page.
+     *
+     * @param context the context to get the SimpleDB client from.
+     * @param expression the described select expression. its limit is replaced by the fetch size.
+     * @param consistent true if the page should be read consistently.
+     * @param nextToken the NextToken of the previous page, or null for the first page.
+     * @param remaining the number of items which the results still can have, or -1 if the results have no limit.
+     * @return the page, which has no NextToken if it reaches the remaining number of items.
+     */
+    public SelectResult select(Context context, String expression, boolean consistent, String nextToken, int remaining) {
+        isNotNull("context", context);
+        int size = nextFetchSize();
+        int requested = remaining < 0 ? size : Math.max(1, Math.min(size, remaining));
+        SelectRequest request = new SelectRequest(withPageLimit(expression, requested), consistent).withNextToken(nextToken);
+        long start = System.nanoTime();
+        SelectResult page = context.getSimpleDB().select(request);
+        pageFetched(requested, page, System.nanoTime() - start);
+
+        List<Item> items = page.getItems();
+        if(remaining < 0 || items.size() < remaining) return page;
+        return new SelectResult().withItems(new ArrayList<Item>(items.subList(0, remaining)));
+    }
+
+    public int nextFetchSize() {
+        lock.lock();
+        try {
+            return fetchSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param requested the number of items which were requested for the page.
+     * @param page the page which SimpleDB returned.
+     * @param latencyNanos the time in nanoseconds which the request took.
+     */
+    public void pageFetched(int requested, SelectResult page, long latencyNanos) {
+        isNotNull("page", page);
+        if(!adaptive) return;
+        List<Item> items = page.getItems();
+        int count = items.size();
+        long bytes = sizeOf(items);
+
+        lock.lock();
+        try {
+            if(count > 0) bytesPerItem = average(bytesPerItem, (double) bytes / count);
+            this.latencyNanos = average(this.latencyNanos, latencyNanos);
+
+            long next;
+            if(page.getNextToken() != null && count < requested) {
+                //SimpleDB truncated the page by the size of the response or the time of the query.
+                next = count > 0 ? count : fetchSize;
+            } else {
+                next = 2L * fetchSize;
+                if(bytesPerItem > 0) next = Math.min(next, (long) (TARGET_RESPONSE_BYTES / bytesPerItem));
+                if(count > 0 && this.latencyNanos > 0) next = Math.min(next, (long) (count * (TARGET_LATENCY_NANOS / this.latencyNanos)));
+                if(consumeNanosPerItem > 0 && consumeNanosPerItem * fetchSize > CONSUMER_BOUND_RATIO * this.latencyNanos) next = Math.min(next, fetchSize);
+            }
+            fetchSize = (int) Math.max(1, Math.min(next, maximumSize));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param count the number of items of a page which the consumer has consumed.
+     * @param nanos the time in nanoseconds which the consumer took for the page, without waiting for the next page.
+     */
+    public void pageConsumed(int count, long nanos) {
+        if(!adaptive || count <= 0) return;
+        lock.lock();
+        try {
+            consumeNanosPerItem = average(consumeNanosPerItem, (double) nanos / count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    private static double average(double current, double sample) {
+        return current <= 0 ? sample : (current + sample) / 2;
+    }
+
+    private static long sizeOf(List<Item> items) {
+        long bytes = 0;
+        for (Item item : items) {
+            bytes += item.getName().length();
+            for (Attribute attribute : item.getAttributes()) {
+                bytes += ATTRIBUTE_OVERHEAD_BYTES + attribute.getName().length() + (attribute.getValue() == null ? 0 : attribute.getValue().length());
+            }
+        }
+        return bytes;
+    }
+}
@@ -55,6 +55,19 @@ public class InstanceQueryResult<T> implements QueryResults<T> {
         return (Iterator<T>) values.iterator();
     }
 
+    /**
+     * @throws UnsupportedOperationException always, because the results in memory have no NextToken.
+     */
+    @Override
+    public String cursor() {
+        throw new UnsupportedOperationException("a cursor is not supported by the results in memory.");
+    }
+
+    @Override
+    public boolean isResumable() {
+        return false;
+    }
+
     @Override
     public Context getContext() {
         return context;
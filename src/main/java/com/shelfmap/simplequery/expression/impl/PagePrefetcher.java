@@ -0,0 +1,328 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.amazonaws.services.simpledb.model.SelectResult;
+import com.shelfmap.simplequery.Context;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fetches the following pages of a select expression in background.
+ * <p>
+ * SimpleDB returns the NextToken of a page with the page, so the pages must be fetched one by one.
+ * This class runs a fetch loop on an executor, which requests the next page as soon as
+ * a page arrives, until {@code depth} pages are waiting for the consumer.
+ * When the consumer takes a page from a full buffer, the loop is started again.
+ * The loop never waits for the consumer on a thread of the executor.
+ * <p>
+ * If the consumer abandons this object without calling {@link #cancel()},
+ * the loop stops after at most {@code depth} pages are fetched.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @author Tsutomu YANO
+ */
+public class PagePrefetcher {
+    private final Context context;
+    private final String expression;
+    private final boolean consistent;
+    private final int depth;
+    private final Executor executor;
+    private final Runnable listener;
+    private final FetchSizeController fetchSize;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition pageArrived = lock.newCondition();
+    private final Deque<SelectResult> pages = new ArrayDeque<SelectResult>();
+    private String nextToken;
+    private boolean exhausted;
+    private boolean running;
+    private boolean cancelled;
+    private RuntimeException failure;
+    private FutureTask<Void> currentTask;
+    //the number of items which the pages still can have, or -1 for no limit. used only with the fetch size.
+    private int remaining;
+
+    /**
+     * create a prefetcher and start fetching the page of the next token immediately.
+     *
+     * @param context the context to get the SimpleDB client from.
+     * @param expression the select expression.
+     * @param nextToken the NextToken of the last page which the consumer already has. if null, nothing will be fetched.
+     * @param depth the maximum number of pages which are fetched ahead of the consumer.
+     * @param executor the executor on which pages are fetched.
+     */
+    public PagePrefetcher(Context context, String expression, String nextToken, int depth, Executor executor) {
+        this(context, expression, nextToken, depth, executor, null, -1);
+    }
+
+    /**
+     * create a prefetcher which requests each page by the fetch size of a controller.
+     *
+     * @param context the context to get the SimpleDB client from.
+     * @param expression the select expression.
+     * @param nextToken the NextToken of the last page which the consumer already has. if null, nothing will be fetched.
+     * @param depth the maximum number of pages which are fetched ahead of the consumer.
+     * @param executor the executor on which pages are fetched.
+     * @param fetchSize the controller of the fetch size. if null, each page is requested by the expression as is.
+     * @param remaining the number of items which the following pages can have, or -1 for no limit.
+     *                  the pages end at the number. ignored if fetchSize is null.
+     */
+    public PagePrefetcher(Context context, String expression, String nextToken, int depth, Executor executor, FetchSizeController fetchSize, int remaining) {
+        this(context, expression, false, nextToken, nextToken == null || (fetchSize != null && remaining == 0), depth, executor, null, fetchSize, remaining);
+    }
+
+    /**
+     * create a prefetcher which fetches the pages after the next token.
+     *
+     * @param context the context to get the SimpleDB client from.
+     * @param expression the select expression.
+     * @param consistent true if the pages should be read consistently.
+     * @param nextToken the NextToken of the last page which the consumer already has. if null, nothing will be fetched.
+     * @param depth the maximum number of pages which are fetched ahead of the consumer.
+     * @param executor the executor on which pages are fetched.
+     * @param fetchSize the controller of the fetch size. if null, each page is requested by the expression as is.
+     * @param remaining the number of items which the following pages can have, or -1 for no limit.
+     *                  the pages end at the number. ignored if fetchSize is null.
+     * @return a prefetcher which has started fetching the page of the next token.
+     */
+    public static PagePrefetcher fromNextToken(Context context, String expression, boolean consistent, String nextToken, int depth, Executor executor, FetchSizeController fetchSize, int remaining) {
+        return new PagePrefetcher(context, expression, consistent, nextToken, nextToken == null || (fetchSize != null && remaining == 0), depth, executor, null, fetchSize, remaining);
+    }
+
+    /**
+     * create a prefetcher which fetches the pages from the first page.
+     *
+     * @param context the context to get the SimpleDB client from.
+     * @param expression the select expression.
+     * @param consistent true if the pages should be read consistently.
+     * @param depth the maximum number of pages which are fetched ahead of the consumer.
+     * @param executor the executor on which pages are fetched.
+     * @param listener called on a thread of the executor whenever a page arrives, fetching fails or no more page exists.
+     *                 It must not block. may be null.
+     * @return a prefetcher which has started fetching the first page.
+     */
+    public static PagePrefetcher fromFirstPage(Context context, String expression, boolean consistent, int depth, Executor executor, Runnable listener) {
+        return new PagePrefetcher(context, expression, consistent, null, false, depth, executor, listener, null, -1);
+    }
+
+    private PagePrefetcher(Context context, String expression, boolean consistent, String nextToken, boolean exhausted, int depth, Executor executor, Runnable listener, FetchSizeController fetchSize, int remaining) {
+        isNotNull("context", context);
+        isNotNull("expression", expression);
+        isNotNull("executor", executor);
+        if(depth <= 0) throw new IllegalArgumentException("depth must be positive: " + depth);
+        this.context = context;
+        this.expression = expression;
+        this.consistent = consistent;
+        this.depth = depth;
+        this.executor = executor;
+        this.listener = listener;
+        this.fetchSize = fetchSize;
+
+        lock.lock();
+        try {
+            this.remaining = fetchSize != null ? remaining : -1;
+            this.nextToken = nextToken;
+            this.exhausted = exhausted;
+            startIfNeed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * take the next page. this method waits until the next page arrives.
+     *
+     * @return the next page, or null if no more page exists or this prefetcher is cancelled.
+     * @throws IllegalStateException if the current thread is interrupted while waiting.
+     * @throws RuntimeException the exception thrown by SimpleDB while fetching the page.
+     */
+    public SelectResult take() {
+        lock.lock();
+        try {
+            while(pages.isEmpty()) {
+                if(failure != null) throw failure;
+                if(cancelled || exhausted) return null;
+                if(!running) startIfNeed();
+                try {
+                    pageArrived.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while waiting for the next page of the expression: " + expression, ex);
+                }
+            }
+            SelectResult page = pages.poll();
+            startIfNeed();
+            return page;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * take the next page if it has already arrived. this method never waits.
+     *
+     * @return the next page, or null if no page has arrived yet or no more page exists.
+     * @throws RuntimeException the exception thrown by SimpleDB while fetching the page.
+     */
+    public SelectResult poll() {
+        lock.lock();
+        try {
+            SelectResult page = pages.poll();
+            if(page == null) {
+                if(failure != null) throw failure;
+                return null;
+            }
+            startIfNeed();
+            return page;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if all pages have been taken, or this prefetcher is cancelled.
+     */
+    public boolean isDrained() {
+        lock.lock();
+        try {
+            return cancelled || (exhausted && pages.isEmpty());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * stop fetching pages. the request which is running now will be interrupted
+     * and the pages which are not taken yet are discarded.
+     */
+    public void cancel() {
+        FutureTask<Void> task;
+        lock.lock();
+        try {
+            cancelled = true;
+            pages.clear();
+            task = currentTask;
+            pageArrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if(task != null) task.cancel(true);
+    }
+
+    public boolean isCancelled() {
+        lock.lock();
+        try {
+            return cancelled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * must be called with the lock.
+     */
+    private void startIfNeed() {
+        if(running || cancelled || failure != null || exhausted || pages.size() >= depth) return;
+        running = true;
+        FutureTask<Void> task = new FutureTask<Void>(new FetchLoop(), null);
+        currentTask = task;
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            running = false;
+            currentTask = null;
+            failure = ex;
+            pageArrived.signalAll();
+        }
+    }
+
+    protected SelectResult fetch(String token) {
+        //remaining is written only by the running loop, which hands it over to the next loop with the lock.
+        if(fetchSize != null) return fetchSize.select(context, expression, consistent, token, remaining);
+        SelectRequest request = new SelectRequest(expression).withNextToken(token);
+        if(consistent) request.setConsistentRead(Boolean.TRUE);
+        return context.getSimpleDB().select(request);
+    }
+
+    private void notifyListener() {
+        if(listener != null) listener.run();
+    }
+
+    private class FetchLoop implements Runnable {
+        @Override
+        public void run() {
+            while(true) {
+                String token;
+                lock.lock();
+                try {
+                    if(cancelled || exhausted || pages.size() >= depth) {
+                        running = false;
+                        currentTask = null;
+                        return;
+                    }
+                    token = nextToken;
+                } finally {
+                    lock.unlock();
+                }
+
+                SelectResult page = null;
+                RuntimeException error = null;
+                try {
+                    page = fetch(token);
+                } catch (RuntimeException ex) {
+                    error = ex;
+                }
+
+                lock.lock();
+                try {
+                    if(cancelled) {
+                        running = false;
+                        currentTask = null;
+                        return;
+                    }
+                    if(error != null) {
+                        failure = error;
+                        running = false;
+                        currentTask = null;
+                        pageArrived.signalAll();
+                    } else {
+                        pages.add(page);
+                        if(remaining >= 0) remaining -= page.getItems().size();
+                        nextToken = page.getNextToken();
+                        exhausted = nextToken == null;
+                        pageArrived.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                //the listener is called without the lock, because it may take another lock.
+                notifyListener();
+                if(error != null) return;
+            }
+        }
+    }
+}
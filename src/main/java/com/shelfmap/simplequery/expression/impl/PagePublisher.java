@@ -0,0 +1,273 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.amazonaws.services.simpledb.model.Item;
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.amazonaws.services.simpledb.model.SelectResult;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.expression.CanNotConvertItemException;
+import com.shelfmap.simplequery.expression.ItemConverter;
+import com.shelfmap.simplequery.expression.ResultPublisher;
+import com.shelfmap.simplequery.expression.ResultSubscriber;
+import com.shelfmap.simplequery.expression.ResultSubscription;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A ResultPublisher which fetches the pages of an expression only while its subscriber has demand.
+ * <p>
+ * The pages are fetched and the items are converted on the executor, one task per subscription at a time,
+ * so no thread is used by a subscription which has no demand.
+ * A request from the subscriber while publishing only adds the demand, so the methods of
+ * a subscriber are never called recursively.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @param <T> the type of the results.
+ * @author Tsutomu YANO
+ */
+public class PagePublisher<T> implements ResultPublisher<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PagePublisher.class);
+
+    private final Context context;
+    private final String expression;
+    private final boolean consistent;
+    private final ItemConverter<T> itemConverter;
+    private final Executor executor;
+    private final FetchSizeController fetchSize;
+    private final int limit;
+
+    public PagePublisher(Context context, String expression, boolean consistent, ItemConverter<T> itemConverter, Executor executor) {
+        this(context, expression, consistent, itemConverter, executor, null, -1);
+    }
+
+    /**
+     * @param fetchSize the controller of the fetch size, which is shared by all subscriptions.
+     *                  if null, each page is requested by the expression as is.
+     * @param limit the maximum number of the results of a subscription, or -1 for no limit. ignored if fetchSize is null.
+     */
+    public PagePublisher(Context context, String expression, boolean consistent, ItemConverter<T> itemConverter, Executor executor, FetchSizeController fetchSize, int limit) {
+        isNotNull("context", context);
+        isNotNull("expression", expression);
+        isNotNull("itemConverter", itemConverter);
+        isNotNull("executor", executor);
+        this.context = context;
+        this.expression = expression;
+        this.consistent = consistent;
+        this.itemConverter = itemConverter;
+        this.executor = executor;
+        this.fetchSize = fetchSize;
+        this.limit = fetchSize != null ? limit : -1;
+    }
+
+    @Override
+    public void subscribe(ResultSubscriber<? super T> subscriber) {
+        isNotNull("subscriber", subscriber);
+        subscriber.onSubscribe(new PageSubscription(subscriber));
+    }
+
+    protected SelectResult fetch(String nextToken) {
+        SelectRequest request = new SelectRequest(expression, consistent).withNextToken(nextToken);
+        return context.getSimpleDB().select(request);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    private class PageSubscription implements ResultSubscription, Runnable {
+        private final ResultSubscriber<? super T> subscriber;
+
+        private final Lock lock = new ReentrantLock();
+        private long demand;
+        private boolean running;
+        private boolean cancelled;
+        private boolean done;
+        private RuntimeException pendingError;
+
+        //accessed only by the running task. the lock hands them over to the next task.
+        private List<Item> items = Collections.emptyList();
+        private int index;
+        private String nextToken;
+        private boolean fetched;
+        private int remaining = limit;
+        private long pageStarted;
+
+        PageSubscription(ResultSubscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if(cancelled || done) return;
+                if(n <= 0) {
+                    if(pendingError == null) pendingError = new IllegalArgumentException("the number of requested results must be positive: " + n);
+                } else {
+                    demand = (demand + n < 0) ? Long.MAX_VALUE : demand + n;
+                }
+                if(running) return;
+                running = true;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException ex) {
+                finish(ex);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            while(true) {
+                RuntimeException error;
+                lock.lock();
+                try {
+                    if(cancelled || done) {
+                        running = false;
+                        items = Collections.emptyList();
+                        return;
+                    }
+                    error = pendingError;
+                    if(error == null && demand == 0) {
+                        running = false;
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                if(error != null) {
+                    finish(error);
+                    return;
+                }
+
+                if(index < items.size()) {
+                    T result;
+                    try {
+                        result = itemConverter.convertToInstance(items.get(index++));
+                    } catch (CanNotConvertItemException ex) {
+                        finish(new IllegalStateException("Could not convert an item to a domain object.", ex));
+                        return;
+                    } catch (RuntimeException ex) {
+                        finish(ex);
+                        return;
+                    }
+                    lock.lock();
+                    try {
+                        if(demand != Long.MAX_VALUE) demand--;
+                    } finally {
+                        lock.unlock();
+                    }
+                    if(!signal(result)) return;
+                    continue;
+                }
+
+                if(fetched && nextToken == null) {
+                    finish(null);
+                    return;
+                }
+
+                try {
+                    SelectResult page;
+                    if(fetchSize != null) {
+                        //the time to consume a page includes the time to wait for the demand, which is the rate of the subscriber.
+                        if(fetched) fetchSize.pageConsumed(items.size(), System.nanoTime() - pageStarted);
+                        page = fetchSize.select(context, expression, consistent, nextToken, remaining);
+                        if(remaining >= 0) remaining -= page.getItems().size();
+                        pageStarted = System.nanoTime();
+                    } else {
+                        page = fetch(nextToken);
+                    }
+                    items = page.getItems();
+                    index = 0;
+                    nextToken = page.getNextToken();
+                    fetched = true;
+                } catch (RuntimeException ex) {
+                    finish(ex);
+                    return;
+                }
+            }
+        }
+
+        private boolean signal(T result) {
+            try {
+                subscriber.onNext(result);
+                return true;
+            } catch (RuntimeException ex) {
+                //a subscriber must not throw. we can not signal any more to the broken subscriber.
+                LOGGER.warn("onNext of a subscriber threw an exception. the subscription is cancelled. expression: " + expression, ex);
+                lock.lock();
+                try {
+                    cancelled = true;
+                    running = false;
+                } finally {
+                    lock.unlock();
+                }
+                return false;
+            }
+        }
+
+        /**
+         * signal onComplete if error is null, otherwise signal onError.
+         */
+        private void finish(RuntimeException error) {
+            lock.lock();
+            try {
+                if(cancelled || done) {
+                    running = false;
+                    return;
+                }
+                done = true;
+                running = false;
+                items = Collections.emptyList();
+            } finally {
+                lock.unlock();
+            }
+
+            if(error == null) {
+                subscriber.onComplete();
+            } else {
+                subscriber.onError(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.shelfmap.simplequery.domain.AttributeConverter;
+import com.shelfmap.simplequery.expression.CanNotRestoreAttributeException;
+import com.shelfmap.simplequery.expression.Parameter;
+import java.io.Serializable;
+
+/**
+ * An AttributeConverter of a matcher in a configured condition.
+ * This converter converts a {@link Parameter} into a placeholder which
+ * {@link DefaultPreparedExpression} replaces with the bound value,
+ * and converts other values by the AttributeConverter of the attribute.
+ * <p>
+ * THIS CLASS IS IMMUTABLE
+ *
+ * @author Tsutomu YANO
+ */
+final class ParameterConverter<T> implements AttributeConverter<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+    static final char MARK = '\u0000';
+
+    private final AttributeConverter<T> delegate;
+    private final int index;
+
+    /**
+     * @param delegate the AttributeConverter of the attribute.
+     * @param index the index of the delegate in the parameter converters of the where expression.
+     */
+    ParameterConverter(AttributeConverter<T> delegate, int index) {
+        this.delegate = delegate;
+        this.index = index;
+    }
+
+    @Override
+    public String convertValue(T targetValue) {
+        if(targetValue instanceof Parameter) {
+            return MARK + String.valueOf(index) + ":" + ((Parameter) targetValue).getName() + MARK;
+        }
+        return delegate.convertValue(targetValue);
+    }
+
+    @Override
+    public T restoreValue(String targetValue) throws CanNotRestoreAttributeException {
+        return delegate.restoreValue(targetValue);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.attribute.impl.ItemNameAttribute;
+import com.shelfmap.simplequery.expression.Expression;
+import com.shelfmap.simplequery.expression.FetchOptions;
+import com.shelfmap.simplequery.expression.ItemConverter;
+import com.shelfmap.simplequery.expression.OrderByExpression;
+import com.shelfmap.simplequery.expression.QueryResults;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The results of an expression which is split by {@link QueryPlanner}.
+ * The split expressions are fetched concurrently on the IO executor of the context,
+ * and their results are merged in the order of the expression and de-duplicated by their itemNames.
+ * No page is requested until an iterator is created.
+ *
+ * @see QueryPlanner
+ * @author Tsutomu YANO
+ */
+public class PlannedQueryResult<T> implements QueryResults<T> {
+    private final Context context;
+    private final ItemConverter<T> itemConverter;
+    private final Expression<T> expression;
+    private final List<Expression<T>> parts;
+    private final boolean consistent;
+    private final int depth;
+
+    //the memoized result of count. -1 means 'not counted yet'.
+    private volatile int size = -1;
+
+    public PlannedQueryResult(Context context, ItemConverter<T> itemConverter, Expression<T> expression, List<Expression<T>> parts, boolean consistent, FetchOptions options) {
+        isNotNull("context", context);
+        isNotNull("itemConverter", itemConverter);
+        isNotNull("expression", expression);
+        isNotNull("parts", parts);
+        isNotNull("options", options);
+        this.context = context;
+        this.itemConverter = itemConverter;
+        this.expression = expression;
+        this.parts = new ArrayList<Expression<T>>(parts);
+        this.consistent = consistent;
+        this.depth = options.isPrefetchEnabled() ? options.getPrefetchDepth() : 1;
+    }
+
+    /**
+     * each iterator fetches the pages of all split expressions independently.
+     */
+    @Override
+    public SegmentedResultIterator<T> iterator() {
+        return newIterator(parts, SegmentedResultIterator.orderByOf(expression));
+    }
+
+    /**
+     * the itemNames of the split expressions are fetched concurrently and counted without duplicates,
+     * only at the first call.
+     */
+    @Override
+    public int size() {
+        int count = size;
+        if(count < 0) {
+            List<Expression<T>> itemNameParts = new ArrayList<Expression<T>>(parts.size());
+            for (Expression<T> part : parts) {
+                itemNameParts.add(part.rebuildWith(ItemNameAttribute.INSTANCE));
+            }
+
+            //the order is not need for counting.
+            SegmentedResultIterator<T> iterator = newIterator(itemNameParts, null);
+            count = 0;
+            while(iterator.takeItem() != null) {
+                count++;
+            }
+            size = count;
+        }
+        return count;
+    }
+
+    private SegmentedResultIterator<T> newIterator(List<Expression<T>> expressions, OrderByExpression<?> orderBy) {
+        List<String> descriptions = new ArrayList<String>(expressions.size());
+        for (Expression<T> part : expressions) {
+            descriptions.add(part.describe());
+        }
+        return new SegmentedResultIterator<T>(context, itemConverter, expression, descriptions, consistent, depth, context.getIOExecutor(), orderBy, BaseExpression.limitOf(expression), true);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, because the results of split expressions have no NextToken.
+     */
+    @Override
+    public String cursor() {
+        throw new UnsupportedOperationException("a cursor is not supported by the results of split expressions.");
+    }
+
+    @Override
+    public boolean isResumable() {
+        return false;
+    }
+
+    @Override
+    public Context getContext() {
+        return context;
+    }
+}
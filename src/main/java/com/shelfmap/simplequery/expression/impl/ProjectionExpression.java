@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.attribute.SelectAttribute;
+import com.shelfmap.simplequery.attribute.impl.DefaultAttribute;
+import com.shelfmap.simplequery.attribute.impl.ItemNameAttribute;
+import com.shelfmap.simplequery.domain.Domain;
+import com.shelfmap.simplequery.expression.Expression;
+import com.shelfmap.simplequery.expression.FetchOptions;
+import com.shelfmap.simplequery.expression.ItemConverter;
+import com.shelfmap.simplequery.expression.ViewConverter;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.List;
+
+/**
+ * A projection of an expression, which selects only the attributes of a view-class
+ * and converts the results to instances of the view-class by a {@link ViewConverter}.
+ *
+ * @param <T> the type of the domain-class on which the projected expression has been created.
+ * @param <V> the type of the view-class.
+ * @author Tsutomu YANO
+ */
+public class ProjectionExpression<T,V> extends BaseExpression<V> {
+    private static final long serialVersionUID = 1L;
+
+    private final Domain<T> sourceDomain;
+    private final Expression<T> expression;
+    private final Class<V> viewClass;
+
+    /**
+     * create a projection which selects only the attributes of the view-class from the expression.
+     */
+    public ProjectionExpression(Context context, BaseExpression<T> expression, Class<V> viewClass) {
+        this(context,
+             isNotNullAndGetDomain(expression),
+             expression.rebuildWith(selectAttributesOf(context.getItemConverterFactory().createViewConverter(expression.getDomain(), viewClass))),
+             viewClass);
+    }
+
+    /**
+     * create a projection with the expression as it is.
+     */
+    protected ProjectionExpression(Context context, Domain<T> sourceDomain, Expression<T> expression, Class<V> viewClass) {
+        super(context, context.getItemConverterFactory().createViewConverter(sourceDomain, viewClass).getDomain());
+        isNotNull("expression", expression);
+        this.sourceDomain = sourceDomain;
+        this.expression = expression;
+        this.viewClass = viewClass;
+    }
+
+    private static <T> Domain<T> isNotNullAndGetDomain(BaseExpression<T> expression) {
+        isNotNull("expression", expression);
+        return expression.getDomain();
+    }
+
+    private static SelectAttribute[] selectAttributesOf(ViewConverter<?> converter) {
+        List<String> attributeNames = converter.getAttributeNames();
+
+        //the item name is always returned from SimpleDB.
+        if(attributeNames.isEmpty()) return new SelectAttribute[]{ItemNameAttribute.INSTANCE};
+
+        SelectAttribute[] attributes = new SelectAttribute[attributeNames.size()];
+        for (int i = 0; i < attributes.length; i++) {
+            attributes[i] = new DefaultAttribute(attributeNames.get(i));
+        }
+        return attributes;
+    }
+
+    /**
+     * a view has only the selected attributes, so a view is never hydrated lazily.
+     */
+    @Override
+    protected ItemConverter<V> createItemConverter(FetchOptions options) {
+        return getContext().getItemConverterFactory().createViewConverter(sourceDomain, viewClass);
+    }
+
+    @Override
+    public String describe() {
+        return expression.describe();
+    }
+
+    @Override
+    public Expression<V> rebuildWith(SelectAttribute... attributes) {
+        return new ProjectionExpression<T,V>(getContext(), sourceDomain, expression.rebuildWith(attributes), viewClass);
+    }
+
+    /**
+     * a projection of a projection is a projection of the original expression.
+     */
+    @Override
+    public <W> Expression<W> as(Class<W> otherViewClass) {
+        ViewConverter<W> converter = getContext().getItemConverterFactory().createViewConverter(sourceDomain, otherViewClass);
+        return new ProjectionExpression<T,W>(getContext(), sourceDomain, expression.rebuildWith(selectAttributesOf(converter)), otherViewClass);
+    }
+
+    public Expression<T> getExpression() {
+        return expression;
+    }
+
+    public Domain<T> getSourceDomain() {
+        return sourceDomain;
+    }
+
+    public Class<V> getViewClass() {
+        return viewClass;
+    }
+}
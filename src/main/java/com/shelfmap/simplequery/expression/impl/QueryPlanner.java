@@ -0,0 +1,291 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.shelfmap.simplequery.expression.*;
+import com.shelfmap.simplequery.expression.matcher.InMatcher;
+import com.shelfmap.simplequery.expression.matcher.Matcher;
+import com.shelfmap.simplequery.expression.matcher.ReferToMatcher;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites an expression which SimpleDB does not accept into several expressions which SimpleDB accepts.
+ * <p>
+ * SimpleDB accepts at most {@link #MAX_IN_VALUES} values in an 'in' clause,
+ * and at most {@link #MAX_COMPARISONS} comparisons in a select expression.
+ * <ul>
+ * <li>An 'in' clause which has more values is split into chunks of values,
+ *     and each chunk makes an expression which has the same conditions except for the 'in' clause.</li>
+ * <li>A condition which has more comparisons is split into its disjuncts,
+ *     if all of the conditions are joined by 'or' on the top level.</li>
+ * </ul>
+ * The union of the results of the split expressions is the results of the original expression,
+ * but an item may be matched by several split expressions, so the results must be
+ * de-duplicated by their itemNames. Each split expression keeps the order and the limit of
+ * the original expression, so the first items of a merge of their results are the results of the original.
+ * <p>
+ * An 'in' clause in a 'not' condition can not be split, so it is left as it is.
+ * An expression which has an offset is not split, because the offset can not be applied to each split expression.
+ *
+ * @author Tsutomu YANO
+ */
+public final class QueryPlanner {
+    public static final int MAX_IN_VALUES = 20;
+    public static final int MAX_COMPARISONS = 20;
+
+    private QueryPlanner() {
+        super();
+    }
+
+    /**
+     * @param expression an expression created by this library.
+     * @return the expressions whose results are the results of the expression.
+     *         the list has only the expression itself if it need not to be split.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<Expression<T>> plan(Expression<T> expression) {
+        isNotNull("expression", expression);
+        if(BaseExpression.offsetOf(expression) > 0) return Collections.singletonList(expression);
+        if(expression instanceof BoundExpression) {
+            return planBound((BoundExpression<T>) expression);
+        }
+        if(expression instanceof ProjectionExpression) {
+            return planProjection((ProjectionExpression<?,T>) expression);
+        }
+
+        WhereExpression<T> whereExpression = whereOf(expression);
+        if(whereExpression == null) return Collections.singletonList(expression);
+
+        List<Condition<?>> conditions = new ArrayList<Condition<?>>();
+        splitInClauses(whereExpression.getCondition(), conditions);
+        List<Condition<?>> planned = new ArrayList<Condition<?>>();
+        for (Condition<?> condition : conditions) {
+            splitDisjunction(condition, planned);
+        }
+        if(planned.size() == 1 && planned.get(0) == whereExpression.getCondition()) {
+            return Collections.singletonList(expression);
+        }
+
+        List<Expression<T>> result = new ArrayList<Expression<T>>(planned.size());
+        for (Condition<?> condition : planned) {
+            result.add(Restrictions.replaceCondition(expression, condition));
+        }
+        return result;
+    }
+
+    private static <S,V> List<Expression<V>> planProjection(ProjectionExpression<S,V> projection) {
+        List<Expression<S>> parts = plan(projection.getExpression());
+        if(parts.size() == 1) return Collections.<Expression<V>>singletonList(projection);
+
+        List<Expression<V>> result = new ArrayList<Expression<V>>(parts.size());
+        for (Expression<S> part : parts) {
+            result.add(new ProjectionExpression<S,V>(projection.getContext(), projection.getSourceDomain(), part, projection.getViewClass()));
+        }
+        return result;
+    }
+
+    /**
+     * the prepared expression is split, and each part is bound to the values of its own parameters.
+     */
+    private static <T> List<Expression<T>> planBound(BoundExpression<T> bound) {
+        List<Expression<T>> parts = plan(bound.getPreparedExpression().getExpression());
+        if(parts.size() == 1) return Collections.<Expression<T>>singletonList(bound);
+
+        List<Expression<T>> result = new ArrayList<Expression<T>>(parts.size());
+        for (Expression<T> part : parts) {
+            PreparedExpression<T> prepared = part.prepare();
+            Map<String,Object> values = new HashMap<String,Object>();
+            for (String name : prepared.getParameterNames()) {
+                values.put(name, bound.getValues().get(name));
+            }
+            result.add(prepared.bind(values));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> WhereExpression<T> whereOf(Expression<T> expression) {
+        if(expression instanceof LimitExpression) return ((LimitExpression<T>) expression).getWhereExpression();
+        if(expression instanceof OrderByExpression) return ((OrderByExpression<T>) expression).getWhereExpression();
+        if(expression instanceof WhereExpression) return (WhereExpression<T>) expression;
+        return null;
+    }
+
+    /**
+     * split the oversize 'in' clauses of the condition one by one.
+     */
+    private static void splitInClauses(Condition<?> condition, List<Condition<?>> result) {
+        Condition<?> oversize = findOversize(condition, false);
+        if(oversize == null) {
+            result.add(condition);
+            return;
+        }
+        for (Condition<?> chunk : chunksOf(oversize)) {
+            splitInClauses(replace(condition, oversize, chunk), result);
+        }
+    }
+
+    /**
+     * @return a condition on the chain whose matcher has too many values, or null if no such condition exists.
+     *         the conditions in a 'not' condition are ignored.
+     */
+    private static Condition<?> findOversize(Condition<?> condition, boolean negated) {
+        for (Condition<?> current = condition; current.getParent() != null; current = current.getParent()) {
+            Condition<?> found = null;
+            if(current instanceof ConditionGroup) {
+                found = findOversize(((ConditionGroup) current).getCondition(), negated);
+            } else if(current instanceof NotCondition) {
+                found = findOversize(((NotCondition) current).getCondition(), true);
+            } else if(!negated && isSplittable(current.getMatcher())) {
+                found = current;
+            }
+            if(found != null) return found;
+        }
+        return null;
+    }
+
+    private static boolean isSplittable(Matcher<?> matcher) {
+        return (matcher instanceof InMatcher || matcher instanceof ReferToMatcher)
+                && matcher.getValues().size() > MAX_IN_VALUES;
+    }
+
+    private static <V> List<Condition<V>> chunksOf(Condition<V> condition) {
+        Matcher<V> matcher = condition.getMatcher();
+        //a same value in different chunks makes same results twice.
+        List<V> values = new ArrayList<V>(new LinkedHashSet<V>(matcher.getValues()));
+        List<Condition<V>> chunks = new ArrayList<Condition<V>>();
+        for (int from = 0; from < values.size(); from += MAX_IN_VALUES) {
+            List<V> chunk = values.subList(from, Math.min(from + MAX_IN_VALUES, values.size()));
+            chunks.add(condition.withMatcher(matcherOf(matcher, chunk)));
+        }
+        return chunks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Matcher<V> matcherOf(Matcher<V> original, List<V> values) {
+        if(original instanceof ReferToMatcher) {
+            return (Matcher<V>) new ReferToMatcher(values.toArray(new String[values.size()]));
+        }
+        V[] array = (V[]) values.toArray();
+        return new InMatcher<V>(array).withAttributeConverter(original.getAttributeConverter());
+    }
+
+    /**
+     * @return a copy of the chain of conditions in which the target is replaced by the replacement,
+     *         including the conditions in groups and not-conditions.
+     */
+    private static Condition<?> replace(Condition<?> current, Condition<?> target, Condition<?> replacement) {
+        if(current.getParent() == null) return current;
+
+        Condition<?> parent = replace(current.getParent(), target, replacement);
+        Condition<?> replaced;
+        if(current == target) {
+            replaced = replacement;
+        } else if(current instanceof ConditionGroup) {
+            replaced = new ConditionGroup(replace(((ConditionGroup) current).getCondition(), target, replacement));
+        } else if(current instanceof NotCondition) {
+            replaced = new NotCondition(replace(((NotCondition) current).getCondition(), target, replacement));
+        } else {
+            replaced = current;
+        }
+        return replaced.withParent(parent, current.getOperator());
+    }
+
+    /**
+     * split a condition which has too many comparisons into groups of its disjuncts.
+     * the condition is not split if any condition on the top level is joined by an operator except 'or'.
+     */
+    private static void splitDisjunction(Condition<?> condition, List<Condition<?>> result) {
+        if(countComparisons(condition) <= MAX_COMPARISONS) {
+            result.add(condition);
+            return;
+        }
+
+        List<Condition<?>> disjuncts = new ArrayList<Condition<?>>();
+        if(!collectDisjuncts(condition, disjuncts)) {
+            result.add(condition);
+            return;
+        }
+
+        Condition<?> group = null;
+        int comparisons = 0;
+        for (Condition<?> disjunct : disjuncts) {
+            int count = comparisonsOf(disjunct);
+            if(group != null && comparisons + count > MAX_COMPARISONS) {
+                result.add(group);
+                group = null;
+                comparisons = 0;
+            }
+            group = group == null
+                    ? disjunct.withParent(NullCondition.INSTANCE, NullOperator.INSTANCE)
+                    : disjunct.withParent(group, BasicOperator.OR);
+            comparisons += count;
+        }
+        result.add(group);
+    }
+
+    /**
+     * collect the disjuncts of the condition from the first one.
+     * a group whose conditions are all joined by 'or' is flattened.
+     *
+     * @return false if the condition is not a disjunction.
+     */
+    private static boolean collectDisjuncts(Condition<?> condition, List<Condition<?>> disjuncts) {
+        List<Condition<?>> chain = new ArrayList<Condition<?>>();
+        for (Condition<?> current = condition; current.getParent() != null; current = current.getParent()) {
+            chain.add(0, current);
+        }
+        for (int i = 0; i < chain.size(); i++) {
+            Condition<?> current = chain.get(i);
+            if(i > 0 && current.getOperator() != BasicOperator.OR) return false;
+            if(current instanceof ConditionGroup) {
+                List<Condition<?>> inner = new ArrayList<Condition<?>>();
+                if(collectDisjuncts(((ConditionGroup) current).getCondition(), inner)) {
+                    disjuncts.addAll(inner);
+                    continue;
+                }
+            }
+            disjuncts.add(current);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of the comparisons on the chain of the condition.
+     */
+    private static int countComparisons(Condition<?> condition) {
+        int count = 0;
+        for (Condition<?> current = condition; current.getParent() != null; current = current.getParent()) {
+            count += comparisonsOf(current);
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of the comparisons in the condition itself, without its parents.
+     */
+    private static int comparisonsOf(Condition<?> condition) {
+        if(condition instanceof ConditionGroup) return countComparisons(((ConditionGroup) condition).getCondition());
+        if(condition instanceof NotCondition) return countComparisons(((NotCondition) condition).getCondition());
+        return 1;
+    }
+}
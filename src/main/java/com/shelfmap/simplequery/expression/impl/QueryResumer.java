@@ -0,0 +1,76 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.domain.Domain;
+import com.shelfmap.simplequery.expression.FetchOptions;
+import com.shelfmap.simplequery.expression.QueryCursor;
+import com.shelfmap.simplequery.expression.QueryResults;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import com.shelfmap.simplequery.util.Objects;
+
+/**
+ * Resumes the results of an expression from a {@link QueryCursor}.
+ * <p>
+ * The resumed results are read in the same consistency and hydrated in the same way
+ * as the results from which the cursor has been created.
+ *
+ * @author Tsutomu YANO
+ */
+public final class QueryResumer {
+
+    private QueryResumer() {
+        super();
+    }
+
+    /**
+     * @param context the context in which the results are fetched.
+     * @param cursor the position of the results.
+     * @param resultClass the class of the results, which must be same with the class of the cursor.
+     * @return the results from the position of the cursor.
+     * @throws IllegalArgumentException if the cursor is not a cursor of the result class.
+     */
+    public static <T> QueryResults<T> resume(Context context, QueryCursor cursor, Class<T> resultClass) {
+        isNotNull("context", context);
+        isNotNull("cursor", cursor);
+        isNotNull("resultClass", resultClass);
+        if(!resultClass.getName().equals(cursor.getResultClassName())) {
+            throw new IllegalArgumentException("the cursor is not a cursor of the class '" + resultClass.getName() + "', but of the class '" + cursor.getResultClassName() + "'.");
+        }
+
+        Domain<?> sourceDomain;
+        Domain<T> domain;
+        if(resultClass.getName().equals(cursor.getSourceClassName())) {
+            domain = context.getDomainFactory().createDomain(resultClass);
+            sourceDomain = domain;
+        } else {
+            sourceDomain = context.getDomainFactory().createDomain(load(cursor.getSourceClassName(), resultClass.getClassLoader()));
+            domain = context.getItemConverterFactory().createViewConverter(sourceDomain, resultClass).getDomain();
+        }
+
+        ResumedExpression<T> expression = new ResumedExpression<T>(context, domain, sourceDomain, cursor.getSelectClause(), cursor.getFromClause(), cursor.getNextToken());
+        return expression.getResults(cursor.isConsistent(), FetchOptions.DEFAULT.withLazyHydration(cursor.isLazyHydration()));
+    }
+
+    private static Class<?> load(String className, ClassLoader loader) {
+        try {
+            return Objects.forName(className, false, loader);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalArgumentException("the class of the cursor is not found: " + className, ex);
+        }
+    }
+}
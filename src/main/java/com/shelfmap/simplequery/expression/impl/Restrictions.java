@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.shelfmap.simplequery.expression.*;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.List;
+
+/**
+ * Adds conditions to an existing expression with 'and', keeping its order and limit.
+ * The condition of a where expression is grouped, so that the added conditions restrict
+ * the whole condition.
+ *
+ * @author Tsutomu YANO
+ */
+public final class Restrictions {
+    private Restrictions() {
+        super();
+    }
+
+    /**
+     * @param expression an expression created by this library.
+     * @param conditions single conditions which are not chained with others.
+     * @return a new expression whose results are also matched to all the conditions.
+     * @throws IllegalArgumentException if the expression is not a supported type.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Expression<T> and(Expression<T> expression, List<Condition<?>> conditions) {
+        isNotNull("expression", expression);
+        isNotNull("conditions", conditions);
+        if(conditions.isEmpty()) return expression;
+
+        if(expression instanceof BoundExpression) {
+            return ((BoundExpression<T>) expression).restrict(conditions);
+        }
+        if(expression instanceof ProjectionExpression) {
+            return andToProjection((ProjectionExpression<?,T>) expression, conditions);
+        }
+        if(expression instanceof LimitExpression) {
+            LimitExpression<T> limitExpression = (LimitExpression<T>) expression;
+            return limited(limitExpression, andToWhere(limitExpression.getDomainExpression(), limitExpression.getWhereExpression(), conditions));
+        }
+        if(expression instanceof OrderByExpression) {
+            OrderByExpression<T> orderByExpression = (OrderByExpression<T>) expression;
+            return ordered(orderByExpression, andToWhere(orderByExpression.getDomainExpression(), orderByExpression.getWhereExpression(), conditions));
+        }
+        if(expression instanceof WhereExpression) {
+            WhereExpression<T> whereExpression = (WhereExpression<T>) expression;
+            return andToWhere(whereExpression.getDomainExpression(), whereExpression, conditions);
+        }
+        if(expression instanceof DomainExpression) {
+            return andToWhere((DomainExpression<T>) expression, null, conditions);
+        }
+        throw new IllegalArgumentException("conditions can not be added to the expression: " + expression.getClass().getName());
+    }
+
+    /**
+     * @param expression a where, order by or limit expression which has a where clause.
+     * @param condition the condition which replaces the condition of the where clause.
+     * @return a new expression which has the condition, keeping the order and the limit of the expression.
+     * @throws IllegalArgumentException if the expression is not a supported type.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Expression<T> replaceCondition(Expression<T> expression, Condition<?> condition) {
+        isNotNull("expression", expression);
+        isNotNull("condition", condition);
+        if(expression instanceof LimitExpression) {
+            LimitExpression<T> limitExpression = (LimitExpression<T>) expression;
+            return limited(limitExpression, limitExpression.getDomainExpression().where(condition));
+        }
+        if(expression instanceof OrderByExpression) {
+            OrderByExpression<T> orderByExpression = (OrderByExpression<T>) expression;
+            return ordered(orderByExpression, orderByExpression.getDomainExpression().where(condition));
+        }
+        if(expression instanceof WhereExpression) {
+            return ((WhereExpression<T>) expression).getDomainExpression().where(condition);
+        }
+        throw new IllegalArgumentException("the condition of the expression can not be replaced: " + expression.getClass().getName());
+    }
+
+    private static <T> Expression<T> limited(LimitExpression<T> limitExpression, WhereExpression<T> whereExpression) {
+        OrderByExpression<T> orderByExpression = limitExpression.getOrderByExpression();
+        LimitExpression<T> limited = orderByExpression == null
+                ? whereExpression.limit(limitExpression.getLimitCount())
+                : ordered(orderByExpression, whereExpression).limit(limitExpression.getLimitCount());
+        return limitExpression.getOffset() == 0 ? limited : limited.offset(limitExpression.getOffset());
+    }
+
+    private static <T> OrderByExpression<T> ordered(OrderByExpression<T> orderByExpression, WhereExpression<T> whereExpression) {
+        return whereExpression.orderBy(orderByExpression.getAttribute(), orderByExpression.getSortOrder());
+    }
+
+    private static <S,V> Expression<V> andToProjection(ProjectionExpression<S,V> projection, List<Condition<?>> conditions) {
+        return new ProjectionExpression<S,V>(projection.getContext(), projection.getSourceDomain(), and(projection.getExpression(), conditions), projection.getViewClass());
+    }
+
+    private static <T> WhereExpression<T> andToWhere(DomainExpression<T> domainExpression, WhereExpression<T> whereExpression, List<Condition<?>> conditions) {
+        Condition<?> condition = whereExpression == null
+                ? conditions.get(0)
+                : new ConditionGroup(whereExpression.getCondition()).and(conditions.get(0));
+        for (int i = 1; i < conditions.size(); i++) {
+            condition = condition.and(conditions.get(i));
+        }
+        return domainExpression.where(condition);
+    }
+}
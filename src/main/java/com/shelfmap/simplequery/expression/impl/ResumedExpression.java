@@ -0,0 +1,221 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.amazonaws.services.simpledb.model.SelectResult;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.attribute.SelectAttribute;
+import com.shelfmap.simplequery.attribute.impl.CountAttribute;
+import com.shelfmap.simplequery.domain.Domain;
+import com.shelfmap.simplequery.expression.*;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * An expression which is restored from a {@link QueryCursor}.
+ * The results of this expression start from the NextToken of the cursor.
+ * <p>
+ * This expression has only the description of the original expression,
+ * so it can not be prepared, projected or fetched by segments.
+ * This class is not public, because only the results of this expression are returned by {@link QueryResumer}.
+ * <p>
+ * THIS CLASS IS IMMUTABLE
+ *
+ * @param <T> the type of the results.
+ * @author Tsutomu YANO
+ */
+class ResumedExpression<T> extends BaseExpression<T> {
+    private static final long serialVersionUID = 1L;
+    private static final String SELECT = "select ";
+    private static final String SELECT_COUNT = SELECT + CountAttribute.INSTANCE.describe() + " ";
+
+    private final Domain<?> sourceDomain;
+    private final String selectClause;
+    private final String fromClause;
+    private final String nextToken;
+
+    ResumedExpression(Context context, Domain<T> domain, Domain<?> sourceDomain, String selectClause, String fromClause, String nextToken) {
+        super(context, domain);
+        isNotNull("sourceDomain", sourceDomain);
+        isNotNull("selectClause", selectClause);
+        isNotNull("fromClause", fromClause);
+        isNotNull("nextToken", nextToken);
+        this.sourceDomain = sourceDomain;
+        this.selectClause = selectClause;
+        this.fromClause = fromClause;
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * @param expression the expression of the results.
+     * @param domain the domain of the results. the domain of a view-class for a projection.
+     * @param nextToken the NextToken of the page which the cursor points.
+     * @param lazyHydration true if the results are hydrated lazily.
+     * @param consistent true if the results are read consistently.
+     * @return the cursor of the position.
+     * @throws UnsupportedOperationException if the expression can not be resumed.
+     */
+    static QueryCursor cursorOf(Expression<?> expression, Domain<?> domain, String nextToken, boolean lazyHydration, boolean consistent) {
+        Domain<?> sourceDomain = sourceDomainOf(expression);
+        String[] clauses = sourceDomain == null ? null : clausesOf(expression);
+        if(clauses == null) throw new UnsupportedOperationException("a cursor is not supported by the expression: " + expression.describe());
+        return new QueryCursor(domain.getDomainClass().getName(), sourceDomain.getDomainClass().getName(), clauses[0], clauses[1], nextToken, lazyHydration, consistent);
+    }
+
+    /**
+     * @return true if a cursor can be created from the expression.
+     */
+    static boolean isResumable(Expression<?> expression) {
+        return sourceDomainOf(expression) != null && clausesOf(expression) != null;
+    }
+
+    /**
+     * @return the select clause and the from clause of the expression, or null if the expression can not be split into them.
+     */
+    private static String[] clausesOf(Expression<?> expression) {
+        //the select clause of an expression is always described at first, so the rest is shared with the count expression.
+        String description = expression.describe();
+        String countDescription = expression.rebuildWith(CountAttribute.INSTANCE).describe();
+        if(!description.startsWith(SELECT) || !countDescription.startsWith(SELECT_COUNT)) return null;
+
+        String fromClause = countDescription.substring(SELECT_COUNT.length());
+        if(!description.endsWith(" " + fromClause) || description.length() <= SELECT.length() + fromClause.length() + 1) return null;
+
+        String selectClause = description.substring(SELECT.length(), description.length() - fromClause.length() - 1);
+        return new String[] {selectClause, fromClause};
+    }
+
+    /**
+     * @return the domain on which the expression has been created, or null if the expression is not created by this library.
+     */
+    private static Domain<?> sourceDomainOf(Expression<?> expression) {
+        if(expression instanceof ResumedExpression) return ((ResumedExpression<?>) expression).getSourceDomain();
+        if(expression instanceof ProjectionExpression) return ((ProjectionExpression<?,?>) expression).getSourceDomain();
+        if(expression instanceof BoundExpression) return sourceDomainOf(((BoundExpression<?>) expression).getPreparedExpression().getExpression());
+        if(expression instanceof BaseExpression) return ((BaseExpression<?>) expression).getDomain();
+        return null;
+    }
+
+    @Override
+    public String describe() {
+        return SELECT + selectClause + " " + fromClause;
+    }
+
+    @Override
+    public Expression<T> rebuildWith(SelectAttribute... attributes) {
+        String select = new Select(getContext(), attributes).describe().substring(SELECT.length());
+        return new ResumedExpression<T>(getContext(), getDomain(), sourceDomain, select, fromClause, nextToken);
+    }
+
+    /**
+     * @return the results from the NextToken of this expression.
+     */
+    @Override
+    public QueryResults<T> getResults(boolean consistent, FetchOptions options) {
+        isNotNull("options", options);
+        if(options.isSegmented()) throw new UnsupportedOperationException("a resumed expression can not be fetched by segments.");
+        FetchSizeController fetchSize = FetchSizeController.of(options);
+        if(fetchSize != null) {
+            //the limit of a resumed expression is the size of a page, not of the whole results.
+            SelectResult first = fetchSize.select(getContext(), describe(), consistent, nextToken, -1);
+            return new DefaultQueryResult<T>(getContext(), createItemConverter(options), this, first, options, fetchSize, consistent);
+        }
+        SelectRequest request = new SelectRequest(describe(), consistent).withNextToken(nextToken);
+        SelectResult result = getContext().getSimpleDB().select(request);
+        return new DefaultQueryResult<T>(getContext(), createItemConverter(options), this, result, options, null, consistent);
+    }
+
+    @Override
+    public Future<QueryResults<T>> getResultsAsync(final boolean consistent, final FetchOptions options) {
+        isNotNull("options", options);
+        return runOnQueryExecutor(new Callable<QueryResults<T>>() {
+            @Override
+            public QueryResults<T> call() throws Exception {
+                return getResults(consistent, options);
+            }
+        });
+    }
+
+    /**
+     * @return the number of the items from the NextToken of this expression. the limit of the original expression is not applied.
+     */
+    @Override
+    public int count() throws SimpleQueryException {
+        String expression = rebuildWith(CountAttribute.INSTANCE).describe();
+        SelectResult first = getContext().getSimpleDB().select(new SelectRequest(expression).withNextToken(nextToken));
+        return countFrom(expression, first);
+    }
+
+    @Override
+    public Future<Integer> countAsync() {
+        return runOnQueryExecutor(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return count();
+            }
+        });
+    }
+
+    @Override
+    public T getSingleResult(boolean consistent) {
+        throw new UnsupportedOperationException("a resumed expression does not have a single result.");
+    }
+
+    @Override
+    public Future<T> getSingleResultAsync(boolean consistent) {
+        throw new UnsupportedOperationException("a resumed expression does not have a single result.");
+    }
+
+    @Override
+    public ResultPublisher<T> publish(boolean consistent, FetchOptions options, Executor executor) {
+        throw new UnsupportedOperationException("a resumed expression can not be published.");
+    }
+
+    @Override
+    public int count(ItemNameSegments segments, Executor executor) {
+        throw new UnsupportedOperationException("a resumed expression can not be counted by segments.");
+    }
+
+    @Override
+    public PreparedExpression<T> prepare() {
+        throw new UnsupportedOperationException("a resumed expression can not be prepared.");
+    }
+
+    @Override
+    public <V> Expression<V> as(Class<V> viewClass) {
+        throw new UnsupportedOperationException("a resumed expression can not be projected.");
+    }
+
+    /**
+     * a view is converted from the source domain, like a projection.
+     */
+    @Override
+    protected ItemConverter<T> createItemConverter(FetchOptions options) {
+        if(getDomain().getDomainClass() == sourceDomain.getDomainClass()) return super.createItemConverter(options);
+        return getContext().getItemConverterFactory().createViewConverter(sourceDomain, getDomain().getDomainClass());
+    }
+
+    public Domain<?> getSourceDomain() {
+        return sourceDomain;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+}
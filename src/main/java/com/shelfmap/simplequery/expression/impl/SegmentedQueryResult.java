@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.expression.Expression;
+import com.shelfmap.simplequery.expression.FetchOptions;
+import com.shelfmap.simplequery.expression.ItemConverter;
+import com.shelfmap.simplequery.expression.QueryResults;
+import com.shelfmap.simplequery.expression.SimpleQueryException;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.Iterator;
+
+/**
+ * The results of an expression which are fetched by the ranges of itemName concurrently.
+ * No page is requested until an iterator is created.
+ *
+ * @see FetchOptions#withSegments(com.shelfmap.simplequery.expression.ItemNameSegments, java.util.concurrent.Executor)
+ * @author Tsutomu YANO
+ */
+public class SegmentedQueryResult<T> implements QueryResults<T> {
+    private final Context context;
+    private final ItemConverter<T> itemConverter;
+    private final Expression<T> expression;
+    private final boolean consistent;
+    private final FetchOptions options;
+
+    //the memoized result of count. -1 means 'not counted yet'.
+    private volatile int size = -1;
+
+    public SegmentedQueryResult(Context context, ItemConverter<T> itemConverter, Expression<T> expression, boolean consistent, FetchOptions options) {
+        isNotNull("context", context);
+        isNotNull("itemConverter", itemConverter);
+        isNotNull("expression", expression);
+        isNotNull("options", options);
+        if(!options.isSegmented()) throw new IllegalArgumentException("segments are not set in the options: " + options);
+        this.context = context;
+        this.itemConverter = itemConverter;
+        this.expression = expression;
+        this.consistent = consistent;
+        this.options = options;
+    }
+
+    /**
+     * each iterator fetches the pages of all segments independently.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new SegmentedResultIterator<T>(context, itemConverter, expression, consistent, options);
+    }
+
+    /**
+     * the segments are counted concurrently on the executor of the segments only at the first call.
+     */
+    @Override
+    public int size() {
+        int count = size;
+        if(count < 0) {
+            try {
+                count = expression.count(options.getSegments(), options.getSegmentExecutor());
+            } catch (SimpleQueryException ex) {
+                throw new IllegalStateException("could not count the expression.", ex);
+            }
+            size = count;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, because the results which are fetched by segments have no NextToken.
+     */
+    @Override
+    public String cursor() {
+        throw new UnsupportedOperationException("a cursor is not supported by the results which are fetched by segments.");
+    }
+
+    @Override
+    public boolean isResumable() {
+        return false;
+    }
+
+    @Override
+    public Context getContext() {
+        return context;
+    }
+}
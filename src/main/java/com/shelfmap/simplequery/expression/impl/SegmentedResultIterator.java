@@ -0,0 +1,368 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.Item;
+import com.amazonaws.services.simpledb.model.SelectResult;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.attribute.impl.ItemNameAttribute;
+import com.shelfmap.simplequery.expression.CanNotConvertItemException;
+import com.shelfmap.simplequery.expression.Expression;
+import com.shelfmap.simplequery.expression.FetchOptions;
+import com.shelfmap.simplequery.expression.ItemConverter;
+import com.shelfmap.simplequery.expression.ItemNameSegments;
+import com.shelfmap.simplequery.expression.LimitExpression;
+import com.shelfmap.simplequery.expression.OrderByExpression;
+import com.shelfmap.simplequery.expression.SortOrder;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An iterator which fetches the pages of all segments of an expression concurrently
+ * and merges them into one sequence.
+ * The segments are the ranges of itemName of {@link FetchOptions#getSegments()},
+ * or the expressions which are made by {@link QueryPlanner} from an expression.
+ * <p>
+ * If the expression is not ordered, a page is taken from any segment whose page has already arrived,
+ * so a slow segment does not stop the others.
+ * If the expression has an 'order by', the heads of all segments are merged in the sort order.
+ * The merge compares the raw values of the sort attribute as strings, in the same way as SimpleDB does.
+ * <p>
+ * This iterator is not thread safe. It must be used by one thread.
+ *
+ * @author Tsutomu YANO
+ */
+public class SegmentedResultIterator<T> implements Iterator<T> {
+    private final Context context;
+    private final Expression<T> expression;
+    private final ItemConverter<T> itemConverter;
+    private final PagePrefetcher[] prefetchers;
+    private final OrderByExpression<?> orderBy;
+    private final int limit;
+
+    //the itemNames of the returned items, or null if the segments never have same items.
+    private final Set<String> itemNames;
+    private int returned;
+
+    //signalled by the prefetchers when a page arrives.
+    private final Lock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private boolean signalled;
+
+    //for the unordered merge
+    private List<Item> currentItems = Collections.emptyList();
+    private int currentIndex;
+    private int nextSegment;
+
+    //for the ordered merge
+    private PriorityQueue<Cursor> cursors;
+
+    private Item nextItem;
+    private boolean prepared;
+
+    public SegmentedResultIterator(Context context, ItemConverter<T> itemConverter, Expression<T> expression, boolean consistent, FetchOptions options) {
+        this(context, itemConverter, expression, segmentExpressionsOf(expression, options), consistent, options);
+    }
+
+    /**
+     * the segments have same items only if a segment is split by {@link QueryPlanner}.
+     */
+    private SegmentedResultIterator(Context context, ItemConverter<T> itemConverter, Expression<T> expression, List<String> segmentExpressions, boolean consistent, FetchOptions options) {
+        this(context, itemConverter, expression, segmentExpressions, consistent,
+             options.isPrefetchEnabled() ? options.getPrefetchDepth() : 1, options.getSegmentExecutor(), orderByOf(expression), -1,
+             segmentExpressions.size() > options.getSegments().size());
+    }
+
+    /**
+     * @param expression the expression which is split into the segment expressions.
+     * @param segmentExpressions the select expressions of the segments.
+     * @param depth the maximum number of pages of a segment which are fetched ahead.
+     * @param executor the executor on which the pages are fetched.
+     * @param orderBy the order of the segment expressions, or null if the items may be merged in any order.
+     * @param limit the maximum number of the items, or a negative value for no limit.
+     * @param distinct true if the segments may have same items. an item which is already returned is skipped.
+     */
+    SegmentedResultIterator(Context context, ItemConverter<T> itemConverter, Expression<T> expression, List<String> segmentExpressions, boolean consistent, int depth, Executor executor, OrderByExpression<?> orderBy, int limit, boolean distinct) {
+        isNotNull("context", context);
+        isNotNull("itemConverter", itemConverter);
+        isNotNull("expression", expression);
+        isNotNull("segmentExpressions", segmentExpressions);
+        isNotNull("executor", executor);
+        this.context = context;
+        this.expression = expression;
+        this.itemConverter = itemConverter;
+        this.orderBy = orderBy;
+        this.limit = limit;
+        this.itemNames = distinct ? new HashSet<String>() : null;
+
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                lock.lock();
+                try {
+                    signalled = true;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+
+        this.prefetchers = new PagePrefetcher[segmentExpressions.size()];
+        try {
+            for (int i = 0; i < prefetchers.length; i++) {
+                prefetchers[i] = PagePrefetcher.fromFirstPage(context, segmentExpressions.get(i), consistent, depth, executor, listener);
+            }
+        } catch (RuntimeException ex) {
+            cancel();
+            throw ex;
+        }
+    }
+
+    /**
+     * a segment which SimpleDB does not accept is split by {@link QueryPlanner}.
+     */
+    private static List<String> segmentExpressionsOf(Expression<?> expression, FetchOptions options) {
+        isNotNull("expression", expression);
+        isNotNull("options", options);
+        if(!options.isSegmented()) throw new IllegalArgumentException("segments are not set in the options: " + options);
+        List<String> result = new ArrayList<String>(options.getSegments().size());
+        for (ItemNameSegments.Segment segment : options.getSegments()) {
+            for (Expression<?> part : QueryPlanner.plan(Restrictions.and(expression, segment.toConditions()))) {
+                result.add(part.describe());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(!prepared) {
+            try {
+                nextItem = nextDistinct();
+            } catch (RuntimeException ex) {
+                cancel();
+                throw ex;
+            }
+            prepared = true;
+        }
+        return nextItem != null;
+    }
+
+    @Override
+    public T next() {
+        if(!hasNext()) throw new NoSuchElementException();
+        Item item = takeItem();
+        try {
+            return itemConverter.convertToInstance(item);
+        } catch (CanNotConvertItemException ex) {
+            throw new IllegalStateException("Could not convert an item to a domain object.", ex);
+        }
+    }
+
+    /**
+     * @return the next item which is not converted, or null if no more item exists.
+     */
+    Item takeItem() {
+        if(!hasNext()) return null;
+        Item item = nextItem;
+        nextItem = null;
+        prepared = false;
+        return item;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    /**
+     * stop fetching the pages of all segments.
+     * An iterator which is abandoned before reaching the last item should be cancelled,
+     * otherwise the pages of the segments are still fetched until their buffers are full.
+     */
+    public final void cancel() {
+        for (PagePrefetcher prefetcher : prefetchers) {
+            if(prefetcher != null) prefetcher.cancel();
+        }
+    }
+
+    /**
+     * the items which have already been returned are skipped.
+     * when the limit is reached, the segments are cancelled.
+     */
+    private Item nextDistinct() {
+        while(limit < 0 || returned < limit) {
+            Item item = orderBy == null ? nextUnordered() : nextOrdered();
+            if(item == null) return null;
+            if(itemNames == null || itemNames.add(item.getName())) {
+                returned++;
+                return item;
+            }
+        }
+        cancel();
+        return null;
+    }
+
+    private Item nextUnordered() {
+        while(currentIndex >= currentItems.size()) {
+            SelectResult page = takeAnyPage();
+            if(page == null) return null;
+            currentItems = page.getItems();
+            currentIndex = 0;
+        }
+        return currentItems.get(currentIndex++);
+    }
+
+    /**
+     * @return a page of any segment, or null if all pages of all segments have been taken.
+     */
+    private SelectResult takeAnyPage() {
+        while(true) {
+            //reset the flag before polling, so that a page which arrives after polling is never missed.
+            lock.lock();
+            try {
+                signalled = false;
+            } finally {
+                lock.unlock();
+            }
+
+            boolean drained = true;
+            for (int i = 0; i < prefetchers.length; i++) {
+                int index = (nextSegment + i) % prefetchers.length;
+                SelectResult page = prefetchers[index].poll();
+                if(page != null) {
+                    //start from the next segment at the next time for fairness.
+                    nextSegment = (index + 1) % prefetchers.length;
+                    return page;
+                }
+                if(!prefetchers[index].isDrained()) drained = false;
+            }
+            if(drained) return null;
+
+            lock.lock();
+            try {
+                while(!signalled) {
+                    changed.await();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for the next page of the expression: " + expression.describe(), ex);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Item nextOrdered() {
+        if(cursors == null) {
+            cursors = new PriorityQueue<Cursor>(Math.max(1, prefetchers.length));
+            for (int i = 0; i < prefetchers.length; i++) {
+                Cursor cursor = new Cursor(i, prefetchers[i]);
+                if(cursor.advance()) cursors.add(cursor);
+            }
+        }
+
+        Cursor cursor = cursors.poll();
+        if(cursor == null) return null;
+        Item item = cursor.current;
+        if(cursor.advance()) cursors.add(cursor);
+        return item;
+    }
+
+    static OrderByExpression<?> orderByOf(Expression<?> expression) {
+        if(expression instanceof OrderByExpression) return (OrderByExpression<?>) expression;
+        if(expression instanceof LimitExpression) return ((LimitExpression<?>) expression).getOrderByExpression();
+        if(expression instanceof BoundExpression) return orderByOf(((BoundExpression<?>) expression).getPreparedExpression().getExpression());
+        if(expression instanceof ProjectionExpression) return orderByOf(((ProjectionExpression<?,?>) expression).getExpression());
+        return null;
+    }
+
+    private String sortKeyOf(Item item) {
+        String attributeName = orderBy.getAttribute().getAttributeName();
+        if(ItemNameAttribute.INSTANCE.getAttributeName().equals(attributeName)) return item.getName();
+        for (Attribute attribute : item.getAttributes()) {
+            if(attributeName.equals(attribute.getName())) return attribute.getValue();
+        }
+        throw new IllegalStateException("the item '" + item.getName() + "' does not have the sort attribute '" + attributeName + "'. The sort attribute must be selected by an ordered expression for fetching segments.");
+    }
+
+    /**
+     * the head of the items of a segment.
+     */
+    private final class Cursor implements Comparable<Cursor> {
+        private final int segment;
+        private final PagePrefetcher prefetcher;
+        private List<Item> items = Collections.emptyList();
+        private int index = -1;
+        private Item current;
+        private String sortKey;
+
+        Cursor(int segment, PagePrefetcher prefetcher) {
+            this.segment = segment;
+            this.prefetcher = prefetcher;
+        }
+
+        /**
+         * move to the next item of this segment. this method waits for the next page if need.
+         * @return false if no more item exists in this segment.
+         */
+        boolean advance() {
+            index++;
+            while(index >= items.size()) {
+                SelectResult page = prefetcher.take();
+                if(page == null) {
+                    current = null;
+                    sortKey = null;
+                    return false;
+                }
+                items = page.getItems();
+                index = 0;
+            }
+            current = items.get(index);
+            sortKey = sortKeyOf(current);
+            return true;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int result = sortKey.compareTo(other.sortKey);
+            if(orderBy.getSortOrder() == SortOrder.Desc) result = -result;
+            //the items which have a same key are returned in the order of the segments.
+            return result != 0 ? result : (segment < other.segment ? -1 : (segment == other.segment ? 0 : 1));
+        }
+    }
+
+    public Expression<?> getExpression() {
+        return expression;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+}
@@ -21,11 +21,23 @@ import com.amazonaws.services.simpledb.model.SelectRequest;
 import com.amazonaws.services.simpledb.model.SelectResult;
 import com.shelfmap.simplequery.Context;
 import com.shelfmap.simplequery.domain.Domain;
+import com.shelfmap.simplequery.domain.impl.EagerReferenceFetcher;
 import com.shelfmap.simplequery.expression.CanNotConvertItemException;
 import com.shelfmap.simplequery.expression.Expression;
+import com.shelfmap.simplequery.expression.FetchOptions;
 import com.shelfmap.simplequery.expression.ItemConverter;
+import com.shelfmap.simplequery.expression.SimpleQueryException;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  *
@@ -39,25 +51,102 @@ public class SelectResultIterator<T> implements Iterator<T> {
     private int currentListSize;
     private int currentIndex;
     private ItemConverter<T> itemConverter;
+    private PagePrefetcher prefetcher;
 
+    //for the fetch size. remaining is the number of items which the results still can have, or -1 for no limit.
+    //pageStarted is the time when the current page was handed to the consumer.
+    private FetchSizeController fetchSize;
+    private int remaining = -1;
+    private boolean consistent;
+    private long pageStarted;
+
+    //for the parallel conversion and the eager fetch.
+    //the conversions of the pages which have been taken, in the order of the pages.
+    //without the parallel conversion, conversionExecutor is null and each page is converted when it is consumed.
+    private Executor conversionExecutor;
+    private int conversionParallelism;
+    private LinkedList<FutureTask<List<T>>> conversions;
+    private List<T> convertedItems;
+    private int convertedIndex;
+    private EagerReferenceFetcher<T> eagerFetcher;
 
     public SelectResultIterator(Context context, Domain<T> domain, Expression<T> expression, SelectResult result) {
+        this(context, context.getItemConverterFactory().create(domain), expression, result);
+    }
+
+    public SelectResultIterator(Context context, ItemConverter<T> itemConverter, Expression<T> expression, SelectResult result) {
+        this(context, itemConverter, expression, result, FetchOptions.DEFAULT);
+    }
+
+    /**
+     * If prefetch is enabled in the options, the next page is requested in background
+     * as soon as this iterator is created.
+     * If eager fetch is enabled, each page is converted as a whole and the references of the page are loaded
+     * before the first object of the page is returned.
+     */
+    public SelectResultIterator(Context context, ItemConverter<T> itemConverter, Expression<T> expression, SelectResult result, FetchOptions options) {
+        this(context, itemConverter, expression, result, options, null);
+    }
+
+    /**
+     * If fetchSize is not null, the following pages are requested by its fetch size,
+     * and the results end at the limit of the expression.
+     * The first page must have been requested by the fetchSize, so that it does not exceed the limit.
+     */
+    public SelectResultIterator(Context context, ItemConverter<T> itemConverter, Expression<T> expression, SelectResult result, FetchOptions options, FetchSizeController fetchSize) {
+        this(context, itemConverter, expression, result, options, fetchSize, false);
+    }
+
+    /**
+     * If consistent is true, the following pages are read consistently as the first page has been.
+     */
+    public SelectResultIterator(Context context, ItemConverter<T> itemConverter, Expression<T> expression, SelectResult result, FetchOptions options, FetchSizeController fetchSize, boolean consistent) {
+        isNotNull("options", options);
         this.context = context;
         this.expression = expression;
         this.currentResult = result;
         this.currentItemList = result.getItems();
         this.currentIndex = 0;
         this.currentListSize = this.currentItemList.size();
-        this.itemConverter = context.getItemConverterFactory().create(domain);
+        this.itemConverter = itemConverter;
+        this.fetchSize = fetchSize;
+        this.consistent = consistent;
+        if(fetchSize != null) {
+            int limit = BaseExpression.limitOf(expression);
+            if(limit >= 0) this.remaining = Math.max(0, limit - result.getItems().size());
+            this.pageStarted = System.nanoTime();
+        }
+        if(options.isPrefetchEnabled() && result.getNextToken() != null) {
+            this.prefetcher = PagePrefetcher.fromNextToken(context, expression.describe(), consistent, result.getNextToken(), options.getPrefetchDepth(), options.getPrefetchExecutor(), fetchSize, remaining);
+        }
+        if(options.isEagerFetchEnabled()) {
+            this.eagerFetcher = new EagerReferenceFetcher<T>(context, options.getEagerFetchProperties());
+        }
+        if(options.isParallelConversionEnabled() || eagerFetcher != null) {
+            this.conversionExecutor = options.getConversionExecutor();
+            this.conversionParallelism = options.isParallelConversionEnabled() ? options.getConversionParallelism() : 1;
+            this.conversions = new LinkedList<FutureTask<List<T>>>();
+            this.convertedItems = Collections.emptyList();
+            this.convertedIndex = 0;
+            //the first page is converted from now.
+            this.currentIndex = currentListSize;
+            submitConversion(result.getItems());
+        }
     }
 
     @Override
     public boolean hasNext() {
+        if(conversions != null) return prepareConverted();
         return currentIndex < currentItemList.size() || currentResult.getNextToken() != null;
     }
 
     @Override
     public T next() {
+        if(conversions != null) {
+            if(!prepareConverted()) throw new NoSuchElementException();
+            return convertedItems.get(convertedIndex++);
+        }
+
         Item item = null;
 
         if(currentIndex >= currentListSize && currentResult.getNextToken() != null) {
@@ -86,12 +175,109 @@ public class SelectResultIterator<T> implements Iterator<T> {
     protected void retrieveNextItems() {
         final String nextToken = currentResult.getNextToken();
         if(nextToken != null) {
-            SelectRequest request = new SelectRequest(expression.describe()).withNextToken(nextToken);
-            SelectResult result = context.getSimpleDB().select(request);
+            if(fetchSize != null) fetchSize.pageConsumed(currentListSize, System.nanoTime() - pageStarted);
+            SelectResult result;
+            if(prefetcher != null) {
+                result = prefetcher.take();
+                if(result == null) throw new IllegalStateException("the prefetch of the next page has been cancelled.");
+            } else if(fetchSize != null) {
+                result = fetchSize.select(context, expression.describe(), consistent, nextToken, remaining);
+                if(remaining >= 0) remaining -= result.getItems().size();
+            } else {
+                SelectRequest request = new SelectRequest(expression.describe(), consistent).withNextToken(nextToken);
+                result = context.getSimpleDB().select(request);
+            }
             currentResult = result;
             currentItemList = currentResult.getItems();
             currentListSize = currentItemList.size();
             currentIndex = 0;
+            if(fetchSize != null) pageStarted = System.nanoTime();
+        }
+    }
+
+    /**
+     * wait until a converted item is available. this method skips empty pages.
+     * @return false if no more item exists.
+     */
+    private boolean prepareConverted() {
+        while(convertedIndex >= convertedItems.size()) {
+            if(conversions.isEmpty()) {
+                if(currentResult.getNextToken() == null) return false;
+                retrieveNextItems();
+                currentIndex = currentListSize;
+                submitConversion(currentItemList);
+            }
+            submitArrivedPages();
+            convertedItems = awaitConversion(conversions.removeFirst());
+            convertedIndex = 0;
+        }
+        return true;
+    }
+
+    /**
+     * convert the pages which the prefetcher already has, so that they are converted concurrently.
+     */
+    private void submitArrivedPages() {
+        if(prefetcher == null) return;
+        while(conversions.size() < conversionParallelism && currentResult.getNextToken() != null) {
+            SelectResult page = prefetcher.poll();
+            if(page == null) return;
+            currentResult = page;
+            currentItemList = page.getItems();
+            currentListSize = currentItemList.size();
+            currentIndex = currentListSize;
+            submitConversion(currentItemList);
+        }
+    }
+
+    private void submitConversion(final List<Item> items) {
+        FutureTask<List<T>> task = new FutureTask<List<T>>(new Callable<List<T>>() {
+            @Override
+            public List<T> call() throws Exception {
+                List<T> converted = new ArrayList<T>(items.size());
+                for (Item item : items) {
+                    converted.add(itemConverter.convertToInstance(item));
+                }
+                if(eagerFetcher != null) eagerFetcher.fetch(converted, false);
+                return converted;
+            }
+        });
+        conversions.addLast(task);
+        if(conversionExecutor != null) conversionExecutor.execute(task);
+    }
+
+    private List<T> awaitConversion(FutureTask<List<T>> task) {
+        try {
+            //the task is converted on this thread if no thread of the executor has started it yet.
+            //run() does nothing if the task has already been started.
+            task.run();
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while converting a page of the expression: " + expression.describe(), ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof CanNotConvertItemException) throw new IllegalStateException("Could not convert an item to a domain object.", cause);
+            if(cause instanceof SimpleQueryException) throw new IllegalStateException("Could not fetch the references of the results eagerly.", cause);
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if(cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException("Could not convert an item to a domain object.", cause);
+        }
+    }
+
+    /**
+     * stop prefetching the next pages and converting the pages which are not consumed yet.
+     * An iterator which is abandoned before reaching the last page should be cancelled,
+     * otherwise the next pages are still fetched until the prefetch buffer is full.
+     * This method does nothing if none of prefetch, parallel conversion and eager fetch is enabled.
+     */
+    public void cancel() {
+        if(prefetcher != null) prefetcher.cancel();
+        if(conversions != null) {
+            for (FutureTask<List<T>> task : conversions) {
+                task.cancel(true);
+            }
+            conversions.clear();
         }
     }
 
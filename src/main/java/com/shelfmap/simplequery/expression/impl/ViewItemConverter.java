@@ -0,0 +1,406 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression.impl;
+
+import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.Item;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.ItemState;
+import com.shelfmap.simplequery.annotation.ItemName;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import com.shelfmap.simplequery.domain.AttributeConverter;
+import com.shelfmap.simplequery.domain.Domain;
+import com.shelfmap.simplequery.domain.DomainAttribute;
+import com.shelfmap.simplequery.domain.DomainDescriptor;
+import com.shelfmap.simplequery.domain.impl.ViewDomain;
+import com.shelfmap.simplequery.expression.CanNotConvertItemException;
+import com.shelfmap.simplequery.expression.CanNotRestoreAttributeException;
+import com.shelfmap.simplequery.expression.ViewConverter;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import com.shelfmap.simplequery.util.Objects;
+import com.shelfmap.simplequery.util.Strings;
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * A ViewConverter which builds a view from the attributes of an item.
+ * <p>
+ * A view-class is an interface or a class with a default constructor.
+ * Each property of a view is mapped to the attribute of the projected domain which has
+ * the same name with the property (or the name of @Attribute on the getter),
+ * and the property annotated with {@link ItemName} receives the item name.
+ * The values are restored by the AttributeConverters of the projected domain,
+ * so the type of a property must be assignable from the container type of the attribute.
+ * <p>
+ * An interface view is a dynamic proxy which holds the restored values in a map,
+ * and a class view is instantiated by its default constructor and filled through its setters.
+ * No instance of the domain class is created.
+ * <p>
+ * A view is read only. {@link #isView(java.lang.Object)} tells whether an object is a view,
+ * so that a context can reject a view which is passed as a domain object.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @param <V> the type of the view-class.
+ * @author Tsutomu YANO
+ */
+public class ViewItemConverter<V> implements ViewConverter<V> {
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    //view-classes which are not domain classes themselves. weakly referenced, so that the classloader of a redeployed application can be collected.
+    private static final Map<Class<?>, Boolean> VIEW_CLASSES = Collections.synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
+
+    private final Context context;
+    private final Domain<V> viewDomain;
+    private final Class<V> viewClass;
+    private final DomainAttribute<?,?> itemNameAttribute;
+    private final List<ViewProperty> properties;
+    private final Map<String, ViewProperty> propertiesByAttributeName;
+    private final Map<Method, ViewProperty> propertiesByGetter;
+    private final List<String> attributeNames;
+    private final Constructor<V> constructor;
+
+    public ViewItemConverter(Context context, Domain<?> sourceDomain, Class<V> viewClass) {
+        isNotNull("context", context);
+        isNotNull("sourceDomain", sourceDomain);
+        isNotNull("viewClass", viewClass);
+        this.context = context;
+        this.viewClass = viewClass;
+        this.viewDomain = new ViewDomain<V>(sourceDomain, viewClass);
+
+        DomainDescriptor descriptor = context.getDomainDescriptorFactory().create(sourceDomain);
+        this.itemNameAttribute = descriptor.getItemNameAttribute();
+
+        List<ViewProperty> propertyList = new ArrayList<ViewProperty>();
+        Map<String, ViewProperty> byAttributeName = new HashMap<String, ViewProperty>();
+        Map<Method, ViewProperty> byGetter = new HashMap<Method, ViewProperty>();
+        List<String> names = new ArrayList<String>();
+        for (Method getter : viewClass.getMethods()) {
+            String propertyName = propertyNameOf(getter);
+            if(propertyName == null) continue;
+
+            Method setter = null;
+            if(!viewClass.isInterface()) {
+                setter = findSetter(viewClass, propertyName, getter.getReturnType());
+                if(setter == null) continue;
+            }
+
+            ViewProperty property;
+            if(getter.isAnnotationPresent(ItemName.class)) {
+                property = new ViewProperty(propertyName, getter, setter, null);
+                if(itemNameAttribute == null && getter.getReturnType() != String.class) {
+                    throw new IllegalArgumentException("the domain " + sourceDomain.getDomainName() + " do not have an @ItemName property, so the @ItemName property of a view must be a String. view: " + viewClass.getName() + ", property: " + propertyName);
+                }
+            } else {
+                String attributeName = attributeNameOf(getter, propertyName);
+                DomainAttribute<?,?> attribute = descriptor.getAttribute(attributeName);
+                if(attribute == null) {
+                    throw new IllegalArgumentException("the attribute '" + attributeName + "' is not defined in the domain " + sourceDomain.getDomainName() + ". view: " + viewClass.getName() + ", property: " + propertyName);
+                }
+                if(!Objects.primitiveToObject(getter.getReturnType()).isAssignableFrom(Objects.primitiveToObject(attribute.getContainerType()))) {
+                    throw new IllegalArgumentException("the type of the property '" + propertyName + "' of the view " + viewClass.getName() + " is not assignable from the type of the attribute: " + attribute.getContainerType().getName());
+                }
+                property = new ViewProperty(propertyName, getter, setter, attribute);
+                byAttributeName.put(attributeName, property);
+                names.add(attributeName);
+            }
+            propertyList.add(property);
+            byGetter.put(getter, property);
+        }
+        this.properties = Collections.unmodifiableList(propertyList);
+        this.propertiesByAttributeName = byAttributeName;
+        this.propertiesByGetter = byGetter;
+        //the order of getMethods() is not specified, so we sort the names for a stable select expression.
+        Collections.sort(names);
+        this.attributeNames = Collections.unmodifiableList(names);
+        this.constructor = viewClass.isInterface() ? null : defaultConstructorOf(viewClass);
+        if(!viewClass.isInterface() && !viewClass.isAnnotationPresent(SimpleDbDomain.class)) {
+            VIEW_CLASSES.put(viewClass, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * An interface view is always recognized. A class view is recognized
+     * if its view-class is not annotated with {@link SimpleDbDomain} itself,
+     * because an instance of a domain class is a domain object even if the class is also used as a view-class.
+     *
+     * @param object an object.
+     * @return true if the object is a view created by a ViewItemConverter.
+     */
+    public static boolean isView(Object object) {
+        if(object == null) return false;
+        Class<?> clazz = object.getClass();
+        if(Proxy.isProxyClass(clazz)) {
+            return Proxy.getInvocationHandler(object) instanceof ViewHandler;
+        }
+        return VIEW_CLASSES.containsKey(clazz);
+    }
+
+    private static String propertyNameOf(Method method) {
+        if(method.getParameterTypes().length != 0 || Modifier.isStatic(method.getModifiers())) return null;
+        if(method.getDeclaringClass() == Object.class) return null;
+        String name = method.getName();
+        Class<?> returnType = method.getReturnType();
+        if(name.startsWith("get") && name.length() > 3 && returnType != void.class) {
+            return java.beans.Introspector.decapitalize(name.substring(3));
+        }
+        if(name.startsWith("is") && name.length() > 2 && returnType == boolean.class) {
+            return java.beans.Introspector.decapitalize(name.substring(2));
+        }
+        return null;
+    }
+
+    private static String attributeNameOf(Method getter, String propertyName) {
+        com.shelfmap.simplequery.annotation.Attribute annotation = getter.getAnnotation(com.shelfmap.simplequery.annotation.Attribute.class);
+        return (annotation == null || annotation.attributeName().isEmpty()) ? propertyName : annotation.attributeName();
+    }
+
+    private static Method findSetter(Class<?> viewClass, String propertyName, Class<?> type) {
+        try {
+            return viewClass.getMethod("set" + Strings.capitalize(propertyName), type);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    private static <X> Constructor<X> defaultConstructorOf(Class<X> viewClass) {
+        try {
+            Constructor<X> constructor = viewClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalArgumentException("a view class must be an interface or a class with a default constructor: " + viewClass.getName(), ex);
+        } catch (SecurityException ex) {
+            throw new IllegalArgumentException("Could not access to the default constructor of the view class: " + viewClass.getName(), ex);
+        }
+    }
+
+    @Override
+    public V convertToInstance(Item item) throws CanNotConvertItemException {
+        isNotNull("item", item);
+        Map<ViewProperty, List<String>> valuesOfProperties = new HashMap<ViewProperty, List<String>>();
+        for (Attribute attr : item.getAttributes()) {
+            ViewProperty property = propertiesByAttributeName.get(attr.getName());
+            if(property == null) continue;
+            List<String> values = valuesOfProperties.get(property);
+            if(values == null) {
+                values = new ArrayList<String>(1);
+                valuesOfProperties.put(property, values);
+            }
+            values.add(attr.getValue());
+        }
+
+        Map<ViewProperty, Object> restored = new HashMap<ViewProperty, Object>();
+        for (ViewProperty property : properties) {
+            try {
+                if(property.attribute == null) {
+                    restored.put(property, restoreItemName(item.getName()));
+                } else {
+                    List<String> values = valuesOfProperties.get(property);
+                    restored.put(property, restore(property.attribute, values == null ? Collections.<String>emptyList() : values));
+                }
+            } catch (CanNotRestoreAttributeException ex) {
+                throw new CanNotConvertItemException("could not restore a property: " + property.name + " of the view " + viewClass.getName() + " for the item: " + item.getName(), ex, item);
+            }
+        }
+        return viewClass.isInterface() ? newProxy(restored) : newInstance(restored);
+    }
+
+    private Object restoreItemName(String itemName) throws CanNotRestoreAttributeException {
+        if(itemNameAttribute == null) return itemName;
+        return itemNameAttribute.getAttributeConverter().restoreValue(itemName);
+    }
+
+    /**
+     * restore the value of a property in the same way with DefaultItemConverter.
+     * A multi-valued property becomes an empty container if the item do not have the attribute.
+     */
+    @SuppressWarnings("unchecked")
+    private <VT,CT> Object restore(DomainAttribute<VT,CT> attribute, List<String> values) throws CanNotRestoreAttributeException {
+        Class<VT> valueType = attribute.getValueType();
+        Class<CT> containerType = attribute.getContainerType();
+        AttributeConverter<VT> converter = attribute.getAttributeConverter();
+
+        if(Objects.primitiveToObject(valueType).equals(Objects.primitiveToObject(containerType))) {
+            return values.isEmpty() ? null : converter.restoreValue(values.get(values.size() - 1));
+        } else if(containerType.isArray()) {
+            Object array = Array.newInstance(valueType, values.size());
+            for (int i = 0; i < values.size(); i++) {
+                Array.set(array, i, converter.restoreValue(values.get(i)));
+            }
+            return array;
+        } else if(Collection.class.isAssignableFrom(containerType)) {
+            try {
+                Collection<VT> collection = (Collection<VT>) containerType.newInstance();
+                for (String value : values) {
+                    collection.add(converter.restoreValue(value));
+                }
+                return collection;
+            } catch (InstantiationException ex) {
+                throw new IllegalStateException("Could not instantiate a collection: " + containerType.getCanonicalName(), ex);
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException("Could not access to the default constructor of the class: " + containerType.getCanonicalName(), ex);
+            }
+        } else {
+            throw new IllegalStateException("The property's type with multiple values must be a subclass of Collection or an Array.");
+        }
+    }
+
+    private V newInstance(Map<ViewProperty, Object> restored) {
+        try {
+            V view = constructor.newInstance(NO_ARGUMENTS);
+            for (Map.Entry<ViewProperty, Object> entry : restored.entrySet()) {
+                Object value = entry.getValue();
+                //a primitive property keeps its default value.
+                if(value != null) {
+                    entry.getKey().setter.invoke(view, value);
+                }
+            }
+            return view;
+        } catch (InstantiationException ex) {
+            throw new IllegalStateException("Could not instanciate the view class: " + viewClass.getName(), ex);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Could not access to the view class: " + viewClass.getName(), ex);
+        } catch (InvocationTargetException ex) {
+            throw new IllegalStateException("An exception has been thrown by the view class: " + viewClass.getName(), ex.getCause());
+        }
+    }
+
+    private V newProxy(Map<ViewProperty, Object> restored) {
+        final Map<Method, Object> values = new HashMap<Method, Object>();
+        for (Map.Entry<ViewProperty, Object> entry : restored.entrySet()) {
+            values.put(entry.getKey().getter, entry.getValue());
+        }
+        Object proxy = Proxy.newProxyInstance(viewClass.getClassLoader(), new Class<?>[]{viewClass}, new ViewHandler(viewClass, propertiesByGetter, values));
+        return viewClass.cast(proxy);
+    }
+
+    /**
+     * a view is read only. {@link com.shelfmap.simplequery.Context#putObjects(java.lang.Object[])} rejects views,
+     * so this method is never called by a context.
+     */
+    @Override
+    public ItemState makeCurrentStateOf(Object domainObject) {
+        throw new UnsupportedOperationException("a view is read only. view: " + viewClass.getName());
+    }
+
+    @Override
+    public List<String> getAttributeNames() {
+        return attributeNames;
+    }
+
+    @Override
+    public Domain<V> getDomain() {
+        return viewDomain;
+    }
+
+    @Override
+    public Context getContext() {
+        return context;
+    }
+
+    /**
+     * a property of a view-class.
+     */
+    private static final class ViewProperty {
+        private final String name;
+        private final Method getter;
+        private final Method setter;
+        private final DomainAttribute<?,?> attribute;
+
+        ViewProperty(String name, Method getter, Method setter, DomainAttribute<?,?> attribute) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+            this.attribute = attribute;
+        }
+    }
+
+    /**
+     * the InvocationHandler of an interface view.
+     */
+    private static final class ViewHandler implements InvocationHandler {
+        private final Class<?> viewClass;
+        private final Map<Method, ViewProperty> properties;
+        private final Map<Method, Object> values;
+
+        ViewHandler(Class<?> viewClass, Map<Method, ViewProperty> properties, Map<Method, Object> values) {
+            this.viewClass = viewClass;
+            this.properties = properties;
+            this.values = values;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            ViewProperty property = properties.get(method);
+            if(property != null) {
+                Object value = values.get(method);
+                return value == null ? defaultValueOf(method.getReturnType()) : value;
+            }
+
+            String name = method.getName();
+            int parameterCount = method.getParameterTypes().length;
+            if(name.equals("equals") && parameterCount == 1) {
+                Object other = args[0];
+                if(other == null || !Proxy.isProxyClass(other.getClass())) return false;
+                InvocationHandler handler = Proxy.getInvocationHandler(other);
+                return handler instanceof ViewHandler
+                        && ((ViewHandler) handler).viewClass == viewClass
+                        && valuesEqual(((ViewHandler) handler).values);
+            }
+            if(name.equals("hashCode") && parameterCount == 0) {
+                int hash = 0;
+                for (Map.Entry<Method, Object> entry : values.entrySet()) {
+                    hash += entry.getKey().hashCode() ^ Arrays.deepHashCode(new Object[]{entry.getValue()});
+                }
+                return hash;
+            }
+            if(name.equals("toString") && parameterCount == 0) {
+                StringBuilder sb = new StringBuilder(viewClass.getSimpleName()).append('{');
+                boolean first = true;
+                for (Map.Entry<Method, ViewProperty> entry : properties.entrySet()) {
+                    if(!first) sb.append(", ");
+                    String value = Arrays.deepToString(new Object[]{values.get(entry.getKey())});
+                    sb.append(entry.getValue().name).append('=').append(value, 1, value.length() - 1);
+                    first = false;
+                }
+                return sb.append('}').toString();
+            }
+            throw new UnsupportedOperationException("the method is not a property of the view: " + method);
+        }
+
+        //an array property must be compared by its elements.
+        private boolean valuesEqual(Map<Method, Object> otherValues) {
+            if(!values.keySet().equals(otherValues.keySet())) return false;
+            for (Map.Entry<Method, Object> entry : values.entrySet()) {
+                if(!Arrays.deepEquals(new Object[]{entry.getValue()}, new Object[]{otherValues.get(entry.getKey())})) return false;
+            }
+            return true;
+        }
+
+        private static Object defaultValueOf(Class<?> type) {
+            if(!type.isPrimitive()) return null;
+            if(type == boolean.class) return Boolean.FALSE;
+            if(type == char.class) return Character.valueOf((char) 0);
+            if(type == byte.class) return Byte.valueOf((byte) 0);
+            if(type == short.class) return Short.valueOf((short) 0);
+            if(type == int.class) return Integer.valueOf(0);
+            if(type == long.class) return Long.valueOf(0L);
+            if(type == float.class) return Float.valueOf(0F);
+            return Double.valueOf(0D);
+        }
+    }
+}
@@ -26,4 +26,25 @@ import com.shelfmap.simplequery.domain.DomainDescriptor;
 public interface DomainDescriptorFactory {
     DomainDescriptor create(Domain<?> domain);
     Context getContext();
+
+    /**
+     * discard the cached descriptor of the domain, if exists.
+     * the descriptor will be built again at the next call of {@link #create(Domain)}.
+     *
+     * @param domain the domain whose descriptor should be discarded.
+     */
+    void invalidate(Domain<?> domain);
+
+    /**
+     * discard all cached descriptors of domain classes which are loaded by the classloader.
+     * Call this method when the classloader is going to be discarded (ex. redeploying an application).
+     *
+     * @param classLoader the classloader which loaded the domain classes.
+     */
+    void invalidate(ClassLoader classLoader);
+
+    /**
+     * discard all cached descriptors.
+     */
+    void invalidateAll();
 }
@@ -18,6 +18,7 @@ package com.shelfmap.simplequery.factory;
 import com.shelfmap.simplequery.Context;
 import com.shelfmap.simplequery.domain.Domain;
 import com.shelfmap.simplequery.expression.ItemConverter;
+import com.shelfmap.simplequery.expression.ViewConverter;
 
 /**
  *
@@ -25,5 +26,26 @@ import com.shelfmap.simplequery.expression.ItemConverter;
  */
 public interface ItemConverterFactory {
     <T> ItemConverter<T> create(Domain<T> domain);
+
+    /**
+     * create a converter which returns instances whose properties are restored
+     * from an item when their getters are called at first.
+     * If lazy conversion is not available for the domain, this method returns
+     * the same converter as {@link #create(com.shelfmap.simplequery.domain.Domain)}.
+     *
+     * @param domain the domain which is converted.
+     * @return a converter for the domain.
+     */
+    <T> ItemConverter<T> createLazy(Domain<T> domain);
+
+    /**
+     * create a converter which converts an item of the domain to an instance of the view-class.
+     *
+     * @param domain the domain which is projected.
+     * @param viewClass an interface or a class with a default constructor, whose properties are attributes of the domain.
+     * @return a converter for the view-class.
+     * @throws IllegalArgumentException if a property of the view-class is not an attribute of the domain.
+     */
+    <V> ViewConverter<V> createViewConverter(Domain<?> domain, Class<V> viewClass);
     Context getContext();
 }
@@ -47,7 +47,7 @@ public class DefaultDomainAttributeFactory implements DomainAttributeFactory {
             return (AttributeAccessor<CT>) new ForwardReferenceAttributeAccessor(context, propertyPath);
         }
 
-        return new PropertyAttributeAccessor<CT>(context, propertyPath);
+        return new CompiledAttributeAccessor<CT>(context, propertyPath);
     }
 
     @Override
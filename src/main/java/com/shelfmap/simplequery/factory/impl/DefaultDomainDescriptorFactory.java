@@ -19,14 +19,29 @@ import com.shelfmap.simplequery.Context;
 import com.shelfmap.simplequery.domain.Domain;
 import com.shelfmap.simplequery.domain.DomainDescriptor;
 import com.shelfmap.simplequery.domain.impl.BeanDomainDescriptor;
+import com.shelfmap.simplequery.domain.impl.DomainMetadata;
+import com.shelfmap.simplequery.domain.impl.IndexedDomainDescriptor;
 import com.shelfmap.simplequery.factory.DomainDescriptorFactory;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * The default implementation of {@link DomainDescriptorFactory}.
+ * <p>
+ * Building a descriptor requires introspection of the whole domain class, so
+ * descriptors are built only once for each domain class and cached in this factory.
+ * The cache is keyed by the Class object itself, so the same class loaded by
+ * different classloaders will have their own descriptors.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
  *
  * @author Tsutomu YANO
  */
 public class DefaultDomainDescriptorFactory implements DomainDescriptorFactory {
     private Context context;
+    private final ConcurrentMap<Class<?>, DomainDescriptor> descriptors = new ConcurrentHashMap<Class<?>, DomainDescriptor>();
 
     public DefaultDomainDescriptorFactory(Context context) {
         this.context = context;
@@ -34,7 +49,53 @@ public class DefaultDomainDescriptorFactory implements DomainDescriptorFactory {
 
     @Override
     public DomainDescriptor create(Domain<?> domain) {
-        return new BeanDomainDescriptor(getContext(), domain);
+        isNotNull("domain", domain);
+        Class<?> domainClass = domain.getDomainClass();
+
+        DomainDescriptor descriptor = descriptors.get(domainClass);
+        if(descriptor == null) {
+            //two threads might build a descriptor for a same class at a same time,
+            //but only the first one will be registered and shared.
+            DomainDescriptor newDescriptor = newDescriptor(domain);
+            descriptor = descriptors.putIfAbsent(domainClass, newDescriptor);
+            if(descriptor == null) {
+                descriptor = newDescriptor;
+            }
+        }
+        return descriptor;
+    }
+
+    /**
+     * build a new descriptor from the metadata index written by SimpleQueryProcessor if it exists,
+     * because introspecting a domain class is much slower than reading the index.
+     */
+    protected DomainDescriptor newDescriptor(Domain<?> domain) {
+        DomainMetadata metadata = DomainMetadata.find(domain.getDomainClass());
+        return metadata != null
+                ? new IndexedDomainDescriptor(getContext(), domain, metadata)
+                : new BeanDomainDescriptor(getContext(), domain);
+    }
+
+    @Override
+    public void invalidate(Domain<?> domain) {
+        isNotNull("domain", domain);
+        descriptors.remove(domain.getDomainClass());
+    }
+
+    @Override
+    public void invalidate(ClassLoader classLoader) {
+        Iterator<Class<?>> iterator = descriptors.keySet().iterator();
+        while(iterator.hasNext()) {
+            Class<?> domainClass = iterator.next();
+            if(domainClass.getClassLoader() == classLoader) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        descriptors.clear();
     }
 
     @Override
@@ -18,15 +18,63 @@ package com.shelfmap.simplequery.factory.impl;
 import com.shelfmap.simplequery.Context;
 import com.shelfmap.simplequery.domain.Domain;
 import com.shelfmap.simplequery.expression.ItemConverter;
+import com.shelfmap.simplequery.expression.ViewConverter;
 import com.shelfmap.simplequery.expression.impl.DefaultItemConverter;
+import com.shelfmap.simplequery.expression.impl.ViewItemConverter;
 import com.shelfmap.simplequery.factory.ItemConverterFactory;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * The default implementation of {@link ItemConverterFactory}.
+ * <p>
+ * If SimpleQueryProcessor generated an ItemConverter for a domain class
+ * (the class named as the name of the domain class + "ItemConverter"),
+ * this factory returns the generated converter, which converts items without reflection.
+ * Otherwise {@link DefaultItemConverter} is returned.
+ * In the same way, {@link #createLazy(com.shelfmap.simplequery.domain.Domain)} returns
+ * the lazy ItemConverter generated by SimpleQueryProcessor (the name of the domain class + "LazyItemConverter")
+ * if it exists, or the result of {@link #create(com.shelfmap.simplequery.domain.Domain)}.
+ * The result of the lookup of a generated converter is cached for each domain class.
+ * The cache holds the domain classes and the generated classes only through weak references,
+ * so that the classloader of a redeployed application can be collected.
+ * <p>
+ * A generated converter is immutable and builds the converters of all attributes in its constructor,
+ * so the instance created for a domain is also cached and shared. The instance is held through a soft reference.
+ * In the same way, a {@link ViewItemConverter} is cached for each pair of a view-class and a domain class,
+ * through weak references to the classes and a soft reference to the converter.
+ * {@link DefaultItemConverter} is not cached, because it is cheap to create and
+ * it reads the descriptor of its domain from the DomainDescriptorFactory of the context,
+ * which may be invalidated.
+ * <p>
+ * A generated converter builds its attributes by the same rules with {@link DefaultDomainDescriptorFactory},
+ * so it is used only if the context uses DefaultDomainDescriptorFactory itself.
+ * If the context has another DomainDescriptorFactory, {@link DefaultItemConverter} is always returned,
+ * which converts items by the descriptors of the factory.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
  *
  * @author Tsutomu YANO
  */
 public class DefaultItemConverterFactory implements ItemConverterFactory {
+    public static final String GENERATED_CONVERTER_SUFFIX = "ItemConverter";
+    public static final String GENERATED_LAZY_CONVERTER_SUFFIX = "LazyItemConverter";
+    private static final GeneratedConverter NOT_GENERATED = new GeneratedConverter(null);
+
     private Context context;
+    private final Map<Class<?>, GeneratedConverter> generatedConverters = new WeakHashMap<Class<?>, GeneratedConverter>();
+    private final Map<Class<?>, GeneratedConverter> generatedLazyConverters = new WeakHashMap<Class<?>, GeneratedConverter>();
+    private final Lock generatedConvertersLock = new ReentrantLock();
+
+    //ViewItemConverter is thread safe, so an instance is shared for each pair of a view-class and a domain class.
+    //the converter strongly references both classes, so it is held only through a soft reference.
+    private final Map<Class<?>, Map<Class<?>, SoftReference<ViewConverter<?>>>> viewConverters = new WeakHashMap<Class<?>, Map<Class<?>, SoftReference<ViewConverter<?>>>>();
 
     public DefaultItemConverterFactory(Context context) {
         this.context = context;
@@ -34,11 +82,135 @@ public class DefaultItemConverterFactory implements ItemConverterFactory {
 
     @Override
     public <T> ItemConverter<T> create(Domain<T> domain) {
-        return new DefaultItemConverter<T>(getContext(), domain);
+        isNotNull("domain", domain);
+        Class<T> domainClass = domain.getDomainClass();
+
+        GeneratedConverter generated = lookup(generatedConverters, domainClass, GENERATED_CONVERTER_SUFFIX);
+        ItemConverter<T> converter = generated.converterFor(getContext(), domain);
+        return converter != null ? converter : new DefaultItemConverter<T>(getContext(), domain);
+    }
+
+    @Override
+    public <T> ItemConverter<T> createLazy(Domain<T> domain) {
+        isNotNull("domain", domain);
+        GeneratedConverter generated = lookup(generatedLazyConverters, domain.getDomainClass(), GENERATED_LAZY_CONVERTER_SUFFIX);
+        ItemConverter<T> converter = generated.converterFor(getContext(), domain);
+        return converter != null ? converter : create(domain);
+    }
+
+    private GeneratedConverter lookup(Map<Class<?>, GeneratedConverter> cache, Class<?> domainClass, String suffix) {
+        if(!usesDefaultDescriptors()) return NOT_GENERATED;
+        generatedConvertersLock.lock();
+        try {
+            GeneratedConverter generated = cache.get(domainClass);
+            if(generated == null) {
+                generated = findGeneratedConverter(domainClass, suffix);
+                cache.put(domainClass, generated);
+            }
+            return generated;
+        } finally {
+            generatedConvertersLock.unlock();
+        }
+    }
+
+    /**
+     * a subclass of DefaultDomainDescriptorFactory may customize the descriptors, so it is not the default.
+     */
+    private boolean usesDefaultDescriptors() {
+        return getContext().getDomainDescriptorFactory().getClass() == DefaultDomainDescriptorFactory.class;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V> ViewConverter<V> createViewConverter(Domain<?> domain, Class<V> viewClass) {
+        isNotNull("domain", domain);
+        isNotNull("viewClass", viewClass);
+        generatedConvertersLock.lock();
+        try {
+            Map<Class<?>, SoftReference<ViewConverter<?>>> converters = viewConverters.get(viewClass);
+            if(converters == null) {
+                converters = new WeakHashMap<Class<?>, SoftReference<ViewConverter<?>>>();
+                viewConverters.put(viewClass, converters);
+            }
+            SoftReference<ViewConverter<?>> ref = converters.get(domain.getDomainClass());
+            ViewConverter<?> cached = ref == null ? null : ref.get();
+            //a domain class may be used with some domain names.
+            if(cached != null && cached.getDomain().getDomainName().equals(domain.getDomainName())) return (ViewConverter<V>) cached;
+
+            ViewConverter<V> converter = new ViewItemConverter<V>(getContext(), domain, viewClass);
+            converters.put(domain.getDomainClass(), new SoftReference<ViewConverter<?>>(converter));
+            return converter;
+        } finally {
+            generatedConvertersLock.unlock();
+        }
+    }
+
+    private GeneratedConverter findGeneratedConverter(Class<?> domainClass, String suffix) {
+        ClassLoader loader = domainClass.getClassLoader();
+        if(loader == null) return NOT_GENERATED;
+        try {
+            Class<?> converterClass = Class.forName(domainClass.getName() + suffix, true, loader);
+            if(!ItemConverter.class.isAssignableFrom(converterClass)) return NOT_GENERATED;
+            converterClass.getConstructor(Context.class, Domain.class);
+            return new GeneratedConverter(converterClass);
+        } catch (ClassNotFoundException ex) {
+            return NOT_GENERATED;
+        } catch (NoSuchMethodException ex) {
+            return NOT_GENERATED;
+        } catch (LinkageError ex) {
+            return NOT_GENERATED;
+        }
     }
 
     @Override
     public Context getContext() {
         return this.context;
     }
+
+    /**
+     * a generated class of ItemConverter and the last instance of it.
+     * the class is weakly referenced, because it strongly references its classloader and so the domain class,
+     * which is the key of the cache.
+     */
+    private static final class GeneratedConverter {
+        private final WeakReference<Class<?>> converterClass;
+        private volatile SoftReference<ItemConverter<?>> instance;
+
+        GeneratedConverter(Class<?> converterClass) {
+            this.converterClass = converterClass == null ? null : new WeakReference<Class<?>>(converterClass);
+        }
+
+        /**
+         * @return the instance of the generated converter for the domain, or null if no converter is generated.
+         */
+        @SuppressWarnings("unchecked")
+        <T> ItemConverter<T> converterFor(Context context, Domain<T> domain) {
+            SoftReference<ItemConverter<?>> ref = instance;
+            ItemConverter<?> cached = ref == null ? null : ref.get();
+            //a domain class may be used with some domain names.
+            if(cached != null && cached.getDomain().equals(domain)) return (ItemConverter<T>) cached;
+
+            ItemConverter<T> converter = newInstance(context, domain);
+            if(converter != null) instance = new SoftReference<ItemConverter<?>>(converter);
+            return converter;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> ItemConverter<T> newInstance(Context context, Domain<T> domain) {
+            //the generated class is never collected while its domain class is alive.
+            Class<?> clazz = converterClass == null ? null : converterClass.get();
+            if(clazz == null) return null;
+            try {
+                return (ItemConverter<T>) clazz.getConstructor(Context.class, Domain.class).newInstance(context, domain);
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalStateException("the generated ItemConverter does not have the constructor for a context and a domain: " + clazz.getName(), ex);
+            } catch (InstantiationException ex) {
+                throw new IllegalStateException("Could not instantiate the generated ItemConverter: " + clazz.getName(), ex);
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException("Could not access to the constructor of the generated ItemConverter: " + clazz.getName(), ex);
+            } catch (InvocationTargetException ex) {
+                throw new IllegalStateException("The constructor of the generated ItemConverter threw an exception: " + clazz.getName(), ex.getCause());
+            }
+        }
+    }
 }
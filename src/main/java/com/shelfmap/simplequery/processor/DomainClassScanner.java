@@ -0,0 +1,333 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.processor;
+
+import com.shelfmap.simplequery.domain.impl.DomainMetadata;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.*;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Finds the bean properties of a domain class at compile time
+ * in the same way with {@link java.beans.Introspector} at runtime.
+ * <p>
+ * Code generated from the result of this scanner must behave exactly same
+ * as the runtime introspection, so this scanner gives up (returns null) for
+ * classes whose properties could not be determined with certainty.
+ *
+ * @author Tsutomu YANO
+ */
+public class DomainClassScanner {
+    private final ProcessingEnvironment processingEnv;
+
+    public DomainClassScanner(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+    }
+
+    /**
+     * find all bean properties of the class.
+     *
+     * @param element a class or an interface.
+     * @return the properties in the order of declaration, or null if the properties could not be determined.
+     */
+    public List<BeanProperty> scan(TypeElement element) {
+        if(element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.INTERFACE) return null;
+        if(element.getKind() == ElementKind.INTERFACE && hasInheritedAccessors(element)) return null;
+
+        Types typeUtils = processingEnv.getTypeUtils();
+        Map<String, ExecutableElement> getters = new LinkedHashMap<String, ExecutableElement>();
+        Map<String, List<ExecutableElement>> setters = new HashMap<String, List<ExecutableElement>>();
+        for (ExecutableElement method : collectMethods(element)) {
+            String propertyName = getterPropertyName(method);
+            if(propertyName != null) {
+                if(!getters.containsKey(propertyName)) getters.put(propertyName, method);
+                continue;
+            }
+            propertyName = setterPropertyName(method);
+            if(propertyName != null) {
+                List<ExecutableElement> list = setters.get(propertyName);
+                if(list == null) {
+                    list = new ArrayList<ExecutableElement>();
+                    setters.put(propertyName, list);
+                }
+                list.add(method);
+            }
+        }
+
+        //the runtime introspection fails for a property without a getter.
+        for (String setterProperty : setters.keySet()) {
+            if(!getters.containsKey(setterProperty)) return null;
+        }
+
+        List<BeanProperty> properties = new ArrayList<BeanProperty>();
+        for (Map.Entry<String, ExecutableElement> entry : getters.entrySet()) {
+            ExecutableElement getter = entry.getValue();
+            TypeMirror type = getter.getReturnType();
+
+            ExecutableElement setter = null;
+            List<ExecutableElement> candidates = setters.get(entry.getKey());
+            if(candidates != null) {
+                for (ExecutableElement candidate : candidates) {
+                    if(typeUtils.isSameType(candidate.getParameters().get(0).asType(), type)) {
+                        setter = candidate;
+                        break;
+                    }
+                }
+            }
+            properties.add(new BeanProperty(entry.getKey(), getter, setter, type));
+        }
+        return properties;
+    }
+
+    /**
+     * list the signatures of the methods of the class in the same way with
+     * {@link DomainMetadata#signaturesOf(java.lang.Class)} at runtime.
+     *
+     * @param element a class or an interface.
+     * @return signatures of the methods of the class.
+     */
+    public List<String> signaturesOf(TypeElement element) {
+        List<String> signatures = new ArrayList<String>();
+        Elements elementUtils = processingEnv.getElementUtils();
+        for (ExecutableElement method : collectMethods(element)) {
+            TypeElement declaringClass = (TypeElement) method.getEnclosingElement();
+            StringBuilder sb = new StringBuilder();
+            sb.append(elementUtils.getBinaryName(declaringClass)).append('#').append(method.getSimpleName()).append('(');
+            List<? extends VariableElement> parameters = method.getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                if(i > 0) sb.append(',');
+                sb.append(toClassName(parameters.get(i).asType()));
+            }
+            sb.append(')').append(toClassName(method.getReturnType()));
+
+            SortedMap<String, AnnotationMirror> annotations = new TreeMap<String, AnnotationMirror>();
+            for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+                TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+                String annotationTypeName = elementUtils.getBinaryName(annotationType).toString();
+                //only annotations which are visible at runtime.
+                Retention retention = annotationType.getAnnotation(Retention.class);
+                if(annotationTypeName.startsWith(DomainMetadata.ANNOTATION_PACKAGE + ".")
+                   && retention != null && retention.value() == RetentionPolicy.RUNTIME) {
+                    annotations.put(annotationTypeName, annotation);
+                }
+            }
+            for (Map.Entry<String, AnnotationMirror> entry : annotations.entrySet()) {
+                SortedMap<String, String> values = new TreeMap<String, String>();
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : elementUtils.getElementValuesWithDefaults(entry.getValue()).entrySet()) {
+                    values.put(value.getKey().getSimpleName().toString(), toSignatureValue(value.getValue().getValue()));
+                }
+                sb.append(DomainMetadata.annotationSignatureOf(entry.getKey(), values));
+            }
+            signatures.add(sb.toString());
+        }
+        return signatures;
+    }
+
+    private String toSignatureValue(Object value) {
+        if(value instanceof TypeMirror) return toClassName((TypeMirror) value);
+        if(value instanceof VariableElement) return ((VariableElement) value).getSimpleName().toString();
+        return String.valueOf(value);
+    }
+
+    private boolean hasInheritedAccessors(TypeElement element) {
+        //java.beans.Introspector ignores the super-interfaces of an interface.
+        //we do not rely on that behavior.
+        for (TypeMirror superInterface : element.getInterfaces()) {
+            TypeElement type = (TypeElement) ((DeclaredType) superInterface).asElement();
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if(getterPropertyName(method) != null || setterPropertyName(method) != null) return true;
+            }
+            if(hasInheritedAccessors(type)) return true;
+        }
+        return false;
+    }
+
+    private List<ExecutableElement> collectMethods(TypeElement element) {
+        //java.beans.Introspector only looks up the class hierarchy of a class.
+        List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+        TypeElement current = element;
+        while(current != null && !current.getQualifiedName().contentEquals(Object.class.getName())) {
+            for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+                Set<Modifier> modifiers = method.getModifiers();
+                if((element.getKind() == ElementKind.INTERFACE || modifiers.contains(Modifier.PUBLIC)) && !modifiers.contains(Modifier.STATIC)) {
+                    methods.add(method);
+                }
+            }
+            if(current.getKind() == ElementKind.INTERFACE) break;
+            current = superclassOf(current);
+        }
+        return methods;
+    }
+
+    private TypeElement superclassOf(TypeElement element) {
+        TypeMirror superclass = element.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED
+                ? (TypeElement) ((DeclaredType) superclass).asElement()
+                : null;
+    }
+
+    private String getterPropertyName(ExecutableElement method) {
+        if(!method.getParameters().isEmpty()) return null;
+        String name = method.getSimpleName().toString();
+        TypeMirror returnType = method.getReturnType();
+        if(returnType.getKind() == TypeKind.VOID) return null;
+
+        if(name.startsWith("get") && name.length() > 3) {
+            return decapitalize(name.substring(3));
+        }
+        if(name.startsWith("is") && name.length() > 2 && returnType.getKind() == TypeKind.BOOLEAN) {
+            return decapitalize(name.substring(2));
+        }
+        return null;
+    }
+
+    private String setterPropertyName(ExecutableElement method) {
+        if(method.getParameters().size() != 1) return null;
+        if(method.getReturnType().getKind() != TypeKind.VOID) return null;
+        String name = method.getSimpleName().toString();
+        if(name.startsWith("set") && name.length() > 3) {
+            return decapitalize(name.substring(3));
+        }
+        return null;
+    }
+
+    /**
+     * same rule with {@link java.beans.Introspector#decapitalize(java.lang.String)}.
+     */
+    private String decapitalize(String name) {
+        if(name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+            return name;
+        }
+        char[] chars = name.toCharArray();
+        chars[0] = Character.toLowerCase(chars[0]);
+        return new String(chars);
+    }
+
+    /**
+     * find an annotation on a getter in the same order with
+     * {@link com.shelfmap.simplequery.util.Objects#findAnnotationOnProperty(java.lang.Class, java.lang.String, java.lang.Class)}.
+     */
+    public <A extends Annotation> A findAnnotation(TypeElement element, ExecutableElement getter, Class<A> annotationType) {
+        A annotation = getter.getAnnotation(annotationType);
+        if(annotation != null) return annotation;
+
+        String getterName = getter.getSimpleName().toString();
+        for (TypeElement type : linearize(element)) {
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if(method.getSimpleName().contentEquals(getterName) && method.getParameters().isEmpty()) {
+                    annotation = method.getAnnotation(annotationType);
+                    if(annotation != null) return annotation;
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<TypeElement> linearize(TypeElement element) {
+        List<TypeElement> result = new ArrayList<TypeElement>();
+        TypeElement current = element;
+        while(current != null && !current.getQualifiedName().contentEquals(Object.class.getName())) {
+            result.add(current);
+            for (TypeMirror anInterface : current.getInterfaces()) {
+                result.add((TypeElement) ((DeclaredType) anInterface).asElement());
+            }
+            current = superclassOf(current);
+        }
+        return result;
+    }
+
+    public boolean isSubtypeIfErased(TypeMirror type, Class<?> targetType) {
+        if(type.getKind() != TypeKind.DECLARED) return false;
+        Elements elementUtils = processingEnv.getElementUtils();
+        Types typeUtils = processingEnv.getTypeUtils();
+        TypeMirror erasedTargetType = typeUtils.erasure(elementUtils.getTypeElement(targetType.getName()).asType());
+        return typeUtils.isSubtype(typeUtils.erasure(type), erasedTargetType);
+    }
+
+    /**
+     * @return the name of the type which is loadable by {@link Class#forName(java.lang.String)},
+     *         or the name of a primitive type.
+     */
+    public String toClassName(TypeMirror type) {
+        if(type.getKind().isPrimitive() || type.getKind() == TypeKind.VOID) {
+            return type.toString();
+        }
+        if(type.getKind() == TypeKind.ARRAY) {
+            return "[" + toDescriptor(((ArrayType) type).getComponentType());
+        }
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        TypeElement element = (TypeElement) ((DeclaredType) erased).asElement();
+        return processingEnv.getElementUtils().getBinaryName(element).toString();
+    }
+
+    private String toDescriptor(TypeMirror type) {
+        switch(type.getKind()) {
+            case BOOLEAN: return "Z";
+            case BYTE: return "B";
+            case CHAR: return "C";
+            case SHORT: return "S";
+            case INT: return "I";
+            case LONG: return "J";
+            case FLOAT: return "F";
+            case DOUBLE: return "D";
+            case ARRAY: return "[" + toDescriptor(((ArrayType) type).getComponentType());
+            default: return "L" + toClassName(type) + ";";
+        }
+    }
+
+    /**
+     * a property found by this scanner.
+     */
+    public static final class BeanProperty {
+        private final String name;
+        private final ExecutableElement getter;
+        private final ExecutableElement setter;
+        private final TypeMirror type;
+
+        BeanProperty(String name, ExecutableElement getter, ExecutableElement setter, TypeMirror type) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ExecutableElement getGetter() {
+            return getter;
+        }
+
+        /**
+         * @return the setter, or null if the property is read-only.
+         */
+        public ExecutableElement getSetter() {
+            return setter;
+        }
+
+        public TypeMirror getType() {
+            return type;
+        }
+    }
+}
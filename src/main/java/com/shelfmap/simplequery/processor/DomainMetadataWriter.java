@@ -0,0 +1,267 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.processor;
+
+import com.shelfmap.simplequery.annotation.*;
+import com.shelfmap.simplequery.domain.DomainReference;
+import com.shelfmap.simplequery.domain.ForwardReference;
+import com.shelfmap.simplequery.domain.ReverseReference;
+import com.shelfmap.simplequery.domain.impl.DomainMetadata;
+import com.shelfmap.simplequery.domain.impl.DomainMetadata.AttributeMetadata;
+import com.shelfmap.simplequery.domain.impl.DomainMetadata.ConverterKind;
+import com.shelfmap.simplequery.domain.impl.NullAttributeConverter;
+import com.shelfmap.simplequery.processor.DomainClassScanner.BeanProperty;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.*;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Writes the {@link DomainMetadata} of a class annotated with {@link SimpleDbDomain}
+ * into the class output, so that the runtime can build a DomainDescriptor without introspection.
+ * <p>
+ * The metadata must be same with the result of the introspection by BeanDomainDescriptor,
+ * so no metadata will be written for a domain class if this writer could not
+ * determine the attributes of the class with certainty.
+ *
+ * @author Tsutomu YANO
+ */
+public class DomainMetadataWriter {
+    private final ProcessingEnvironment processingEnv;
+    private final DomainClassScanner scanner;
+
+    public DomainMetadataWriter(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+        this.scanner = new DomainClassScanner(processingEnv);
+    }
+
+    /**
+     * write the metadata of the domain class.
+     *
+     * @param element the domain class annotated with {@link SimpleDbDomain}
+     * @return true if the metadata is written, false if the domain class is not supported.
+     * @throws IOException if the metadata could not be written.
+     */
+    public boolean write(TypeElement element) throws IOException {
+        DomainMetadata metadata = build(element);
+        if(metadata == null) return false;
+
+        //Properties#store writes the current date as a comment and the entries in the order of a hash table.
+        //we remove the comment and sort the entries for reproducible builds.
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        metadata.toProperties().store(buffer, null);
+        String stored = new String(buffer.toByteArray(), "ISO-8859-1");
+        List<String> lines = new ArrayList<String>();
+        for (String line : stored.split("\\r?\\n")) {
+            if(!line.isEmpty() && !line.startsWith("#")) lines.add(line);
+        }
+        Collections.sort(lines);
+        StringBuilder sorted = new StringBuilder();
+        for (String line : lines) {
+            sorted.append(line).append('\n');
+        }
+        byte[] bytes = sorted.toString().getBytes("ISO-8859-1");
+
+        String binaryName = processingEnv.getElementUtils().getBinaryName(element).toString();
+        FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", DomainMetadata.indexPathOf(binaryName), element);
+        OutputStream out = resource.openOutputStream();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return true;
+    }
+
+    /**
+     * @return the metadata of the domain class, or null if the class is not supported.
+     */
+    public DomainMetadata build(TypeElement element) {
+        if(element.getAnnotation(SimpleDbDomain.class) == null) return null;
+
+        List<AttributeMetadata> attributes = new ArrayList<AttributeMetadata>();
+        String[] itemNameProperty = new String[1];
+        Map<String, TypeElement> classes = new LinkedHashMap<String, TypeElement>();
+        classes.put(processingEnv.getElementUtils().getBinaryName(element).toString(), element);
+        if(!collect(element, "", null, attributes, itemNameProperty, classes)) return null;
+
+        Set<String> names = new HashSet<String>();
+        for (AttributeMetadata attribute : attributes) {
+            if(!names.add(attribute.getAttributeName())) return null;
+        }
+
+        List<String> signatures = new ArrayList<String>();
+        for (TypeElement type : classes.values()) {
+            signatures.addAll(scanner.signaturesOf(type));
+        }
+        return new DomainMetadata(itemNameProperty[0], attributes, new ArrayList<String>(classes.keySet()), DomainMetadata.fingerprintOf(signatures));
+    }
+
+    /**
+     * collect attributes in the same way with the constructor of BeanDomainDescriptor.
+     */
+    private boolean collect(TypeElement element, String parentPath, String domainClassName, List<AttributeMetadata> attributes, String[] itemNameProperty, Map<String, TypeElement> classes) {
+        List<BeanProperty> properties = scanner.scan(element);
+        if(properties == null) return false;
+
+        for (BeanProperty property : properties) {
+            String propertyName = property.getName();
+            TypeMirror originalType = property.getType();
+            TypeMirror valueType = originalType;
+            TypeMirror containerType = originalType;
+            String propertyPath = parentPath.isEmpty() ? propertyName : parentPath + "." + propertyName;
+
+            Attribute attribute = scanner.findAnnotation(element, property.getGetter(), Attribute.class);
+            if(attribute != null && attribute.ignore()) continue;
+            if(scanner.isSubtypeIfErased(originalType, ReverseReference.class)) continue;
+
+            if(scanner.findAnnotation(element, property.getGetter(), ItemName.class) != null) {
+                if(scanner.isSubtypeIfErased(originalType, DomainReference.class)
+                   || scanner.isSubtypeIfErased(originalType, Collection.class)
+                   || originalType.getKind() == TypeKind.ARRAY) {
+                    return false;
+                }
+                if(itemNameProperty[0] != null) return false;
+                itemNameProperty[0] = propertyName;
+            } else {
+                if(scanner.isSubtypeIfErased(originalType, ForwardReference.class)) {
+                    valueType = processingEnv.getElementUtils().getTypeElement(String.class.getName()).asType();
+                    containerType = valueType;
+                } else if(scanner.isSubtypeIfErased(originalType, Collection.class)) {
+                    Container container = scanner.findAnnotation(element, property.getGetter(), Container.class);
+                    if(container == null) return false;
+                    valueType = getContainerValueType(container);
+                    containerType = getContainerContainerType(container);
+                } else if(originalType.getKind() == TypeKind.ARRAY) {
+                    valueType = ((ArrayType) originalType).getComponentType();
+                }
+
+                if(scanner.findAnnotation(element, property.getGetter(), FlatAttribute.class) != null) {
+                    TypeElement flatElement = asFlatDomain(originalType);
+                    if(flatElement == null) return false;
+                    String flatClassName = processingEnv.getElementUtils().getBinaryName(flatElement).toString();
+                    //the item name of a flat domain is not the item name of the root domain.
+                    classes.put(flatClassName, flatElement);
+                    if(!collect(flatElement, propertyPath, flatClassName, attributes, new String[1], classes)) return false;
+                    continue;
+                }
+            }
+
+            AttributeMetadata metadata = createAttribute(element, property, propertyName, propertyPath, domainClassName, attribute, originalType, valueType, containerType);
+            if(metadata == null) return false;
+            attributes.add(metadata);
+        }
+        return true;
+    }
+
+    private TypeElement asFlatDomain(TypeMirror type) {
+        if(type.getKind() != TypeKind.DECLARED) return null;
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        if(element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.INTERFACE) return null;
+
+        //a flat domain is created by SimpleNamedDomain, which requires @SimpleDbDomain on the class itself.
+        if(element.getAnnotation(SimpleDbDomain.class) == null) return null;
+        return element;
+    }
+
+    private AttributeMetadata createAttribute(TypeElement element, BeanProperty property, String propertyName, String propertyPath, String domainClassName, Attribute attribute, TypeMirror originalType, TypeMirror valueType, TypeMirror containerType) {
+        String valueTypeName = scanner.toClassName(valueType);
+        String attributeName = propertyName;
+        ConverterKind kind;
+        String converterClassName = null;
+        int padding = 0;
+        long offset = 0;
+        int maxDigitLeft = 0;
+        int maxDigitRight = 0;
+
+        FloatAttribute floatAttribute = scanner.findAnnotation(element, property.getGetter(), FloatAttribute.class);
+        IntAttribute intAttribute = scanner.findAnnotation(element, property.getGetter(), IntAttribute.class);
+        LongAttribute longAttribute = scanner.findAnnotation(element, property.getGetter(), LongAttribute.class);
+
+        if(floatAttribute != null && (valueTypeName.equals(Float.class.getName()) || valueTypeName.equals(float.class.getName()))) {
+            kind = ConverterKind.FLOAT;
+            attributeName = nameOrDefault(floatAttribute.attributeName(), propertyName);
+            maxDigitLeft = floatAttribute.maxDigitLeft();
+            maxDigitRight = floatAttribute.maxDigitRight();
+            offset = floatAttribute.offset();
+        } else if(intAttribute != null && (valueTypeName.equals(Integer.class.getName()) || valueTypeName.equals(int.class.getName()))) {
+            kind = ConverterKind.INT;
+            attributeName = nameOrDefault(intAttribute.attributeName(), propertyName);
+            padding = intAttribute.padding();
+            offset = intAttribute.offset();
+        } else if(longAttribute != null && (valueTypeName.equals(Long.class.getName()) || valueTypeName.equals(long.class.getName()))) {
+            kind = ConverterKind.LONG;
+            attributeName = nameOrDefault(longAttribute.attributeName(), propertyName);
+            padding = longAttribute.padding();
+            offset = longAttribute.offset();
+        } else if(attribute != null) {
+            attributeName = nameOrDefault(attribute.attributeName(), propertyName);
+            TypeMirror converterType = getConverterType(attribute);
+            String converterTypeName = converterType == null ? null : scanner.toClassName(converterType);
+            if(converterTypeName == null || converterTypeName.equals(NullAttributeConverter.class.getName())) {
+                kind = ConverterKind.ATTRIBUTE;
+            } else {
+                kind = ConverterKind.CUSTOM;
+                converterClassName = converterTypeName;
+            }
+        } else {
+            kind = ConverterKind.NONE;
+        }
+
+        return new AttributeMetadata(attributeName, propertyPath, domainClassName,
+                                     scanner.toClassName(originalType), valueTypeName, scanner.toClassName(containerType),
+                                     kind, converterClassName, padding, offset, maxDigitLeft, maxDigitRight);
+    }
+
+    private String nameOrDefault(String name, String defaultName) {
+        return name.isEmpty() ? defaultName : name;
+    }
+
+    //Class values of an annotation are not available while annotation processing.
+
+    private TypeMirror getConverterType(Attribute attribute) {
+        try {
+            attribute.attributeConverter();
+            return null;
+        } catch (MirroredTypeException ex) {
+            return ex.getTypeMirror();
+        }
+    }
+
+    private TypeMirror getContainerValueType(Container container) {
+        try {
+            container.valueType();
+            throw new IllegalStateException("Class values of an annotation must not be available while annotation processing.");
+        } catch (MirroredTypeException ex) {
+            return ex.getTypeMirror();
+        }
+    }
+
+    private TypeMirror getContainerContainerType(Container container) {
+        try {
+            container.containerType();
+            throw new IllegalStateException("Class values of an annotation must not be available while annotation processing.");
+        } catch (MirroredTypeException ex) {
+            return ex.getTypeMirror();
+        }
+    }
+}
@@ -0,0 +1,765 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.processor;
+
+import com.shelfmap.simplequery.annotation.*;
+import com.shelfmap.simplequery.domain.DomainReference;
+import com.shelfmap.simplequery.domain.ForwardReference;
+import com.shelfmap.simplequery.domain.ReverseReference;
+import com.shelfmap.simplequery.domain.impl.NullAttributeConverter;
+import com.shelfmap.simplequery.processor.DomainClassScanner.BeanProperty;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a specialized ItemConverter for a class annotated with {@link SimpleDbDomain}.
+ * <p>
+ * The generated class is named as the name of the domain class + {@link #CLASS_NAME_SUFFIX}
+ * and placed in the same package with the domain class. It converts attributes
+ * with direct calls of getters and setters instead of reflection, and
+ * DefaultItemConverterFactory will use it instead of DefaultItemConverter if it exists.
+ * <p>
+ * The generated converter must behave exactly same as DefaultItemConverter,
+ * so this generator supports only domain classes which have simple properties,
+ * forward references and an item name. If a domain class has a property which
+ * this generator can not handle (for example, a container or a FlatAttribute),
+ * no converter will be generated for the class and DefaultItemConverter will be used.
+ *
+ * @author Tsutomu YANO
+ */
+public class ItemConverterGenerator {
+    public static final String CLASS_NAME_SUFFIX = "ItemConverter";
+    public static final String LAZY_CLASS_NAME_SUFFIX = "LazyItemConverter";
+
+    private static final String CONTEXT = "com.shelfmap.simplequery.Context";
+    private static final String DOMAIN = "com.shelfmap.simplequery.domain.Domain";
+    private static final String ITEM_CONVERTER = "com.shelfmap.simplequery.expression.ItemConverter";
+    private static final String ATTRIBUTE_CONVERTER = "com.shelfmap.simplequery.domain.AttributeConverter";
+    private static final String PRIMITIVE_CONVERTERS = "com.shelfmap.simplequery.domain.impl.PrimitiveConverters";
+    private static final String ATTRIBUTE_FACTORY = "com.shelfmap.simplequery.factory.DomainAttributeFactory";
+    private static final String INSTANCE_FACTORY = "com.shelfmap.simplequery.DomainInstanceFactory";
+    private static final String ITEM_STATE = "com.shelfmap.simplequery.ItemState";
+    private static final String SIMPLE_ITEM_STATE = "com.shelfmap.simplequery.SimpleItemState";
+    private static final String CAN_NOT_CONVERT = "com.shelfmap.simplequery.expression.CanNotConvertItemException";
+    private static final String CAN_NOT_RESTORE = "com.shelfmap.simplequery.expression.CanNotRestoreAttributeException";
+    private static final String SDB_ITEM = "com.amazonaws.services.simpledb.model.Item";
+    private static final String SDB_ATTRIBUTE = "com.amazonaws.services.simpledb.model.Attribute";
+    private static final String SDB_REPLACEABLE_ATTRIBUTE = "com.amazonaws.services.simpledb.model.ReplaceableAttribute";
+
+    //the members of a lazy subclass must not clash with the members inherited from the domain class.
+    private static final String LAZY_PREFIX = "lazy$";
+    private static final String LAZY_INSTANCE = "LazyInstance";
+
+    private final ProcessingEnvironment processingEnv;
+    private final DomainClassScanner scanner;
+
+    public ItemConverterGenerator(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+        this.scanner = new DomainClassScanner(processingEnv);
+    }
+
+    /**
+     * generate an ItemConverter for the domain class.
+     *
+     * @param element the domain class annotated with {@link SimpleDbDomain}
+     * @return true if a converter is generated, false if the domain class is not supported.
+     * @throws IOException if the source file could not be written.
+     */
+    public boolean generate(TypeElement element) throws IOException {
+        if(element.getNestingKind() != NestingKind.TOP_LEVEL) return false;
+        if(!element.getTypeParameters().isEmpty()) return false;
+        if(element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.INTERFACE) return false;
+
+        List<ConvertedProperty> properties = collectProperties(element);
+        if(properties == null) return false;
+
+        Elements elementUtils = processingEnv.getElementUtils();
+        String packageName = elementUtils.getPackageOf(element).getQualifiedName().toString();
+        String className = element.getSimpleName() + CLASS_NAME_SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(qualifiedName, element);
+        Writer writer = source.openWriter();
+        try {
+            writeConverter(writer, packageName, className, element.getQualifiedName().toString(), properties);
+        } finally {
+            writer.close();
+        }
+        return true;
+    }
+
+    /**
+     * generate a lazy ItemConverter for the domain class.
+     * <p>
+     * The generated class is named as the name of the domain class + {@link #LAZY_CLASS_NAME_SUFFIX}.
+     * It returns an instance of a subclass of the domain class which keeps the item,
+     * and each property is restored from the item when its getter is called at first.
+     * The item name is restored immediately.
+     * <p>
+     * The generated converter uses the converter generated by {@link #generate(javax.lang.model.element.TypeElement)}
+     * for {@link com.shelfmap.simplequery.expression.ItemConverter#makeCurrentStateOf(java.lang.Object)},
+     * so this method must be called only if {@link #generate(javax.lang.model.element.TypeElement)} returned true.
+     *
+     * @param element the domain class annotated with {@link SimpleDbDomain}
+     * @return true if a converter is generated, false if the domain class could not be subclassed.
+     * @throws IOException if the source file could not be written.
+     */
+    public boolean generateLazy(TypeElement element) throws IOException {
+        if(element.getNestingKind() != NestingKind.TOP_LEVEL) return false;
+        if(!element.getTypeParameters().isEmpty()) return false;
+        if(element.getKind() != ElementKind.CLASS) return false;
+        if(element.getModifiers().contains(Modifier.FINAL) || element.getModifiers().contains(Modifier.ABSTRACT)) return false;
+        if(!hasSubclassableConstructor(element)) return false;
+
+        List<ConvertedProperty> properties = collectProperties(element);
+        if(properties == null) return false;
+        for (ConvertedProperty property : properties) {
+            if(property.itemName) continue;
+            if(property.getter.getModifiers().contains(Modifier.FINAL)) return false;
+            if(property.setter != null && property.setter.getModifiers().contains(Modifier.FINAL)) return false;
+        }
+
+        Elements elementUtils = processingEnv.getElementUtils();
+        String packageName = elementUtils.getPackageOf(element).getQualifiedName().toString();
+        String className = element.getSimpleName() + LAZY_CLASS_NAME_SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        String eagerClassName = element.getSimpleName() + CLASS_NAME_SUFFIX;
+
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(qualifiedName, element);
+        Writer writer = source.openWriter();
+        try {
+            writeLazyConverter(writer, packageName, className, eagerClassName, element, properties);
+        } finally {
+            writer.close();
+        }
+        return true;
+    }
+
+    /**
+     * the generated subclass is placed in the same package, so a constructor
+     * which is not private is enough.
+     */
+    private boolean hasSubclassableConstructor(TypeElement element) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+            if(constructor.getParameters().isEmpty()
+               && constructor.getThrownTypes().isEmpty()
+               && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<ConvertedProperty> collectProperties(TypeElement element) {
+        List<BeanProperty> beanProperties = scanner.scan(element);
+        if(beanProperties == null) return null;
+
+        List<ConvertedProperty> properties = new ArrayList<ConvertedProperty>();
+        Set<String> attributeNames = new HashSet<String>();
+        boolean hasItemName = false;
+        for (BeanProperty beanProperty : beanProperties) {
+            ExecutableElement getter = beanProperty.getGetter();
+            TypeMirror type = beanProperty.getType();
+
+            Attribute attribute = scanner.findAnnotation(element, getter, Attribute.class);
+            if(attribute != null && attribute.ignore()) continue;
+            if(scanner.isSubtypeIfErased(type, ReverseReference.class)) continue;
+            if(scanner.findAnnotation(element, getter, FlatAttribute.class) != null) return null;
+
+            boolean itemName = scanner.findAnnotation(element, getter, ItemName.class) != null;
+            boolean forwardReference = false;
+            if(itemName) {
+                if(hasItemName) return null;
+                hasItemName = true;
+            } else if(scanner.isSubtypeIfErased(type, ForwardReference.class)) {
+                forwardReference = true;
+            }
+
+            if(!forwardReference) {
+                if(beanProperty.getSetter() == null) return null;
+                if(!isSimpleType(type)) return null;
+            }
+
+            ConvertedProperty property = new ConvertedProperty(beanProperty.getName(), getter, beanProperty.getSetter(), type, itemName, forwardReference);
+            if(!resolveConverter(element, property, attribute)) return null;
+
+            //DefaultItemConverter would overwrite an attribute by another attribute with a same name.
+            if(!attributeNames.add(property.attributeName)) return null;
+            properties.add(property);
+        }
+        return properties;
+    }
+
+    private boolean isSimpleType(TypeMirror type) {
+        if(type.getKind().isPrimitive()) return true;
+        if(type.getKind() != TypeKind.DECLARED) return false;
+        if(!((DeclaredType) type).getTypeArguments().isEmpty()) return false;
+        return !scanner.isSubtypeIfErased(type, DomainReference.class)
+            && !scanner.isSubtypeIfErased(type, Collection.class);
+    }
+
+    /**
+     * decide the attribute name and the converter of the property
+     * in the same way with BeanDomainDescriptor.
+     */
+    private boolean resolveConverter(TypeElement element, ConvertedProperty property, Attribute attribute) {
+        Types typeUtils = processingEnv.getTypeUtils();
+        TypeMirror valueType = property.forwardReference
+                ? processingEnv.getElementUtils().getTypeElement(String.class.getName()).asType()
+                : property.type;
+
+        property.valueTypeLiteral = (valueType.getKind().isPrimitive() ? valueType.toString() : typeUtils.erasure(valueType).toString()) + ".class";
+        property.boxedValueType = valueType.getKind().isPrimitive()
+                ? typeUtils.boxedClass((PrimitiveType) valueType).getQualifiedName().toString()
+                : typeUtils.erasure(valueType).toString();
+        property.attributeName = property.name;
+
+        FloatAttribute floatAttribute = scanner.findAnnotation(element, property.getter, FloatAttribute.class);
+        IntAttribute intAttribute = scanner.findAnnotation(element, property.getter, IntAttribute.class);
+        LongAttribute longAttribute = scanner.findAnnotation(element, property.getter, LongAttribute.class);
+
+        if(floatAttribute != null && property.boxedValueType.equals(Float.class.getName())) {
+            property.attributeName = nameOrDefault(floatAttribute.attributeName(), property.name);
+            property.converterInitializer = "factory.createFloatAttributeConverter(" + floatAttribute.maxDigitLeft() + ", " + floatAttribute.maxDigitRight() + ", " + floatAttribute.offset() + ")";
+            usePrimitiveConverterIfPossible(property, "Float");
+        } else if(intAttribute != null && property.boxedValueType.equals(Integer.class.getName())) {
+            property.attributeName = nameOrDefault(intAttribute.attributeName(), property.name);
+            property.converterInitializer = "factory.createIntAttributeConverter(" + intAttribute.padding() + ", " + intAttribute.offset() + ")";
+            usePrimitiveConverterIfPossible(property, "Int");
+        } else if(longAttribute != null && property.boxedValueType.equals(Long.class.getName())) {
+            property.attributeName = nameOrDefault(longAttribute.attributeName(), property.name);
+            property.converterInitializer = "factory.createLongAttributeConverter(" + longAttribute.padding() + ", " + longAttribute.offset() + "L)";
+            usePrimitiveConverterIfPossible(property, "Long");
+        } else if(attribute != null) {
+            property.attributeName = nameOrDefault(attribute.attributeName(), property.name);
+            TypeMirror converterType = getConverterType(attribute);
+            if(converterType == null || converterType.toString().equals(NullAttributeConverter.class.getName())) {
+                property.converterInitializer = "factory.createAttributeConverter(" + property.valueTypeLiteral + ")";
+            } else {
+                property.converterInitializer = "(" + ATTRIBUTE_CONVERTER + "<" + property.boxedValueType + ">) (" + ATTRIBUTE_CONVERTER + "<?>) new " + typeUtils.erasure(converterType).toString() + "()";
+            }
+        } else {
+            property.converterInitializer = "factory.createAttributeConverter(" + property.valueTypeLiteral + ")";
+        }
+        return true;
+    }
+
+    /**
+     * a property of a primitive type is converted by an IntConverter, a LongConverter or a FloatConverter
+     * and its getter and setter are called with the primitive value directly, so the value is never boxed.
+     */
+    private void usePrimitiveConverterIfPossible(ConvertedProperty property, String kind) {
+        if(!property.type.getKind().isPrimitive()) return;
+        property.primitiveConverterType = "com.shelfmap.simplequery.domain." + kind + "Converter";
+        property.converterInitializer = PRIMITIVE_CONVERTERS + ".as" + kind + "Converter(" + property.converterInitializer + ")";
+    }
+
+    private TypeMirror getConverterType(Attribute attribute) {
+        //a Class value of an annotation is not available while annotation processing.
+        try {
+            attribute.attributeConverter();
+            return null;
+        } catch (MirroredTypeException ex) {
+            return ex.getTypeMirror();
+        }
+    }
+
+    private String nameOrDefault(String name, String defaultName) {
+        return name.isEmpty() ? defaultName : name;
+    }
+
+    private void writeConverter(Writer writer, String packageName, String className, String domainType, List<ConvertedProperty> properties) throws IOException {
+        if(!packageName.isEmpty()) {
+            writer.append("package ").append(packageName).append(";\n\n");
+        }
+        writer.append("/**\n")
+              .append(" * ItemConverter for ").append(domainType).append(".\n")
+              .append(" * This class is generated by ").append(SimpleQueryProcessor.class.getName()).append(". DO NOT EDIT.\n")
+              .append(" */\n");
+        writer.append("public class ").append(className).append(" implements ").append(ITEM_CONVERTER).append("<").append(domainType).append("> {\n");
+        writer.append("    private final ").append(CONTEXT).append(" context;\n");
+        writer.append("    private final ").append(DOMAIN).append("<").append(domainType).append("> domain;\n");
+        writer.append("    private final ").append(INSTANCE_FACTORY).append("<").append(domainType).append("> instanceFactory;\n");
+        for (ConvertedProperty property : properties) {
+            writer.append("    private final ").append(property.converterType()).append(" ").append(property.converterField()).append(";\n");
+        }
+        writer.append("\n");
+
+        //constructor
+        writer.append("    @SuppressWarnings(\"unchecked\")\n");
+        writer.append("    public ").append(className).append("(").append(CONTEXT).append(" context, ").append(DOMAIN).append("<").append(domainType).append("> domain) {\n");
+        writer.append("        this.context = context;\n");
+        writer.append("        this.domain = domain;\n");
+        writer.append("        this.instanceFactory = context.getDomainInstanceFactory(domain);\n");
+        writer.append("        ").append(ATTRIBUTE_FACTORY).append(" factory = context.getDomainAttributeFactory();\n");
+        for (ConvertedProperty property : properties) {
+            writer.append("        this.").append(property.converterField()).append(" = ").append(property.converterInitializer).append(";\n");
+        }
+        writer.append("    }\n\n");
+
+        writeConvertToInstance(writer, domainType, properties);
+        writeMakeCurrentStateOf(writer, domainType, properties);
+
+        writer.append("    @Override\n");
+        writer.append("    public ").append(DOMAIN).append("<").append(domainType).append("> getDomain() {\n");
+        writer.append("        return domain;\n");
+        writer.append("    }\n\n");
+        writer.append("    @Override\n");
+        writer.append("    public ").append(CONTEXT).append(" getContext() {\n");
+        writer.append("        return context;\n");
+        writer.append("    }\n");
+        writer.append("}\n");
+    }
+
+    private void writeConvertToInstance(Writer writer, String domainType, List<ConvertedProperty> properties) throws IOException {
+        //String can not be used in a switch statement in java 6,
+        //so we switch on the hash code of an attribute name and compare the names after that.
+        Map<Integer, List<ConvertedProperty>> hashGroups = new LinkedHashMap<Integer, List<ConvertedProperty>>();
+        ConvertedProperty itemNameProperty = null;
+        //a primitive converter never throws CanNotRestoreAttributeException,
+        //and javac rejects a catch clause for a checked exception which is never thrown.
+        boolean mayThrowCanNotRestore = false;
+        for (ConvertedProperty property : properties) {
+            if(property.itemName) itemNameProperty = property;
+            if(!property.isPrimitive()) mayThrowCanNotRestore = true;
+            int hash = property.attributeName.hashCode();
+            List<ConvertedProperty> group = hashGroups.get(hash);
+            if(group == null) {
+                group = new ArrayList<ConvertedProperty>();
+                hashGroups.put(hash, group);
+            }
+            group.add(property);
+        }
+
+        writer.append("    @Override\n");
+        writer.append("    public ").append(domainType).append(" convertToInstance(").append(SDB_ITEM).append(" item) throws ").append(CAN_NOT_CONVERT).append(" {\n");
+        writer.append("        ").append(domainType).append(" instance = instanceFactory.create();\n");
+        writer.append("        for (").append(SDB_ATTRIBUTE).append(" attribute : item.getAttributes()) {\n");
+        writer.append("            String name = attribute.getName();\n");
+        writer.append("            String value = attribute.getValue();\n");
+        String indent = mayThrowCanNotRestore ? "    " : "";
+        if(mayThrowCanNotRestore) writer.append("            try {\n");
+        writer.append(indent).append("            switch (name.hashCode()) {\n");
+        for (Map.Entry<Integer, List<ConvertedProperty>> entry : hashGroups.entrySet()) {
+            writer.append(indent).append("                case ").append(String.valueOf(entry.getKey())).append(":\n");
+            boolean first = true;
+            for (ConvertedProperty property : entry.getValue()) {
+                writer.append(first ? indent + "                    if" : " else if")
+                      .append(" (").append(toStringLiteral(property.attributeName)).append(".equals(name)) {\n");
+                writer.append(indent).append("                        ").append(property.writeStatement(property.restoreExpression("value"))).append("\n");
+                writer.append(indent).append("                    }");
+                first = false;
+            }
+            writer.append("\n");
+            writer.append(indent).append("                    break;\n");
+        }
+        writer.append(indent).append("                default:\n");
+        writer.append(indent).append("                    break;\n");
+        writer.append(indent).append("            }\n");
+        if(mayThrowCanNotRestore) {
+            writer.append("            } catch (").append(CAN_NOT_RESTORE).append(" ex) {\n");
+            writer.append("                throw new ").append(CAN_NOT_CONVERT).append("(\"could not write a attribute: \" + name + \" for the item: \" + item.getName(), ex, item);\n");
+            writer.append("            }\n");
+        }
+        writer.append("        }\n");
+        if(itemNameProperty != null) {
+            if(itemNameProperty.isPrimitive()) {
+                writer.append("        ").append(itemNameProperty.writeStatement(itemNameProperty.restoreExpression("item.getName()"))).append("\n");
+            } else {
+                writer.append("        try {\n");
+                writer.append("            ").append(itemNameProperty.writeStatement(itemNameProperty.restoreExpression("item.getName()"))).append("\n");
+                writer.append("        } catch (").append(CAN_NOT_RESTORE).append(" ex) {\n");
+                writer.append("            throw new ").append(CAN_NOT_CONVERT).append("(\"could not write the itemName: ").append(escape(itemNameProperty.attributeName)).append(". the value of itemName: \" + item.getName(), ex, item);\n");
+                writer.append("        }\n");
+            }
+        }
+        writer.append("        return instance;\n");
+        writer.append("    }\n\n");
+    }
+
+    private void writeMakeCurrentStateOf(Writer writer, String domainType, List<ConvertedProperty> properties) throws IOException {
+        writer.append("    @Override\n");
+        writer.append("    public ").append(ITEM_STATE).append(" makeCurrentStateOf(Object domainObject) {\n");
+        writer.append("        ").append(domainType).append(" instance = (").append(domainType).append(") domainObject;\n");
+        writer.append("        java.util.List<").append(SDB_REPLACEABLE_ATTRIBUTE).append("> changed = new java.util.ArrayList<").append(SDB_REPLACEABLE_ATTRIBUTE).append(">();\n");
+        writer.append("        java.util.List<").append(SDB_ATTRIBUTE).append("> deleted = new java.util.ArrayList<").append(SDB_ATTRIBUTE).append(">();\n");
+        boolean hasPrimitive = false;
+        for (ConvertedProperty property : properties) {
+            if(property.isPrimitive()) hasPrimitive = true;
+        }
+        if(hasPrimitive) {
+            writer.append("        StringBuilder buffer = new StringBuilder();\n");
+        }
+        int index = 0;
+        for (ConvertedProperty property : properties) {
+            String var = "value" + index++;
+            String literal = toStringLiteral(property.attributeName);
+            if(property.isPrimitive()) {
+                //a primitive value is never null.
+                writer.append("        buffer.setLength(0);\n");
+                writer.append("        ").append(property.converterField()).append(".encode(").append(property.readExpression()).append(", buffer);\n");
+                writer.append("        changed.add(new ").append(SDB_REPLACEABLE_ATTRIBUTE).append("(").append(literal).append(", buffer.toString(), true));\n");
+                continue;
+            }
+            writer.append("        ").append(property.boxedValueType).append(" ").append(var).append(" = ").append(property.readExpression()).append(";\n");
+            writer.append("        if (").append(var).append(" != null) {\n");
+            writer.append("            changed.add(new ").append(SDB_REPLACEABLE_ATTRIBUTE).append("(").append(literal).append(", ").append(property.converterField()).append(".convertValue(").append(var).append("), true));\n");
+            writer.append("        } else {\n");
+            writer.append("            deleted.add(new ").append(SDB_ATTRIBUTE).append("().withName(").append(literal).append("));\n");
+            writer.append("        }\n");
+        }
+        writer.append("        ").append(ITEM_STATE).append(" state = new ").append(SIMPLE_ITEM_STATE).append("(domain);\n");
+        writer.append("        if (!changed.isEmpty()) {\n");
+        writer.append("            state.addChanged(changed.toArray(new ").append(SDB_REPLACEABLE_ATTRIBUTE).append("[changed.size()]));\n");
+        writer.append("        }\n");
+        writer.append("        if (!deleted.isEmpty()) {\n");
+        writer.append("            state.addDeleted(deleted.toArray(new ").append(SDB_ATTRIBUTE).append("[deleted.size()]));\n");
+        writer.append("        }\n");
+        writer.append("        return state;\n");
+        writer.append("    }\n\n");
+    }
+
+    private void writeLazyConverter(Writer writer, String packageName, String className, String eagerClassName, TypeElement element, List<ConvertedProperty> properties) throws IOException {
+        String domainType = element.getQualifiedName().toString();
+        List<ConvertedProperty> lazyProperties = new ArrayList<ConvertedProperty>();
+        ConvertedProperty itemNameProperty = null;
+        for (ConvertedProperty property : properties) {
+            if(property.itemName) {
+                itemNameProperty = property;
+            } else {
+                lazyProperties.add(property);
+            }
+        }
+
+        if(!packageName.isEmpty()) {
+            writer.append("package ").append(packageName).append(";\n\n");
+        }
+        writer.append("/**\n")
+              .append(" * lazy ItemConverter for ").append(domainType).append(".\n")
+              .append(" * This class is generated by ").append(SimpleQueryProcessor.class.getName()).append(". DO NOT EDIT.\n")
+              .append(" */\n");
+        writer.append("public class ").append(className).append(" implements ").append(ITEM_CONVERTER).append("<").append(domainType).append("> {\n");
+        writer.append("    private final ").append(CONTEXT).append(" context;\n");
+        writer.append("    private final ").append(DOMAIN).append("<").append(domainType).append("> domain;\n");
+        writer.append("    private final ").append(ITEM_CONVERTER).append("<").append(domainType).append("> eagerConverter;\n");
+        //the converters are package private, so that the nested class can read them without synthetic accessors.
+        for (ConvertedProperty property : properties) {
+            writer.append("    final ").append(property.converterType()).append(" ").append(property.converterField()).append(";\n");
+        }
+        writer.append("\n");
+
+        //constructor
+        writer.append("    @SuppressWarnings(\"unchecked\")\n");
+        writer.append("    public ").append(className).append("(").append(CONTEXT).append(" context, ").append(DOMAIN).append("<").append(domainType).append("> domain) {\n");
+        writer.append("        this.context = context;\n");
+        writer.append("        this.domain = domain;\n");
+        writer.append("        this.eagerConverter = new ").append(eagerClassName).append("(context, domain);\n");
+        writer.append("        ").append(ATTRIBUTE_FACTORY).append(" factory = context.getDomainAttributeFactory();\n");
+        for (ConvertedProperty property : properties) {
+            writer.append("        this.").append(property.converterField()).append(" = ").append(property.converterInitializer).append(";\n");
+        }
+        writer.append("    }\n\n");
+
+        //convertToInstance
+        writer.append("    @Override\n");
+        writer.append("    public ").append(domainType).append(" convertToInstance(").append(SDB_ITEM).append(" item) throws ").append(CAN_NOT_CONVERT).append(" {\n");
+        writer.append("        ").append(LAZY_INSTANCE).append(" instance = new ").append(LAZY_INSTANCE).append("(this, item);\n");
+        if(itemNameProperty != null) {
+            if(itemNameProperty.isPrimitive()) {
+                writer.append("        ").append(itemNameProperty.writeStatement(itemNameProperty.restoreExpression("item.getName()"))).append("\n");
+            } else {
+                writer.append("        try {\n");
+                writer.append("            ").append(itemNameProperty.writeStatement(itemNameProperty.restoreExpression("item.getName()"))).append("\n");
+                writer.append("        } catch (").append(CAN_NOT_RESTORE).append(" ex) {\n");
+                writer.append("            throw new ").append(CAN_NOT_CONVERT).append("(\"could not write the itemName: ").append(escape(itemNameProperty.attributeName)).append(". the value of itemName: \" + item.getName(), ex, item);\n");
+                writer.append("        }\n");
+            }
+        }
+        writer.append("        return instance;\n");
+        writer.append("    }\n\n");
+
+        //makeCurrentStateOf
+        writer.append("    @Override\n");
+        writer.append("    public ").append(ITEM_STATE).append(" makeCurrentStateOf(Object domainObject) {\n");
+        writer.append("        //the eager converter reads the properties through their getters, which restore the properties from the item.\n");
+        writer.append("        return eagerConverter.makeCurrentStateOf(domainObject);\n");
+        writer.append("    }\n\n");
+
+        writer.append("    @Override\n");
+        writer.append("    public ").append(DOMAIN).append("<").append(domainType).append("> getDomain() {\n");
+        writer.append("        return domain;\n");
+        writer.append("    }\n\n");
+        writer.append("    @Override\n");
+        writer.append("    public ").append(CONTEXT).append(" getContext() {\n");
+        writer.append("        return context;\n");
+        writer.append("    }\n\n");
+
+        //the last value wins, same as DefaultItemConverter.
+        writer.append("    static String lastValueOf(").append(SDB_ITEM).append(" item, String attributeName) {\n");
+        writer.append("        java.util.List<").append(SDB_ATTRIBUTE).append("> attributes = item.getAttributes();\n");
+        writer.append("        for (int i = attributes.size() - 1; i >= 0; i--) {\n");
+        writer.append("            ").append(SDB_ATTRIBUTE).append(" attribute = attributes.get(i);\n");
+        writer.append("            if (attributeName.equals(attribute.getName())) return attribute.getValue();\n");
+        writer.append("        }\n");
+        writer.append("        return null;\n");
+        writer.append("    }\n\n");
+
+        writeLazyInstance(writer, className, element, lazyProperties);
+        writer.append("}\n");
+    }
+
+    private void writeLazyInstance(Writer writer, String className, TypeElement element, List<ConvertedProperty> properties) throws IOException {
+        String domainType = element.getQualifiedName().toString();
+        boolean serializable = scanner.isSubtypeIfErased(element.asType(), java.io.Serializable.class);
+        //a serialized instance can not restore properties any more, so these fields are transient and all properties are restored before serialization.
+        String fieldModifier = serializable ? "private transient " : "private ";
+        String owner = LAZY_PREFIX + "owner";
+        String item = LAZY_PREFIX + "item";
+        int flagCount = (properties.size() + 31) / 32;
+
+        writer.append("    /**\n");
+        writer.append("     * restores each property from the item when its getter is called at first.\n");
+        writer.append("     * A property which is written by its setter before its getter is called is never restored.\n");
+        writer.append("     */\n");
+        writer.append("    static final class ").append(LAZY_INSTANCE).append(" extends ").append(domainType).append(" {\n");
+        if(serializable) {
+            writer.append("        private static final long serialVersionUID = 1L;\n");
+        }
+        writer.append("        ").append(fieldModifier).append(className).append(" ").append(owner).append(";\n");
+        writer.append("        ").append(fieldModifier).append(SDB_ITEM).append(" ").append(item).append(";\n");
+        for (int i = 0; i < flagCount; i++) {
+            writer.append("        ").append(fieldModifier).append("int ").append(flagField(i)).append(";\n");
+        }
+        writer.append("\n");
+
+        writer.append("        ").append(LAZY_INSTANCE).append("(").append(className).append(" owner, ").append(SDB_ITEM).append(" item) {\n");
+        writer.append("            super();\n");
+        //the item is null while the constructor of the domain class runs,
+        //so the setters called by the constructor do not mark the properties as restored.
+        writer.append("            this.").append(owner).append(" = owner;\n");
+        writer.append("            this.").append(item).append(" = item;\n");
+        writer.append("        }\n\n");
+
+        for (int i = 0; i < properties.size(); i++) {
+            ConvertedProperty property = properties.get(i);
+            String flag = flagField(i / 32);
+            String mask = "0x" + Integer.toHexString(1 << (i % 32));
+            String getterName = property.getter.getSimpleName().toString();
+            String returnType = property.type.toString();
+
+            writer.append("        @Override\n");
+            writer.append("        public ").append(returnType).append(" ").append(getterName).append("() {\n");
+            writer.append("            if ((").append(flag).append(" & ").append(mask).append(") == 0) ").append(LAZY_PREFIX).append("restore").append(String.valueOf(i)).append("();\n");
+            writer.append("            return super.").append(getterName).append("();\n");
+            writer.append("        }\n\n");
+
+            if(!property.forwardReference) {
+                writer.append("        @Override\n");
+                writer.append("        public void ").append(property.setter.getSimpleName()).append("(").append(returnType).append(" value) {\n");
+                writer.append("            if (").append(item).append(" != null) ").append(flag).append(" |= ").append(mask).append(";\n");
+                writer.append("            super.").append(property.setter.getSimpleName()).append("(value);\n");
+                writer.append("        }\n\n");
+            }
+
+            String restoredType = property.isPrimitive() ? property.type.toString() : property.boxedValueType;
+            writer.append("        private void ").append(LAZY_PREFIX).append("restore").append(String.valueOf(i)).append("() {\n");
+            writer.append("            ").append(SDB_ITEM).append(" source = ").append(item).append(";\n");
+            writer.append("            if (source == null) return;\n");
+            writer.append("            String value = ").append(className).append(".lastValueOf(source, ").append(toStringLiteral(property.attributeName)).append(");\n");
+            writer.append("            if (value == null) {\n");
+            writer.append("                ").append(flag).append(" |= ").append(mask).append(";\n");
+            writer.append("            } else {\n");
+            String restore = owner + "." + property.restoreExpression("value");
+            if(property.isPrimitive()) {
+                writer.append("                ").append(restoredType).append(" restored = ").append(restore).append(";\n");
+            } else {
+                writer.append("                ").append(restoredType).append(" restored;\n");
+                writer.append("                try {\n");
+                writer.append("                    restored = ").append(restore).append(";\n");
+                writer.append("                } catch (").append(CAN_NOT_RESTORE).append(" ex) {\n");
+                writer.append("                    throw new IllegalStateException(\"could not restore the attribute: ").append(escape(property.attributeName)).append(" for the item: \" + source.getName(), ex);\n");
+                writer.append("                }\n");
+            }
+            //mark before writing, because a setter of the domain class may call the getter.
+            writer.append("                ").append(flag).append(" |= ").append(mask).append(";\n");
+            writer.append("                ").append(property.forwardReference
+                    ? "super." + getterName + "().setTargetItemName(restored);"
+                    : "super." + property.setter.getSimpleName() + "(restored);").append("\n");
+            writer.append("            }\n");
+            writer.append("            ").append(LAZY_PREFIX).append("releaseIfRestored();\n");
+            writer.append("        }\n\n");
+        }
+
+        //release the item when all properties are restored.
+        writer.append("        private void ").append(LAZY_PREFIX).append("releaseIfRestored() {\n");
+        writer.append("            if (");
+        for (int i = 0; i < flagCount; i++) {
+            int bits = Math.min(32, properties.size() - i * 32);
+            String all = bits == 32 ? "0xffffffff" : "0x" + Integer.toHexString((1 << bits) - 1);
+            if(i > 0) writer.append(" && ");
+            writer.append(flagField(i)).append(" == ").append(all);
+        }
+        if(flagCount == 0) writer.append("true");
+        writer.append(") {\n");
+        writer.append("                ").append(item).append(" = null;\n");
+        writer.append("            }\n");
+        writer.append("        }\n\n");
+
+        writer.append("        void ").append(LAZY_PREFIX).append("restoreAll() {\n");
+        for (int i = 0; i < properties.size(); i++) {
+            writer.append("            if ((").append(flagField(i / 32)).append(" & 0x").append(Integer.toHexString(1 << (i % 32))).append(") == 0) ")
+                  .append(LAZY_PREFIX).append("restore").append(String.valueOf(i)).append("();\n");
+        }
+        writer.append("        }\n");
+
+        //equals, hashCode and toString of a domain class may read the fields directly.
+        if(declaresObjectMethod(element, "equals", 1)) {
+            writer.append("\n");
+            writer.append("        @Override\n");
+            writer.append("        public boolean equals(Object obj) {\n");
+            writer.append("            ").append(LAZY_PREFIX).append("restoreAll();\n");
+            writer.append("            if (obj instanceof ").append(className).append(".").append(LAZY_INSTANCE).append(") ((").append(className).append(".").append(LAZY_INSTANCE).append(") obj).").append(LAZY_PREFIX).append("restoreAll();\n");
+            writer.append("            return super.equals(obj);\n");
+            writer.append("        }\n");
+        }
+        if(declaresObjectMethod(element, "hashCode", 0)) {
+            writer.append("\n");
+            writer.append("        @Override\n");
+            writer.append("        public int hashCode() {\n");
+            writer.append("            ").append(LAZY_PREFIX).append("restoreAll();\n");
+            writer.append("            return super.hashCode();\n");
+            writer.append("        }\n");
+        }
+        if(declaresObjectMethod(element, "toString", 0)) {
+            writer.append("\n");
+            writer.append("        @Override\n");
+            writer.append("        public String toString() {\n");
+            writer.append("            ").append(LAZY_PREFIX).append("restoreAll();\n");
+            writer.append("            return super.toString();\n");
+            writer.append("        }\n");
+        }
+        if(serializable) {
+            writer.append("\n");
+            writer.append("        private Object writeReplace() throws java.io.ObjectStreamException {\n");
+            writer.append("            ").append(LAZY_PREFIX).append("restoreAll();\n");
+            writer.append("            return this;\n");
+            writer.append("        }\n");
+        }
+        writer.append("    }\n");
+    }
+
+    private static String flagField(int index) {
+        return LAZY_PREFIX + "restored" + index;
+    }
+
+    /**
+     * @return true if the class or one of its superclasses except Object declares the method.
+     */
+    private boolean declaresObjectMethod(TypeElement element, String name, int parameterCount) {
+        TypeElement current = element;
+        while(current != null && !current.getQualifiedName().contentEquals(Object.class.getName())) {
+            for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+                if(method.getSimpleName().contentEquals(name) && method.getParameters().size() == parameterCount && !method.getModifiers().contains(Modifier.STATIC)) {
+                    return true;
+                }
+            }
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        return false;
+    }
+
+    private static String toStringLiteral(String value) {
+        return "\"" + escape(value) + "\"";
+    }
+
+    private static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if(c < 0x20 || c > 0x7e) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * a property of a domain class which is persisted as an attribute.
+     */
+    private static final class ConvertedProperty {
+        final String name;
+        final ExecutableElement getter;
+        final ExecutableElement setter;
+        final TypeMirror type;
+        final boolean itemName;
+        final boolean forwardReference;
+        String attributeName;
+        String valueTypeLiteral;
+        String boxedValueType;
+        String converterInitializer;
+        String primitiveConverterType;
+
+        ConvertedProperty(String name, ExecutableElement getter, ExecutableElement setter, TypeMirror type, boolean itemName, boolean forwardReference) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+            this.type = type;
+            this.itemName = itemName;
+            this.forwardReference = forwardReference;
+        }
+
+        String converterField() {
+            return name + "Converter";
+        }
+
+        boolean isPrimitive() {
+            return primitiveConverterType != null;
+        }
+
+        String converterType() {
+            return isPrimitive() ? primitiveConverterType : ATTRIBUTE_CONVERTER + "<" + boxedValueType + ">";
+        }
+
+        String restoreExpression(String valueExpression) {
+            return converterField() + (isPrimitive() ? ".decode(" : ".restoreValue(") + valueExpression + ")";
+        }
+
+        String readExpression() {
+            return forwardReference
+                    ? "instance." + getter.getSimpleName() + "().getTargetItemName()"
+                    : "instance." + getter.getSimpleName() + "()";
+        }
+
+        String writeStatement(String valueExpression) {
+            return forwardReference
+                    ? "instance." + getter.getSimpleName() + "().setTargetItemName(" + valueExpression + ");"
+                    : "instance." + setter.getSimpleName() + "(" + valueExpression + ");";
+        }
+    }
+}
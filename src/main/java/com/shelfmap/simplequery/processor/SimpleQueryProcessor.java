@@ -32,8 +32,11 @@ import com.shelfmap.simplequery.domain.impl.DefaultToOneDomainReference;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
 import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
@@ -51,9 +54,69 @@ import javax.tools.Diagnostic;
  * @author Tsutomu YANO
  */
 @SupportedSourceVersion(SourceVersion.RELEASE_6)
-@SupportedAnnotationTypes({"com.shelfmap.interfaceprocessor.annotation.GenerateClass"})
+@SupportedAnnotationTypes({"com.shelfmap.interfaceprocessor.annotation.GenerateClass", "com.shelfmap.simplequery.annotation.SimpleDbDomain"})
 public class SimpleQueryProcessor extends InterfaceProcessor {
 
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        //InterfaceProcessor only knows @GenerateClass, so we must not pass @SimpleDbDomain to it.
+        Set<TypeElement> generateClassAnnotations = new LinkedHashSet<TypeElement>();
+        for (TypeElement annotation : annotations) {
+            if(!annotation.getQualifiedName().contentEquals(SimpleDbDomain.class.getName())) {
+                generateClassAnnotations.add(annotation);
+            }
+        }
+        boolean result = generateClassAnnotations.isEmpty() ? false : super.process(generateClassAnnotations, roundEnv);
+
+        if(!roundEnv.processingOver()) {
+            writeDomainMetadata(roundEnv);
+            generateItemConverters(roundEnv);
+        }
+        return result;
+    }
+
+    /**
+     * write the metadata index of each domain class in this round.
+     * the runtime builds DomainDescriptors from the index instead of introspecting domain classes.
+     */
+    protected void writeDomainMetadata(RoundEnvironment roundEnv) {
+        Messager messager = processingEnv.getMessager();
+        DomainMetadataWriter writer = new DomainMetadataWriter(processingEnv);
+        for (Element element : roundEnv.getElementsAnnotatedWith(SimpleDbDomain.class)) {
+            if(element instanceof TypeElement) {
+                try {
+                    if(!writer.write((TypeElement) element)) {
+                        messager.printMessage(Diagnostic.Kind.NOTE, "The metadata index is not written for this domain class, because its attributes could not be determined at compile time.", element);
+                    }
+                } catch (IOException ex) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, "Could not write the metadata index for the domain class: " + ex.getMessage(), element);
+                }
+            }
+        }
+    }
+
+    /**
+     * generate a specialized ItemConverter and a lazy ItemConverter for each domain class in this round.
+     * DefaultItemConverterFactory uses the generated converters instead of DefaultItemConverter.
+     */
+    protected void generateItemConverters(RoundEnvironment roundEnv) {
+        Messager messager = processingEnv.getMessager();
+        ItemConverterGenerator generator = new ItemConverterGenerator(processingEnv);
+        for (Element element : roundEnv.getElementsAnnotatedWith(SimpleDbDomain.class)) {
+            if(element instanceof TypeElement) {
+                try {
+                    if(!generator.generate((TypeElement) element)) {
+                        messager.printMessage(Diagnostic.Kind.NOTE, "ItemConverter is not generated for this domain class, because it has properties which only DefaultItemConverter can handle.", element);
+                    } else if(!generator.generateLazy((TypeElement) element)) {
+                        messager.printMessage(Diagnostic.Kind.NOTE, "Lazy ItemConverter is not generated for this domain class, because the class or its accessors could not be overridden.", element);
+                    }
+                } catch (IOException ex) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, "Could not write an ItemConverter for the domain class: " + ex.getMessage(), element);
+                }
+            }
+        }
+    }
+
     @Override
     protected boolean precheck(InterfaceDefinition definition, AnnotationMirror annotation, String className, Element element) {
         Elements elementUtils = processingEnv.getElementUtils();
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.util;
+
+import com.amazonaws.services.simpledb.AmazonSimpleDB;
+import com.amazonaws.services.simpledb.AmazonSimpleDBAsync;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Makes an AmazonSimpleDBAsync from a synchronous AmazonSimpleDB.
+ * <p>
+ * Each xxxAsync method of the returned client calls the synchronous method xxx of the wrapped client
+ * on the passed executor, and all other methods are delegated to the wrapped client directly.
+ * The client is a dynamic proxy, so it supports all asynchronous methods of the current AmazonSimpleDBAsync.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @author Tsutomu YANO
+ */
+public final class ExecutorSimpleDBAsync implements InvocationHandler {
+    private static final String ASYNC_SUFFIX = "Async";
+
+    private final AmazonSimpleDB client;
+    private final ExecutorService executor;
+
+    private ExecutorSimpleDBAsync(AmazonSimpleDB client, ExecutorService executor) {
+        this.client = client;
+        this.executor = executor;
+    }
+
+    /**
+     * @param client a synchronous client.
+     * @param executor an executor which runs the requests of the synchronous client.
+     * @return an asynchronous client which runs the requests of the client on the executor.
+     */
+    public static AmazonSimpleDBAsync wrap(AmazonSimpleDB client, ExecutorService executor) {
+        isNotNull("client", client);
+        isNotNull("executor", executor);
+        return (AmazonSimpleDBAsync) Proxy.newProxyInstance(AmazonSimpleDBAsync.class.getClassLoader(),
+                                                           new Class<?>[]{AmazonSimpleDBAsync.class},
+                                                           new ExecutorSimpleDBAsync(client, executor));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if(method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, args);
+        }
+
+        if(method.getDeclaringClass() == AmazonSimpleDBAsync.class && method.getName().endsWith(ASYNC_SUFFIX)) {
+            String syncName = method.getName().substring(0, method.getName().length() - ASYNC_SUFFIX.length());
+            final Method syncMethod = AmazonSimpleDB.class.getMethod(syncName, method.getParameterTypes());
+            final Object[] arguments = args;
+            return executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    Object result = invokeClient(syncMethod, arguments);
+                    //a method without a result returns Future<Void>.
+                    return syncMethod.getReturnType() == void.class ? null : result;
+                }
+            });
+        }
+        return invokeClient(method, args);
+    }
+
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if(name.equals("equals")) return proxy == args[0];
+        if(name.equals("hashCode")) return System.identityHashCode(proxy);
+        if(name.equals("toString")) return "ExecutorSimpleDBAsync{" + "client=" + client + '}';
+        throw new UnsupportedOperationException("Not supported: " + method);
+    }
+
+    private Object invokeClient(Method method, Object[] args) throws Exception {
+        try {
+            return method.invoke(client, args);
+        } catch (InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof Exception) throw (Exception) cause;
+            if(cause instanceof Error) throw (Error) cause;
+            throw ex;
+        }
+    }
+}
@@ -24,8 +24,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import static java.util.Arrays.asList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -33,6 +35,12 @@ import java.util.Set;
  * @author Tsutomu YANO
  */
 public final class Objects {
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+    static {
+        for (Class<?> primitive : new Class<?>[] {boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class, void.class}) {
+            PRIMITIVES.put(primitive.getName(), primitive);
+        }
+    }
 
     private static final class Preserved {
         public static final Set<String> WORDS = new HashSet<String>();
@@ -134,6 +142,15 @@ public final class Objects {
             return type;
     }
 
+    /**
+     * same with {@link Class#forName(java.lang.String, boolean, java.lang.ClassLoader)},
+     * but this method can also resolve the name of a primitive type like 'int'.
+     */
+    public static Class<?> forName(String className, boolean initialize, ClassLoader loader) throws ClassNotFoundException {
+        Class<?> primitive = PRIMITIVES.get(className);
+        return primitive != null ? primitive : Class.forName(className, initialize, loader);
+    }
+
     public static boolean isPreserved(String word) {
         return Preserved.WORDS.contains(word);
     }
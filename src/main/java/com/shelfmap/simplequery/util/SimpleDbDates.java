@@ -0,0 +1,247 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.util;
+
+import com.amazonaws.services.simpledb.util.SimpleDBUtils;
+import static com.shelfmap.simplequery.util.Assertion.isNotNull;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Encodes and decodes dates in the format of SimpleDBUtils of AWS SDK,
+ * like '2011-09-03T00:00:00.000+09:00', without SimpleDateFormat.
+ * <p>
+ * The encoded strings are exactly same with the strings of {@link SimpleDBUtils#encodeDate(java.util.Date)},
+ * which formats a date in the default time zone. Dates which could not be handled by the simple
+ * arithmetic of this class (years before the gregorian cutover or after 9999, or non-gregorian
+ * calendars and digits of the default locale) are delegated to SimpleDBUtils.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @author Tsutomu YANO
+ */
+public final class SimpleDbDates {
+    /** the length of an encoded date, like '2011-09-03T00:00:00.000+09:00'. */
+    public static final int ENCODED_LENGTH = 29;
+
+    private static final long MILLIS_PER_MINUTE = 60L * 1000L;
+    private static final long MILLIS_PER_DAY = 24L * 60L * MILLIS_PER_MINUTE;
+    //the first year which is not affected by the gregorian cutover of GregorianCalendar.
+    private static final int MIN_FAST_YEAR = 1583;
+    private static final int MAX_FAST_YEAR = 9999;
+
+    private static volatile LocaleCheck localeCheck;
+
+    private SimpleDbDates() {
+        super();
+    }
+
+    public static String encode(Date date) {
+        isNotNull("date", date);
+        StringBuilder buffer = new StringBuilder(ENCODED_LENGTH);
+        encode(date.getTime(), buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * append the encoded string of the time to the buffer.
+     *
+     * @param epochMillis milliseconds from 1970-01-01T00:00:00Z.
+     * @param buffer a buffer which the encoded string is appended to.
+     */
+    public static void encode(long epochMillis, StringBuilder buffer) {
+        isNotNull("buffer", buffer);
+        int offsetMillis = TimeZone.getDefault().getOffset(epochMillis);
+        long localMillis = epochMillis + offsetMillis;
+        long epochDay = floorDiv(localMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) (localMillis - epochDay * MILLIS_PER_DAY);
+
+        //civil-from-days. see http://howardhinnant.github.io/date_algorithms.html
+        long z = epochDay + 719468;
+        long era = floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if(year < MIN_FAST_YEAR || year > MAX_FAST_YEAR || !isFastPathAvailable()) {
+            buffer.append(SimpleDBUtils.encodeDate(new Date(epochMillis)));
+            return;
+        }
+
+        append4(buffer, (int) year);
+        buffer.append('-');
+        append2(buffer, month);
+        buffer.append('-');
+        append2(buffer, day);
+        buffer.append('T');
+        append2(buffer, millisOfDay / 3600000);
+        buffer.append(':');
+        append2(buffer, millisOfDay / 60000 % 60);
+        buffer.append(':');
+        append2(buffer, millisOfDay / 1000 % 60);
+        buffer.append('.');
+        append3(buffer, millisOfDay % 1000);
+
+        //SimpleDateFormat truncates the seconds of an offset.
+        int offsetMinutes = (int) (offsetMillis / MILLIS_PER_MINUTE);
+        if(offsetMinutes < 0) {
+            buffer.append('-');
+            offsetMinutes = -offsetMinutes;
+        } else {
+            buffer.append('+');
+        }
+        append2(buffer, offsetMinutes / 60);
+        buffer.append(':');
+        append2(buffer, offsetMinutes % 60);
+    }
+
+    public static Date decode(String value) throws ParseException {
+        return new Date(decodeMillis(value));
+    }
+
+    /**
+     * decode a string in the format of SimpleDBUtils.
+     * A string which is not strictly in the format is parsed by SimpleDBUtils,
+     * so this method accepts all strings which SimpleDBUtils accepts.
+     *
+     * @return milliseconds from 1970-01-01T00:00:00Z.
+     * @throws ParseException if the string could not be parsed.
+     */
+    public static long decodeMillis(CharSequence value) throws ParseException {
+        isNotNull("value", value);
+        if(value.length() == ENCODED_LENGTH
+                && value.charAt(4) == '-' && value.charAt(7) == '-' && value.charAt(10) == 'T'
+                && value.charAt(13) == ':' && value.charAt(16) == ':' && value.charAt(19) == '.'
+                && (value.charAt(23) == '+' || value.charAt(23) == '-') && value.charAt(26) == ':') {
+            int year = digits(value, 0, 4);
+            int month = digits(value, 5, 2);
+            int day = digits(value, 8, 2);
+            int hour = digits(value, 11, 2);
+            int minute = digits(value, 14, 2);
+            int second = digits(value, 17, 2);
+            int millis = digits(value, 20, 3);
+            int offsetHour = digits(value, 24, 2);
+            int offsetMinute = digits(value, 27, 2);
+
+            if(year >= MIN_FAST_YEAR && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month)
+                    && hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60
+                    && millis >= 0 && offsetHour >= 0 && offsetHour < 24 && offsetMinute >= 0 && offsetMinute < 60
+                    && isFastPathAvailable()) {
+                long offsetMillis = (offsetHour * 60L + offsetMinute) * MILLIS_PER_MINUTE;
+                if(value.charAt(23) == '-') offsetMillis = -offsetMillis;
+                long localMillis = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                        + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+                return localMillis - offsetMillis;
+            }
+        }
+        return SimpleDBUtils.decodeDate(value.toString()).getTime();
+    }
+
+    /**
+     * days-from-civil. see http://howardhinnant.github.io/date_algorithms.html
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch(month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * @return the number, or -1 if the characters are not digits.
+     */
+    private static int digits(CharSequence value, int start, int length) {
+        int result = 0;
+        for (int i = start; i < start + length; i++) {
+            char c = value.charAt(i);
+            if(c < '0' || c > '9') return -1;
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long r = x / y;
+        if((x % y != 0) && ((x ^ y) < 0)) r--;
+        return r;
+    }
+
+    private static void append2(StringBuilder buffer, int value) {
+        buffer.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    private static void append3(StringBuilder buffer, int value) {
+        buffer.append((char) ('0' + value / 100));
+        append2(buffer, value % 100);
+    }
+
+    private static void append4(StringBuilder buffer, int value) {
+        append2(buffer, value / 100);
+        append2(buffer, value % 100);
+    }
+
+    /**
+     * SimpleDBUtils formats a date with the calendar and the digits of the default locale,
+     * so this class can format a date by itself only if the locale uses a gregorian calendar and ascii digits.
+     */
+    private static boolean isFastPathAvailable() {
+        Locale locale = Locale.getDefault();
+        LocaleCheck check = localeCheck;
+        if(check == null || !check.locale.equals(locale)) {
+            boolean available = Calendar.getInstance(locale) instanceof GregorianCalendar
+                    && new DecimalFormatSymbols(locale).getZeroDigit() == '0';
+            check = new LocaleCheck(locale, available);
+            localeCheck = check;
+        }
+        return check.available;
+    }
+
+    private static final class LocaleCheck {
+        private final Locale locale;
+        private final boolean available;
+
+        LocaleCheck(Locale locale, boolean available) {
+            this.locale = locale;
+            this.available = available;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.util;
+
+import java.util.Arrays;
+
+/**
+ * The 'base64url' encoding of RFC 4648 without padding,
+ * whose results can be put into URLs and file names as they are.
+ *
+ * @author Tsutomu YANO
+ */
+public final class UrlSafeBase64 {
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final int[] INDEXES = new int[128];
+    static {
+        Arrays.fill(INDEXES, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            INDEXES[ALPHABET[i]] = i;
+        }
+    }
+
+    private UrlSafeBase64() {
+        super();
+    }
+
+    public static String encode(byte[] bytes) {
+        Assertion.isNotNull("bytes", bytes);
+        StringBuilder sb = new StringBuilder((bytes.length * 4 + 2) / 3);
+        int i = 0;
+        for (; i + 2 < bytes.length; i += 3) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+            sb.append(ALPHABET[bits >>> 18]).append(ALPHABET[(bits >>> 12) & 0x3f]).append(ALPHABET[(bits >>> 6) & 0x3f]).append(ALPHABET[bits & 0x3f]);
+        }
+        int remaining = bytes.length - i;
+        if(remaining == 1) {
+            int bits = (bytes[i] & 0xff) << 16;
+            sb.append(ALPHABET[bits >>> 18]).append(ALPHABET[(bits >>> 12) & 0x3f]);
+        } else if(remaining == 2) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8;
+            sb.append(ALPHABET[bits >>> 18]).append(ALPHABET[(bits >>> 12) & 0x3f]).append(ALPHABET[(bits >>> 6) & 0x3f]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text is not encoded by {@link #encode(byte[])}.
+     */
+    public static byte[] decode(String text) {
+        Assertion.isNotNull("text", text);
+        if(text.length() % 4 == 1) throw new IllegalArgumentException("the length of the text is not valid: " + text.length());
+        byte[] bytes = new byte[text.length() * 3 / 4];
+        int bits = 0;
+        int count = 0;
+        int index = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int value = c < INDEXES.length ? INDEXES[c] : -1;
+            if(value < 0) throw new IllegalArgumentException("the text has an invalid character at " + i);
+            bits = (bits << 6 | value) & 0xffff;
+            count += 6;
+            if(count >= 8) {
+                count -= 8;
+                bytes[index++] = (byte) (bits >>> count);
+            }
+        }
+        return bytes;
+    }
+}
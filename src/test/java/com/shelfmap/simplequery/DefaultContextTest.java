@@ -0,0 +1,189 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery;
+
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import static com.shelfmap.simplequery.attribute.Attributes.attr;
+import com.shelfmap.simplequery.expression.Expression;
+import com.shelfmap.simplequery.expression.FetchOptions;
+import com.shelfmap.simplequery.expression.QueryResults;
+import com.shelfmap.simplequery.expression.impl.Select;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.in;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Alias;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/DefaultContext.story")
+public class DefaultContextTest extends BaseStoryRunner {
+    private static final long WAIT_MILLIS = 5000L;
+
+    FakeSimpleDB simpleDB;
+    Context context;
+    Map<String, ExecutorService> executors;
+    List<Future<Integer>> counts;
+    Future<QueryResults<ContextUser>> results;
+
+    @Given("a fake SimpleDB which has $count items and a context which has $threads I/O threads")
+    @Alias("a fake SimpleDB which has $count items and a context which has $threads I/O thread")
+    public void createContext(int count, final int threads) {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= count; i++) {
+            String name = nameOf(i);
+            simpleDB.put(name, "name", name);
+        }
+        context = new FakeContext(simpleDB) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected int configureMaxIOThreads() {
+                return threads;
+            }
+        };
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (context != null) context.close();
+        context = null;
+    }
+
+    @When("all executors of the context are created")
+    public void createExecutors() {
+        executors = new HashMap<String, ExecutorService>();
+        executors.put("the I/O executor", context.getIOExecutor());
+        executors.put("the query executor", context.getQueryExecutor());
+        executors.put("the conversion executor", context.getConversionExecutor());
+        executors.put("the scheduled executor", context.getScheduledExecutor());
+    }
+
+    @When("the context is closed")
+    public void close() {
+        context.close();
+    }
+
+    @When("$count counts of an 'in' clause of $names names are requested asynchronously")
+    public void countAsync(int count, int names) {
+        counts = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < count; i++) {
+            counts.add(inClauseOf(names).countAsync());
+        }
+    }
+
+    @When("the results of an 'in' clause of $names names are fetched asynchronously")
+    public void fetchAsync(int names) {
+        results = inClauseOf(names).getResultsAsync(false, FetchOptions.DEFAULT);
+    }
+
+    @Then("<executor> must have been shut down")
+    public void assertShutdown(@Named("executor") String executor) {
+        assertThat(executors.get(executor).isShutdown(), Matchers.is(true));
+    }
+
+    @Then(value = "getting <executor> must fail with IllegalStateException", priority = 1)
+    public void assertClosedGetterOfExample(@Named("executor") String executor) {
+        assertClosedGetter(executor);
+    }
+
+    @Then("getting $executor must fail with IllegalStateException")
+    public void assertClosedGetter(String executor) {
+        try {
+            if (executor.equals("the I/O executor")) {
+                context.getIOExecutor();
+            } else if (executor.equals("the query executor")) {
+                context.getQueryExecutor();
+            } else if (executor.equals("the conversion executor")) {
+                context.getConversionExecutor();
+            } else if (executor.equals("the scheduled executor")) {
+                context.getScheduledExecutor();
+            } else if (executor.equals("the transfer manager")) {
+                context.getTransferManager();
+            } else {
+                throw new IllegalArgumentException("unknown executor: " + executor);
+            }
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), Matchers.is("this context has been closed."));
+            return;
+        }
+        throw new AssertionError("getting " + executor + " must fail.");
+    }
+
+    @Then("an asynchronous count must fail with IllegalStateException")
+    public void assertClosedCount() {
+        try {
+            new Select(context).from(ContextUser.class).countAsync();
+        } catch (IllegalStateException ex) {
+            return;
+        }
+        throw new AssertionError("an asynchronous count must fail.");
+    }
+
+    @Then("all counts must be $count")
+    public void assertCounts(int count) throws Exception {
+        for (Future<Integer> future : counts) {
+            assertThat(future.get(WAIT_MILLIS, TimeUnit.MILLISECONDS), Matchers.is(count));
+        }
+    }
+
+    @Then("the results must have $count items")
+    public void assertResults(int count) throws Exception {
+        int size = 0;
+        for (ContextUser user : results.get(WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+            size++;
+        }
+        assertThat(size, Matchers.is(count));
+    }
+
+    private Expression<ContextUser> inClauseOf(int count) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 1; i <= count; i++) {
+            names.add(nameOf(i));
+        }
+        return new Select(context).from(ContextUser.class).where(attr("name"), in(names.toArray(new String[names.size()])));
+    }
+
+    private static String nameOf(int index) {
+        return String.format("user%05d", index);
+    }
+
+    @SimpleDbDomain("context-user")
+    public static class ContextUser {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
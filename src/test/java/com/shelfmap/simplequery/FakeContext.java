@@ -0,0 +1,39 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.services.simpledb.AmazonSimpleDB;
+
+/**
+ * A context whose SimpleDB client is a {@link FakeSimpleDB}.
+ *
+ * @author Tsutomu YANO
+ */
+public class FakeContext extends DefaultContext {
+    private static final long serialVersionUID = 1L;
+    private final transient FakeSimpleDB fakeSimpleDB;
+
+    public FakeContext(FakeSimpleDB fakeSimpleDB) {
+        super(null);
+        this.fakeSimpleDB = fakeSimpleDB;
+    }
+
+    @Override
+    protected AmazonSimpleDB createSimpleDb(AWSCredentials securityCredential) {
+        return fakeSimpleDB.client();
+    }
+}
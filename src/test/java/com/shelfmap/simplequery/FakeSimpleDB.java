@@ -0,0 +1,445 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.simpledb.AmazonSimpleDB;
+import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.Item;
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.amazonaws.services.simpledb.model.SelectResult;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An AmazonSimpleDB which answers select requests from items in memory, for the tests which need no AWS account.
+ * <p>
+ * The where clause is evaluated with 'and', 'or', 'intersection', 'not', parentheses and the comparisons
+ * '=', '!=', '&lt;', '&lt;=', '&gt;', '&gt;=', 'in', 'like', 'not like', 'between', 'is null' and 'is not null'
+ * of attributes or itemName(). The values are compared lexicographically, and an attribute which has
+ * several values matches if one of its values matches.
+ * 'count(*)', 'itemName()', 'order by', 'limit' and NextTokens are supported.
+ * The other requests throw UnsupportedOperationException.
+ * <p>
+ * The requests can be held until they are released, or made to fail, to test concurrent or failing queries.
+ * <p>
+ * THIS CLASS IS THREAD SAFE
+ *
+ * @author Tsutomu YANO
+ */
+public class FakeSimpleDB implements InvocationHandler {
+    private static final Pattern SELECT = Pattern.compile("select (.+?) from `[^`]+`(?: where (.+?))?(?: order by (`(?:[^`]|``)+`|itemName\\(\\)) (asc|desc))?(?: limit (\\d+))?");
+    private static final Pattern TOKEN = Pattern.compile("\\s*('(?:[^']|'')*'|\"(?:[^\"]|\"\")*\"|`(?:[^`]|``)*`|itemName\\(\\)|!=|<=|>=|[=<>(),]|[A-Za-z]+)");
+    private static final List<String> COMPARISONS = Arrays.asList("=", "!=", "<", "<=", ">", ">=");
+    private static final String TOKEN_PREFIX = "fake-token-";
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final Map<String, Item> items = new LinkedHashMap<String, Item>();
+    private final List<SelectRequest> requests = new ArrayList<SelectRequest>();
+    private final List<String> requestThreads = new ArrayList<String>();
+    private int maxItemsPerResponse = Integer.MAX_VALUE;
+    private boolean held;
+    private int failFrom = Integer.MAX_VALUE;
+    private RuntimeException failure;
+
+    public AmazonSimpleDB client() {
+        return (AmazonSimpleDB) Proxy.newProxyInstance(AmazonSimpleDB.class.getClassLoader(), new Class<?>[] {AmazonSimpleDB.class}, this);
+    }
+
+    /**
+     * @param itemName the name of the item.
+     * @param attributes the pairs of the name and the value of each attribute.
+     */
+    public synchronized FakeSimpleDB put(String itemName, String... attributes) {
+        List<Attribute> list = new ArrayList<Attribute>();
+        for (int i = 0; i < attributes.length; i += 2) {
+            list.add(new Attribute(attributes[i], attributes[i + 1]));
+        }
+        items.put(itemName, new Item(itemName, list));
+        return this;
+    }
+
+    /**
+     * a response has at most this number of items (or counts at most this number of items) with a NextToken,
+     * like SimpleDB which truncates a response by its size or by the time of the query.
+     */
+    public synchronized void setMaxItemsPerResponse(int maxItemsPerResponse) {
+        this.maxItemsPerResponse = maxItemsPerResponse;
+    }
+
+    public synchronized List<SelectRequest> getRequests() {
+        return new ArrayList<SelectRequest>(requests);
+    }
+
+    /**
+     * @return the names of the threads which sent the requests, in the order of the requests.
+     */
+    public synchronized List<String> getRequestThreads() {
+        return new ArrayList<String>(requestThreads);
+    }
+
+    public synchronized void clearRequests() {
+        requests.clear();
+        requestThreads.clear();
+    }
+
+    /**
+     * wait until this object receives the number of requests.
+     *
+     * @return true if the requests are received, false if the time elapsed.
+     */
+    public synchronized boolean awaitRequests(int count, long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while(requests.size() < count) {
+            long rest = deadline - System.currentTimeMillis();
+            if(rest <= 0) return false;
+            wait(rest);
+        }
+        return true;
+    }
+
+    /**
+     * the following requests are received, but are not answered until {@link #release()} is called.
+     */
+    public synchronized void hold() {
+        held = true;
+    }
+
+    public synchronized void release() {
+        held = false;
+        notifyAll();
+    }
+
+    /**
+     * the requests after the number of requests from now throw the exception.
+     *
+     * @param succeeding the number of the requests which succeed before the failure.
+     * @param failure the exception which is thrown by the failing requests.
+     */
+    public synchronized void failAfter(int succeeding, RuntimeException failure) {
+        this.failFrom = requests.size() + succeeding;
+        this.failure = failure;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if(name.equals("select") && args.length == 1) return select((SelectRequest) args[0]);
+        if(name.equals("toString") && args == null) return "FakeSimpleDB";
+        if(name.equals("hashCode") && args == null) return System.identityHashCode(proxy);
+        if(name.equals("equals") && args != null && args.length == 1) return proxy == args[0];
+        throw new UnsupportedOperationException(name + " is not supported by FakeSimpleDB.");
+    }
+
+    private synchronized SelectResult select(SelectRequest request) {
+        requests.add(request);
+        requestThreads.add(Thread.currentThread().getName());
+        notifyAll();
+        try {
+            while(held) wait();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("interrupted while the request is held.", ex);
+        }
+        if(requests.size() > failFrom) throw failure;
+
+        Matcher select = SELECT.matcher(request.getSelectExpression());
+        if(!select.matches()) throw new IllegalArgumentException("FakeSimpleDB can not parse the expression: " + request.getSelectExpression());
+        String attributes = select.group(1);
+        String where = select.group(2);
+        String orderBy = select.group(3);
+        boolean countOnly = attributes.equals("count(*)");
+        int limit = select.group(5) != null ? Integer.parseInt(select.group(5)) : (countOnly ? Integer.MAX_VALUE : DEFAULT_LIMIT);
+
+        List<Item> matched = matchedItems(where);
+        if(orderBy != null) sort(matched, orderBy, select.group(4).equals("desc"));
+
+        String token = request.getNextToken();
+        int start = token == null ? 0 : Integer.parseInt(token.substring(TOKEN_PREFIX.length()));
+        int end = Math.min(matched.size(), start + Math.min(limit, maxItemsPerResponse));
+        String nextToken = end < matched.size() ? TOKEN_PREFIX + end : null;
+
+        List<Item> page = new ArrayList<Item>();
+        if(countOnly) {
+            page.add(new Item("Domain", Collections.singletonList(new Attribute("Count", String.valueOf(end - start)))));
+        } else {
+            for (Item item : matched.subList(start, end)) {
+                page.add(attributes.equals("itemName()") ? new Item(item.getName(), new ArrayList<Attribute>()) : item);
+            }
+        }
+        return new SelectResult().withItems(page).withNextToken(nextToken);
+    }
+
+    private List<Item> matchedItems(String where) {
+        ItemMatcher matcher = where == null ? null : new WhereParser(where).parse();
+        List<Item> matched = new ArrayList<Item>();
+        for (Item item : items.values()) {
+            if(matcher == null || matcher.matches(item)) matched.add(item);
+        }
+        return matched;
+    }
+
+    private void sort(List<Item> matched, String orderBy, boolean descending) {
+        final String attributeName = orderBy.equals("itemName()") ? null : orderBy.substring(1, orderBy.length() - 1).replace("``", "`");
+        Comparator<Item> comparator = new Comparator<Item>() {
+            @Override
+            public int compare(Item first, Item second) {
+                return sortKeyOf(first, attributeName).compareTo(sortKeyOf(second, attributeName));
+            }
+        };
+        Collections.sort(matched, descending ? Collections.reverseOrder(comparator) : comparator);
+    }
+
+    private static String sortKeyOf(Item item, String attributeName) {
+        if(attributeName == null) return item.getName();
+        for (Attribute attribute : item.getAttributes()) {
+            if(attribute.getName().equals(attributeName)) return attribute.getValue();
+        }
+        return "";
+    }
+
+    private static List<String> valuesOf(Item item, String attributeName) {
+        List<String> values = new ArrayList<String>();
+        if(attributeName == null) {
+            values.add(item.getName());
+            return values;
+        }
+        for (Attribute attribute : item.getAttributes()) {
+            if(attribute.getName().equals(attributeName)) values.add(attribute.getValue());
+        }
+        return values;
+    }
+
+    private interface ItemMatcher {
+        boolean matches(Item item);
+    }
+
+    private interface ValueMatcher {
+        boolean matches(String value);
+    }
+
+    /**
+     * parses a where clause into an ItemMatcher. 'not' binds tighter than 'and' and 'intersection', which bind tighter than 'or'.
+     */
+    private static final class WhereParser {
+        private final String where;
+        private final List<String> tokens = new ArrayList<String>();
+        private int position;
+
+        WhereParser(String where) {
+            this.where = where;
+            Matcher token = TOKEN.matcher(where);
+            int end = 0;
+            while(token.lookingAt()) {
+                tokens.add(token.group(1));
+                end = token.end();
+                token.region(end, where.length());
+            }
+            if(where.substring(end).trim().length() > 0) throw unsupported();
+        }
+
+        ItemMatcher parse() {
+            ItemMatcher matcher = parseOr();
+            if(position < tokens.size()) throw unsupported();
+            return matcher;
+        }
+
+        private ItemMatcher parseOr() {
+            ItemMatcher matcher = parseAnd();
+            while(accept("or")) {
+                final ItemMatcher left = matcher;
+                final ItemMatcher right = parseAnd();
+                matcher = new ItemMatcher() {
+                    @Override
+                    public boolean matches(Item item) {
+                        return left.matches(item) || right.matches(item);
+                    }
+                };
+            }
+            return matcher;
+        }
+
+        private ItemMatcher parseAnd() {
+            ItemMatcher matcher = parseNot();
+            while(accept("and") || accept("intersection")) {
+                final ItemMatcher left = matcher;
+                final ItemMatcher right = parseNot();
+                matcher = new ItemMatcher() {
+                    @Override
+                    public boolean matches(Item item) {
+                        return left.matches(item) && right.matches(item);
+                    }
+                };
+            }
+            return matcher;
+        }
+
+        private ItemMatcher parseNot() {
+            if(accept("not")) {
+                final ItemMatcher negated = parseNot();
+                return new ItemMatcher() {
+                    @Override
+                    public boolean matches(Item item) {
+                        return !negated.matches(item);
+                    }
+                };
+            }
+            if(accept("(")) {
+                ItemMatcher matcher = parseOr();
+                expect(")");
+                return matcher;
+            }
+            return parseComparison();
+        }
+
+        private ItemMatcher parseComparison() {
+            String operand = next();
+            final String attributeName;
+            if(operand.equals("itemName()")) {
+                attributeName = null;
+            } else if(operand.startsWith("`")) {
+                attributeName = operand.substring(1, operand.length() - 1).replace("``", "`");
+            } else {
+                throw unsupported();
+            }
+
+            if(accept("is")) {
+                final boolean negated = accept("not");
+                expect("null");
+                return new ItemMatcher() {
+                    @Override
+                    public boolean matches(Item item) {
+                        return valuesOf(item, attributeName).isEmpty() == !negated;
+                    }
+                };
+            }
+            final ValueMatcher matcher = parseValueMatcher();
+            return new ItemMatcher() {
+                @Override
+                public boolean matches(Item item) {
+                    for (String value : valuesOf(item, attributeName)) {
+                        if(matcher.matches(value)) return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private ValueMatcher parseValueMatcher() {
+            String operator = next();
+            if(operator.equals("in")) {
+                expect("(");
+                final List<String> values = new ArrayList<String>();
+                do {
+                    values.add(nextValue());
+                } while(accept(","));
+                expect(")");
+                return new ValueMatcher() {
+                    @Override
+                    public boolean matches(String value) {
+                        return values.contains(value);
+                    }
+                };
+            }
+            if(operator.equals("between")) {
+                final String lower = nextValue();
+                expect("and");
+                final String upper = nextValue();
+                return new ValueMatcher() {
+                    @Override
+                    public boolean matches(String value) {
+                        return value.compareTo(lower) >= 0 && value.compareTo(upper) <= 0;
+                    }
+                };
+            }
+            final boolean negated = operator.equals("not");
+            if(negated) operator = next();
+            if(operator.equals("like")) {
+                final Pattern pattern = likePatternOf(nextValue());
+                return new ValueMatcher() {
+                    @Override
+                    public boolean matches(String value) {
+                        return pattern.matcher(value).matches() != negated;
+                    }
+                };
+            }
+            if(negated || !COMPARISONS.contains(operator)) throw unsupported();
+
+            final String comparison = operator;
+            final String operand = nextValue();
+            return new ValueMatcher() {
+                @Override
+                public boolean matches(String value) {
+                    int compared = value.compareTo(operand);
+                    if(comparison.equals("=")) return compared == 0;
+                    if(comparison.equals("!=")) return compared != 0;
+                    if(comparison.equals("<")) return compared < 0;
+                    if(comparison.equals("<=")) return compared <= 0;
+                    if(comparison.equals(">")) return compared > 0;
+                    return compared >= 0;
+                }
+            };
+        }
+
+        private Pattern likePatternOf(String like) {
+            StringBuilder regex = new StringBuilder();
+            for (String part : like.split("%", -1)) {
+                if(regex.length() > 0) regex.append(".*");
+                regex.append(Pattern.quote(part));
+            }
+            return Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+
+        private String nextValue() {
+            String value = next();
+            char quote = value.charAt(0);
+            if(quote != '\'' && quote != '"') throw unsupported();
+            String doubled = String.valueOf(quote) + quote;
+            return value.substring(1, value.length() - 1).replace(doubled, String.valueOf(quote));
+        }
+
+        private String next() {
+            if(position >= tokens.size()) throw unsupported();
+            return tokens.get(position++);
+        }
+
+        private boolean accept(String token) {
+            if(position < tokens.size() && tokens.get(position).equalsIgnoreCase(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if(!accept(token)) throw unsupported();
+        }
+
+        private IllegalArgumentException unsupported() {
+            return new IllegalArgumentException("FakeSimpleDB can not evaluate the where clause: " + where);
+        }
+    }
+}
@@ -52,4 +52,20 @@ public class DateAttributeConverterTest extends BaseStoryRunner {
 
         assertThat(converted, is(exp));
     }
-}
\ No newline at end of file
+
+    @Then("the converter convert a Date <date> to the same String with SimpleDBUtils")
+    public void assertConversionToString(@Named("date") String date) throws Exception {
+        Date target = date(date, "yyyy-MM-dd HH:mm:ss.SSS");
+        String converted = converter.convertValue(target);
+
+        assertThat(converted, is(SimpleDBUtils.encodeDate(target)));
+        assertThat(converter.restoreValue(converted), is(target));
+    }
+
+    @Then("the converter convert a String <value> to the same Date with SimpleDBUtils")
+    public void assertConversionSameWithSimpleDBUtils(@Named("value") String value) throws Exception {
+        Date converted = converter.restoreValue(value);
+
+        assertThat(converted, is(SimpleDBUtils.decodeDate(value)));
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain;
+
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.FakeContext;
+import com.shelfmap.simplequery.FakeSimpleDB;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.ItemName;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import static com.shelfmap.simplequery.attribute.Attributes.attr;
+import com.shelfmap.simplequery.domain.impl.DefaultReverseToManyDomainReference;
+import com.shelfmap.simplequery.domain.impl.DefaultReverseToOneDomainReference;
+import com.shelfmap.simplequery.domain.impl.EagerReferenceFetcher;
+import com.shelfmap.simplequery.expression.SimpleQueryException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/EagerReferenceFetcher.story")
+public class EagerReferenceFetcherTest extends BaseStoryRunner {
+    private static final Pattern QUOTED = Pattern.compile("'([^']*)'");
+
+    FakeSimpleDB simpleDB;
+    Context context;
+    List<EagerMaster> masters;
+    Exception failure;
+
+    /**
+     * the master i has (i % 3) details, so that some masters have no detail.
+     */
+    @Given(value = "a fake SimpleDB which has <masters> masters with their details and answers <size> items in a response", priority = 1)
+    public void createContextOfExample(@Named("masters") int count, @Named("size") int size) {
+        createContext(count, size);
+    }
+
+    @Given("a fake SimpleDB which has $masters masters with their details and answers $size items in a response")
+    public void createContext(int count, int size) {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= count; i++) {
+            for (String detail : detailNamesOf(i)) {
+                simpleDB.put(detail, "name", detail, "owner", masterNameOf(i));
+            }
+        }
+        simpleDB.setMaxItemsPerResponse(size);
+        context = new FakeContext(simpleDB);
+
+        masters = new ArrayList<EagerMaster>();
+        for (int i = 1; i <= count; i++) {
+            masters.add(new EagerMaster(context, masterNameOf(i)));
+        }
+        failure = null;
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (context != null) context.close();
+        context = null;
+    }
+
+    @When(value = "the <property> of the masters are fetched eagerly", priority = 1)
+    public void fetchOfExample(@Named("property") String property) throws SimpleQueryException {
+        fetch(property);
+    }
+
+    @When("the $property of the masters are fetched eagerly")
+    public void fetch(String property) throws SimpleQueryException {
+        simpleDB.clearRequests();
+        try {
+            new EagerReferenceFetcher<EagerMaster>(context, Arrays.asList(property)).fetch(masters, false);
+        } catch (IllegalArgumentException ex) {
+            failure = ex;
+        }
+    }
+
+    @When("the item name of the master $index is changed to $itemName")
+    public void changeItemName(int index, String itemName) {
+        masters.get(index - 1).setItemName(itemName);
+    }
+
+    @Then("SimpleDB must have received <queries> queries, each of which refers to at most 20 masters")
+    public void assertQueries(@Named("queries") int queries) {
+        int count = 0;
+        for (SelectRequest request : simpleDB.getRequests()) {
+            //the following pages of a query have NextTokens.
+            if (request.getNextToken() != null) continue;
+            count++;
+            String expression = request.getSelectExpression();
+            assertThat(expression, Matchers.anyOf(Matchers.containsString("`owner` in ("), Matchers.containsString("`owner` = ")));
+            Matcher quoted = QUOTED.matcher(expression);
+            int values = 0;
+            while (quoted.find()) {
+                values++;
+            }
+            assertThat(values, Matchers.lessThanOrEqualTo(20));
+        }
+        assertThat(count, Matchers.is(queries));
+    }
+
+    @Then("the details of each master must be its own details without a request")
+    public void assertDetails() throws SimpleQueryException {
+        simpleDB.clearRequests();
+        for (int i = 1; i <= masters.size(); i++) {
+            List<String> names = new ArrayList<String>();
+            for (EagerDetail detail : masters.get(i - 1).getDetails().getResults(false)) {
+                names.add(detail.getName());
+            }
+            assertThat(names, Matchers.is(detailNamesOf(i)));
+        }
+        assertThat(simpleDB.getRequests().size(), Matchers.is(0));
+    }
+
+    @Then("the main detail of each master must be its first detail without a request")
+    public void assertMainDetails() throws SimpleQueryException {
+        simpleDB.clearRequests();
+        for (int i = 1; i <= masters.size(); i++) {
+            EagerDetail detail = masters.get(i - 1).getMainDetail().get(false);
+            List<String> details = detailNamesOf(i);
+            assertThat(detail == null ? null : detail.getName(), Matchers.is(details.isEmpty() ? null : details.get(0)));
+        }
+        assertThat(simpleDB.getRequests().size(), Matchers.is(0));
+    }
+
+    @Then("the details of the master $index must be read by a request")
+    public void assertDetailsByRequest(int index) throws SimpleQueryException {
+        simpleDB.clearRequests();
+        for (EagerDetail detail : masters.get(index - 1).getDetails().getResults(false)) {
+            detail.getName();
+        }
+        assertThat(simpleDB.getRequests().size(), Matchers.is(1));
+    }
+
+    @Then("the details of the master $index must be read by a request for a consistent read")
+    public void assertConsistentDetails(int index) throws SimpleQueryException {
+        simpleDB.clearRequests();
+        List<String> names = new ArrayList<String>();
+        for (EagerDetail detail : masters.get(index - 1).getDetails().getResults(true)) {
+            names.add(detail.getName());
+        }
+        assertThat(names, Matchers.is(detailNamesOf(index)));
+        assertThat(simpleDB.getRequests().size(), Matchers.is(1));
+    }
+
+    @Then("the fetch must fail with $exceptionClass")
+    public void assertFailure(String exceptionClass) {
+        assertThat(failure, Matchers.is(Matchers.notNullValue()));
+        assertThat(failure.getClass().getSimpleName(), Matchers.is(exceptionClass));
+    }
+
+    private static String masterNameOf(int index) {
+        return String.format("master%05d", index);
+    }
+
+    private static List<String> detailNamesOf(int index) {
+        List<String> names = new ArrayList<String>();
+        for (int j = 1; j <= index % 3; j++) {
+            names.add(String.format("detail%05d-%d", index, j));
+        }
+        return names;
+    }
+
+    @SimpleDbDomain("eager-master")
+    public static class EagerMaster {
+        private String itemName;
+        private final ReverseToManyDomainReference<EagerDetail> details;
+        private final ReverseToOneDomainReference<EagerDetail> mainDetail;
+
+        public EagerMaster(Context context, String itemName) {
+            this.itemName = itemName;
+            Domain<EagerDetail> detailDomain = context.getDomainFactory().createDomain(EagerDetail.class);
+            this.details = new DefaultReverseToManyDomainReference<EagerMaster, EagerDetail>(context, this, detailDomain, attr("owner"));
+            this.mainDetail = new DefaultReverseToOneDomainReference<EagerMaster, EagerDetail>(context, this, detailDomain, attr("owner"));
+        }
+
+        @ItemName
+        public String getItemName() {
+            return itemName;
+        }
+
+        public void setItemName(String itemName) {
+            this.itemName = itemName;
+        }
+
+        public ReverseToManyDomainReference<EagerDetail> getDetails() {
+            return details;
+        }
+
+        public ReverseToOneDomainReference<EagerDetail> getMainDetail() {
+            return mainDetail;
+        }
+    }
+
+    @SimpleDbDomain("eager-detail")
+    public static class EagerDetail {
+        private String itemName;
+        private String name;
+        private String owner;
+
+        @ItemName
+        public String getItemName() {
+            return itemName;
+        }
+
+        public void setItemName(String itemName) {
+            this.itemName = itemName;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public void setOwner(String owner) {
+            this.owner = owner;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain;
+
+import static com.amazonaws.services.simpledb.util.SimpleDBUtils.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.domain.impl.FloatAttributeConverter;
+import com.shelfmap.simplequery.domain.impl.IntAttributeConverter;
+import com.shelfmap.simplequery.domain.impl.LongAttributeConverter;
+import com.shelfmap.simplequery.domain.impl.PrimitiveConverters;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/PrimitiveConverters.story")
+public class PrimitiveConvertersTest extends BaseStoryRunner {
+    int padding;
+    long offset;
+    int maxDigitLeft;
+    int maxDigitRight;
+
+    @Given("converters with padding <padding> and offset <offset>")
+    public void createIntegerConverters(@Named("padding") int padding, @Named("offset") long offset) {
+        this.padding = padding;
+        this.offset = offset;
+    }
+
+    @Given("a FloatAttributeConverter with maxDigitLeft <left>, maxDigitRight <right> and offset <offset>")
+    public void createFloatConverter(@Named("left") int left, @Named("right") int right, @Named("offset") long offset) {
+        this.maxDigitLeft = left;
+        this.maxDigitRight = right;
+        this.offset = offset;
+    }
+
+    //SimpleDBUtils pads a negative number without an offset like "0-1", which can not be decoded.
+    //the converters must behave in the same way, so the decoded values are compared with SimpleDBUtils, not with the original values.
+    @Then("the IntConverter must convert an int <value> in the same way with SimpleDBUtils")
+    public void assertIntConversion(@Named("value") String value) {
+        final int target = Integer.parseInt(value);
+        final int intOffset = (int) offset;
+        final IntConverter converter = new IntAttributeConverter(padding, intOffset);
+
+        String expected = outcome(new Conversion() {
+            @Override
+            public String run() {
+                if (intOffset > 0) return encodeRealNumberRange(target, padding, intOffset);
+                if (padding > 0) return encodeZeroPadding(target, padding);
+                return String.valueOf(target);
+            }
+        });
+        String encoded = outcome(new Conversion() {
+            @Override
+            public String run() {
+                StringBuilder buffer = new StringBuilder("prefix:");
+                converter.encode(target, buffer);
+                return buffer.substring("prefix:".length());
+            }
+        });
+        assertThat(encoded, is(expected));
+
+        final String stored = encoded;
+        String expectedValue = outcome(new Conversion() {
+            @Override
+            public String run() {
+                return String.valueOf(intOffset > 0 ? decodeRealNumberRangeInt(stored, intOffset) : decodeZeroPaddingInt(stored));
+            }
+        });
+        String decoded = outcome(new Conversion() {
+            @Override
+            public String run() {
+                return String.valueOf(converter.decode(new StringBuilder(stored)));
+            }
+        });
+        assertThat(decoded, is(expectedValue));
+    }
+
+    @Then("the LongConverter must convert a long <value> in the same way with SimpleDBUtils")
+    public void assertLongConversion(@Named("value") String value) {
+        final long target = Long.parseLong(value);
+        final LongConverter converter = new LongAttributeConverter(padding, offset);
+
+        String expected = outcome(new Conversion() {
+            @Override
+            public String run() {
+                if (offset > 0) return encodeRealNumberRange(target, padding, offset);
+                if (padding > 0) return encodeZeroPadding(target, padding);
+                return String.valueOf(target);
+            }
+        });
+        String encoded = outcome(new Conversion() {
+            @Override
+            public String run() {
+                StringBuilder buffer = new StringBuilder("prefix:");
+                converter.encode(target, buffer);
+                return buffer.substring("prefix:".length());
+            }
+        });
+        assertThat(encoded, is(expected));
+
+        final String stored = encoded;
+        String expectedValue = outcome(new Conversion() {
+            @Override
+            public String run() {
+                return String.valueOf(offset > 0 ? decodeRealNumberRangeLong(stored, offset) : decodeZeroPaddingLong(stored));
+            }
+        });
+        String decoded = outcome(new Conversion() {
+            @Override
+            public String run() {
+                return String.valueOf(converter.decode(new StringBuilder(stored)));
+            }
+        });
+        assertThat(decoded, is(expectedValue));
+    }
+
+    @Then("the FloatConverter must convert a float <value> in the same way with SimpleDBUtils")
+    public void assertFloatConversion(@Named("value") String value) {
+        final float target = Float.parseFloat(value);
+        final int intOffset = (int) offset;
+        final FloatConverter converter = new FloatAttributeConverter(maxDigitLeft, maxDigitRight, intOffset);
+
+        String expected = outcome(new Conversion() {
+            @Override
+            public String run() {
+                if (intOffset > 0) return encodeRealNumberRange(target, maxDigitLeft, maxDigitRight, intOffset);
+                if (maxDigitLeft > 0) return encodeZeroPadding(target, maxDigitLeft);
+                return Float.toString(target);
+            }
+        });
+        String encoded = outcome(new Conversion() {
+            @Override
+            public String run() {
+                StringBuilder buffer = new StringBuilder();
+                converter.encode(target, buffer);
+                return buffer.toString();
+            }
+        });
+        assertThat(encoded, is(expected));
+
+        final String stored = encoded;
+        String expectedValue = outcome(new Conversion() {
+            @Override
+            public String run() {
+                return String.valueOf(intOffset > 0 ? decodeRealNumberRangeFloat(stored, maxDigitRight, intOffset) : decodeZeroPaddingFloat(stored));
+            }
+        });
+        String decoded = outcome(new Conversion() {
+            @Override
+            public String run() {
+                return String.valueOf(converter.decode(new StringBuilder(stored)));
+            }
+        });
+        assertThat(decoded, is(expectedValue));
+    }
+
+    @Then("PrimitiveConverters must parse a CharSequence <text> in the same way with Long.parseLong and Integer.parseInt")
+    public void assertParsing(@Named("text") final String target) {
+
+        String expectedLong = outcome(new Conversion() {
+            @Override
+            public String run() {
+                return String.valueOf(Long.parseLong(target));
+            }
+        });
+        String parsedLong = outcome(new Conversion() {
+            @Override
+            public String run() {
+                return String.valueOf(PrimitiveConverters.parseLong(new StringBuilder(target)));
+            }
+        });
+        assertThat(parsedLong, is(expectedLong));
+
+        String expectedInt = outcome(new Conversion() {
+            @Override
+            public String run() {
+                return String.valueOf(Integer.parseInt(target));
+            }
+        });
+        String parsedInt = outcome(new Conversion() {
+            @Override
+            public String run() {
+                return String.valueOf(PrimitiveConverters.parseInt(new StringBuilder(target)));
+            }
+        });
+        assertThat(parsedInt, is(expectedInt));
+    }
+
+    /**
+     * @return the result of the conversion, or the name of the exception which the conversion threw.
+     */
+    private String outcome(Conversion conversion) {
+        try {
+            return conversion.run();
+        } catch (RuntimeException ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+    private interface Conversion {
+        String run();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.domain;
+
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.FakeContext;
+import com.shelfmap.simplequery.FakeSimpleDB;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.ItemName;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import com.shelfmap.simplequery.domain.impl.DefaultToOneDomainReference;
+import com.shelfmap.simplequery.domain.impl.ToOneReferenceLoader;
+import com.shelfmap.simplequery.expression.MultipleResultsExistException;
+import com.shelfmap.simplequery.expression.SimpleQueryException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/ToOneReferenceLoader.story")
+public class ToOneReferenceLoaderTest extends BaseStoryRunner {
+    private static final Pattern QUOTED = Pattern.compile("'([^']*)'");
+
+    FakeSimpleDB simpleDB;
+    Context context;
+    Domain<LoadedUser> domain;
+    ToOneReferenceLoader<LoadedUser> loader;
+    List<DefaultToOneDomainReference<LoadedUser>> references;
+    int pendingCount;
+    Map<String, LoadedUser> loaded;
+    Exception failure;
+
+    @Given("a fake SimpleDB which has $count target items")
+    public void createContext(int count) {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= count; i++) {
+            String name = nameOf(i);
+            simpleDB.put(name, "name", name);
+        }
+        context = new FakeContext(simpleDB);
+        domain = context.getDomainFactory().createDomain(LoadedUser.class);
+        references = new ArrayList<DefaultToOneDomainReference<LoadedUser>>();
+        failure = null;
+    }
+
+    @Given(value = "a loader whose chunk size is <chunk>", priority = 1)
+    public void createLoaderOfExample(@Named("chunk") int chunkSize) {
+        createLoader(chunkSize);
+    }
+
+    @Given("a loader whose chunk size is $chunk")
+    public void createLoader(int chunkSize) {
+        try {
+            loader = new ToOneReferenceLoader<LoadedUser>(context, domain, chunkSize);
+        } catch (IllegalArgumentException ex) {
+            failure = ex;
+        }
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (context != null) context.close();
+        context = null;
+    }
+
+    @When("<references> references to <targets> items are added")
+    public void addReferences(@Named("references") int count, @Named("targets") int targets) {
+        for (int i = 0; i < count; i++) {
+            addReference(nameOf(i % targets + 1));
+        }
+    }
+
+    @When("references to $names are added")
+    public void addReferences(List<String> names) {
+        for (String name : names) {
+            addReference(name);
+        }
+    }
+
+    @When("a reference to no item is added")
+    public void addEmptyReference() {
+        addReference(null);
+    }
+
+    @When("the references are loaded")
+    public void load() throws SimpleQueryException {
+        pendingCount = loader.getPendingCount();
+        simpleDB.clearRequests();
+        loaded = loader.load(false);
+    }
+
+    @Then(value = "the loader must have had <targets> pending items", priority = 1)
+    public void assertPendingCountOfExample(@Named("targets") int count) {
+        assertPendingCount(count);
+    }
+
+    @Then("the loader must have had $count pending items")
+    public void assertPendingCount(int count) {
+        assertThat(pendingCount, Matchers.is(count));
+    }
+
+    @Then(value = "SimpleDB must have received <requests> requests", priority = 1)
+    public void assertRequestsOfExample(@Named("requests") int requests) {
+        assertRequests(requests);
+    }
+
+    @Then("SimpleDB must have received $requests requests")
+    public void assertRequests(int requests) {
+        assertThat(simpleDB.getRequests().size(), Matchers.is(requests));
+    }
+
+    @Then("each request must query at most <chunk> item names by an 'in' clause")
+    public void assertChunks(@Named("chunk") int chunkSize) {
+        for (SelectRequest request : simpleDB.getRequests()) {
+            String expression = request.getSelectExpression();
+            assertThat(expression, Matchers.containsString("itemName() in ("));
+            Matcher quoted = QUOTED.matcher(expression);
+            int values = 0;
+            while (quoted.find()) {
+                values++;
+            }
+            assertThat(values, Matchers.lessThanOrEqualTo(chunkSize));
+        }
+    }
+
+    @Then("each reference must return its target without a request")
+    public void assertTargets() throws SimpleQueryException, MultipleResultsExistException {
+        simpleDB.clearRequests();
+        for (DefaultToOneDomainReference<LoadedUser> reference : references) {
+            if (reference.getTargetItemName() == null) continue;
+            LoadedUser target = loaded.get(reference.getTargetItemName());
+            assertThat(reference.get(false), Matchers.is(Matchers.sameInstance(target)));
+        }
+        assertRequests(0);
+    }
+
+    @Then("all pending items must have been loaded")
+    public void assertAllLoaded() {
+        assertThat(loaded.size(), Matchers.is(pendingCount));
+        for (Map.Entry<String, LoadedUser> entry : loaded.entrySet()) {
+            assertThat(entry.getValue().getItemName(), Matchers.is(entry.getKey()));
+        }
+    }
+
+    @Then("the loaded targets must be $names")
+    public void assertLoaded(List<String> names) {
+        assertThat(new ArrayList<String>(new TreeSet<String>(loaded.keySet())), Matchers.is(names));
+    }
+
+    @Then("the reference to $name must return null without a request")
+    public void assertMissingTarget(String name) throws SimpleQueryException, MultipleResultsExistException {
+        simpleDB.clearRequests();
+        assertThat(referenceTo(name).get(false), Matchers.is(Matchers.nullValue()));
+        assertRequests(0);
+    }
+
+    @Then("the reference to $name must send a request for a consistent read")
+    public void assertConsistentGet(String name) throws SimpleQueryException, MultipleResultsExistException {
+        simpleDB.clearRequests();
+        assertThat(referenceTo(name).get(true).getItemName(), Matchers.is(name));
+        assertRequests(1);
+    }
+
+    @Then("the reference to $name must send a request after it refers to $other")
+    public void assertRetargetedGet(String name, String other) throws SimpleQueryException, MultipleResultsExistException {
+        DefaultToOneDomainReference<LoadedUser> reference = referenceTo(name);
+        reference.setTargetItemName(other);
+        simpleDB.clearRequests();
+        assertThat(reference.get(false).getItemName(), Matchers.is(other));
+        assertRequests(1);
+    }
+
+    @Then("the creation of the loader must fail with $exceptionClass")
+    public void assertFailure(String exceptionClass) {
+        assertThat(failure, Matchers.is(Matchers.notNullValue()));
+        assertThat(failure.getClass().getSimpleName(), Matchers.is(exceptionClass));
+    }
+
+    private void addReference(String name) {
+        DefaultToOneDomainReference<LoadedUser> reference = new DefaultToOneDomainReference<LoadedUser>(context, domain);
+        reference.setTargetItemName(name);
+        references.add(reference);
+        loader.add(reference);
+    }
+
+    private DefaultToOneDomainReference<LoadedUser> referenceTo(String name) {
+        for (DefaultToOneDomainReference<LoadedUser> reference : references) {
+            if (name.equals(reference.getTargetItemName())) return reference;
+        }
+        throw new IllegalArgumentException("no reference refers to " + name);
+    }
+
+    private static String nameOf(int index) {
+        return String.format("user%05d", index);
+    }
+
+    @SimpleDbDomain("loaded-user")
+    public static class LoadedUser {
+        private String itemName;
+        private String name;
+
+        @ItemName
+        public String getItemName() {
+            return itemName;
+        }
+
+        public void setItemName(String itemName) {
+            this.itemName = itemName;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.FakeContext;
+import com.shelfmap.simplequery.FakeSimpleDB;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import static com.shelfmap.simplequery.attribute.Attributes.attr;
+import com.shelfmap.simplequery.expression.impl.Select;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/AsyncQuery.story")
+public class AsyncQueryTest extends BaseStoryRunner {
+    private static final long WAIT_MILLIS = 5000L;
+
+    FakeSimpleDB simpleDB;
+    Context context;
+    Future<?> future;
+    String callerThread;
+
+    @Given("a fake SimpleDB which has $count items")
+    public void createContext(int count) {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= count; i++) {
+            String name = nameOf(i);
+            simpleDB.put(name, "name", name);
+        }
+        context = new FakeContext(simpleDB);
+    }
+
+    @Given("the requests to SimpleDB are held")
+    public void holdRequests() {
+        simpleDB.hold();
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (simpleDB != null) simpleDB.release();
+        if (context != null) context.close();
+        context = null;
+    }
+
+    @When(value = "<operation> is requested asynchronously", priority = 1)
+    public void requestAsyncOfExample(@Named("operation") String operation) {
+        requestAsync(operation);
+    }
+
+    @When("$operation is requested asynchronously")
+    public void requestAsync(String operation) {
+        callerThread = Thread.currentThread().getName();
+        Select select = new Select(context);
+        if (operation.equals("the results of all items")) {
+            future = select.from(AsyncUser.class).getResultsAsync(false, FetchOptions.DEFAULT);
+        } else if (operation.equals("the results of 25 names")) {
+            future = select.from(AsyncUser.class).where(attr("name"), in(namesOf(25))).getResultsAsync(false, FetchOptions.DEFAULT);
+        } else if (operation.equals("the results of 5 items from the offset 10")) {
+            future = select.from(AsyncUser.class).limit(5).offset(10).getResultsAsync(false, FetchOptions.DEFAULT);
+        } else if (operation.equals("the count of all items")) {
+            future = select.from(AsyncUser.class).countAsync();
+        } else if (operation.equals("the count of 25 names")) {
+            future = select.from(AsyncUser.class).where(attr("name"), in(namesOf(25))).countAsync();
+        } else if (operation.equals("the single result of user00003")) {
+            future = select.from(AsyncUser.class).whereItemName(is("user00003")).getSingleResultAsync(false);
+        } else if (operation.equals("the single result of user00100")) {
+            future = select.from(AsyncUser.class).whereItemName(is("user00100")).getSingleResultAsync(false);
+        } else if (operation.equals("the single result of all items")) {
+            future = select.from(AsyncUser.class).getSingleResultAsync(false);
+        } else {
+            throw new IllegalArgumentException("unknown operation: " + operation);
+        }
+    }
+
+    @When("the requests to SimpleDB are released")
+    public void releaseRequests() {
+        simpleDB.release();
+    }
+
+    @Then("the future must not be done")
+    public void assertNotDone() {
+        assertThat(future.isDone(), Matchers.is(false));
+    }
+
+    @Then("SimpleDB must receive the request on a thread other than the caller")
+    public void assertRequestThread() throws InterruptedException {
+        assertThat(simpleDB.awaitRequests(1, WAIT_MILLIS), Matchers.is(true));
+        assertThat(simpleDB.getRequestThreads(), Matchers.not(Matchers.hasItem(callerThread)));
+    }
+
+    @Then("the result of the future must be <result>")
+    public void assertResult(@Named("result") String result) throws Exception {
+        assertThat(describe(future.get(WAIT_MILLIS, TimeUnit.MILLISECONDS)), Matchers.is(result));
+    }
+
+    @Then("the future must fail with $exceptionClass")
+    public void assertFailure(String exceptionClass) throws Exception {
+        try {
+            future.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause().getClass().getSimpleName(), Matchers.is(exceptionClass));
+            return;
+        }
+        throw new AssertionError("the future must fail.");
+    }
+
+    /**
+     * @return the number of the items of results, the count, or the name of a single result.
+     */
+    private static String describe(Object result) {
+        if (result instanceof QueryResults) {
+            int size = 0;
+            for (Object item : (QueryResults<?>) result) {
+                size++;
+            }
+            return size + " items";
+        }
+        if (result instanceof AsyncUser) return ((AsyncUser) result).getName();
+        return String.valueOf(result);
+    }
+
+    private static String[] namesOf(int count) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 1; i <= count; i++) {
+            names.add(nameOf(i));
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    private static String nameOf(int index) {
+        return String.format("user%05d", index);
+    }
+
+    @SimpleDbDomain("async-user")
+    public static class AsyncUser {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.FakeContext;
+import com.shelfmap.simplequery.FakeSimpleDB;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import com.shelfmap.simplequery.expression.impl.Select;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.greaterEqual;
+import java.util.List;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/Count.story")
+public class CountTest extends BaseStoryRunner {
+    FakeSimpleDB simpleDB;
+    Context context;
+    int count;
+    boolean empty;
+
+    @Given(value = "a fake SimpleDB which has 25 items and counts at most <size> items in a response", priority = 1)
+    public void createContextOfExample(@Named("size") int size) {
+        createContext(size);
+    }
+
+    @Given("a fake SimpleDB which has 25 items and counts at most $size items in a response")
+    public void createContext(int size) {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= 25; i++) {
+            String name = nameOf(i);
+            simpleDB.put(name, "name", name);
+        }
+        simpleDB.setMaxItemsPerResponse(size);
+        context = new FakeContext(simpleDB);
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (context != null) context.close();
+        context = null;
+    }
+
+    @When("the items are counted")
+    public void countItems() throws SimpleQueryException {
+        count = new Select(context).from(CountedUser.class).count();
+    }
+
+    @When("the items are counted with the limit <limit>")
+    public void countItemsWithLimit(@Named("limit") int limit) throws SimpleQueryException {
+        count = new Select(context).from(CountedUser.class).limit(limit).count();
+    }
+
+    @When("the items are counted by the segments split at <boundaries>")
+    public void countSegments(@Named("boundaries") List<String> boundaries) throws SimpleQueryException {
+        ItemNameSegments segments = ItemNameSegments.of(boundaries.toArray(new String[boundaries.size()]));
+        count = new Select(context).from(CountedUser.class).count(segments, context.getIOExecutor());
+    }
+
+    @When("the items are counted with the limit $limit by the segments split at $boundaries")
+    public void countSegmentsWithLimit(int limit, List<String> boundaries) throws SimpleQueryException {
+        ItemNameSegments segments = ItemNameSegments.of(boundaries.toArray(new String[boundaries.size()]));
+        count = new Select(context).from(CountedUser.class).limit(limit).count(segments, context.getIOExecutor());
+    }
+
+    @When("the size of the results is read $times times")
+    public void readSize(int times) throws SimpleQueryException {
+        QueryResults<CountedUser> results = new Select(context).from(CountedUser.class).getResults(false);
+        for (int i = 0; i < times; i++) {
+            count = results.size();
+        }
+    }
+
+    @When("the results of the items from $first are checked for emptiness")
+    public void checkEmptiness(String first) throws SimpleQueryException {
+        empty = new Select(context).from(CountedUser.class)
+                                   .whereItemName(greaterEqual(first))
+                                   .getResults(false)
+                                   .isEmpty();
+    }
+
+    @Then(value = "the count must be <count>", priority = 1)
+    public void assertCountOfExample(@Named("count") int expected) {
+        assertCount(expected);
+    }
+
+    @Then("the count must be $count")
+    public void assertCount(int expected) {
+        assertThat(count, Matchers.is(expected));
+    }
+
+    @Then("the results must be empty: $empty")
+    public void assertEmpty(String expected) {
+        assertThat(empty, Matchers.is(Boolean.parseBoolean(expected)));
+    }
+
+    @Then(value = "SimpleDB must have received <requests> count requests", priority = 1)
+    public void assertCountRequestsOfExample(@Named("requests") int requests) {
+        assertCountRequests(requests);
+    }
+
+    @Then("SimpleDB must have received $requests count requests")
+    public void assertCountRequests(int requests) {
+        int counted = 0;
+        for (SelectRequest request : simpleDB.getRequests()) {
+            if (request.getSelectExpression().startsWith("select count(*)")) counted++;
+        }
+        assertThat(counted, Matchers.is(requests));
+    }
+
+    private static String nameOf(int index) {
+        return String.format("user%05d", index);
+    }
+
+    @SimpleDbDomain("counted-user")
+    public static class CountedUser {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
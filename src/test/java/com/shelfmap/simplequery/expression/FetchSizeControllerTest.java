@@ -0,0 +1,238 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.Item;
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.amazonaws.services.simpledb.model.SelectResult;
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.FakeContext;
+import com.shelfmap.simplequery.FakeSimpleDB;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import com.shelfmap.simplequery.expression.impl.FetchSizeController;
+import com.shelfmap.simplequery.expression.impl.Select;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/FetchSizeController.story")
+public class FetchSizeControllerTest extends BaseStoryRunner {
+    private static final String EXPRESSION = "select * from `fetch-user` limit 1000";
+
+    FakeSimpleDB simpleDB;
+    Context context;
+    FetchSizeController controller;
+    List<Integer> sizes;
+    SelectResult page;
+    List<String> names;
+    Exception failure;
+
+    @Given("a fake SimpleDB which has $count users")
+    public void createContext(int count) {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= count; i++) {
+            String name = nameOf(i);
+            simpleDB.put(name, "name", name);
+        }
+        context = new FakeContext(simpleDB);
+    }
+
+    @Given("SimpleDB returns at most $count items in a response")
+    public void truncateResponses(int count) {
+        simpleDB.setMaxItemsPerResponse(count);
+    }
+
+    @Given(value = "a fetch size controller from <initial> to <maximum>", priority = 1)
+    public void createControllerOfExample(@Named("initial") int initial, @Named("maximum") int maximum) {
+        createController(initial, maximum);
+    }
+
+    @Given("a fetch size controller from $initial to $maximum")
+    public void createController(int initial, int maximum) {
+        controller = new FetchSizeController(initial, maximum);
+        sizes = new ArrayList<Integer>();
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (context != null) context.close();
+        context = null;
+        failure = null;
+    }
+
+    @When(value = "a controller from <initial> to <maximum> is created", priority = 1)
+    public void tryControllerOfExample(@Named("initial") int initial, @Named("maximum") int maximum) {
+        failure = null;
+        try {
+            controller = new FetchSizeController(initial, maximum);
+        } catch (IllegalArgumentException ex) {
+            failure = ex;
+        }
+    }
+
+    @When(value = "<count> full pages are fetched in <millis> milliseconds each", priority = 1)
+    public void fetchFullPagesOfExample(@Named("count") int count, @Named("millis") int millis) {
+        fetchFullPages(count, millis);
+    }
+
+    @When("$count full pages are fetched in $millis milliseconds each")
+    public void fetchFullPages(int count, int millis) {
+        for (int i = 0; i < count; i++) {
+            int requested = controller.nextFetchSize();
+            controller.pageFetched(requested, pageOf(requested, 1, true), TimeUnit.MILLISECONDS.toNanos(millis));
+            sizes.add(controller.nextFetchSize());
+        }
+    }
+
+    @When("a full page of items whose values have $length characters is fetched")
+    public void fetchLargeItems(int length) {
+        int requested = controller.nextFetchSize();
+        controller.pageFetched(requested, pageOf(requested, length, true), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @When("SimpleDB truncates a page to $count items")
+    public void fetchTruncatedPage(int count) {
+        controller.pageFetched(controller.nextFetchSize(), pageOf(count, 1, true), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @When("the consumer takes $millis milliseconds for a page")
+    public void consumePage(int millis) {
+        controller.pageConsumed(controller.nextFetchSize(), TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @When("a page is selected with $remaining remaining items")
+    public void select(int remaining) {
+        simpleDB.clearRequests();
+        page = controller.select(context, EXPRESSION, false, null, remaining);
+    }
+
+    @When("the users are fetched with the limit $limit and the fetch size $fetchSize")
+    public void fetchUsers(int limit, int fetchSize) throws SimpleQueryException {
+        simpleDB.clearRequests();
+        names = new ArrayList<String>();
+        for (FetchUser user : new Select(context).from(FetchUser.class).limit(limit).getResults(false, FetchOptions.DEFAULT.withFetchSize(fetchSize))) {
+            names.add(user.getName());
+        }
+    }
+
+    @Then("the expression <expression> with the page limit <pageSize> must be <result>")
+    public void assertPageLimit(@Named("expression") String expression, @Named("pageSize") int pageSize, @Named("result") String result) {
+        assertThat(FetchSizeController.withPageLimit(expression, pageSize), Matchers.is(result));
+    }
+
+    @Then(value = "the controller must be adaptive: <adaptive>", priority = 1)
+    public void assertAdaptiveOfExample(@Named("adaptive") String adaptive) {
+        assertAdaptive(adaptive);
+    }
+
+    @Then("the controller must be adaptive: $adaptive")
+    public void assertAdaptive(String adaptive) {
+        assertThat(controller.isAdaptive(), Matchers.is(Boolean.parseBoolean(adaptive)));
+    }
+
+    @Then("the creation must be <created>")
+    public void assertCreated(@Named("created") String created) {
+        if (created.equals("rejected")) {
+            assertThat(failure, Matchers.is(Matchers.instanceOf(IllegalArgumentException.class)));
+        } else {
+            assertThat(failure, Matchers.is(Matchers.nullValue()));
+        }
+    }
+
+    @Then(value = "the fetch sizes after the pages must be <sizes>", priority = 1)
+    public void assertSizesOfExample(@Named("sizes") String sizes) {
+        assertSizes(sizes);
+    }
+
+    @Then("the fetch sizes after the pages must be $sizes")
+    public void assertSizes(String expected) {
+        assertThat(sizes.toString(), Matchers.is("[" + expected.replace(",", ", ") + "]"));
+    }
+
+    @Then("the next fetch size must be $size")
+    public void assertNextFetchSize(int size) {
+        assertThat(controller.nextFetchSize(), Matchers.is(size));
+    }
+
+    @Then("the limits of the requests must be $limits")
+    public void assertRequestLimits(String limits) {
+        List<String> requested = new ArrayList<String>();
+        for (SelectRequest request : simpleDB.getRequests()) {
+            String expression = request.getSelectExpression();
+            requested.add(expression.substring(expression.lastIndexOf(' ') + 1));
+        }
+        assertThat(requested.toString(), Matchers.is("[" + limits.replace(",", ", ") + "]"));
+    }
+
+    @Then("the page must have $count items and a NextToken")
+    public void assertPageWithToken(int count) {
+        assertThat(page.getItems().size(), Matchers.is(count));
+        assertThat(page.getNextToken(), Matchers.is(Matchers.notNullValue()));
+    }
+
+    @Then("the page must have $count items and no NextToken")
+    public void assertLastPage(int count) {
+        assertThat(page.getItems().size(), Matchers.is(count));
+        assertThat(page.getNextToken(), Matchers.is(Matchers.nullValue()));
+    }
+
+    @Then("$count users must be returned")
+    public void assertUserCount(int count) {
+        assertThat(names.size(), Matchers.is(count));
+    }
+
+    private static SelectResult pageOf(int count, int valueLength, boolean hasNext) {
+        char[] value = new char[valueLength];
+        Arrays.fill(value, 'a');
+        List<Item> items = new ArrayList<Item>();
+        for (int i = 1; i <= count; i++) {
+            items.add(new Item(nameOf(i), Arrays.asList(new Attribute("body", new String(value)))));
+        }
+        return new SelectResult().withItems(items).withNextToken(hasNext ? "next-token" : null);
+    }
+
+    private static String nameOf(int index) {
+        return String.format("user%05d", index);
+    }
+
+    @SimpleDbDomain("fetch-user")
+    public static class FetchUser {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
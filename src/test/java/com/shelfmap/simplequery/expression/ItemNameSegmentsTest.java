@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.google.inject.Binder;
+import com.google.inject.Inject;
+import com.google.inject.Scopes;
+import com.shelfmap.simplequery.*;
+import static com.shelfmap.simplequery.attribute.Attributes.attr;
+import com.shelfmap.simplequery.attribute.impl.AllAttribute;
+import com.shelfmap.simplequery.attribute.impl.ItemNameAttribute;
+import com.shelfmap.simplequery.expression.impl.Restrictions;
+import com.shelfmap.simplequery.expression.impl.Select;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.is;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.like;
+import java.util.Arrays;
+import java.util.List;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/ItemNameSegmentsSpec.story")
+public class ItemNameSegmentsTest extends BaseStoryRunner {
+    @Override
+    protected void configureTestContext(Binder binder) {
+        binder.bind(ContextHolder.class).to(TestContext.class).in(Scopes.SINGLETON);
+        binder.bind(TestContext.class).in(Scopes.SINGLETON);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected List<? extends Class<?>> getStepsClasses() {
+        return Arrays.asList(TestClientFactory.class);
+    }
+
+    @Inject
+    TestContext ctx;
+
+    Expression<?> exp;
+
+    @When("restricting a where expression to the segment between 'c' and 'm'")
+    public void restrictWhereExpression() {
+        Expression<TestDomain> source = new Select(ctx.getContext(), AllAttribute.INSTANCE).from(TestDomain.class).where(attr("name"), like("yano%")).or(attr("name"), is("tyano"));
+        exp = Restrictions.and(source, ItemNameSegments.of("m", "c").getSegments().get(1).toConditions());
+    }
+
+    @When("restricting an ordered and limited expression to the last segment after 'm'")
+    public void restrictLimitExpression() {
+        Expression<TestDomain> source = new Select(ctx.getContext(), AllAttribute.INSTANCE).from(TestDomain.class).orderBy(ItemNameAttribute.INSTANCE, SortOrder.Asc).limit(10);
+        exp = Restrictions.and(source, ItemNameSegments.of("m").getSegments().get(1).toConditions());
+    }
+
+    @When("restricting a domain expression to the first segment before 'c'")
+    public void restrictDomainExpression() {
+        Expression<TestDomain> source = new Select(ctx.getContext(), AllAttribute.INSTANCE).from(TestDomain.class);
+        exp = Restrictions.and(source, ItemNameSegments.of("c", "m").getSegments().get(0).toConditions());
+    }
+
+    @Then("the restricted expression must be -> $resultExp")
+    public void assertRestrictedExpression(String resultExp) {
+        assertThat(exp.describe(), Matchers.is(resultExp));
+    }
+}
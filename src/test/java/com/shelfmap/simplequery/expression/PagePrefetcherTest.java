@@ -0,0 +1,220 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.amazonaws.services.simpledb.model.Item;
+import com.amazonaws.services.simpledb.model.SelectResult;
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.FakeContext;
+import com.shelfmap.simplequery.FakeSimpleDB;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import com.shelfmap.simplequery.expression.impl.PagePrefetcher;
+import com.shelfmap.simplequery.expression.impl.Select;
+import java.util.ArrayList;
+import java.util.List;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Alias;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/PagePrefetcher.story")
+public class PagePrefetcherTest extends BaseStoryRunner {
+    private static final String EXPRESSION = "select * from `prefetched-user`";
+    private static final long WAIT_MILLIS = 5000L;
+    //the time to make sure that no more request is sent.
+    private static final long SETTLE_MILLIS = 200L;
+
+    FakeSimpleDB simpleDB;
+    Context context;
+    PagePrefetcher prefetcher;
+    int depth;
+    List<String> takenNames;
+    RuntimeException injected;
+
+    @Given("a fake SimpleDB which has $count items and answers $size items in a response")
+    public void createContext(int count, int size) {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= count; i++) {
+            String name = nameOf(i);
+            simpleDB.put(name, "name", name);
+        }
+        simpleDB.setMaxItemsPerResponse(size);
+        context = new FakeContext(simpleDB);
+        takenNames = new ArrayList<String>();
+    }
+
+    @Given("the requests to SimpleDB are held")
+    public void holdRequests() {
+        simpleDB.hold();
+    }
+
+    @Given("the requests to SimpleDB fail after $count requests")
+    public void failRequests(int count) {
+        injected = new IllegalStateException("the injected failure");
+        simpleDB.failAfter(count, injected);
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (prefetcher != null) prefetcher.cancel();
+        if (simpleDB != null) simpleDB.release();
+        if (context != null) context.close();
+        prefetcher = null;
+        context = null;
+    }
+
+    @When(value = "a prefetcher of the depth <depth> is started", priority = 1)
+    public void startPrefetcherOfExample(@Named("depth") int depth) {
+        startPrefetcher(depth);
+    }
+
+    @When("a prefetcher of the depth $depth is started")
+    public void startPrefetcher(int depth) {
+        this.depth = depth;
+        prefetcher = PagePrefetcher.fromFirstPage(context, EXPRESSION, false, depth, context.getIOExecutor(), null);
+    }
+
+    @When("the first request is received")
+    public void awaitFirstRequest() throws InterruptedException {
+        assertThat(simpleDB.awaitRequests(1, WAIT_MILLIS), Matchers.is(true));
+    }
+
+    @When("a page is taken")
+    public void takePage() {
+        SelectResult page = prefetcher.take();
+        assertThat(page, Matchers.is(Matchers.notNullValue()));
+        addNames(page);
+    }
+
+    @When("all pages are taken")
+    public void takeAllPages() {
+        SelectResult page;
+        while ((page = prefetcher.take()) != null) {
+            addNames(page);
+        }
+    }
+
+    @When("the prefetcher is cancelled")
+    public void cancel() {
+        prefetcher.cancel();
+    }
+
+    @When("the requests to SimpleDB are released")
+    public void releaseRequests() {
+        simpleDB.release();
+    }
+
+    @When("the results are fetched with the prefetch of the depth <depth>")
+    public void fetchResults(@Named("depth") int depth) throws SimpleQueryException {
+        FetchOptions options = FetchOptions.DEFAULT.withPrefetch(depth, context.getIOExecutor());
+        for (PrefetchedUser user : new Select(context).from(PrefetchedUser.class).getResults(false, options)) {
+            takenNames.add(user.getName());
+        }
+    }
+
+    @Then("the prefetcher must fill its depth and wait for the consumer")
+    public void assertFilled() throws InterruptedException {
+        assertWaiting(depth);
+    }
+
+    @Then("the prefetcher must wait for the consumer after <requests> requests")
+    public void assertWaiting(@Named("requests") int requests) throws InterruptedException {
+        assertThat(simpleDB.awaitRequests(requests, WAIT_MILLIS), Matchers.is(true));
+        Thread.sleep(SETTLE_MILLIS);
+        assertThat(simpleDB.getRequests().size(), Matchers.is(requests));
+    }
+
+    @Then("SimpleDB must have received $requests requests")
+    @Alias("SimpleDB must have received $requests request")
+    public void assertRequests(int requests) throws InterruptedException {
+        Thread.sleep(SETTLE_MILLIS);
+        assertThat(simpleDB.getRequests().size(), Matchers.is(requests));
+    }
+
+    @Then("the taken items must be the first $count items in order")
+    public void assertTakenNames(int count) {
+        List<String> expected = new ArrayList<String>();
+        for (int i = 1; i <= count; i++) {
+            expected.add(nameOf(i));
+        }
+        assertThat(takenNames, Matchers.is(expected));
+    }
+
+    @Then("the prefetcher must be drained")
+    public void assertDrained() {
+        assertThat(prefetcher.isDrained(), Matchers.is(true));
+    }
+
+    @Then("the next page must be null")
+    public void assertNoPage() {
+        assertThat(prefetcher.take(), Matchers.is(Matchers.nullValue()));
+    }
+
+    @Then("taking the next page must fail with the injected failure")
+    public void assertTakeFailure() {
+        try {
+            prefetcher.take();
+        } catch (RuntimeException ex) {
+            assertThat(ex, Matchers.sameInstance(injected));
+            return;
+        }
+        throw new AssertionError("take() must fail.");
+    }
+
+    @Then("polling the next page must fail with the injected failure")
+    public void assertPollFailure() {
+        try {
+            prefetcher.poll();
+        } catch (RuntimeException ex) {
+            assertThat(ex, Matchers.sameInstance(injected));
+            return;
+        }
+        throw new AssertionError("poll() must fail.");
+    }
+
+    private void addNames(SelectResult page) {
+        for (Item item : page.getItems()) {
+            takenNames.add(item.getName());
+        }
+    }
+
+    private static String nameOf(int index) {
+        return String.format("user%05d", index);
+    }
+
+    @SimpleDbDomain("prefetched-user")
+    public static class PrefetchedUser {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
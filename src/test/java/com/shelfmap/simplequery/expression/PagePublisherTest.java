@@ -0,0 +1,221 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.FakeContext;
+import com.shelfmap.simplequery.FakeSimpleDB;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import com.shelfmap.simplequery.expression.impl.Select;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Alias;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/PagePublisher.story")
+public class PagePublisherTest extends BaseStoryRunner {
+    //runs the tasks of the publisher on the thread which requests the results, so that each step sees all signals.
+    private static final Executor INLINE_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    FakeSimpleDB simpleDB;
+    Context context;
+    RecordingSubscriber subscriber;
+    RuntimeException injected;
+    int cancelAfter;
+
+    @Given("a fake SimpleDB which has $count items and answers $size items in a response")
+    public void createContext(int count, int size) {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= count; i++) {
+            String name = nameOf(i);
+            simpleDB.put(name, "name", name);
+        }
+        simpleDB.setMaxItemsPerResponse(size);
+        context = new FakeContext(simpleDB);
+        cancelAfter = -1;
+    }
+
+    @Given("the requests to SimpleDB fail after $count requests")
+    @Alias("the requests to SimpleDB fail after $count request")
+    public void failRequests(int count) {
+        injected = new IllegalStateException("the injected failure");
+        simpleDB.failAfter(count, injected);
+    }
+
+    @Given("the subscriber cancels the subscription when it receives $count items")
+    public void cancelAfter(int count) {
+        cancelAfter = count;
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (context != null) context.close();
+        context = null;
+    }
+
+    @When("a subscriber subscribes to the publisher of the items")
+    public void subscribe() {
+        subscriber = new RecordingSubscriber(cancelAfter);
+        new Select(context).from(PublishedUser.class).publish(false, FetchOptions.DEFAULT, INLINE_EXECUTOR).subscribe(subscriber);
+    }
+
+    @When(value = "the subscriber requests <count> items", priority = 1)
+    public void requestOfExample(@Named("count") long count) {
+        request(count);
+    }
+
+    @When("the subscriber requests $count items")
+    public void request(long count) {
+        subscriber.subscription.request(count);
+    }
+
+    @When(value = "the subscriber requests all items", priority = 2)
+    public void requestAll() {
+        subscriber.subscription.request(Long.MAX_VALUE);
+    }
+
+    @When("the subscriber cancels the subscription")
+    public void cancel() {
+        subscriber.subscription.cancel();
+    }
+
+    @Then(value = "the subscriber must have received the first <received> items in order", priority = 1)
+    public void assertReceivedOfExample(@Named("received") int received) {
+        assertReceived(received);
+    }
+
+    @Then("the subscriber must have received the first $count items in order")
+    public void assertReceived(int count) {
+        List<String> expected = new ArrayList<String>();
+        for (int i = 1; i <= count; i++) {
+            expected.add(nameOf(i));
+        }
+        assertThat(subscriber.names, Matchers.is(expected));
+    }
+
+    @Then(value = "SimpleDB must have received <requests> requests", priority = 1)
+    public void assertRequestsOfExample(@Named("requests") int requests) {
+        assertRequests(requests);
+    }
+
+    @Then("SimpleDB must have received $requests requests")
+    @Alias("SimpleDB must have received $requests request")
+    public void assertRequests(int requests) {
+        assertThat(simpleDB.getRequests().size(), Matchers.is(requests));
+    }
+
+    @Then(value = "the subscription must be completed: <completed>", priority = 1)
+    public void assertCompletedOfExample(@Named("completed") String completed) {
+        assertCompleted(completed);
+    }
+
+    @Then("the subscription must be completed: $completed")
+    public void assertCompleted(String completed) {
+        assertThat(subscriber.completed, Matchers.is(Boolean.parseBoolean(completed)));
+    }
+
+    @Then("the subscription must not have failed")
+    public void assertNoError() {
+        assertThat(subscriber.error, Matchers.is(Matchers.nullValue()));
+    }
+
+    @Then("the subscription must have failed with the injected failure")
+    public void assertInjectedError() {
+        assertThat(subscriber.error, Matchers.sameInstance((Throwable) injected));
+    }
+
+    @Then("the subscription must have failed with $exceptionClass")
+    public void assertError(String exceptionClass) {
+        assertThat(subscriber.error, Matchers.is(Matchers.notNullValue()));
+        assertThat(subscriber.error.getClass().getSimpleName(), Matchers.is(exceptionClass));
+    }
+
+    @Then("the subscriber must have been signalled once at last")
+    public void assertSingleTerminalSignal() {
+        assertThat(subscriber.terminalSignals, Matchers.is(1));
+    }
+
+    private static String nameOf(int index) {
+        return String.format("user%05d", index);
+    }
+
+    static class RecordingSubscriber implements ResultSubscriber<PublishedUser> {
+        private final int cancelAfter;
+        ResultSubscription subscription;
+        List<String> names = new ArrayList<String>();
+        boolean completed;
+        Throwable error;
+        int terminalSignals;
+
+        RecordingSubscriber(int cancelAfter) {
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void onSubscribe(ResultSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(PublishedUser result) {
+            names.add(result.getName());
+            if (names.size() == cancelAfter) subscription.cancel();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            terminalSignals++;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            terminalSignals++;
+        }
+    }
+
+    @SimpleDbDomain("published-user")
+    public static class PublishedUser {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.FakeContext;
+import com.shelfmap.simplequery.FakeSimpleDB;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import com.shelfmap.simplequery.expression.impl.Select;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/ParallelConversion.story")
+public class ParallelConversionTest extends BaseStoryRunner {
+    //the names of the threads which converted the items.
+    static final Set<String> CONVERTING_THREADS = Collections.synchronizedSet(new HashSet<String>());
+
+    FakeSimpleDB simpleDB;
+    Context context;
+    List<String> names;
+
+    @Given("a fake SimpleDB which has $count items and answers $size items in a response, whose earlier items are slower to convert")
+    public void createContext(int count, int size) {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= count; i++) {
+            String name = nameOf(i);
+            simpleDB.put(name, "name", name, "delay", String.valueOf(count + 1 - i));
+        }
+        simpleDB.setMaxItemsPerResponse(size);
+        context = new FakeContext(simpleDB);
+        CONVERTING_THREADS.clear();
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (context != null) context.close();
+        context = null;
+    }
+
+    @When(value = "the results are iterated with the parallel conversion of <parallelism> pages and the prefetch of the depth <depth>", priority = 1)
+    public void iterateOfExample(@Named("parallelism") int parallelism, @Named("depth") int depth) throws SimpleQueryException {
+        iterate(parallelism, depth);
+    }
+
+    @When("the results are iterated with the parallel conversion of $parallelism pages and the prefetch of the depth $depth")
+    public void iterate(int parallelism, int depth) throws SimpleQueryException {
+        FetchOptions options = FetchOptions.DEFAULT.withParallelConversion(parallelism, context.getConversionExecutor())
+                                                   .withPrefetch(depth, context.getIOExecutor());
+        names = new ArrayList<String>();
+        for (ConvertedUser user : new Select(context).from(ConvertedUser.class).getResults(false, options)) {
+            names.add(user.getName());
+        }
+    }
+
+    @Then("the results must be the first $count items in order")
+    public void assertNames(int count) {
+        List<String> expected = new ArrayList<String>();
+        for (int i = 1; i <= count; i++) {
+            expected.add(nameOf(i));
+        }
+        assertThat(names, Matchers.is(expected));
+    }
+
+    @Then("some items must have been converted on the conversion executor")
+    public void assertConvertingThreads() {
+        List<String> threads = new ArrayList<String>(CONVERTING_THREADS);
+        assertThat(threads, Matchers.hasItem(Matchers.startsWith("simplequery-conversion-")));
+    }
+
+    private static String nameOf(int index) {
+        return String.format("user%05d", index);
+    }
+
+    @SimpleDbDomain("converted-user")
+    public static class ConvertedUser {
+        private String name;
+        private String delay;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDelay() {
+            return delay;
+        }
+
+        /**
+         * sleeps for the delay in milliseconds, to make the conversion of this item slow.
+         */
+        public void setDelay(String delay) {
+            this.delay = delay;
+            CONVERTING_THREADS.add(Thread.currentThread().getName());
+            try {
+                Thread.sleep(Long.parseLong(delay));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.DefaultContext;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.IntAttribute;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import static com.shelfmap.simplequery.attribute.Attributes.attr;
+import static com.shelfmap.simplequery.expression.Parameter.param;
+import com.shelfmap.simplequery.expression.impl.Select;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/PreparedExpression.story")
+public class PreparedExpressionTest extends BaseStoryRunner {
+    Context context;
+    PreparedExpression<Account> prepared;
+    Map<String,Object> values;
+    Expression<Account> bound;
+    Exception failure;
+
+    @Given("a context without credentials")
+    public void createContext() {
+        context = new DefaultContext(null);
+        values = new HashMap<String,Object>();
+        bound = null;
+        failure = null;
+    }
+
+    @When("an expression with a parameter '$first' and a parameter '$second' which is used twice is prepared")
+    public void prepareExpression(String first, String second) {
+        prepared = new Select(context).from(Account.class)
+                                      .where(attr("saving"), greaterThan(param(first)))
+                                      .and(attr("name"), is(param(second)))
+                                      .or(attr("saving"), lessThan(param(first)))
+                                      .prepare();
+    }
+
+    @When("an expression with a between condition of parameters is prepared")
+    public void prepareBetweenExpression() {
+        prepared = new Select(context).from(Account.class)
+                                      .where(attr("saving"), between(param("low")).and(param("high")))
+                                      .prepare();
+    }
+
+    @When("an expression with an in condition of parameters, an order and a limit is prepared")
+    public void prepareInExpression() {
+        prepared = new Select(context).from(Account.class)
+                                      .where(attr("name"), in(param("a"), param("b")))
+                                      .orderBy(attr("name"), SortOrder.Asc)
+                                      .limit(5)
+                                      .prepare();
+    }
+
+    @When("the int value $value is given to the parameter '$name'")
+    public void giveIntValue(int value, String name) {
+        values.put(name, value);
+    }
+
+    @When("the string value \"$value\" is given to the parameter '$name'")
+    public void giveStringValue(String value, String name) {
+        values.put(name, value);
+    }
+
+    @When("the values are bound")
+    public void bindValues() {
+        try {
+            bound = prepared.bind(values);
+        } catch (IllegalArgumentException ex) {
+            failure = ex;
+        }
+    }
+
+    @Then("the template must be \"$template\"")
+    public void assertTemplate(String template) {
+        assertThat(prepared.describe(), Matchers.is(template));
+    }
+
+    @Then("the parameter names must be $names")
+    public void assertParameterNames(String names) {
+        assertThat(prepared.getParameterNames(), Matchers.is(Arrays.asList(names.split(","))));
+    }
+
+    @Then("the bound expression must be \"$expression\"")
+    public void assertBoundExpression(String expression) {
+        assertThat(failure, Matchers.is(Matchers.nullValue()));
+        assertThat(bound.describe(), Matchers.is(expression));
+    }
+
+    @Then("the bound expression must be the same with the expression whose where clause has the values directly")
+    public void assertSameWithDirectExpression() {
+        Expression<Account> direct = new Select(context).from(Account.class)
+                                                        .where(attr("saving"), greaterThan(values.get("min")))
+                                                        .and(attr("name"), is(values.get("name")))
+                                                        .or(attr("saving"), lessThan(values.get("min")));
+        assertThat(bound.describe(), Matchers.is(direct.describe()));
+    }
+
+    @Then("the binding must fail with the message \"$message\"")
+    public void assertBindingFailure(String message) {
+        assertThat(failure, Matchers.is(Matchers.instanceOf(IllegalArgumentException.class)));
+        assertThat(failure.getMessage(), Matchers.startsWith(message));
+    }
+
+    @SimpleDbDomain("prepared-account")
+    public static interface Account {
+        @IntAttribute(attributeName = "saving", padding = 8, offset = 1000000)
+        int getAccountSaving();
+
+        String getName();
+    }
+}
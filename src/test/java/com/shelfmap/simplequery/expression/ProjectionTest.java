@@ -0,0 +1,101 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.Item;
+import com.google.inject.Binder;
+import com.google.inject.Inject;
+import com.google.inject.Scopes;
+import com.shelfmap.simplequery.*;
+import com.shelfmap.simplequery.annotation.ItemName;
+import static com.shelfmap.simplequery.attribute.Attributes.attr;
+import com.shelfmap.simplequery.attribute.impl.AllAttribute;
+import com.shelfmap.simplequery.domain.Domain;
+import com.shelfmap.simplequery.expression.impl.Select;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.like;
+import java.util.Arrays;
+import java.util.List;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/ProjectionSpec.story")
+public class ProjectionTest extends BaseStoryRunner {
+    @Override
+    protected void configureTestContext(Binder binder) {
+        binder.bind(ContextHolder.class).to(TestContext.class).in(Scopes.SINGLETON);
+        binder.bind(TestContext.class).in(Scopes.SINGLETON);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected List<? extends Class<?>> getStepsClasses() {
+        return Arrays.asList(TestClientFactory.class);
+    }
+
+    @Inject
+    TestContext ctx;
+
+    Expression<?> exp;
+
+    @When("projecting an expression to a view interface")
+    public void projectToView() {
+        exp = new Select(ctx.getContext(), AllAttribute.INSTANCE).from(TestDomain.class).where(attr("name"), like("yano%")).limit(10).as(NameAndAge.class);
+    }
+
+    @When("projecting an expression to a view which has only an item name")
+    public void projectToItemNameView() {
+        exp = new Select(ctx.getContext(), AllAttribute.INSTANCE).from(TestDomain.class).where(attr("name"), like("yano%")).limit(10).as(OnlyItemName.class);
+    }
+
+    @Then("the expression must select only the attributes of the view -> $resultExp")
+    public void assertProjection(String resultExp) {
+        assertThat(exp.describe(), Matchers.is(resultExp));
+    }
+
+    NameAndAge view;
+
+    @When("converting an item to a view interface")
+    public void convertToView() throws CanNotConvertItemException {
+        Context context = ctx.getContext();
+        Domain<TestDomain> domain = context.getDomainFactory().createDomain(TestDomain.class);
+        ItemConverter<NameAndAge> converter = context.getItemConverterFactory().createViewConverter(domain, NameAndAge.class);
+        Item item = new Item("item1", Arrays.asList(new Attribute("name", "yano"), new Attribute("age", "020")));
+        view = converter.convertToInstance(item);
+    }
+
+    @Then("the view must have the values of the item")
+    public void assertView() {
+        assertThat(view.getName(), Matchers.is("yano"));
+        assertThat(view.getAge(), Matchers.is(20));
+    }
+
+    public interface NameAndAge {
+        String getName();
+        int getAge();
+    }
+
+    public interface OnlyItemName {
+        @ItemName
+        String getId();
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.FakeContext;
+import com.shelfmap.simplequery.FakeSimpleDB;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import static com.shelfmap.simplequery.attribute.Attributes.attr;
+import com.shelfmap.simplequery.expression.impl.Select;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.in;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/QueryCursor.story")
+public class QueryCursorTest extends BaseStoryRunner {
+    private static final String SECRET = "cursor-secret";
+
+    QueryCursorCodec codec = new QueryCursorCodec(QueryCursorCodec.deriveKey(SECRET));
+    FakeSimpleDB simpleDB;
+    Context context;
+    QueryCursor cursor;
+    String encoded;
+    QueryResults<CursorUser> results;
+    int requestsBeforeResumption;
+    Exception failure;
+
+    @Given("a fake SimpleDB which has $count users")
+    public void createContext(int count) {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= count; i++) {
+            String name = nameOf(i);
+            simpleDB.put(name, "name", name);
+        }
+        context = new FakeContext(simpleDB);
+        failure = null;
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (context != null) context.close();
+        context = null;
+    }
+
+    @When(value = "a cursor with the lazy hydration <lazy> and the consistent read <consistent> is encoded", priority = 1)
+    public void encodeCursorOfExample(@Named("lazy") String lazy, @Named("consistent") String consistent) {
+        encodeCursor(lazy, consistent);
+    }
+
+    @When("a cursor with the lazy hydration $lazy and the consistent read $consistent is encoded")
+    public void encodeCursor(String lazy, String consistent) {
+        cursor = new QueryCursor(CursorUser.class.getName(), CursorUser.class.getName(), "*", "from `cursor-user` limit 2", "token-1", Boolean.parseBoolean(lazy), Boolean.parseBoolean(consistent));
+        encoded = codec.encode(cursor);
+    }
+
+    @When("a cursor whose clauses have $length characters each is encoded")
+    public void encodeLargeCursor(int length) {
+        char[] clause = new char[length];
+        Arrays.fill(clause, 'a');
+        cursor = new QueryCursor(CursorUser.class.getName(), CursorUser.class.getName(), new String(clause), new String(clause), "token-1", false, false);
+        encoded = codec.encode(cursor);
+    }
+
+    @When("the character at the position $position of the encoded cursor is changed")
+    public void changeCharacter(int position) {
+        char[] chars = encoded.toCharArray();
+        chars[position] = chars[position] == 'A' ? 'B' : 'A';
+        encoded = new String(chars);
+    }
+
+    @When("the last $count characters of the encoded cursor are removed")
+    public void truncate(int count) {
+        encoded = encoded.substring(0, encoded.length() - count);
+    }
+
+    @When("the encoded cursor is decoded with the secret $secret")
+    public void decode(String secret) {
+        QueryCursorCodec decoder = new QueryCursorCodec(QueryCursorCodec.deriveKey(secret));
+        try {
+            cursor = decoder.decode(encoded);
+        } catch (IllegalArgumentException ex) {
+            failure = ex;
+        }
+    }
+
+    @When("the users are fetched consistently by pages of $count users")
+    public void fetchConsistently(int count) throws SimpleQueryException {
+        results = new Select(context).from(CursorUser.class).limit(count).getResults(true);
+    }
+
+    @When("the results are resumed from their cursor")
+    public void resume() {
+        requestsBeforeResumption = simpleDB.getRequests().size();
+        results = context.resume(results.cursor(), CursorUser.class);
+    }
+
+    @When(value = "the results of <kind> are fetched", priority = 1)
+    public void fetchOfExample(@Named("kind") String kind) throws SimpleQueryException {
+        fetch(kind);
+    }
+
+    @When("the results of $kind are fetched")
+    public void fetch(String kind) throws SimpleQueryException {
+        if (kind.equals("a limited expression")) {
+            results = new Select(context).from(CursorUser.class).limit(2).getResults(false);
+        } else if (kind.equals("an expression with a fetch size")) {
+            results = new Select(context).from(CursorUser.class).getResults(false, FetchOptions.DEFAULT.withFetchSize(2));
+        } else if (kind.equals("a limited expression with a fetch size")) {
+            results = new Select(context).from(CursorUser.class).limit(4).getResults(false, FetchOptions.DEFAULT.withFetchSize(2));
+        } else if (kind.equals("a split expression")) {
+            List<String> names = new ArrayList<String>();
+            for (int i = 1; i <= 25; i++) {
+                names.add(nameOf(i));
+            }
+            results = new Select(context).from(CursorUser.class).where(attr("name"), in(names.toArray(new String[names.size()]))).getResults(false);
+        } else {
+            throw new IllegalArgumentException("unknown kind: " + kind);
+        }
+    }
+
+    @Then("the decoded cursor must be the original cursor")
+    public void assertDecoded() {
+        QueryCursor decoded = codec.decode(encoded);
+        assertThat(decoded, Matchers.is(cursor));
+        assertThat(decoded.isLazyHydration(), Matchers.is(cursor.isLazyHydration()));
+        assertThat(decoded.isConsistent(), Matchers.is(cursor.isConsistent()));
+    }
+
+    @Then("the encoded cursor must be URL-safe")
+    public void assertUrlSafe() {
+        assertThat(encoded.matches("[A-Za-z0-9_-]+"), Matchers.is(true));
+    }
+
+    @Then("the decoding must fail with the message $message")
+    public void assertFailure(String message) {
+        assertThat(failure, Matchers.is(Matchers.instanceOf(IllegalArgumentException.class)));
+        assertThat(failure.getMessage(), Matchers.is(message));
+    }
+
+    @Then("the names of the results must be $names")
+    public void assertNames(List<String> names) {
+        List<String> actual = new ArrayList<String>();
+        for (CursorUser user : results) {
+            actual.add(user.getName());
+        }
+        assertThat(actual, Matchers.is(names));
+    }
+
+    @Then("the first request after the resumption must start from a NextToken")
+    public void assertResumedFromToken() {
+        SelectRequest request = simpleDB.getRequests().get(requestsBeforeResumption);
+        assertThat(request.getNextToken(), Matchers.is(Matchers.notNullValue()));
+    }
+
+    @Then("all $count requests after the resumption must be consistent")
+    public void assertConsistent(int count) {
+        List<SelectRequest> requests = simpleDB.getRequests();
+        assertThat(requests.size() - requestsBeforeResumption, Matchers.is(count));
+        for (SelectRequest request : requests.subList(requestsBeforeResumption, requests.size())) {
+            assertThat(request.getSelectExpression(), request.isConsistentRead(), Matchers.is(Boolean.TRUE));
+        }
+    }
+
+    @Then(value = "the results must be resumable: <resumable>", priority = 1)
+    public void assertResumableOfExample(@Named("resumable") String resumable) {
+        assertResumable(resumable);
+    }
+
+    @Then("the results must be resumable: $resumable")
+    public void assertResumable(String expected) {
+        boolean resumable = Boolean.parseBoolean(expected);
+        assertThat(results.isResumable(), Matchers.is(resumable));
+        try {
+            String next = results.cursor();
+            assertThat(resumable, Matchers.is(true));
+            assertThat(next, Matchers.is(Matchers.notNullValue()));
+        } catch (UnsupportedOperationException ex) {
+            assertThat(resumable, Matchers.is(false));
+        }
+    }
+
+    private static String nameOf(int index) {
+        return String.format("user%05d", index);
+    }
+
+    @SimpleDbDomain("cursor-user")
+    public static class CursorUser {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
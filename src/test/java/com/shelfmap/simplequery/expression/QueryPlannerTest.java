@@ -0,0 +1,289 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.FakeContext;
+import com.shelfmap.simplequery.FakeSimpleDB;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import static com.shelfmap.simplequery.attribute.Attributes.attr;
+import static com.shelfmap.simplequery.expression.Conditions.*;
+import com.shelfmap.simplequery.expression.impl.QueryPlanner;
+import com.shelfmap.simplequery.expression.impl.Select;
+import static com.shelfmap.simplequery.expression.matcher.MatcherFactory.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/QueryPlanner.story")
+public class QueryPlannerTest extends BaseStoryRunner {
+    private static final Pattern QUOTED = Pattern.compile("'([^']*)'");
+    private static final String CONDITION_PREFIX = "select * from `planned-user` where `status` = 'active' and `name` in (";
+    private static final String ORDER_SUFFIX = ") order by `name` desc limit 10";
+
+    FakeSimpleDB simpleDB;
+    Context context;
+    List<String> values;
+    Expression<PlannedUser> expression;
+    List<Expression<PlannedUser>> parts;
+    QueryResults<PlannedUser> results;
+
+    @Given("a fake SimpleDB which has the items user001 to user050")
+    public void createContext() {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= 50; i++) {
+            String name = nameOf(i);
+            simpleDB.put(name, "name", name, "status", "active");
+        }
+        context = new FakeContext(simpleDB);
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (context != null) context.close();
+        context = null;
+    }
+
+    @When("an expression whose 'in' clause has <count> values and <duplicates> duplicated values is planned")
+    public void planInExpression(@Named("count") int count, @Named("duplicates") int duplicates) {
+        values = namesOf(count, duplicates);
+        expression = new Select(context).from(PlannedUser.class)
+                                        .where(attr("status"), is("active"))
+                                        .and(attr("name"), in(values.toArray(new String[values.size()])))
+                                        .orderBy(attr("name"), SortOrder.Desc)
+                                        .limit(10);
+        parts = QueryPlanner.plan(expression);
+    }
+
+    @When("an expression whose 'in' clause has $count values in a 'not' condition is planned")
+    public void planNegatedInExpression(int count) {
+        values = namesOf(count, 0);
+        expression = new Select(context).from(PlannedUser.class)
+                                        .where(attr("status"), is("active"))
+                                        .and(not($(attr("name"), in(values.toArray(new String[values.size()])))));
+        parts = QueryPlanner.plan(expression);
+    }
+
+    @When("an expression whose 'in' clause has $count values and an offset is planned")
+    public void planInExpressionWithOffset(int count) {
+        values = namesOf(count, 0);
+        expression = new Select(context).from(PlannedUser.class)
+                                        .where(attr("name"), in(values.toArray(new String[values.size()])))
+                                        .limit(10)
+                                        .offset(5);
+        parts = QueryPlanner.plan(expression);
+    }
+
+    @When("an expression which has <count> comparisons joined by 'or' is planned")
+    public void planDisjunction(@Named("count") int count) {
+        values = namesOf(count, 0);
+        expression = disjunctionOf(values);
+        parts = QueryPlanner.plan(expression);
+    }
+
+    @When("an expression which has $count comparisons joined by 'and' is planned")
+    public void planConjunction(int count) {
+        values = namesOf(count, 0);
+        WhereExpression<PlannedUser> where = new Select(context).from(PlannedUser.class).where(attr("name"), isNot(values.get(0)));
+        for (String value : values.subList(1, values.size())) {
+            where = where.and(attr("name"), isNot(value));
+        }
+        expression = where;
+        parts = QueryPlanner.plan(expression);
+    }
+
+    @When("an expression which has $groups groups of $count comparisons joined by 'or' is planned")
+    public void planGroupedDisjunction(int groups, int count) {
+        values = namesOf(groups * count, 0);
+        Condition<?> condition = null;
+        for (int i = 0; i < groups; i++) {
+            Condition<?> group = $(attr("name"), is(values.get(i * count)));
+            for (String value : values.subList(i * count + 1, (i + 1) * count)) {
+                group = group.or(attr("name"), is(value));
+            }
+            condition = condition == null ? group.group() : condition.or(group.group());
+        }
+        expression = new Select(context).from(PlannedUser.class).where(condition);
+        parts = QueryPlanner.plan(expression);
+    }
+
+    @When("the results of an expression which has the comparisons of user001 to user020 and user015 to user019 joined by 'or', ordered by the name descending with the limit 10, are fetched")
+    public void fetchOverlappedDisjunction() throws SimpleQueryException {
+        values = namesOf(20, 0);
+        values.addAll(namesOf(19, 0).subList(14, 19));
+        expression = disjunctionOf(values).orderBy(attr("name"), SortOrder.Desc).limit(10);
+        parts = QueryPlanner.plan(expression);
+        results = expression.getResults(false);
+    }
+
+    @When("the results of an expression whose 'in' clause has $count values and $duplicates duplicated values are fetched")
+    public void fetchInExpression(int count, int duplicates) throws SimpleQueryException {
+        values = namesOf(count, duplicates);
+        expression = new Select(context).from(PlannedUser.class)
+                                        .where(attr("name"), in(values.toArray(new String[values.size()])));
+        parts = QueryPlanner.plan(expression);
+        results = expression.getResults(false);
+    }
+
+    @Then(value = "the expression must be split into <parts> expressions", priority = 1)
+    public void assertPartsWithExamples(@Named("parts") int count) {
+        assertThat(parts.size(), Matchers.is(count));
+    }
+
+    @Then("the expression must be split into $parts expressions")
+    public void assertParts(int count) {
+        assertThat(parts.size(), Matchers.is(count));
+    }
+
+    @Then("the expression must not be split")
+    public void assertNotSplit() {
+        assertThat(parts.size(), Matchers.is(1));
+        assertThat(parts.get(0), Matchers.sameInstance(expression));
+    }
+
+
+    @Then("each split expression must keep the other condition, the order and the limit")
+    public void assertOtherClauses() {
+        for (Expression<PlannedUser> part : parts) {
+            assertThat(part.describe(), Matchers.startsWith(CONDITION_PREFIX));
+            assertThat(part.describe(), Matchers.endsWith(ORDER_SUFFIX));
+        }
+    }
+
+    @Then("the split expressions must have the distinct values in the original order")
+    public void assertDistinctValues() {
+        List<String> split = new ArrayList<String>();
+        for (Expression<PlannedUser> part : parts) {
+            List<String> quoted = quotedValuesOf(part);
+            //the first quoted value is the value of the status.
+            split.addAll(quoted.subList(1, quoted.size()));
+        }
+        assertThat(split, Matchers.is((List<String>) new ArrayList<String>(new LinkedHashSet<String>(values))));
+    }
+
+    @Then("each split expression must have at most 20 comparisons")
+    public void assertMaxComparisons() {
+        for (Expression<PlannedUser> part : parts) {
+            assertThat(quotedValuesOf(part).size(), Matchers.lessThanOrEqualTo(QueryPlanner.MAX_COMPARISONS));
+        }
+    }
+
+    @Then("the split expressions must have all comparisons in the original order")
+    public void assertAllComparisons() {
+        List<String> split = new ArrayList<String>();
+        for (Expression<PlannedUser> part : parts) {
+            split.addAll(quotedValuesOf(part));
+        }
+        assertThat(split, Matchers.is(values));
+    }
+
+    @Then("the names of the results must be $names")
+    public void assertNames(List<String> names) {
+        assertThat(namesOf(results), Matchers.is(names));
+    }
+
+    @Then("the results must have $count distinct names")
+    public void assertDistinctNames(int count) {
+        List<String> names = namesOf(results);
+        assertThat(names.size(), Matchers.is(count));
+        assertThat(new LinkedHashSet<String>(names).size(), Matchers.is(count));
+    }
+
+    @Then("the size of the results must be $size")
+    public void assertSize(int size) {
+        assertThat(results.size(), Matchers.is(size));
+    }
+
+    private WhereExpression<PlannedUser> disjunctionOf(List<String> names) {
+        WhereExpression<PlannedUser> where = new Select(context).from(PlannedUser.class).where(attr("name"), is(names.get(0)));
+        for (String value : names.subList(1, names.size())) {
+            where = where.or(attr("name"), is(value));
+        }
+        return where;
+    }
+
+    private static List<String> quotedValuesOf(Expression<?> expression) {
+        List<String> quoted = new ArrayList<String>();
+        Matcher matcher = QUOTED.matcher(expression.describe());
+        while (matcher.find()) {
+            quoted.add(matcher.group(1));
+        }
+        return quoted;
+    }
+
+    private static List<String> namesOf(QueryResults<PlannedUser> results) {
+        List<String> names = new ArrayList<String>();
+        for (PlannedUser user : results) {
+            names.add(user.getName());
+        }
+        return names;
+    }
+
+    /**
+     * @return the names from user001 to the count, and the first names of the number of the duplicates again.
+     */
+    private static List<String> namesOf(int count, int duplicates) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 1; i <= count; i++) {
+            names.add(nameOf(i));
+        }
+        for (int i = 1; i <= duplicates; i++) {
+            names.add(nameOf(i));
+        }
+        return names;
+    }
+
+    private static String nameOf(int index) {
+        return String.format("user%03d", index);
+    }
+
+    @SimpleDbDomain("planned-user")
+    public static class PlannedUser {
+        private String name;
+        private String status;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public void setStatus(String status) {
+            this.status = status;
+        }
+    }
+}
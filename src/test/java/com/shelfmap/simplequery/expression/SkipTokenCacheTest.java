@@ -0,0 +1,222 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.expression;
+
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.amazonaws.services.simpledb.model.SelectResult;
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.FakeContext;
+import com.shelfmap.simplequery.FakeSimpleDB;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.annotation.SimpleDbDomain;
+import com.shelfmap.simplequery.expression.impl.Select;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.hamcrest.Matchers;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Named;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/SkipTokenCache.story")
+public class SkipTokenCacheTest extends BaseStoryRunner {
+    private static final String COUNT_EXPRESSION = "select count(*) from `skip-user`";
+
+    FakeSimpleDB simpleDB;
+    Context context;
+    SkipTokenCache cache;
+    String token;
+    LimitExpression<SkipUser> expression;
+    Exception failure;
+
+    @Given("a fake SimpleDB which has $count items")
+    public void createContext(int count) {
+        simpleDB = new FakeSimpleDB();
+        for (int i = 1; i <= count; i++) {
+            String name = nameOf(i);
+            simpleDB.put(name, "name", name);
+        }
+        context = new FakeContext(simpleDB);
+        cache = context.getSkipTokenCache();
+        failure = null;
+    }
+
+    @Given("a SkipTokenCache which caches the tokens of $count expressions")
+    public void createCache(int count) {
+        cache = new SkipTokenCache(count);
+    }
+
+    @Given("SimpleDB counts at most $count items in a request")
+    public void truncateCounts(int count) {
+        simpleDB.setMaxItemsPerResponse(count);
+    }
+
+    @AfterScenario
+    public void closeContext() {
+        if (context != null) context.close();
+        context = null;
+    }
+
+    @When(value = "the token at the offset <offset> is requested", priority = 1)
+    public void requestTokenOfExample(@Named("offset") int offset) {
+        requestToken(offset);
+    }
+
+    @When("the token at the offset $offset is requested")
+    public void requestToken(int offset) {
+        simpleDB.clearRequests();
+        try {
+            token = cache.tokenAt(context.getSimpleDB(), COUNT_EXPRESSION, offset, false);
+        } catch (IllegalArgumentException ex) {
+            failure = ex;
+        } catch (NoSuchElementException ex) {
+            failure = ex;
+        }
+    }
+
+    @When("the token of the expression $index at the offset $offset is requested")
+    public void requestTokenOfExpression(int index, int offset) {
+        simpleDB.clearRequests();
+        token = cache.tokenAt(context.getSimpleDB(), "select count(*) from `skip-user-" + index + "`", offset, false);
+    }
+
+    @When("an expression of the page <pageIndex> whose size is <pageSize> is created")
+    public void createPage(@Named("pageIndex") int pageIndex, @Named("pageSize") int pageSize) {
+        try {
+            expression = new Select(context).from(SkipUser.class).page(pageIndex, pageSize);
+        } catch (IllegalArgumentException ex) {
+            failure = ex;
+        }
+    }
+
+    @When("an expression with the limit $limit and the offset $offset is created")
+    public void createOffset(int limit, int offset) {
+        expression = new Select(context).from(SkipUser.class).limit(limit).offset(offset);
+    }
+
+    @When("the expression is <operation>")
+    public void operateWithOffset(@Named("operation") String operation) throws SimpleQueryException {
+        simpleDB.clearRequests();
+        ItemNameSegments segments = ItemNameSegments.of("user00010");
+        try {
+            if (operation.equals("published")) {
+                expression.publish(false, FetchOptions.DEFAULT, context.getIOExecutor());
+            } else if (operation.equals("fetched by segments")) {
+                expression.getResults(false, FetchOptions.DEFAULT.withSegments(segments, context.getIOExecutor()));
+            } else if (operation.equals("counted by segments")) {
+                expression.count(segments, context.getIOExecutor());
+            } else {
+                throw new IllegalArgumentException("unknown operation: " + operation);
+            }
+        } catch (IllegalArgumentException ex) {
+            failure = ex;
+        }
+    }
+
+    @Then("the token must be null")
+    public void assertNullToken() {
+        assertThat(failure, Matchers.is(Matchers.nullValue()));
+        assertThat(token, Matchers.is(Matchers.nullValue()));
+    }
+
+    @Then(value = "the first item after the token must be <first>", priority = 1)
+    public void assertFirstItemOfExample(@Named("first") String first) {
+        assertFirstItem(first);
+    }
+
+    @Then("the first item after the token must be $first")
+    public void assertFirstItem(String first) {
+        assertThat(failure, Matchers.is(Matchers.nullValue()));
+        SelectResult result = simpleDB.client().select(new SelectRequest("select * from `skip-user` limit 1").withNextToken(token));
+        assertThat(result.getItems().get(0).getName(), Matchers.is(first));
+    }
+
+    @Then(value = "the limits of the count requests must be <limits>", priority = 1)
+    public void assertCountLimitsOfExample(@Named("limits") String limits) {
+        assertCountLimits(limits);
+    }
+
+    @Then("the limits of the count requests must be $limits")
+    public void assertCountLimits(String limits) {
+        List<String> requested = new ArrayList<String>();
+        for (SelectRequest request : simpleDB.getRequests()) {
+            String expression = request.getSelectExpression();
+            if (expression.startsWith("select count(*)")) requested.add(expression.substring(expression.lastIndexOf(' ') + 1));
+        }
+        assertThat(requested.toString(), Matchers.is("[" + limits.replace(",", ", ") + "]"));
+    }
+
+    @Then("no request must be sent")
+    public void assertNoRequest() {
+        assertThat(simpleDB.getRequests().size(), Matchers.is(0));
+    }
+
+    @Then("the request must fail with $exceptionClass")
+    public void assertFailure(String exceptionClass) {
+        assertThat(failure, Matchers.is(Matchers.notNullValue()));
+        assertThat(failure.getClass().getSimpleName(), Matchers.is(exceptionClass));
+    }
+
+    @Then("the offset of the expression must be <offset> and the limit must be <pageSize>")
+    public void assertPage(@Named("offset") String offset, @Named("pageSize") int pageSize) {
+        if (offset.equals("invalid")) {
+            assertThat(failure, Matchers.is(Matchers.instanceOf(IllegalArgumentException.class)));
+            return;
+        }
+        assertThat(failure, Matchers.is(Matchers.nullValue()));
+        assertThat(expression.getOffset(), Matchers.is(Integer.parseInt(offset)));
+        assertThat(expression.getLimitCount(), Matchers.is(pageSize));
+    }
+
+    @Then("the names of the results must be $names")
+    public void assertResults(List<String> names) throws SimpleQueryException {
+        List<String> results = new ArrayList<String>();
+        for (SkipUser user : expression.getResults(false)) {
+            results.add(user.getName());
+        }
+        assertThat(results, Matchers.is(names));
+    }
+
+    @Then("the count of the expression must be $count")
+    public void assertCount(int count) throws SimpleQueryException {
+        assertThat(expression.count(), Matchers.is(count));
+    }
+
+    private static String nameOf(int index) {
+        return String.format("user%05d", index);
+    }
+
+    @SimpleDbDomain("skip-user")
+    public static class SkipUser {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2011 Tsutomu YANO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shelfmap.simplequery.processor;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.Item;
+import com.amazonaws.services.simpledb.model.ReplaceableAttribute;
+import com.shelfmap.simplequery.BaseStoryRunner;
+import com.shelfmap.simplequery.Context;
+import com.shelfmap.simplequery.DefaultContext;
+import com.shelfmap.simplequery.StoryPath;
+import com.shelfmap.simplequery.domain.Domain;
+import com.shelfmap.simplequery.domain.DomainDescriptor;
+import com.shelfmap.simplequery.domain.impl.BeanDomainDescriptor;
+import com.shelfmap.simplequery.domain.impl.IndexedDomainDescriptor;
+import com.shelfmap.simplequery.expression.ItemConverter;
+import com.shelfmap.simplequery.expression.impl.DefaultItemConverter;
+import com.shelfmap.simplequery.factory.DomainDescriptorFactory;
+import com.shelfmap.simplequery.factory.impl.DefaultDomainDescriptorFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.jbehave.core.annotations.AfterScenario;
+import org.jbehave.core.annotations.Given;
+import org.jbehave.core.annotations.Then;
+import org.jbehave.core.annotations.When;
+
+/**
+ *
+ * @author Tsutomu YANO
+ */
+@StoryPath("stories/GeneratedItemConverter.story")
+public class GeneratedItemConverterTest extends BaseStoryRunner {
+    //the build runs without annotation processing, so the domain is compiled with SimpleQueryProcessor here.
+    private static final String DOMAIN_CLASS_NAME = "generated.Book";
+    private static final String DOMAIN_SOURCE =
+            "package generated;\n" +
+            "import com.shelfmap.simplequery.annotation.*;\n" +
+            "@SimpleDbDomain(\"book\")\n" +
+            "public class Book {\n" +
+            "    private String id;\n" +
+            "    private String title;\n" +
+            "    private int pages;\n" +
+            "    @ItemName public String getId() { return id; }\n" +
+            "    public void setId(String id) { this.id = id; }\n" +
+            "    public String getTitle() { return title; }\n" +
+            "    public void setTitle(String title) { this.title = title; }\n" +
+            "    @IntAttribute(padding=5) public int getPages() { return pages; }\n" +
+            "    public void setPages(int pages) { this.pages = pages; }\n" +
+            "}\n";
+    private static final String CHANGED_DOMAIN_SOURCE = DOMAIN_SOURCE.substring(0, DOMAIN_SOURCE.lastIndexOf('}')) +
+            "    private String note;\n" +
+            "    public String getNote() { return note; }\n" +
+            "    public void setNote(String note) { this.note = note; }\n" +
+            "}\n";
+
+    Context context;
+    Domain<?> domain;
+    ItemConverter<?> converter;
+    Object converted;
+    DomainDescriptor descriptor;
+    ClassLoader originalContextClassLoader;
+
+    @Given("a domain class compiled with SimpleQueryProcessor")
+    public void compileDomainClass() throws Exception {
+        File root = createOutputDirectory();
+        compile(root, DOMAIN_CLASS_NAME, DOMAIN_SOURCE, true);
+        createDomain(root);
+    }
+
+    @Given("a domain class which is changed after SimpleQueryProcessor wrote its metadata index")
+    public void compileChangedDomainClass() throws Exception {
+        File root = createOutputDirectory();
+        compile(root, DOMAIN_CLASS_NAME, DOMAIN_SOURCE, true);
+        compile(root, DOMAIN_CLASS_NAME, CHANGED_DOMAIN_SOURCE, false);
+        createDomain(root);
+    }
+
+    @Given("a context with a customized DomainDescriptorFactory")
+    public void customizeDomainDescriptorFactory() {
+        context = new DefaultContext(null) {
+            @Override
+            protected DomainDescriptorFactory createDomainDescriptorFactory() {
+                return new DefaultDomainDescriptorFactory(this) {};
+            }
+        };
+        domain = context.getDomainFactory().createDomain(domain.getDomainClass());
+    }
+
+    @When("the converter of the domain is created")
+    public void createConverter() {
+        converter = context.getItemConverterFactory().create(domain);
+    }
+
+    @When("the lazy converter of the domain is created")
+    public void createLazyConverter() {
+        converter = context.getItemConverterFactory().createLazy(domain);
+    }
+
+    @When("the descriptor of the domain is created")
+    public void createDescriptor() {
+        descriptor = context.getDomainDescriptorFactory().create(domain);
+    }
+
+    @When("an item is converted by the converter")
+    public void convertItem() throws Exception {
+        Item item = new Item("book-1", Arrays.asList(
+                new Attribute("title", "Simple Query"),
+                new Attribute("pages", "00320")));
+        converted = converter.convertToInstance(item);
+    }
+
+    @Then("the converter must be the generated converter $className")
+    public void assertGeneratedConverter(String className) {
+        assertThat(converter.getClass().getName(), is(className));
+    }
+
+    @Then("the factory must return the same converter for the domain")
+    public void assertCachedConverter() {
+        assertThat(context.getItemConverterFactory().create(domain), sameInstance((Object) converter));
+    }
+
+    @Then("the converter must be a DefaultItemConverter")
+    public void assertDefaultConverter() {
+        assertThat(converter, instanceOf(DefaultItemConverter.class));
+    }
+
+    @Then("the descriptor must be an IndexedDomainDescriptor")
+    public void assertIndexedDescriptor() {
+        assertThat(descriptor, instanceOf(IndexedDomainDescriptor.class));
+    }
+
+    @Then("the descriptor must be a BeanDomainDescriptor")
+    public void assertBeanDescriptor() {
+        assertThat(descriptor, instanceOf(BeanDomainDescriptor.class));
+    }
+
+    @Then("the descriptor must have the attributes $attributeNames")
+    public void assertAttributes(List<String> attributeNames) {
+        for (String attributeName : attributeNames) {
+            assertThat(attributeName, descriptor.isAttributeDefined(attributeName), is(true));
+        }
+    }
+
+    @When("the title of the converted object is changed to $title")
+    public void changeTitle(String title) throws Exception {
+        domain.getDomainClass().getMethod("setTitle", String.class).invoke(converted, title);
+    }
+
+    @Then("the title of the converted object must be $title")
+    public void assertTitle(String title) throws Exception {
+        assertThat(property(converted, "getTitle"), is((Object) title));
+    }
+
+    @Then("the converted object must have the values of the item")
+    public void assertConvertedValues() throws Exception {
+        assertThat(domain.getDomainClass().isInstance(converted), is(true));
+        assertThat(property(converted, "getId"), is((Object) "book-1"));
+        assertThat(property(converted, "getTitle"), is((Object) "Simple Query"));
+        assertThat(property(converted, "getPages"), is((Object) 320));
+    }
+
+    @Then("the current state of the converted object must be the same with DefaultItemConverter")
+    @SuppressWarnings("unchecked")
+    public void assertCurrentState() {
+        ItemConverter<?> reflective = new DefaultItemConverter<Object>(context, (Domain<Object>) domain);
+        assertThat(changedAttributes(converter, converted), is(changedAttributes(reflective, converted)));
+    }
+
+    private Set<String> changedAttributes(ItemConverter<?> itemConverter, Object domainObject) {
+        Set<String> result = new HashSet<String>();
+        for (ReplaceableAttribute attribute : itemConverter.makeCurrentStateOf(domainObject).getChangedItems()) {
+            result.add(attribute.getName() + "=" + attribute.getValue());
+        }
+        return result;
+    }
+
+    private Object property(Object target, String getterName) throws Exception {
+        //a lazy instance is a non-public subclass of the domain class.
+        Method getter = domain.getDomainClass().getMethod(getterName);
+        return getter.invoke(target);
+    }
+
+    @AfterScenario
+    public void restoreContextClassLoader() {
+        if (originalContextClassLoader != null) {
+            Thread.currentThread().setContextClassLoader(originalContextClassLoader);
+            originalContextClassLoader = null;
+        }
+    }
+
+    private void createDomain(File root) throws Exception {
+        ClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL()}, getClass().getClassLoader());
+        //domain classes are resolved by the context classloader.
+        if (originalContextClassLoader == null) {
+            originalContextClassLoader = Thread.currentThread().getContextClassLoader();
+        }
+        Thread.currentThread().setContextClassLoader(loader);
+        context = new DefaultContext(null);
+        domain = context.getDomainFactory().createDomain(Class.forName(DOMAIN_CLASS_NAME, true, loader));
+    }
+
+    private File createOutputDirectory() throws IOException {
+        File root = File.createTempFile("simplequery-processor", "");
+        if (!root.delete() || !root.mkdir()) {
+            throw new IOException("could not create a directory: " + root);
+        }
+        return root;
+    }
+
+    private void compile(File root, String className, String source, boolean processing) throws IOException {
+        File sourceFile = new File(root, className.replace('.', File.separatorChar) + ".java");
+        sourceFile.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(sourceFile), "UTF-8");
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+
+        List<String> arguments = new ArrayList<String>();
+        arguments.addAll(Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", root.getPath(), "-s", root.getPath()));
+        if (processing) {
+            arguments.addAll(Arrays.asList("-processor", SimpleQueryProcessor.class.getName()));
+        } else {
+            arguments.add("-proc:none");
+        }
+        arguments.add(sourceFile.getPath());
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int status = compiler.run(null, null, null, arguments.toArray(new String[arguments.size()]));
+        assertThat(status, is(0));
+    }
+}